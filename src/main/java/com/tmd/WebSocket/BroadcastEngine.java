@@ -0,0 +1,164 @@
+package com.tmd.WebSocket;
+
+import cn.hutool.json.JSONUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * WebSocket 广播
+ * <p>
+ * 1. 负载只序列化一次，所有连接共享同一个不可变字符串
+ * 2. 广播发布到 {@link #BROADCAST_CHANNEL}，每个节点（包括自己）收到后只扇出本节点的连接
+ * 3. 本节点的连接快照按 {@link #PARTITION_SIZE} 切成分区，在独立线程池上并行入队（入队本身不做网络写）
+ * 4. 出站队列积压超过高水位 {@link #HIGH_WATER_MARK} 的连接跳过本次广播；队列已满的由投递层断开
+ * <p>
+ * 每次本地扇出的耗时记在 ws.broadcast.fanout（Timer），收件数、跳过数分别记在
+ * ws.broadcast.recipients、ws.broadcast.skipped。
+ */
+@Component
+@Slf4j
+public class BroadcastEngine implements MessageListener {
+
+    static final String BROADCAST_CHANNEL = "ws:broadcast";
+    static final int HIGH_WATER_MARK = SessionOutbound.MAX_QUEUED * 3 / 4;
+    private static final int PARTITION_SIZE = 500;
+    private static final int WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final WebSocketDelivery delivery;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Timer fanoutTimer;
+    private final DistributionSummary recipientsSummary;
+    private final Counter skippedCounter;
+    private final ExecutorService pool = Executors.newFixedThreadPool(WORKERS, r -> {
+        Thread t = new Thread(r, "ws-broadcast");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public BroadcastEngine(WebSocketDelivery delivery,
+            StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer listenerContainer,
+            MeterRegistry meterRegistry) {
+        this.delivery = delivery;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.fanoutTimer = Timer.builder("ws.broadcast.fanout")
+                .description("Time to enqueue one broadcast to every local session")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.recipientsSummary = DistributionSummary.builder("ws.broadcast.recipients")
+                .description("Local sessions reached per broadcast")
+                .register(meterRegistry);
+        this.skippedCounter = meterRegistry.counter("ws.broadcast.skipped");
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(BROADCAST_CHANNEL));
+    }
+
+    /**
+     * 广播给所有节点上的所有连接；对象负载在这里序列化一次
+     */
+    public void broadcast(Object payload) {
+        if (payload == null) {
+            return;
+        }
+        String text = payload instanceof String ? (String) payload : JSONUtil.toJsonStr(payload);
+        try {
+            stringRedisTemplate.convertAndSend(BROADCAST_CHANNEL, text);
+        } catch (Exception e) {
+            // 发布失败至少保证本节点送达
+            log.warn("广播发布失败，仅本节点扇出", e);
+            fanout(text);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        fanout(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 本节点扇出，返回实际入队的连接数
+     */
+    int fanout(String text) {
+        long start = System.nanoTime();
+        List<Map.Entry<String, SessionOutbound>> sessions = new ArrayList<>(delivery.localSessions().entrySet());
+        if (sessions.isEmpty()) {
+            return 0;
+        }
+        int reached = 0;
+        if (sessions.size() <= PARTITION_SIZE) {
+            reached = fanoutPartition(sessions, text);
+        } else {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int from = 0; from < sessions.size(); from += PARTITION_SIZE) {
+                List<Map.Entry<String, SessionOutbound>> part =
+                        sessions.subList(from, Math.min(from + PARTITION_SIZE, sessions.size()));
+                try {
+                    futures.add(pool.submit(() -> fanoutPartition(part, text)));
+                } catch (RejectedExecutionException e) {
+                    reached += fanoutPartition(part, text);
+                }
+            }
+            for (Future<Integer> f : futures) {
+                try {
+                    reached += f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    log.error("广播分区扇出失败", e.getCause());
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        fanoutTimer.record(nanos, TimeUnit.NANOSECONDS);
+        recipientsSummary.record(reached);
+        log.debug("广播扇出完成: sessions={}, reached={}, cost={}us", sessions.size(), reached, nanos / 1000);
+        return reached;
+    }
+
+    private int fanoutPartition(List<Map.Entry<String, SessionOutbound>> part, String text) {
+        int reached = 0;
+        for (Map.Entry<String, SessionOutbound> e : part) {
+            SessionOutbound out = e.getValue();
+            if (!out.isOpen()) {
+                continue;
+            }
+            if (out.queued() >= HIGH_WATER_MARK) {
+                // 慢客户端：跳过广播，把剩余容量留给点对点消息
+                skippedCounter.increment();
+                continue;
+            }
+            if (delivery.enqueue(e.getKey(), out, text)) {
+                reached++;
+            }
+        }
+        return reached;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,88 @@
+package com.tmd.WebSocket;
+
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个 WebSocket 连接的出站队列
+ * <p>
+ * 生产者只入队，不在调用线程上阻塞写；同一时刻只有一条 getAsyncRemote().sendText 在途
+ * （容器不允许同一连接并发异步发送），完成回调里继续发下一条。
+ * 队列有上限，慢客户端积压满了 {@link #offer} 返回 false，由上层决定关闭连接。
+ */
+@Slf4j
+final class SessionOutbound {
+
+    static final int MAX_QUEUED = 256;
+
+    private final Session session;
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    SessionOutbound(Session session) {
+        this.session = session;
+    }
+
+    Session session() {
+        return session;
+    }
+
+    boolean isOpen() {
+        return session.isOpen();
+    }
+
+    /**
+     * @return false 表示队列已满（慢客户端）或连接已关闭
+     */
+    boolean offer(String text) {
+        if (!session.isOpen()) {
+            return false;
+        }
+        if (size.incrementAndGet() > MAX_QUEUED) {
+            size.decrementAndGet();
+            return false;
+        }
+        queue.add(text);
+        drain();
+        return true;
+    }
+
+    int queued() {
+        return size.get();
+    }
+
+    private void drain() {
+        while (sending.compareAndSet(false, true)) {
+            String next = queue.poll();
+            if (next == null) {
+                sending.set(false);
+                // 释放标记之后可能又有新消息入队，再检查一次
+                if (queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            size.decrementAndGet();
+            try {
+                session.getAsyncRemote().sendText(next, result -> {
+                    if (!result.isOK()) {
+                        log.warn("WebSocket异步发送失败 session={}", session.getId(), result.getException());
+                    }
+                    sending.set(false);
+                    drain();
+                });
+            } catch (Exception e) {
+                log.warn("WebSocket异步发送异常 session={}", session.getId(), e);
+                sending.set(false);
+                continue;
+            }
+            return;
+        }
+    }
+}
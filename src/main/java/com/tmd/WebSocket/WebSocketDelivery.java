@@ -0,0 +1,266 @@
+package com.tmd.WebSocket;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket 投递层（/websocket/{userId}）
+ * <p>
+ * 1. 本节点的连接各自有一个有界出站队列（{@link SessionOutbound}），异步写出，慢客户端不拖住生产者；
+ * 队列满说明客户端长期读不动，关闭连接，让客户端重连后走离线拉取
+ * 2. 在线路由记在 Redis Hash {@link #PRESENCE_KEY}（userId -> nodeId），每个节点订阅自己的频道
+ * ws:deliver:{nodeId}；用户连在其他节点时按路由只发布给那一个节点，由它写入本地连接
+ * 3. 节点存活由 ws:node:alive:{nodeId}（带 TTL 的心跳键）判断，宕机节点遗留的路由视为离线；
+ * 心跳同时用一条 HSET 重新声明本节点的全部在线用户，修复 Redis 侧丢失的路由
+ */
+@Component
+@Slf4j
+public class WebSocketDelivery implements MessageListener {
+
+    static final String PRESENCE_KEY = "ws:presence";
+    private static final String NODE_ALIVE_KEY_FMT = "ws:node:alive:%s";
+    private static final String DELIVER_CHANNEL_FMT = "ws:deliver:%s";
+    private static final long HEARTBEAT_MILLIS = 10_000;
+    private static final Duration NODE_ALIVE_TTL = Duration.ofSeconds(30);
+
+    /**
+     * 路由仍指向本节点时才删除，避免删掉用户在其他节点上的新连接
+     */
+    private static final DefaultRedisScript<Long> REMOVE_IF_OWNER_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then " +
+                    "  return redis.call('HDEL', KEYS[1], ARGV[1]) " +
+                    "end " +
+                    "return 0",
+            Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, SessionOutbound> local = new ConcurrentHashMap<>();
+    // 其他节点是否存活，短时间缓存，避免每次投递都查一次心跳键
+    private final Cache<String, Boolean> nodeAlive = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(5, TimeUnit.SECONDS)
+            .build();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Counter localCounter;
+    private final Counter remoteCounter;
+    private final Counter offlineCounter;
+    private final Counter overflowCounter;
+
+    public WebSocketDelivery(StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer listenerContainer,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.localCounter = Counter.builder("ws.delivery").tag("route", "local").register(meterRegistry);
+        this.remoteCounter = Counter.builder("ws.delivery").tag("route", "remote").register(meterRegistry);
+        this.offlineCounter = Counter.builder("ws.delivery").tag("route", "offline").register(meterRegistry);
+        this.overflowCounter = Counter.builder("ws.delivery").tag("route", "overflow").register(meterRegistry);
+        Gauge.builder("ws.sessions", local, Map::size)
+                .description("WebSocket sessions connected to this node")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(String.format(DELIVER_CHANNEL_FMT, nodeId)));
+        heartbeat();
+    }
+
+    void register(String userId, Session session) {
+        SessionOutbound old = local.put(userId, new SessionOutbound(session));
+        if (old != null && old.session() != session) {
+            closeQuietly(old.session(), CloseReason.CloseCodes.CANNOT_ACCEPT, "Duplicate connection");
+        }
+        try {
+            stringRedisTemplate.opsForHash().put(PRESENCE_KEY, userId, nodeId);
+        } catch (Exception e) {
+            log.warn("写入WebSocket路由失败 userId={}", userId, e);
+        }
+    }
+
+    void unregister(String userId, Session session) {
+        SessionOutbound cur = local.get(userId);
+        if (cur == null || cur.session() != session || !local.remove(userId, cur)) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(REMOVE_IF_OWNER_SCRIPT, Collections.singletonList(PRESENCE_KEY), userId,
+                    nodeId);
+        } catch (Exception e) {
+            log.warn("删除WebSocket路由失败 userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 用户在任意节点上在线
+     */
+    public boolean isOnline(String userId) {
+        SessionOutbound out = local.get(userId);
+        if (out != null && out.isOpen()) {
+            return true;
+        }
+        String owner = route(userId);
+        return owner != null && !owner.equals(nodeId) && alive(owner);
+    }
+
+    /**
+     * 投递给用户：本节点直接入队，其他节点发布到对方频道
+     *
+     * @return false 表示用户不在线或本地队列已满，调用方应转离线
+     */
+    public boolean send(String userId, String text) {
+        if (userId == null || text == null) {
+            return false;
+        }
+        SessionOutbound out = local.get(userId);
+        if (out != null) {
+            return enqueue(userId, out, text);
+        }
+        String owner = route(userId);
+        if (owner == null || owner.equals(nodeId) || !alive(owner)) {
+            offlineCounter.increment();
+            return false;
+        }
+        JSONObject envelope = new JSONObject();
+        envelope.set("u", userId);
+        envelope.set("m", text);
+        try {
+            stringRedisTemplate.convertAndSend(String.format(DELIVER_CHANNEL_FMT, owner), envelope.toString());
+            remoteCounter.increment();
+            return true;
+        } catch (Exception e) {
+            log.warn("跨节点投递失败 userId={} node={}", userId, owner, e);
+            return false;
+        }
+    }
+
+    /**
+     * 只写本节点的连接（广播等已按节点分发的场景）
+     */
+    public boolean sendLocal(String userId, String text) {
+        SessionOutbound out = local.get(userId);
+        return out != null && enqueue(userId, out, text);
+    }
+
+    Map<String, SessionOutbound> localSessions() {
+        return local;
+    }
+
+    public int localCount() {
+        return local.size();
+    }
+
+    boolean enqueue(String userId, SessionOutbound out, String text) {
+        if (out.offer(text)) {
+            localCounter.increment();
+            return true;
+        }
+        if (out.isOpen()) {
+            // 积压到上限：客户端读不动了，断开让它重连并拉取离线消息
+            overflowCounter.increment();
+            log.warn("WebSocket出站队列已满，关闭连接 userId={} queued={}", userId, out.queued());
+            closeQuietly(out.session(), CloseReason.CloseCodes.TRY_AGAIN_LATER, "Outbound queue overflow");
+        }
+        return false;
+    }
+
+    /**
+     * 其他节点转发过来的消息
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JSONObject envelope = JSONUtil.parseObj(new String(message.getBody(), StandardCharsets.UTF_8));
+            String userId = envelope.getStr("u");
+            String text = envelope.getStr("m");
+            if (!sendLocal(userId, text)) {
+                log.debug("转发到达时用户已不在本节点 userId={}", userId);
+            }
+        } catch (Exception e) {
+            log.warn("解析跨节点投递消息失败", e);
+        }
+    }
+
+    @Scheduled(fixedDelay = HEARTBEAT_MILLIS, initialDelay = HEARTBEAT_MILLIS)
+    public void heartbeat() {
+        try {
+            stringRedisTemplate.opsForValue().set(String.format(NODE_ALIVE_KEY_FMT, nodeId), "1", NODE_ALIVE_TTL);
+            if (!local.isEmpty()) {
+                Map<String, String> mine = new HashMap<>(local.size() * 2);
+                for (String userId : local.keySet()) {
+                    mine.put(userId, nodeId);
+                }
+                stringRedisTemplate.opsForHash().putAll(PRESENCE_KEY, mine);
+            }
+        } catch (Exception e) {
+            log.warn("WebSocket节点心跳失败 node={}", nodeId, e);
+        }
+    }
+
+    private String route(String userId) {
+        try {
+            Object owner = stringRedisTemplate.opsForHash().get(PRESENCE_KEY, userId);
+            return owner == null ? null : owner.toString();
+        } catch (Exception e) {
+            log.warn("读取WebSocket路由失败 userId={}", userId, e);
+            return null;
+        }
+    }
+
+    private boolean alive(String node) {
+        return nodeAlive.get(node, n -> Boolean.TRUE.equals(
+                stringRedisTemplate.hasKey(String.format(NODE_ALIVE_KEY_FMT, n))));
+    }
+
+    private static void closeQuietly(Session session, CloseReason.CloseCodes code, String reason) {
+        try {
+            session.close(new CloseReason(code, reason));
+        } catch (Exception e) {
+            log.debug("关闭WebSocket连接失败 session={}", session.getId(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            if (!local.isEmpty()) {
+                for (String userId : local.keySet()) {
+                    stringRedisTemplate.execute(REMOVE_IF_OWNER_SCRIPT, Collections.singletonList(PRESENCE_KEY),
+                            userId, nodeId);
+                }
+            }
+            stringRedisTemplate.delete(String.format(NODE_ALIVE_KEY_FMT, nodeId));
+        } catch (Exception e) {
+            log.warn("清理WebSocket路由失败 node={}", nodeId, e);
+        }
+    }
+}
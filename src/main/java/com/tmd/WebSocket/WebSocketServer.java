@@ -4,22 +4,35 @@ import jakarta.websocket.*;
 import jakarta.websocket.server.PathParam;
 import jakarta.websocket.server.ServerEndpoint;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+/**
+ * 连接的登记与注销；发送统一交给 {@link WebSocketDelivery}（异步出站队列 + 跨节点路由）
+ */
 @Component
 @ServerEndpoint("/websocket/{userId}")
 @Slf4j
 public class WebSocketServer {
 
-    // 存储所有连接的客户端
-    private static final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // 端点实例由容器按连接创建，投递层通过静态字段共享
+    private static WebSocketDelivery delivery;
+
+    private static BroadcastEngine broadcastEngine;
+
+    @Autowired
+    public void setDelivery(WebSocketDelivery delivery) {
+        WebSocketServer.delivery = delivery;
+    }
+
+    @Autowired
+    public void setBroadcastEngine(BroadcastEngine broadcastEngine) {
+        WebSocketServer.broadcastEngine = broadcastEngine;
+    }
 
     @OnOpen
     public void onOpen(Session session, @PathParam("userId") String userId) {
-        sessions.put(userId, session);
+        delivery.register(userId, session);
         log.info("WebSocket连接已打开，用户ID: {}", userId);
     }
 
@@ -30,67 +43,54 @@ public class WebSocketServer {
     }
 
     @OnClose
-    public void onClose(@PathParam("userId") String userId) {
-        sessions.remove(userId);
+    public void onClose(Session session, @PathParam("userId") String userId) {
+        delivery.unregister(userId, session);
         log.info("WebSocket连接已关闭，用户ID: {}", userId);
     }
 
     @OnError
     public void onError(Session session, Throwable error, @PathParam("userId") String userId) {
-        sessions.remove(userId);
+        delivery.unregister(userId, session);
         log.error("WebSocket发生错误，用户ID: {}，错误信息：{}", userId, error.getMessage());
     }
 
     /**
-     * 向指定用户发送消息
-     * 
+     * 向指定用户发送消息：只入队，不阻塞调用线程；用户连在其他节点时跨节点转发
+     *
      * @param userId  用户ID
      * @param message 消息内容
+     * @return false 表示用户不在线或出站队列已满
      */
-    public void sendToUser(String userId, String message) {
-        Session session = sessions.get(userId);
-        if (session != null && session.isOpen()) {
-            try {
-                session.getBasicRemote().sendText(message);
-                log.info("向用户 {} 发送消息成功", userId);
-            } catch (Exception e) {
-                log.error("向用户 {} 发送消息失败", userId, e);
-            }
-        } else {
+    public boolean sendToUser(String userId, String message) {
+        boolean sent = delivery.send(userId, message);
+        if (!sent) {
             log.warn("用户 {} 的WebSocket连接不存在或已关闭", userId);
         }
+        return sent;
     }
 
+    /**
+     * 用户在任意节点上在线
+     */
     public boolean Open(String userId) {
-        Session session = sessions.get(userId);
-        return session != null && session.isOpen();
+        return delivery.isOnline(userId);
     }
 
     /**
-     * 广播消息给所有连接的用户
-     * 
+     * 广播消息给所有节点上连接的用户，由 {@link BroadcastEngine} 并行扇出
+     *
      * @param message 消息内容
      */
     public void broadcast(String message) {
-        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
-            String userId = entry.getKey();
-            Session session = entry.getValue();
-            if (session.isOpen()) {
-                try {
-                    session.getBasicRemote().sendText(message);
-                } catch (Exception e) {
-                    log.error("向用户 {} 广播消息失败", userId, e);
-                }
-            }
-        }
+        broadcastEngine.broadcast(message);
     }
 
     /**
-     * 获取当前在线用户数
-     * 
+     * 获取本节点在线用户数
+     *
      * @return 在线用户数
      */
     public static int getOnlineCount() {
-        return sessions.size();
+        return delivery == null ? 0 : delivery.localCount();
     }
 }
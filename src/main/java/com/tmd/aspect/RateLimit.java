@@ -21,4 +21,7 @@ public @interface RateLimit {
     int capacity() default 50;
 
     int refillPerSecond() default 50;
+
+    // 大于 0 且 tokenBucket=true 时走本地租约：每次从 Redis 租这么多令牌在本节点扣减
+    int leaseBatch() default 0;
 }
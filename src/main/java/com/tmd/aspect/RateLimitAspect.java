@@ -2,7 +2,10 @@ package com.tmd.aspect;
 
 import com.tmd.entity.dto.Result;
 import com.tmd.tools.BaseContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -13,14 +16,31 @@ import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Aspect
 @Component
+@Slf4j
 @RequiredArgsConstructor
 public class RateLimitAspect {
     private final StringRedisTemplate stringRedisTemplate;
+    private final TokenLeaseLimiter tokenLeaseLimiter;
+    private final MeterRegistry meterRegistry;
+    // 按注解上的 key（不含用户ID，避免指标基数爆炸）和判定结果缓存计数器
+    private final Map<String, Counter> decisionCounters = new ConcurrentHashMap<>();
+
+    /**
+     * 固定窗口：INCR 和首次 EXPIRE 合成一个脚本，一次往返；
+     * 脚本经 RedisTemplate 执行时按缓存的 SHA1 走 EVALSHA，服务端没有该脚本时才回退 EVAL
+     */
+    private static final DefaultRedisScript<Long> LUA_FIXED_WINDOW = new DefaultRedisScript<>(
+            "local v=redis.call('incr', KEYS[1]);" +
+                    "if v==1 then redis.call('expire', KEYS[1], tonumber(ARGV[1])); end;" +
+                    "return v;",
+            Long.class);
     private static final DefaultRedisScript<Long> LUA_TOKEN_BUCKET;
     static {
         LUA_TOKEN_BUCKET = new DefaultRedisScript<>();
@@ -63,7 +83,21 @@ public class RateLimitAspect {
             Long uid = BaseContext.get();
             key = key + ":" + (uid == null ? "-" : String.valueOf(uid));
         }
-        if (useTokenBucket) {
+        if (useTokenBucket && cfg.leaseBatch() > 0) {
+            TokenLeaseLimiter.Decision decision;
+            try {
+                decision = tokenLeaseLimiter.tryAcquire(key, capacity, refillPerSecond, window, cfg.leaseBatch());
+            } catch (Exception e) {
+                // 与固定窗口一致：Redis 不可用时放行
+                log.warn("限流租约获取失败，放行 key={}", key, e);
+                decision = TokenLeaseLimiter.Decision.REDIS_ALLOWED;
+            }
+            if (decision == TokenLeaseLimiter.Decision.REJECTED) {
+                record(base, "rejected", "redis");
+                return Result.error("请求过于频繁");
+            }
+            record(base, "allowed", decision == TokenLeaseLimiter.Decision.LOCAL_ALLOWED ? "local" : "redis");
+        } else if (useTokenBucket) {
             String tokensKey = key + ":tb:tokens";
             String tsKey = key + ":tb:ts";
             long now = System.currentTimeMillis();
@@ -75,21 +109,33 @@ public class RateLimitAspect {
                     String.valueOf(capacity),
                     String.valueOf(window));
             if (allowed == null || allowed == 0L) {
+                record(base, "rejected", "redis");
                 return Result.error("请求过于频繁");
             }
+            record(base, "allowed", "redis");
         } else {
             Long v = null;
             try {
-                v = stringRedisTemplate.opsForValue().increment(key, 1);
-                if (v != null && v == 1L) {
-                    stringRedisTemplate.expire(key, window, TimeUnit.SECONDS);
-                }
+                v = stringRedisTemplate.execute(LUA_FIXED_WINDOW, Collections.singletonList(key),
+                        String.valueOf(window));
             } catch (Exception ignore) {
             }
             if (v != null && v > threshold) {
+                record(base, "rejected", "redis");
                 return Result.error("请求过于频繁");
             }
+            record(base, "allowed", "redis");
         }
         return pjp.proceed();
     }
+
+    private void record(String key, String result, String tier) {
+        decisionCounters.computeIfAbsent(key + '|' + result + '|' + tier,
+                k -> Counter.builder("ratelimit.decisions")
+                        .tag("key", key)
+                        .tag("result", result)
+                        .tag("tier", tier)
+                        .register(meterRegistry))
+                .increment();
+    }
 }
@@ -0,0 +1,174 @@
+package com.tmd.aspect;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 令牌桶的本地租约层
+ * <p>
+ * Redis 里的令牌桶（与 {@link RateLimitAspect} 逐次判定用的是同一对 key）仍是全局额度的唯一来源；
+ * 每个节点按 key 一次租一批令牌到本地，之后在内存里扣减，租约用完才再访问 Redis。
+ * 1. 桶里剩余不足两批时只租 1 个，退化为逐次判定，避免额度被某个节点囤住
+ * 2. 租来的令牌超过 {@link #LEASE_MILLIS} 没用完就还回 Redis（不超过容量），空闲的本地桶随后清掉
+ */
+@Component
+@Slf4j
+public class TokenLeaseLimiter {
+
+    static final long LEASE_MILLIS = 1000;
+    private static final long IDLE_EVICT_MILLIS = 60_000;
+
+    /**
+     * 与逐次判定脚本的补充规则相同，一次最多取 ARGV[5] 个；两个 SET 带 EX，不再单独 EXPIRE
+     */
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>(
+            "local rate=tonumber(ARGV[1]);" +
+                    "local now=tonumber(ARGV[2]);" +
+                    "local capacity=tonumber(ARGV[3]);" +
+                    "local ttl=tonumber(ARGV[4]);" +
+                    "local batch=tonumber(ARGV[5]);" +
+                    "local last=tonumber(redis.call('get', KEYS[2]) or ARGV[2]);" +
+                    "local tokens=tonumber(redis.call('get', KEYS[1]) or capacity);" +
+                    "local delta=math.floor((now-last)/1000*rate);" +
+                    "if delta>0 then tokens=math.min(capacity,tokens+delta); last=now; end;" +
+                    "local granted=0;" +
+                    "if tokens>=batch*2 then granted=batch; elseif tokens>0 then granted=1; end;" +
+                    "tokens=tokens-granted;" +
+                    "redis.call('set', KEYS[1], tokens, 'EX', ttl);" +
+                    "redis.call('set', KEYS[2], last, 'EX', ttl);" +
+                    "return granted;",
+            Long.class);
+
+    /**
+     * 归还未用完的令牌，不超过容量；桶已过期（已经回满）就不用还了
+     */
+    private static final DefaultRedisScript<Long> RETURN_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1])==0 then return 0 end;" +
+                    "local v=redis.call('incrby', KEYS[1], tonumber(ARGV[1]));" +
+                    "local capacity=tonumber(ARGV[2]);" +
+                    "if v>capacity then redis.call('decrby', KEYS[1], v-capacity); v=capacity; end;" +
+                    "return v;",
+            Long.class);
+
+    private static final class LocalBucket {
+        final String tokensKey;
+        final String tsKey;
+        final int capacity;
+        final AtomicInteger tokens = new AtomicInteger();
+        volatile long leasedAt;
+        volatile long lastUsedAt = System.currentTimeMillis();
+
+        LocalBucket(String key, int capacity) {
+            this.tokensKey = key + ":tb:tokens";
+            this.tsKey = key + ":tb:ts";
+            this.capacity = capacity;
+        }
+
+        boolean tryTake() {
+            return tokens.getAndUpdate(t -> t > 0 ? t - 1 : t) > 0;
+        }
+    }
+
+    /**
+     * 一次判定的结果：local 表示没有访问 Redis
+     */
+    enum Decision {
+        LOCAL_ALLOWED, REDIS_ALLOWED, REJECTED
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Map<String, LocalBucket> buckets = new ConcurrentHashMap<>();
+
+    public TokenLeaseLimiter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    Decision tryAcquire(String key, int capacity, int refillPerSecond, int ttlSeconds, int batch) {
+        LocalBucket bucket = buckets.computeIfAbsent(key, k -> new LocalBucket(k, capacity));
+        long now = System.currentTimeMillis();
+        bucket.lastUsedAt = now;
+        if (now - bucket.leasedAt < LEASE_MILLIS && bucket.tryTake()) {
+            return Decision.LOCAL_ALLOWED;
+        }
+        // 同一个 key 只让一个线程去续租，其他线程等它续完再从本地取
+        synchronized (bucket) {
+            now = System.currentTimeMillis();
+            if (now - bucket.leasedAt < LEASE_MILLIS && bucket.tryTake()) {
+                return Decision.LOCAL_ALLOWED;
+            }
+            giveBack(bucket);
+            Long granted = stringRedisTemplate.execute(LEASE_SCRIPT, Arrays.asList(bucket.tokensKey, bucket.tsKey),
+                    String.valueOf(refillPerSecond),
+                    String.valueOf(now),
+                    String.valueOf(capacity),
+                    String.valueOf(ttlSeconds),
+                    String.valueOf(Math.max(1, batch)));
+            if (granted == null || granted <= 0) {
+                return Decision.REJECTED;
+            }
+            // 自己先用掉一个，剩下的留在本地
+            bucket.tokens.addAndGet((int) (granted - 1));
+            bucket.leasedAt = now;
+            return Decision.REDIS_ALLOWED;
+        }
+    }
+
+    /**
+     * 把过期租约里没用完的令牌还回去，长时间没用的本地桶直接移除
+     */
+    @Scheduled(fixedDelay = LEASE_MILLIS, initialDelay = LEASE_MILLIS)
+    public void returnExpiredLeases() {
+        long now = System.currentTimeMillis();
+        Iterator<LocalBucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            LocalBucket bucket = it.next();
+            if (now - bucket.leasedAt < LEASE_MILLIS) {
+                continue;
+            }
+            synchronized (bucket) {
+                if (now - bucket.leasedAt < LEASE_MILLIS) {
+                    continue;
+                }
+                giveBack(bucket);
+            }
+            if (now - bucket.lastUsedAt > IDLE_EVICT_MILLIS) {
+                it.remove();
+            }
+        }
+    }
+
+    private void giveBack(LocalBucket bucket) {
+        int unused = bucket.tokens.getAndSet(0);
+        if (unused <= 0) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RETURN_SCRIPT, Collections.singletonList(bucket.tokensKey),
+                    String.valueOf(unused), String.valueOf(bucket.capacity));
+        } catch (Exception e) {
+            // 还不回去只是少放行一点，桶会按速率自己补满
+            log.warn("归还限流令牌失败 key={} unused={}", bucket.tokensKey, unused, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (LocalBucket bucket : buckets.values()) {
+            synchronized (bucket) {
+                giveBack(bucket);
+            }
+        }
+        buckets.clear();
+    }
+}
@@ -0,0 +1,182 @@
+package com.tmd.chat;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.tmd.entity.dto.ChatMessage;
+import com.tmd.entity.dto.ChatStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 私信投递 ACK 超时检查
+ * <p>
+ * 原来每条在线投递的消息都占用一个线程池线程 sleep 2 秒再查 ACK。
+ * 现在投递后只入队一条（消息ID、接收方、已序列化的消息、截止时间），超时时间固定，队列天然按截止时间有序；
+ * 单个定时线程每 {@link #TICK_MILLIS} 毫秒取出所有到期的消息，一次 MGET 查 ACK，
+ * 未确认的用一个 pipeline 改回 sent，再按接收方分组放入离线队列（每个接收方一次入队脚本）。
+ */
+@Component
+@Slf4j
+public class ChatAckTracker {
+
+    static final String MSG_KEY_FMT = "chat:msg:%s";
+    static final String ACK_KEY_FMT = "chat:ack:%s";
+    private static final long ACK_TIMEOUT_MILLIS = 2000;
+    private static final long TICK_MILLIS = 200;
+    private static final int MAX_PER_TICK = 2000;
+    private static final Duration MSG_TTL = Duration.ofDays(7);
+
+    private static final class Awaiting {
+        final long id;
+        final long toUserId;
+        final String json;
+        final long deadline;
+
+        Awaiting(long id, long toUserId, String json, long deadline) {
+            this.id = id;
+            this.toUserId = toUserId;
+            this.json = json;
+            this.deadline = deadline;
+        }
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OfflineInbox offlineInbox;
+    private final Queue<Awaiting> awaiting = new ConcurrentLinkedQueue<>();
+    private final Counter timeoutCounter;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "chat-ack-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ChatAckTracker(StringRedisTemplate stringRedisTemplate, OfflineInbox offlineInbox,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.offlineInbox = offlineInbox;
+        this.timeoutCounter = meterRegistry.counter("chat.ack.timeout");
+        Gauge.builder("chat.ack.awaiting", awaiting, Queue::size)
+                .description("Delivered chat messages waiting for a client ACK")
+                .register(meterRegistry);
+        timer.scheduleWithFixedDelay(this::tickQuietly, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在线投递后登记，超时未 ACK 则转入离线队列
+     *
+     * @param json 投递出去的消息 JSON（status=delivered）
+     */
+    public void track(Long messageId, Long toUserId, String json) {
+        awaiting.add(new Awaiting(messageId, toUserId, json, System.currentTimeMillis() + ACK_TIMEOUT_MILLIS));
+    }
+
+    private void tickQuietly() {
+        try {
+            long now = System.currentTimeMillis();
+            List<Awaiting> due;
+            while (!(due = pollDue(now)).isEmpty()) {
+                check(due);
+            }
+        } catch (Exception e) {
+            log.error("私信ACK检查异常", e);
+        }
+    }
+
+    private List<Awaiting> pollDue(long now) {
+        List<Awaiting> due = new ArrayList<>();
+        Awaiting head;
+        while (due.size() < MAX_PER_TICK && (head = awaiting.peek()) != null && head.deadline <= now) {
+            Awaiting polled = awaiting.poll();
+            if (polled != null) {
+                due.add(polled);
+            }
+        }
+        return due;
+    }
+
+    private void check(List<Awaiting> due) {
+        List<String> ackKeys = new ArrayList<>(due.size());
+        for (Awaiting a : due) {
+            ackKeys.add(String.format(ACK_KEY_FMT, a.id));
+        }
+        List<String> acks = stringRedisTemplate.opsForValue().multiGet(ackKeys);
+
+        List<Awaiting> missed = new ArrayList<>();
+        for (int i = 0; i < due.size(); i++) {
+            String ack = acks == null || i >= acks.size() ? null : acks.get(i);
+            if (StrUtil.isEmpty(ack)) {
+                missed.add(due.get(i));
+            }
+        }
+        if (missed.isEmpty()) {
+            return;
+        }
+        timeoutCounter.increment(missed.size());
+
+        List<String[]> reverted = new ArrayList<>(missed.size());
+        for (Awaiting a : missed) {
+            ChatMessage message = JSONUtil.toBean(a.json, ChatMessage.class);
+            message.setStatus(ChatStatus.sent);
+            message.setDeliveredAt(null);
+            reverted.add(new String[] { String.valueOf(a.id), String.valueOf(a.toUserId),
+                    JSONUtil.toJsonStr(message) });
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (String[] r : reverted) {
+                    operations.opsForValue().set(String.format(MSG_KEY_FMT, r[0]), r[2], MSG_TTL);
+                }
+                return null;
+            }
+        });
+        // 离线收件箱只存消息ID，消息体以 chat:msg:{id} 为准；先写消息体再入队，同步时不会取到空消息
+        Map<Long, List<String>> byUser = new LinkedHashMap<>();
+        for (String[] r : reverted) {
+            byUser.computeIfAbsent(Long.valueOf(r[1]), k -> new ArrayList<>()).add(r[0]);
+        }
+        for (Map.Entry<Long, List<String>> e : byUser.entrySet()) {
+            offlineInbox.enqueue(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+    }
+
+    /**
+     * 停机时不再等待，把尚未确认的消息都转入离线队列（宁可重复，不可丢失）
+     */
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdown();
+        try {
+            timer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            List<Awaiting> rest;
+            while (!(rest = pollDue(Long.MAX_VALUE)).isEmpty()) {
+                check(rest);
+            }
+        } catch (Exception e) {
+            log.error("停机时处理未确认私信失败", e);
+        }
+    }
+}
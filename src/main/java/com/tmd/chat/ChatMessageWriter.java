@@ -0,0 +1,155 @@
+package com.tmd.chat;
+
+import com.tmd.entity.dto.ChatMessage;
+import com.tmd.mapper.ChatMessageMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 私信落库的批量写入
+ * <p>
+ * 发送私信不再每条消息提交一个线程池任务单条 INSERT，而是放进有界队列，
+ * 由一个后台线程每 {@link #FLUSH_INTERVAL_MILLIS} 毫秒（或攒满 {@link #BATCH_SIZE} 条）一条多值 INSERT 写入。
+ * 批量写失败时逐条重试，定位并跳过个别坏数据；队列满时由调用线程直接单条写入，作为背压。
+ * 正常停机时把队列里剩余的消息写完。
+ * <p>
+ * 已读、撤回等状态更新也交给同一个线程，每轮先把插入队列清空再执行，
+ * 这样对刚发出、还在队列里的消息做的更新不会因为行还不存在而落空。
+ */
+@Component
+@Slf4j
+public class ChatMessageWriter {
+
+    private static final int QUEUE_CAPACITY = 50_000;
+    private static final int BATCH_SIZE = 500;
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+
+    private final ChatMessageMapper chatMessageMapper;
+    private final BlockingQueue<ChatMessage> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Runnable> updates = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final DistributionSummary batchSummary;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "chat-message-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ChatMessageWriter(ChatMessageMapper chatMessageMapper, MeterRegistry meterRegistry) {
+        this.chatMessageMapper = chatMessageMapper;
+        this.batchSummary = DistributionSummary.builder("chat.message.write.batch.size")
+                .description("Chat messages per batched insert")
+                .register(meterRegistry);
+        Gauge.builder("chat.message.write.pending", queue, BlockingQueue::size)
+                .description("Chat messages waiting to be inserted")
+                .register(meterRegistry);
+        writer.scheduleWithFixedDelay(this::drainQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void write(ChatMessage message) {
+        if (message == null) {
+            return;
+        }
+        if (!queue.offer(message)) {
+            // 队列已满：调用线程自己写，拖慢发送方而不是丢消息
+            insertOne(message);
+            return;
+        }
+        if (queue.size() >= BATCH_SIZE) {
+            try {
+                writer.execute(this::drainQuietly);
+            } catch (RejectedExecutionException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 已读：在此前入队的插入之后执行
+     */
+    public void markRead(Long id, LocalDateTime readAt) {
+        update(() -> chatMessageMapper.markRead(id, readAt), id);
+    }
+
+    /**
+     * 撤回：在此前入队的插入之后执行
+     */
+    public void markRecalled(Long id, LocalDateTime recalledAt) {
+        update(() -> chatMessageMapper.markRecalled(id, recalledAt), id);
+    }
+
+    private void update(Runnable task, Long id) {
+        Runnable guarded = () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("私信状态落库失败: id={}", id, e);
+            }
+        };
+        if (!updates.offer(guarded)) {
+            // 队列已满：先把待插入的写完再由调用线程执行，保证顺序
+            synchronized (this) {
+                drainInserts();
+            }
+            guarded.run();
+        }
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (Exception e) {
+            log.error("私信批量落库异常", e);
+        }
+    }
+
+    private synchronized void drain() {
+        drainInserts();
+        // 插入队列已清空，此前登记的状态更新都能找到对应的行
+        Runnable task;
+        while ((task = updates.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void drainInserts() {
+        List<ChatMessage> batch = new ArrayList<>(BATCH_SIZE);
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            try {
+                chatMessageMapper.insertBatch(batch);
+                batchSummary.record(batch.size());
+            } catch (Exception e) {
+                log.warn("私信批量落库失败，逐条重试: size={}", batch.size(), e);
+                batch.forEach(this::insertOne);
+            }
+            batch.clear();
+        }
+    }
+
+    private void insertOne(ChatMessage message) {
+        try {
+            chatMessageMapper.insert(message);
+        } catch (Exception e) {
+            log.error("私信落库失败: id={}", message.getId(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainQuietly();
+    }
+}
@@ -0,0 +1,122 @@
+package com.tmd.chat;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 私信离线收件箱 chat:offline:{uid}（ZSet，成员为消息ID）
+ * <p>
+ * 分值不用发送方的时间戳，而是收件箱自己的递增序号：序号记在同一个 ZSet 的哨兵成员 {@link #SEQ_MEMBER} 上，
+ * 入队脚本里 ZINCRBY 取号再 ZADD，单键原子。这样后入队的消息分值一定大于之前发出的任何游标，
+ * 并发发送、ACK 超时回退、节点时钟偏差都不会让一条没送达的消息落在游标之前被当成已确认删除。
+ * <p>
+ * 首次取号时把序号起点设为 max(现有最大分值, 当前毫秒)，旧数据（按毫秒打分）和旧客户端的毫秒游标都排在新序号之前。
+ */
+@Component
+public class OfflineInbox {
+
+    static final String OFFLINE_KEY_FMT = "chat:offline:%s";
+    static final String SEQ_MEMBER = "#seq";
+
+    /**
+     * KEYS[1] 收件箱；ARGV[1] 哨兵成员；ARGV[2] 当前毫秒；ARGV[3..] 消息ID
+     */
+    private static final DefaultRedisScript<Long> ENQUEUE_SCRIPT = new DefaultRedisScript<>(
+            "if not redis.call('ZSCORE', KEYS[1], ARGV[1]) then " +
+                    "  local seed = tonumber(ARGV[2]) " +
+                    "  local top = redis.call('ZRANGE', KEYS[1], -1, -1, 'WITHSCORES') " +
+                    "  if top[2] and tonumber(top[2]) > seed then seed = tonumber(top[2]) end " +
+                    "  redis.call('ZADD', KEYS[1], seed, ARGV[1]) " +
+                    "end " +
+                    "local s = 0 " +
+                    "for i = 3, #ARGV do " +
+                    "  s = redis.call('ZINCRBY', KEYS[1], 1, ARGV[1]) " +
+                    "  redis.call('ZADD', KEYS[1], s, ARGV[i]) " +
+                    "end " +
+                    "return tonumber(s)",
+            Long.class);
+
+    /**
+     * 删除游标（含）之前已确认的消息（保留哨兵），返回游标之后的一页 [成员, 分值, ...]。
+     * KEYS[1] 收件箱；ARGV[1] 游标（空串表示首次同步）；ARGV[2] 条数；ARGV[3] 哨兵成员
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SYNC_SCRIPT = new DefaultRedisScript<>(
+            "local min = '-inf' " +
+                    "if ARGV[1] ~= '' then " +
+                    "  local seq = redis.call('ZSCORE', KEYS[1], ARGV[3]) " +
+                    "  redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[1]) " +
+                    "  if seq then redis.call('ZADD', KEYS[1], seq, ARGV[3]) end " +
+                    "  min = '(' .. ARGV[1] " +
+                    "end " +
+                    "local limit = tonumber(ARGV[2]) " +
+                    "local r = redis.call('ZRANGEBYSCORE', KEYS[1], min, '+inf', 'WITHSCORES', 'LIMIT', 0, limit + 1) " +
+                    "local out = {} " +
+                    "for i = 1, #r, 2 do " +
+                    "  if r[i] ~= ARGV[3] and #out < limit * 2 then " +
+                    "    out[#out + 1] = r[i] " +
+                    "    out[#out + 1] = r[i + 1] " +
+                    "  end " +
+                    "end " +
+                    "return out",
+            List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public OfflineInbox(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 按顺序放入离线收件箱，每条取一个新序号
+     */
+    public void enqueue(Long userId, String... messageIds) {
+        if (userId == null || messageIds.length == 0) {
+            return;
+        }
+        Object[] args = new Object[messageIds.length + 2];
+        args[0] = SEQ_MEMBER;
+        args[1] = String.valueOf(System.currentTimeMillis());
+        System.arraycopy(messageIds, 0, args, 2, messageIds.length);
+        stringRedisTemplate.execute(ENQUEUE_SCRIPT, Collections.singletonList(key(userId)), args);
+    }
+
+    /**
+     * 确认游标（含）之前的消息并取下一页
+     *
+     * @param cursor 上一页最后一条的序号，为空表示首次同步
+     * @return 按序号升序的 [消息ID, 序号] 对
+     */
+    public List<String[]> sync(Long userId, Long cursor, int size) {
+        List<?> raw = stringRedisTemplate.execute(SYNC_SCRIPT, Collections.singletonList(key(userId)),
+                cursor == null ? "" : String.valueOf(cursor), String.valueOf(size), SEQ_MEMBER);
+        List<String[]> pairs = new ArrayList<>();
+        if (raw == null) {
+            return pairs;
+        }
+        for (int i = 0; i + 1 < raw.size(); i += 2) {
+            String score = String.valueOf(raw.get(i + 1));
+            // 分值按整数序号返回游标，避免 1.7e12 这种科学计数法写法
+            pairs.add(new String[] { String.valueOf(raw.get(i)), String.valueOf((long) Double.parseDouble(score)) });
+        }
+        return pairs;
+    }
+
+    /**
+     * 直接删除（旧格式成员取出即删）
+     */
+    public void remove(Long userId, List<String> members) {
+        if (!members.isEmpty()) {
+            stringRedisTemplate.opsForZSet().remove(key(userId), members.toArray());
+        }
+    }
+
+    private static String key(Long userId) {
+        return String.format(OFFLINE_KEY_FMT, userId);
+    }
+}
@@ -1,75 +1,46 @@
-/*
 package com.tmd.config;
 
 
 
-//import com.tmd.spring.RedisCaffeineCacheManager;
+import com.tmd.spring.RedisCaffeineCacheManager;
 import com.tmd.sync.CacheMessageListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
-import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.annotation.Order;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
-import org.springframework.data.redis.serializer.RedisSerializer;
-import org.springframework.data.redis.serializer.StringRedisSerializer;
-
-import java.net.UnknownHostException;
-
 
+/**
+ * 两级缓存（Caffeine + Redis）装配
+ * <p>
+ * L2 直接复用 StringRedisTemplate 的 JSON 字符串格式；跨节点的 L1 失效消息走 l2cache.config.redis.topic
+ */
 @Configuration
 @AutoConfigureAfter(RedisAutoConfiguration.class)
-@EnableConfigurationProperties(L2CacheProperties.class)
 public class CacheRedisCaffeineAutoConfiguration {
 
 	@Autowired
 	private L2CacheProperties l2CacheProperties;
 
 	@Bean
-	@ConditionalOnClass(RedisCache1.class)
-	@Order(2)
-	public RedisCaffeineCacheManager cacheManager(RedisCache1 redisCache) {
-		return new RedisCaffeineCacheManager(l2CacheProperties.getConfig(),redisCache);
-	}
-
-	@Bean
-	@ConditionalOnMissingBean(name = "stringKeyRedisTemplate")
-	public RedisTemplate<Object, Object> stringKeyRedisTemplate(RedisConnectionFactory redisConnectionFactory) throws UnknownHostException {
-		RedisTemplate<Object, Object> template = new RedisTemplate<>();
-		template.setConnectionFactory(redisConnectionFactory);
-		RedisSerializer stringSerializer = new StringRedisSerializer();
-		template.setKeySerializer(stringSerializer);
-		template.setHashKeySerializer(stringSerializer);
-		return template;
+	public RedisCaffeineCacheManager cacheManager(StringRedisTemplate stringRedisTemplate) {
+		L2CacheConfig config = l2CacheProperties.getConfig() == null ? new L2CacheConfig() : l2CacheProperties.getConfig();
+		return new RedisCaffeineCacheManager(config, stringRedisTemplate);
 	}
 
 	@Bean
-	@ConditionalOnClass(RedisCache1.class)
-	@Order(3)
-	public RedisMessageListenerContainer redisMessageListenerContainer(RedisCache1 redisCache,
+	public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
 																	   RedisCaffeineCacheManager cacheManager) {
 		RedisMessageListenerContainer redisMessageListenerContainer = new RedisMessageListenerContainer();
-		redisMessageListenerContainer.setConnectionFactory(redisCache.getRedisTemplate().getConnectionFactory());
-		CacheMessageListener cacheMessageListener = new CacheMessageListener(redisCache, cacheManager);
-		redisMessageListenerContainer.addMessageListener(cacheMessageListener, new ChannelTopic(l2CacheProperties.getConfig().getRedis().getTopic()));
+		redisMessageListenerContainer.setConnectionFactory(redisConnectionFactory);
+		CacheMessageListener cacheMessageListener = new CacheMessageListener(cacheManager);
+		String topic = l2CacheProperties.getConfig() == null ? "cache:redis:caffeine:topic"
+				: l2CacheProperties.getConfig().getRedis().getTopic();
+		redisMessageListenerContainer.addMessageListener(cacheMessageListener, new ChannelTopic(topic));
 		return redisMessageListenerContainer;
 	}
-
-	@Bean
-	@ConditionalOnBean(RedisTemplate.class)
-	@Order(1)
-	public RedisCache1 customRedisCache(RedisTemplate<Object, Object> stringKeyRedisTemplate) {
-		RedisCache1 redisCache = new RedisCache1();
-		redisCache.setRedisTemplate(stringKeyRedisTemplate);
-		return redisCache;
-	}
 }
-*/
@@ -18,6 +18,60 @@ public class PostsIndexInitializer implements ApplicationRunner {
 
     private final RestHighLevelClient esClient;
 
+    /**
+     * posts 索引的 settings/mappings，重建索引（PostReindexJob）创建新版本索引时复用
+     */
+    public static final String IK_SETTINGS = """
+        {"analysis":{"filter":{"synonym_filter":{"type":"synonym_graph","synonyms":[
+          "微服务,微服务架构,msa,microservice",
+          "分布式,分布式系统,distributed",
+          "缓存,cache,redis",
+          "搜索,检索,全文检索,es,elasticsearch"
+        ]}},"analyzer":{"ik_synonym":{"type":"custom","tokenizer":"ik_smart","filter":["lowercase","synonym_filter"]}}}}
+    """;
+
+    public static final String IK_MAPPINGS = """
+        {"properties":{
+          "id":{"type":"long"},
+          "userId":{"type":"long"},
+          "topicId":{"type":"long"},
+          "title":{"type":"text","analyzer":"ik_synonym","search_analyzer":"ik_synonym"},
+          "content":{"type":"text","analyzer":"ik_synonym","search_analyzer":"ik_synonym"},
+          "authorUsername":{"type":"text","analyzer":"ik_synonym","search_analyzer":"ik_synonym"},
+          "topicName":{"type":"text","analyzer":"ik_synonym","search_analyzer":"ik_synonym"},
+          "likeCount":{"type":"integer"},
+          "commentCount":{"type":"integer"},
+          "shareCount":{"type":"integer"},
+          "viewCount":{"type":"integer"},
+          "collectCount":{"type":"integer"},
+          "createdAt":{"type":"date","format":"epoch_millis"},
+          "updatedAt":{"type":"date","format":"epoch_millis"},
+          "status":{"type":"keyword"},
+          "authorAvatar":{"type":"keyword","index":false}
+        }}
+    """;
+
+    public static final String STD_MAPPINGS = """
+        {"properties":{
+          "id":{"type":"long"},
+          "userId":{"type":"long"},
+          "topicId":{"type":"long"},
+          "title":{"type":"text"},
+          "content":{"type":"text"},
+          "authorUsername":{"type":"text"},
+          "topicName":{"type":"text"},
+          "likeCount":{"type":"integer"},
+          "commentCount":{"type":"integer"},
+          "collectCount":{"type":"integer"},
+          "shareCount":{"type":"integer"},
+          "viewCount":{"type":"integer"},
+          "createdAt":{"type":"date","format":"epoch_millis"},
+          "updatedAt":{"type":"date","format":"epoch_millis"},
+          "status":{"type":"keyword"},
+          "authorAvatar":{"type":"keyword","index":false}
+        }}
+    """;
+
     @Override
     public void run(ApplicationArguments args) {
         try {
@@ -29,36 +83,8 @@ public class PostsIndexInitializer implements ApplicationRunner {
 
             // 优先创建: IK + 同义词 + search_as_you_type
             CreateIndexRequest req = new CreateIndexRequest("posts");
-            String settings = """
-                {"analysis":{"filter":{"synonym_filter":{"type":"synonym_graph","synonyms":[
-                  "微服务,微服务架构,msa,microservice",
-                  "分布式,分布式系统,distributed",
-                  "缓存,cache,redis",
-                  "搜索,检索,全文检索,es,elasticsearch"
-                ]}},"analyzer":{"ik_synonym":{"type":"custom","tokenizer":"ik_smart","filter":["lowercase","synonym_filter"]}}}}
-            """;
-            String mappings = """
-                {"properties":{
-                  "id":{"type":"long"},
-                  "userId":{"type":"long"},
-                  "topicId":{"type":"long"},
-                  "title":{"type":"text","analyzer":"ik_synonym","search_analyzer":"ik_synonym"},
-                  "content":{"type":"text","analyzer":"ik_synonym","search_analyzer":"ik_synonym"},
-                  "authorUsername":{"type":"text","analyzer":"ik_synonym","search_analyzer":"ik_synonym"},
-                  "topicName":{"type":"text","analyzer":"ik_synonym","search_analyzer":"ik_synonym"},
-                  "likeCount":{"type":"integer"},
-                  "commentCount":{"type":"integer"},
-                  "shareCount":{"type":"integer"},
-                  "viewCount":{"type":"integer"},
-                  "collectCount":{"type":"integer"},
-                  "createdAt":{"type":"date","format":"epoch_millis"},
-                  "updatedAt":{"type":"date","format":"epoch_millis"},
-                  "status":{"type":"keyword"},
-                  "authorAvatar":{"type":"keyword","index":false}
-                }}
-            """;
-            req.settings(settings, XContentType.JSON);
-            req.mapping(mappings, XContentType.JSON);
+            req.settings(IK_SETTINGS, XContentType.JSON);
+            req.mapping(IK_MAPPINGS, XContentType.JSON);
             esClient.indices().create(req, RequestOptions.DEFAULT);
             log.info("ES index 'posts' created with IK analyzer.");
         } catch (Exception e) {
@@ -68,28 +94,8 @@ public class PostsIndexInitializer implements ApplicationRunner {
                 if (exists) return;
                 CreateIndexRequest reqStd = new CreateIndexRequest("posts");
                 String settingsStd = "{}"; // 使用默认分析器
-                String mappingsStd = """
-                    {"properties":{
-                      "id":{"type":"long"},
-                      "userId":{"type":"long"},
-                      "topicId":{"type":"long"},
-                      "title":{"type":"text"},
-                      "content":{"type":"text"},
-                      "authorUsername":{"type":"text"},
-                      "topicName":{"type":"text"},
-                      "likeCount":{"type":"integer"},
-                      "commentCount":{"type":"integer"},
-                      "collectCount":{"type":"integer"},
-                      "shareCount":{"type":"integer"},
-                      "viewCount":{"type":"integer"},
-                      "createdAt":{"type":"date","format":"epoch_millis"},
-                      "updatedAt":{"type":"date","format":"epoch_millis"},
-                      "status":{"type":"keyword"},
-                      "authorAvatar":{"type":"keyword","index":false}
-                    }}
-                """;
                 reqStd.settings(settingsStd, XContentType.JSON);
-                reqStd.mapping(mappingsStd, XContentType.JSON);
+                reqStd.mapping(STD_MAPPINGS, XContentType.JSON);
                 esClient.indices().create(reqStd, RequestOptions.DEFAULT);
                 log.info("ES index 'posts' created with standard analyzer.");
             } catch (Exception ex) {
@@ -44,6 +44,8 @@ public class SecurityConfig {
                                 "/public/login/gitee", "/public/login/ZKP",
                                 "/public/login/button", "/home","/ai1/chat","/api/user/register","/api/captcha/generate").anonymous()
                         .requestMatchers("/metrics/perf").permitAll()
+                        // 运维接口（索引重建等）只对管理员开放，必须放在 /** 之前
+                        .requestMatchers("/admin/**").hasRole("ADMIN")
                         //先放开所有接口吧
                         .requestMatchers("/**").permitAll()
                         .anyRequest().authenticated()
@@ -1,23 +1,85 @@
 package com.tmd.config;
 
+import com.tmd.metrics.MetricsRejectedExecutionHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 线程池按业务隔离（舱壁）：一类任务打满不会饿死其他任务
+ * <p>
+ * - threadPoolExecutor：通用池，保留给未归类的异步任务
+ * - cacheRebuildExecutor：缓存回源/预热，满了直接拒绝（调用方已处理，下一个请求会再触发）
+ * - counterFlushExecutor：计数、点赞/关注等 write-behind 落库，满了由调用线程执行，不丢写
+ * - esSyncExecutor：发帖/改帖/删帖后的缓存失效与 ES 同步，满了由调用线程执行
+ * - notificationExecutor：私信/邮件等通知类落库与推送，满了由调用线程执行
+ * <p>
+ * 每个池都注册 Micrometer 指标（executor.active / executor.queued / executor.pool.size 等，tag name=池名），
+ * 拒绝次数记在 threadpool_rejected_total{pool=池名}。
+ * 项目运行在 Java 17，没有虚拟线程，阻塞 I/O 类的池通过更大的 max 与有界队列控制。
+ */
 @Configuration
 public class ThreadPoolConfig {
+
+    private final MeterRegistry meterRegistry;
+
+    public ThreadPoolConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @Bean
+    @Primary
     public ThreadPoolExecutor threadPoolExecutor() {
-        return new ThreadPoolExecutor(
-                30,
-                50,
+        return build("common", 30, 50, 200, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public ThreadPoolExecutor cacheRebuildExecutor() {
+        return build("cache-rebuild", 8, 16, 256, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public ThreadPoolExecutor counterFlushExecutor() {
+        return build("counter-flush", 4, 8, 1000, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean
+    public ThreadPoolExecutor esSyncExecutor() {
+        return build("es-sync", 4, 8, 1000, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean
+    public ThreadPoolExecutor notificationExecutor() {
+        return build("notification", 8, 32, 500, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private ThreadPoolExecutor build(String name, int core, int max, int queueCapacity,
+                                     RejectedExecutionHandler policy) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                core,
+                max,
                 10,
                 TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(200),
-                new ThreadPoolExecutor.AbortPolicy()
+                new LinkedBlockingQueue<>(queueCapacity),
+                namedThreadFactory(name),
+                new MetricsRejectedExecutionHandler(meterRegistry, name, policy)
         );
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, name, Collections.emptyList());
+        return executor;
+    }
+
+    private static ThreadFactory namedThreadFactory(String name) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
     }
 }
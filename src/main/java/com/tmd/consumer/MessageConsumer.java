@@ -7,6 +7,7 @@ import com.tmd.WebSocket.WebSocketServer;
 import com.tmd.config.RabbitMQConfig;
 import com.tmd.entity.dto.AliOssUtil;
 import com.tmd.entity.dto.MailDTO;
+import com.tmd.es.SuggestIndex;
 import com.tmd.mapper.TopicMapper;
 import com.tmd.publisher.MessageDTO;
 import com.tmd.publisher.TopicModerationMessage;
@@ -70,6 +71,9 @@ public class MessageConsumer {
     @Autowired
     private TopicMapper topicMapper;
 
+    @Autowired
+    private SuggestIndex suggestIndex;
+
     @Autowired
     @Qualifier("moderationClient")
     private ChatClient moderationClient;
@@ -170,6 +174,14 @@ public class MessageConsumer {
                     } catch (Exception e) {
                         log.error("撤回话题失败: topicId={}", topicId, e);
                     }
+                } else {
+                    // 审核通过才标记 approved 并进入搜索联想；其它节点在下次联想索引重建时从库里补上
+                    try {
+                        topicMapper.markApproved(topicId);
+                        suggestIndex.add("topic", moderationMsg.getName(), 0L);
+                    } catch (Exception e) {
+                        log.error("标记话题审核通过失败: topicId={}", topicId, e);
+                    }
                 }
                 // ⭐ 添加这行：即使审核不通过，也要确认消息
                 channel.basicAck(amqpMessage.getMessageProperties().getDeliveryTag(), false);
@@ -560,22 +572,11 @@ public class MessageConsumer {
     }
 
     /**
-     * 尝试从 Redis ZSet "topics:all" 中移除指定话题（仅扫描最新200条）
+     * 从 Redis ZSet "topics:all" 中移除指定话题（成员即话题ID），并清掉详情缓存
      */
     private void removeTopicFromRedisZSet(Long topicId) {
-        String key = "topics:all";
-        java.util.Set<String> recent = stringRedisTemplate.opsForZSet().reverseRange(key, 0, 200);
-        if (recent == null || recent.isEmpty()) return;
-        for (String json : recent) {
-            try {
-                cn.hutool.json.JSONObject obj = cn.hutool.json.JSONUtil.parseObj(json);
-                Long id = obj.getLong("id");
-                if (topicId.equals(id)) {
-                    stringRedisTemplate.opsForZSet().remove(key, json);
-                    break;
-                }
-            } catch (Exception ignored) {}
-        }
+        stringRedisTemplate.opsForZSet().remove("topics:all", String.valueOf(topicId));
+        stringRedisTemplate.delete("topic:id:" + topicId);
     }
 
     /**
@@ -22,10 +22,10 @@ public class ChatController {
     }
 
     @GetMapping("/offline")
-    public Result pullOffline(@RequestParam(defaultValue = "1") Integer page,
+    public Result pullOffline(@RequestParam(required = false) String cursor,
                               @RequestParam(defaultValue = "10") Integer size) {
-        log.info("拉取离线消息 page={} size={}", page, size);
-        return privateChatService.pullOffline(page, size);
+        log.info("同步离线消息 cursor={} size={}", cursor, size);
+        return privateChatService.pullOffline(cursor, size);
     }
 
     @GetMapping("/history/{otherUserId}")
@@ -0,0 +1,49 @@
+package com.tmd.controller;
+
+import com.tmd.entity.dto.Result;
+import com.tmd.es.PostReindexJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * ES 索引运维接口
+ */
+@RestController
+@RequestMapping("/admin/es")
+@Slf4j
+@RequiredArgsConstructor
+public class EsAdminController {
+
+    private final PostReindexJob postReindexJob;
+
+    /**
+     * 全量重建 posts 索引；上次未完成时从断点续跑
+     */
+    @PostMapping("/posts/reindex")
+    public Result reindexPosts(@RequestParam(required = false) Integer parallelism,
+                               @RequestParam(required = false) Double docsPerSecond) {
+        log.info("触发 posts 索引重建: parallelism={}, docsPerSecond={}", parallelism, docsPerSecond);
+        if (!postReindexJob.start(parallelism, docsPerSecond)) {
+            return Result.error("重建任务已在执行");
+        }
+        return Result.success(postReindexJob.progress());
+    }
+
+    @GetMapping("/posts/reindex")
+    public Result reindexProgress() {
+        return Result.success(postReindexJob.progress());
+    }
+
+    /**
+     * 调整运行中的写入速率上限（文档/秒）
+     */
+    @PutMapping("/posts/reindex/throttle")
+    public Result throttle(@RequestParam Double docsPerSecond) {
+        if (docsPerSecond == null || docsPerSecond <= 0) {
+            return Result.error("速率必须大于 0");
+        }
+        postReindexJob.throttle(docsPerSecond);
+        return Result.success();
+    }
+}
@@ -128,6 +128,15 @@ public class PostsController {
         return postsService.getPostComments(postId, page, size, sortBy);
     }
 
+    @GetMapping("/{postId}/comments/{commentId}/replies")
+    public Result getCommentReplies(@PathVariable Long postId,
+                                    @PathVariable Long commentId,
+                                    @RequestParam(required = false) Long cursor,
+                                    @RequestParam(required = false) Long lastId,
+                                    @RequestParam(defaultValue = "10") Integer size) {
+        return postsService.getCommentReplies(postId, commentId, cursor, lastId, size);
+    }
+
     @GetMapping("/likes")
     public Result getUserLikes(@RequestParam(defaultValue = "1") Integer page,
                                @RequestParam(defaultValue = "20") Integer size,
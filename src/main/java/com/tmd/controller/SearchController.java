@@ -30,4 +30,23 @@ public class SearchController {
                 keyword, type, page, size, sort, topicId, startTime, endTime);
         return searchService.search(keyword, type, page, size, sort, topicId, startTime, endTime);
     }
+
+    @GetMapping("/search/scroll")
+    public Result searchScroll(@RequestParam String keyword,
+                               @RequestParam(required = false, defaultValue = "all") String type,
+                               @RequestParam(required = false, defaultValue = "10") Integer size,
+                               @RequestParam(required = false, defaultValue = "hot") String sort,
+                               @RequestParam(required = false) Long topicId,
+                               @RequestParam(required = false) Long startTime,
+                               @RequestParam(required = false) Long endTime,
+                               @RequestParam(required = false) String cursor) {
+        log.info("全文搜索(游标): keyword={}, type={}, size={}, sort={}, cursor={}", keyword, type, size, sort, cursor);
+        return searchService.searchScroll(keyword, type, size, sort, topicId, startTime, endTime, cursor);
+    }
+
+    @GetMapping("/search/suggest")
+    public Result suggest(@RequestParam String prefix,
+                          @RequestParam(required = false, defaultValue = "10") Integer size) {
+        return searchService.suggest(prefix, size);
+    }
 }
@@ -21,6 +21,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.tmd.constants.common.ERROR_CODE;
@@ -110,15 +111,20 @@ public class StickController {
             stickQueryParam.setUserId(uid);
             PageResult StickVOList = stickService.getTiles(stickQueryParam);
             log.info("查询成功");
-            threadPoolConfig.threadPoolExecutor().execute(() -> {
-                //恢复缓存
-                //先查询数据库中所有磁贴
-                List<StickVO> StickVOAllList = stickService.getAllTiles(count.get());
-                //转换为json字符串
-                String json = JSONUtil.toJsonStr(StickVOAllList);
-                redisTemplate.opsForValue().set("Stick:" + count.get(), json);
-                log.info("缓存成功");
-            });
+            try {
+                threadPoolConfig.cacheRebuildExecutor().execute(() -> {
+                    //恢复缓存
+                    //先查询数据库中所有磁贴
+                    List<StickVO> StickVOAllList = stickService.getAllTiles(count.get());
+                    //转换为json字符串
+                    String json = JSONUtil.toJsonStr(StickVOAllList);
+                    redisTemplate.opsForValue().set("Stick:" + count.get(), json);
+                    log.info("缓存成功");
+                });
+            } catch (RejectedExecutionException e) {
+                // 回源池满了就不恢复缓存，下一次未命中再触发
+                log.warn("磁贴缓存恢复任务被拒绝");
+            }
             return Result.success(StickVOList);
         }
         return Result.error("验证失败,非法访问");
@@ -5,6 +5,7 @@ import cn.hutool.json.JSONUtil;
 import com.tmd.entity.dto.*;
 import com.tmd.entity.po.LoginUser;
 import com.tmd.entity.po.UserData;
+import com.tmd.filter.LoginSessionCache;
 import com.tmd.service.AttachmentService;
 import com.tmd.service.FollowService;
 import com.tmd.service.UserService;
@@ -42,6 +43,9 @@ public class UserController {
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Autowired
+    private LoginSessionCache loginSessionCache;
+
     @PostMapping("/register")
     public Result register(@RequestBody UserData userData) {
         log.info("用户正在注册:{}", userData.getUsername());
@@ -77,6 +81,14 @@ public class UserController {
         stringRedisTemplate.delete("captcha:"+captchaId);
         return Result.error("用户名或密码错误");
     }
+
+    @PostMapping("/logout")
+    public Result logout(@RequestHeader("authentication") String authorization) {
+        log.info("用户正在退出登录:{}", BaseContext.get());
+        // 删除Redis会话，并通知所有节点清掉本地缓存的会话
+        loginSessionCache.invalidate(authorization);
+        return Result.success("退出成功");
+    }
     @GetMapping("/profile/{userId}")
     public Result getUserProfileById(@PathVariable Long userId) {
         log.info("用户正在获取用户信息:{}", userId);
@@ -0,0 +1,266 @@
+package com.tmd.counter;
+
+import cn.hutool.core.util.StrUtil;
+import com.tmd.es.PostIndexSync;
+import com.tmd.mapper.PostCommentMapper;
+import com.tmd.mapper.PostsMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 帖子评论数（post:comment:flush:{postId}）与根评论回复数（post:comment:reply:flush:{rootId}）的增量刷盘
+ * <p>
+ * 写评论时只做一个 pipeline：INCRBY 增量 + SADD 脏集合，不再在请求里判断阈值、逐帖加锁刷盘。
+ * 后台每 {@link #FLUSH_INTERVAL_MILLIS} 毫秒由持有租约的节点排空脏集合，每块：
+ * SRANDMEMBER 取一块ID（不移出）→ 一次 MGET 读增量 → 经 {@link CounterFlushLedger} 记批次，
+ * CASE 批量 UPDATE 与批次记录同事务提交 → Lua DECRBY 扣回已落库的部分，剩余为 0 的ID移出脏集合。
+ * 用 DECRBY 而不是删除，读取之后新写入的增量会留在键上，ID 也留在脏集合里，下一轮再刷。
+ * <p>
+ * 写库失败时增量和脏集合都不动；进程在提交与扣回之间被杀，下次拿到租约时按批次记录补做扣回，不会重复落库。
+ * 两个脏集合的积压量记在 post.comment.flush.backlog{set=post|reply}，持续上涨说明评论写入快于刷盘。
+ */
+@Component
+@Slf4j
+public class CommentCountFlusher {
+
+    static final String POST_COMMENT_FLUSH_KEY_FMT = "post:comment:flush:%d";
+    static final String REPLY_FLUSH_KEY_FMT = "post:comment:reply:flush:%d";
+    private static final String POST_DIRTY_SET_KEY = "post:comment:dirty_set";
+    private static final String REPLY_DIRTY_SET_KEY = "post:comment:reply:dirty_set";
+    private static final String LEASE_KEY = "lock:post:comment:flush";
+    private static final String POST_INFLIGHT_KEY = "post:comment:inflight";
+    private static final String REPLY_INFLIGHT_KEY = "post:comment:reply:inflight";
+    private static final long FLUSH_INTERVAL_MILLIS = 5000;
+    private static final long LEASE_SECONDS = 60;
+    private static final int CHUNK_SIZE = 500;
+    private static final int MAX_CHUNKS_PER_ROUND = 20;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+    private final CounterFlushLedger counterFlushLedger;
+    private final PostsMapper postsMapper;
+    private final PostCommentMapper postCommentMapper;
+    private final PostIndexSync postIndexSync;
+    private final DistributionSummary chunkSummary;
+    private final AtomicLong postBacklog = new AtomicLong();
+    private final AtomicLong replyBacklog = new AtomicLong();
+
+    public CommentCountFlusher(StringRedisTemplate stringRedisTemplate,
+            RedissonClient redissonClient,
+            CounterFlushLedger counterFlushLedger,
+            PostsMapper postsMapper,
+            PostCommentMapper postCommentMapper,
+            PostIndexSync postIndexSync,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.counterFlushLedger = counterFlushLedger;
+        this.postsMapper = postsMapper;
+        this.postCommentMapper = postCommentMapper;
+        this.postIndexSync = postIndexSync;
+        this.chunkSummary = DistributionSummary.builder("post.comment.flush.chunk.size")
+                .description("Rows flushed per comment counter chunk")
+                .register(meterRegistry);
+        Gauge.builder("post.comment.flush.backlog", postBacklog, AtomicLong::get)
+                .description("Dirty ids waiting for the comment counter flush")
+                .tag("set", "post")
+                .register(meterRegistry);
+        Gauge.builder("post.comment.flush.backlog", replyBacklog, AtomicLong::get)
+                .description("Dirty ids waiting for the comment counter flush")
+                .tag("set", "reply")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录帖子评论数增量（删除评论为负数）
+     */
+    public void recordComment(Long postId, long delta) {
+        record(POST_COMMENT_FLUSH_KEY_FMT, POST_DIRTY_SET_KEY, postId, delta);
+    }
+
+    /**
+     * 记录根评论回复数增量
+     */
+    public void recordReply(Long rootId, long delta) {
+        record(REPLY_FLUSH_KEY_FMT, REPLY_DIRTY_SET_KEY, rootId, delta);
+    }
+
+    private void record(String keyFmt, String dirtyKey, Long id, long delta) {
+        if (id == null || delta == 0) {
+            return;
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                operations.opsForValue().increment(String.format(keyFmt, id), delta);
+                operations.opsForSet().add(dirtyKey, String.valueOf(id));
+                return null;
+            }
+        });
+    }
+
+    @Scheduled(fixedDelay = FLUSH_INTERVAL_MILLIS, initialDelay = FLUSH_INTERVAL_MILLIS)
+    public void flush() {
+        RLock lease = redissonClient.getLock(LEASE_KEY);
+        boolean held = false;
+        try {
+            held = lease.tryLock(0, LEASE_SECONDS, TimeUnit.SECONDS);
+            if (held) {
+                int posts = drain(POST_DIRTY_SET_KEY, POST_INFLIGHT_KEY, POST_COMMENT_FLUSH_KEY_FMT,
+                        postsMapper::updateCommentCountBatch, this::indexPosts);
+                int replies = drain(REPLY_DIRTY_SET_KEY, REPLY_INFLIGHT_KEY, REPLY_FLUSH_KEY_FMT,
+                        postCommentMapper::updateReplyCountBatch, deltas -> { });
+                if (posts > 0 || replies > 0) {
+                    log.info("评论计数落库完成: 帖子={}, 根评论={}", posts, replies);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("评论计数落库失败", e);
+        } finally {
+            if (held && lease.isHeldByCurrentThread()) {
+                try {
+                    lease.unlock();
+                } catch (Exception e) {
+                    log.error("释放评论计数落库锁失败", e);
+                }
+            }
+            refreshBacklog();
+        }
+    }
+
+    private int drain(String dirtyKey, String inflightKey, String keyFmt,
+            Consumer<List<Map<String, Object>>> writer, Consumer<Map<Long, Long>> after) {
+        String keyPrefix = keyFmt.substring(0, keyFmt.indexOf("%d"));
+        for (Map<Long, Long> deltas : counterFlushLedger.recover(inflightKey, dirtyKey, keyPrefix)) {
+            after.accept(deltas);
+        }
+        int total = 0;
+        for (int c = 0; c < MAX_CHUNKS_PER_ROUND; c++) {
+            Set<String> ids = stringRedisTemplate.opsForSet().distinctRandomMembers(dirtyKey, CHUNK_SIZE);
+            if (ids == null || ids.isEmpty()) {
+                break;
+            }
+            int flushed = flushChunk(dirtyKey, inflightKey, keyFmt, keyPrefix, ids, writer, after);
+            if (flushed < 0) {
+                // 写库失败，本轮不再重试同一批
+                break;
+            }
+            total += flushed;
+            if (ids.size() < CHUNK_SIZE) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return 落库的行数；写库失败返回 -1
+     */
+    private int flushChunk(String dirtyKey, String inflightKey, String keyFmt, String keyPrefix, Set<String> ids,
+            Consumer<List<Map<String, Object>>> writer, Consumer<Map<Long, Long>> after) {
+        List<Long> parsed = new ArrayList<>(ids.size());
+        List<String> keys = new ArrayList<>(ids.size());
+        for (String idStr : ids) {
+            try {
+                Long id = Long.parseLong(idStr);
+                parsed.add(id);
+                keys.add(String.format(keyFmt, id));
+            } catch (NumberFormatException e) {
+                log.warn("评论计数脏集合里的 id 无效: {}", idStr);
+                stringRedisTemplate.opsForSet().remove(dirtyKey, idStr);
+            }
+        }
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return 0;
+        }
+
+        // 增量为 0 或键已不在的 id 也记进批次，扣回时一并移出脏集合
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < parsed.size() && i < values.size(); i++) {
+            String v = values.get(i);
+            long delta = 0;
+            if (StrUtil.isNotBlank(v)) {
+                try {
+                    delta = Long.parseLong(v);
+                } catch (NumberFormatException e) {
+                    log.error("评论计数增量值无效: key={}, value={}", keys.get(i), v);
+                    stringRedisTemplate.opsForSet().remove(dirtyKey, String.valueOf(parsed.get(i)));
+                    continue;
+                }
+            }
+            deltas.put(parsed.get(i), delta);
+            if (delta == 0) {
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", parsed.get(i));
+            row.put("delta", delta);
+            rows.add(row);
+        }
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+
+        String batchId = counterFlushLedger.begin(inflightKey, deltas);
+        try {
+            counterFlushLedger.commit(batchId, () -> {
+                if (!rows.isEmpty()) {
+                    writer.accept(rows);
+                }
+            });
+        } catch (Exception e) {
+            // 增量和脏集合都没动，下轮重试
+            log.error("评论计数批量更新失败，{} 个 id 下轮重试", rows.size(), e);
+            counterFlushLedger.abort(inflightKey, batchId);
+            return -1;
+        }
+        counterFlushLedger.apply(inflightKey, dirtyKey, keyPrefix, batchId, deltas);
+        after.accept(deltas);
+        chunkSummary.record(rows.size());
+        return rows.size();
+    }
+
+    /**
+     * 已落库的帖子评论数增量交给 ES 同步
+     */
+    private void indexPosts(Map<Long, Long> deltas) {
+        deltas.forEach((id, delta) -> {
+            if (delta != 0) {
+                postIndexSync.incr(id, "commentCount", delta);
+            }
+        });
+    }
+
+    private void refreshBacklog() {
+        try {
+            Long posts = stringRedisTemplate.opsForSet().size(POST_DIRTY_SET_KEY);
+            Long replies = stringRedisTemplate.opsForSet().size(REPLY_DIRTY_SET_KEY);
+            postBacklog.set(posts == null ? 0 : posts);
+            replyBacklog.set(replies == null ? 0 : replies);
+        } catch (Exception e) {
+            log.debug("读取评论计数积压量失败", e);
+        }
+    }
+}
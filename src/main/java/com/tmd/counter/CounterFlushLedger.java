@@ -0,0 +1,145 @@
+package com.tmd.counter;
+
+import cn.hutool.core.util.StrUtil;
+import com.tmd.mapper.CounterFlushBatchMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Redis 计数增量落库的批次账本，让“写库 → 扣回 Redis → 移出脏集合”在崩溃后只生效一次
+ * <p>
+ * 1. {@link #begin}：读到的增量（含 0）以批次号记进进行中 Hash，再写库
+ * 2. {@link #commit}：批量 UPDATE 与插入 counter_flush_batch 同一个事务提交
+ * 3. {@link #apply}：一个 Lua 里 DECRBY 扣回、剩余为 0 的 id 移出脏集合、删除进行中记录；
+ * 记录不在就什么都不做，重复执行不会重复扣
+ * 4. {@link #recover}：进行中记录对应的批次在库里已提交就补做 apply；没提交且超过 {@link #STALE_MILLIS} 直接丢弃记录
+ * <p>
+ * id 在扣回之前一直留在脏集合里，崩溃后下轮还会被取到，增量不会孤立在 Redis 里。
+ */
+@Component
+@Slf4j
+public class CounterFlushLedger {
+
+    private static final long STALE_MILLIS = 5 * 60_000L;
+
+    /**
+     * KEYS[1] 进行中 Hash；KEYS[2] 脏集合；ARGV[1] 批次号；ARGV[2] 增量键前缀；ARGV[3..] id, delta 成对
+     */
+    private static final DefaultRedisScript<Long> APPLY_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+                    "for i = 3, #ARGV, 2 do " +
+                    "  local key = ARGV[2] .. ARGV[i] " +
+                    "  local left = redis.call('DECRBY', key, ARGV[i + 1]) " +
+                    "  if left == 0 then " +
+                    "    redis.call('DEL', key) " +
+                    "    redis.call('SREM', KEYS[2], ARGV[i]) " +
+                    "  end " +
+                    "end " +
+                    "redis.call('HDEL', KEYS[1], ARGV[1]) " +
+                    "return 1",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CounterFlushBatchMapper counterFlushBatchMapper;
+
+    public CounterFlushLedger(StringRedisTemplate stringRedisTemplate,
+            CounterFlushBatchMapper counterFlushBatchMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.counterFlushBatchMapper = counterFlushBatchMapper;
+    }
+
+    /**
+     * 记下本批读到的增量，返回批次号
+     */
+    public String begin(String inflightKey, Map<Long, Long> deltas) {
+        String batchId = UUID.randomUUID().toString().replace("-", "");
+        StringBuilder sb = new StringBuilder().append(System.currentTimeMillis()).append('|');
+        deltas.forEach((id, delta) -> sb.append(id).append(':').append(delta).append(','));
+        stringRedisTemplate.opsForHash().put(inflightKey, batchId, sb.toString());
+        return batchId;
+    }
+
+    /**
+     * 写库与批次记录同一事务
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void commit(String batchId, Runnable write) {
+        write.run();
+        counterFlushBatchMapper.insert(batchId);
+    }
+
+    /**
+     * 写库失败：丢弃进行中记录，id 仍在脏集合里，增量没动
+     */
+    public void abort(String inflightKey, String batchId) {
+        stringRedisTemplate.opsForHash().delete(inflightKey, batchId);
+    }
+
+    /**
+     * 扣回已落库的增量并移出脏集合（幂等），之后删除批次记录
+     */
+    public void apply(String inflightKey, String dirtyKey, String keyPrefix, String batchId, Map<Long, Long> deltas) {
+        List<String> args = new ArrayList<>(deltas.size() * 2 + 2);
+        args.add(batchId);
+        args.add(keyPrefix);
+        deltas.forEach((id, delta) -> {
+            args.add(String.valueOf(id));
+            args.add(String.valueOf(delta));
+        });
+        stringRedisTemplate.execute(APPLY_SCRIPT, Arrays.asList(inflightKey, dirtyKey), args.toArray());
+        try {
+            counterFlushBatchMapper.delete(batchId);
+        } catch (Exception e) {
+            log.warn("删除计数落库批次记录失败: batchId={}", batchId, e);
+        }
+    }
+
+    /**
+     * 处理上次崩溃留下的进行中记录
+     *
+     * @return 已提交并在本次补做扣回的批次增量，供调用方补发 ES 等后续动作
+     */
+    public List<Map<Long, Long>> recover(String inflightKey, String dirtyKey, String keyPrefix) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(inflightKey);
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Map<Long, Long>> recovered = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Object, Object> e : entries.entrySet()) {
+            String batchId = e.getKey().toString();
+            String payload = e.getValue().toString();
+            int bar = payload.indexOf('|');
+            long startedAt = bar > 0 && StrUtil.isNumeric(payload.substring(0, bar))
+                    ? Long.parseLong(payload.substring(0, bar)) : 0L;
+            Map<Long, Long> deltas = new LinkedHashMap<>();
+            for (String pair : StrUtil.split(payload.substring(bar + 1), ',', true, true)) {
+                int colon = pair.indexOf(':');
+                try {
+                    deltas.put(Long.parseLong(pair.substring(0, colon)), Long.parseLong(pair.substring(colon + 1)));
+                } catch (RuntimeException ex) {
+                    log.warn("计数落库进行中记录无效: key={}, batchId={}, pair={}", inflightKey, batchId, pair);
+                }
+            }
+            if (counterFlushBatchMapper.exists(batchId) > 0) {
+                apply(inflightKey, dirtyKey, keyPrefix, batchId, deltas);
+                recovered.add(deltas);
+                log.info("补做计数落库批次: key={}, batchId={}, ids={}", inflightKey, batchId, deltas.size());
+            } else if (now - startedAt > STALE_MILLIS) {
+                abort(inflightKey, batchId);
+                log.info("丢弃未提交的计数落库批次: key={}, batchId={}", inflightKey, batchId);
+            }
+        }
+        try {
+            counterFlushBatchMapper.deleteExpired();
+        } catch (Exception e) {
+            log.debug("清理过期计数落库批次记录失败", e);
+        }
+        return recovered;
+    }
+}
@@ -0,0 +1,363 @@
+package com.tmd.counter;
+
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.StrUtil;
+import com.tmd.es.PostIndexSync;
+import com.tmd.feed.PostFeedIndex;
+import com.tmd.mapper.PostsMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 帖子浏览/收藏计数的本地 write-behind 聚合（点赞数只走 {@link PostLikeFlusher}）
+ * <p>
+ * 请求线程只做 LongAdder 累加，不再每次请求往线程池提交"检查阈值 + 加锁 + 单条 UPDATE"的任务。
+ * 后台单线程按 {@link #FLUSH_INTERVAL_MILLIS} 定时刷盘，每种计数一条 CASE 批量 UPDATE，
+ * 浏览量的 Redis PV 一次 pipeline，ES 计数交给 PostIndexSync 合并后批量发送。
+ * <p>
+ * 丢失上限：未刷盘的增量超过 {@link #MAX_PENDING_EVENTS} 次时立即触发刷盘，
+ * 因此进程崩溃最多丢失约 MAX_PENDING_EVENTS 次操作或一个刷盘周期内的增量（取先到者）；正常停机时会同步刷一次。
+ * <p>
+ * 计数表不逐条删除空闲条目（与并发累加存在竞态），而是定期整体换表；累加持有读锁、换表持有写锁，
+ * 换表之后没有线程还能写旧表，旧表当场排空即可，不会漏掉换表瞬间的增量。
+ * <p>
+ * 只有落库成功的块才继续写 Redis PV 和 ES，失败还回计数表的增量下个周期只会被应用一次。
+ * <p>
+ * 旧版本的浏览增量键 post:view:flush:* 已经没有写入方，启动时一次性落库并删除（全局只做一次）。
+ */
+@Component
+@Slf4j
+public class PostCounterAggregator {
+
+    public enum Type {
+        VIEW, FAVORITE
+    }
+
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final long MAX_PENDING_EVENTS = 5000;
+    private static final int ROTATE_EVERY_FLUSHES = 60;
+    private static final int DB_BATCH_SIZE = 500;
+    private static final String POST_VIEW_PV_KEY_FMT = "post:view:pv:%d";
+    private static final String LEGACY_VIEW_FLUSH_PREFIX = "post:view:flush:";
+    private static final String LEGACY_VIEW_MIGRATED_KEY = "post:view:flush:migrated";
+
+    private final PostsMapper postsMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final PostIndexSync postIndexSync;
+    private final PostFeedIndex postFeedIndex;
+
+    private final EnumMap<Type, AtomicReference<ConcurrentHashMap<Long, LongAdder>>> tables = new EnumMap<>(Type.class);
+    // 累加取读锁，换表取写锁
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicBoolean earlyFlushQueued = new AtomicBoolean();
+    private final AtomicLong lastFlushAt = new AtomicLong(System.currentTimeMillis());
+    private int flushesSinceRotate = 0;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "post-counter-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final EnumMap<Type, DistributionSummary> batchSizeSummaries = new EnumMap<>(Type.class);
+    private final Timer flushTimer;
+
+    public PostCounterAggregator(PostsMapper postsMapper,
+            StringRedisTemplate stringRedisTemplate,
+            PostIndexSync postIndexSync,
+            PostFeedIndex postFeedIndex,
+            MeterRegistry meterRegistry) {
+        this.postsMapper = postsMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.postIndexSync = postIndexSync;
+        this.postFeedIndex = postFeedIndex;
+        for (Type type : Type.values()) {
+            tables.put(type, new AtomicReference<>(new ConcurrentHashMap<>()));
+            batchSizeSummaries.put(type, DistributionSummary.builder("post.counter.flush.batch.size")
+                    .description("Distinct posts per counter flush")
+                    .tag("type", type.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.flushTimer = Timer.builder("post.counter.flush.duration")
+                .description("Time spent flushing aggregated post counters")
+                .register(meterRegistry);
+        Gauge.builder("post.counter.flush.lag", lastFlushAt, v -> System.currentTimeMillis() - v.get())
+                .description("Milliseconds since the last completed counter flush")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("post.counter.pending", pendingEvents, AtomicLong::get)
+                .description("Counter events accepted but not yet flushed")
+                .register(meterRegistry);
+        flusher.execute(this::migrateLegacyViewDeltas);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 累加一次增量（可为负），只在本地内存中完成
+     */
+    public void add(Type type, Long postId, long delta) {
+        if (postId == null || delta == 0) {
+            return;
+        }
+        swapLock.readLock().lock();
+        try {
+            tables.get(type).get().computeIfAbsent(postId, k -> new LongAdder()).add(delta);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        if (pendingEvents.incrementAndGet() >= MAX_PENDING_EVENTS && earlyFlushQueued.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                earlyFlushQueued.set(false);
+            }
+        }
+    }
+
+    /**
+     * 本节点尚未刷盘的增量，用于接口立即返回的展示值
+     */
+    public long pending(Type type, Long postId) {
+        LongAdder adder = tables.get(type).get().get(postId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("帖子计数刷盘异常", e);
+        }
+    }
+
+    /**
+     * 刷盘，只在 flusher 单线程中执行
+     */
+    private void flush() {
+        earlyFlushQueued.set(false);
+        long start = System.nanoTime();
+        pendingEvents.set(0);
+
+        boolean rotate = ++flushesSinceRotate >= ROTATE_EVERY_FLUSHES;
+        if (rotate) {
+            flushesSinceRotate = 0;
+        }
+        EnumMap<Type, ConcurrentHashMap<Long, LongAdder>> drained = new EnumMap<>(Type.class);
+        if (rotate) {
+            swapLock.writeLock().lock();
+            try {
+                for (Type type : Type.values()) {
+                    drained.put(type, tables.get(type).getAndSet(new ConcurrentHashMap<>()));
+                }
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        } else {
+            for (Type type : Type.values()) {
+                drained.put(type, tables.get(type).get());
+            }
+        }
+        EnumMap<Type, Map<Long, Long>> batch = new EnumMap<>(Type.class);
+        for (Type type : Type.values()) {
+            Map<Long, Long> deltas = new HashMap<>();
+            drainInto(drained.get(type), deltas);
+            deltas.values().removeIf(v -> v == 0);
+            batchSizeSummaries.get(type).record(deltas.size());
+            // 只保留落库成功的部分，失败的已还回计数表
+            batch.put(type, writeDb(type, deltas));
+        }
+
+        writeRedis(batch.get(Type.VIEW));
+        writeEs(batch);
+        markHotDirty(batch);
+
+        lastFlushAt.set(System.currentTimeMillis());
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 互动量变化的帖子交给 PostFeedIndex 批量重算热度分
+     */
+    private void markHotDirty(EnumMap<Type, Map<Long, Long>> batch) {
+        Set<Long> touched = new HashSet<>();
+        for (Map<Long, Long> deltas : batch.values()) {
+            touched.addAll(deltas.keySet());
+        }
+        postFeedIndex.markHotDirty(touched);
+    }
+
+    private void drainInto(Map<Long, LongAdder> table, Map<Long, Long> deltas) {
+        for (Map.Entry<Long, LongAdder> e : table.entrySet()) {
+            long v = e.getValue().sumThenReset();
+            if (v != 0) {
+                deltas.merge(e.getKey(), v, Long::sum);
+            }
+        }
+    }
+
+    /**
+     * @return 落库成功的增量
+     */
+    private Map<Long, Long> writeDb(Type type, Map<Long, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return deltas;
+        }
+        Map<Long, Long> committed = new HashMap<>(deltas.size());
+        List<Map<String, Object>> rows = new ArrayList<>(deltas.size());
+        for (Map.Entry<Long, Long> e : deltas.entrySet()) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", e.getKey());
+            row.put("delta", e.getValue());
+            rows.add(row);
+        }
+        for (int i = 0; i < rows.size(); i += DB_BATCH_SIZE) {
+            List<Map<String, Object>> chunk = rows.subList(i, Math.min(i + DB_BATCH_SIZE, rows.size()));
+            try {
+                switch (type) {
+                    case VIEW -> postsMapper.updateViewCountBatch(chunk);
+                    case FAVORITE -> postsMapper.updateCollectCountBatch(chunk);
+                }
+                for (Map<String, Object> row : chunk) {
+                    committed.put((Long) row.get("id"), (Long) row.get("delta"));
+                }
+            } catch (Exception e) {
+                // 写库失败：还回计数表下个周期重试
+                log.warn("帖子计数批量落库失败，转入重试: type={}, size={}", type, chunk.size(), e);
+                for (Map<String, Object> row : chunk) {
+                    Long id = (Long) row.get("id");
+                    Long delta = (Long) row.get("delta");
+                    add(type, id, delta);
+                }
+            }
+        }
+        return committed;
+    }
+
+    private void writeRedis(Map<Long, Long> viewDeltas) {
+        if (viewDeltas.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    for (Map.Entry<Long, Long> e : viewDeltas.entrySet()) {
+                        operations.opsForValue().increment(String.format(POST_VIEW_PV_KEY_FMT, e.getKey()),
+                                e.getValue());
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("帖子PV批量写入Redis失败: size={}", viewDeltas.size(), e);
+        }
+    }
+
+    /**
+     * 同一帖子的三种计数合并成一次局部更新，交给 PostIndexSync 批量发送
+     */
+    private void writeEs(EnumMap<Type, Map<Long, Long>> batch) {
+        Map<Long, Map<String, Long>> docs = new HashMap<>();
+        batch.get(Type.VIEW).forEach((id, d) -> docs.computeIfAbsent(id, k -> new HashMap<>()).put("viewCount", d));
+        batch.get(Type.FAVORITE).forEach((id, d) -> docs.computeIfAbsent(id, k -> new HashMap<>()).put("collectCount", d));
+        docs.forEach(postIndexSync::incr);
+    }
+
+    /**
+     * 把旧版本遗留的 post:view:flush:{id} 增量一次性落库：一块 MGET → 批量 UPDATE → 提交后删除键并同步 ES
+     */
+    private void migrateLegacyViewDeltas() {
+        try {
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(LEGACY_VIEW_MIGRATED_KEY, "1");
+            if (!Boolean.TRUE.equals(first)) {
+                return;
+            }
+            ScanOptions options = ScanOptions.scanOptions().match(LEGACY_VIEW_FLUSH_PREFIX + "*").count(1000).build();
+            List<String> buffer = new ArrayList<>(DB_BATCH_SIZE);
+            int migrated = 0;
+            try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    String key = cursor.next();
+                    if (!StrUtil.isNumeric(key.substring(LEGACY_VIEW_FLUSH_PREFIX.length()))) {
+                        continue;
+                    }
+                    buffer.add(key);
+                    if (buffer.size() >= DB_BATCH_SIZE) {
+                        migrated += migrateLegacyChunk(buffer);
+                        buffer.clear();
+                    }
+                }
+            }
+            migrated += migrateLegacyChunk(buffer);
+            if (migrated > 0) {
+                log.info("遗留浏览增量已落库: posts={}", migrated);
+            }
+        } catch (Exception e) {
+            // 下次启动重试；已落库的键已经删除，不会重复
+            log.warn("迁移遗留浏览增量失败", e);
+            stringRedisTemplate.delete(LEGACY_VIEW_MIGRATED_KEY);
+        }
+    }
+
+    private int migrateLegacyChunk(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return 0;
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < keys.size() && i < values.size(); i++) {
+            String v = values.get(i);
+            if (StrUtil.isBlank(v) || !NumberUtil.isLong(v) || Long.parseLong(v) == 0) {
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", Long.parseLong(keys.get(i).substring(LEGACY_VIEW_FLUSH_PREFIX.length())));
+            row.put("delta", Long.parseLong(v));
+            rows.add(row);
+        }
+        if (!rows.isEmpty()) {
+            postsMapper.updateViewCountBatch(rows);
+        }
+        stringRedisTemplate.delete(keys);
+        for (Map<String, Object> row : rows) {
+            postIndexSync.incr((Long) row.get("id"), "viewCount", (Long) row.get("delta"));
+        }
+        return rows.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机前同步刷一次，尽量不丢增量
+        flushQuietly();
+    }
+}
@@ -0,0 +1,292 @@
+package com.tmd.counter;
+
+import cn.hutool.core.util.StrUtil;
+import com.tmd.es.PostIndexSync;
+import com.tmd.feed.PostFeedIndex;
+import com.tmd.mapper.PostsMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.*;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 点赞数增量（post:like:flush:{id}）的增量刷盘，也是点赞计数唯一的落库路径
+ * <p>
+ * 取代原来"全局锁 + SCAN 全部 post:like:flush:* 到内存再分批"的做法：
+ * 1. 写入增量时同时把帖子ID放进分片脏集合 post:like:dirty:{shard}（与 post:comment:dirty_set 同一思路）
+ * 2. 刷盘按分片加租约（Redisson 锁，自动过期），多个节点可以并行处理不同分片
+ * 3. 每块与 {@link CommentCountFlusher} 相同：SRANDMEMBER 取一块ID（不移出）→ 一次 MGET 读增量
+ * → 经 {@link CounterFlushLedger} 记批次、CASE 批量 UPDATE 与批次记录同事务提交 → Lua 扣回并把剩余为 0 的ID移出脏集合，
+ * 再把增量交给 ES 同步与热度重算。读取之后新写入的增量会留在键上，ID 也留在脏集合里
+ * 4. 写库失败时增量和脏集合都不动，下轮重试；进程在提交与扣回之间被杀，下次拿到租约时按批次记录补做扣回，不会重复落库
+ * <p>
+ * 每个租约内最多处理 {@link #MAX_CHUNKS_PER_LEASE} 块，内存与锁持有时间都有上界。
+ */
+@Component
+@Slf4j
+public class PostLikeFlusher {
+
+    static final String POST_LIKE_FLUSH_KEY_FMT = "post:like:flush:%d";
+    private static final String DIRTY_SHARD_KEY_FMT = "post:like:dirty:%d";
+    private static final String SHARD_LEASE_KEY_FMT = "lock:post:like:flush:shard:%d";
+    private static final String INFLIGHT_KEY_FMT = "post:like:inflight:%d";
+    private static final String FLUSH_KEY_PREFIX = "post:like:flush:";
+    private static final String LEGACY_MIGRATED_KEY = "post:like:flush:migrated";
+    private static final int SHARDS = 16;
+    private static final int CHUNK_SIZE = 500;
+    private static final int MAX_CHUNKS_PER_LEASE = 20;
+    private static final long LEASE_SECONDS = 60;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+    private final CounterFlushLedger counterFlushLedger;
+    private final PostsMapper postsMapper;
+    private final PostIndexSync postIndexSync;
+    private final PostFeedIndex postFeedIndex;
+    private final DistributionSummary chunkSummary;
+
+    public PostLikeFlusher(StringRedisTemplate stringRedisTemplate,
+            RedissonClient redissonClient,
+            CounterFlushLedger counterFlushLedger,
+            PostsMapper postsMapper,
+            PostIndexSync postIndexSync,
+            PostFeedIndex postFeedIndex,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.counterFlushLedger = counterFlushLedger;
+        this.postsMapper = postsMapper;
+        this.postIndexSync = postIndexSync;
+        this.postFeedIndex = postFeedIndex;
+        this.chunkSummary = DistributionSummary.builder("post.like.flush.chunk.size")
+                .description("Posts flushed per like flush chunk")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一笔待落库的点赞增量：INCRBY 与标脏放在同一个 pipeline
+     */
+    public void record(Long postId, long delta) {
+        if (postId == null || delta == 0) {
+            return;
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                operations.opsForValue().increment(String.format(POST_LIKE_FLUSH_KEY_FMT, postId), delta);
+                operations.opsForSet().add(dirtyKey(postId), String.valueOf(postId));
+                return null;
+            }
+        });
+    }
+
+    @Scheduled(fixedDelay = 30_000, initialDelay = 30_000)
+    public void flush() {
+        migrateLegacyKeys();
+        // 各节点从随机分片开始，减少抢同一个租约
+        int start = ThreadLocalRandom.current().nextInt(SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            int shard = (start + i) % SHARDS;
+            RLock lease = redissonClient.getLock(String.format(SHARD_LEASE_KEY_FMT, shard));
+            boolean held = false;
+            try {
+                held = lease.tryLock(0, LEASE_SECONDS, TimeUnit.SECONDS);
+                if (!held) {
+                    continue;
+                }
+                int flushed = flushShard(shard);
+                if (flushed > 0) {
+                    log.info("点赞增量刷盘完成: shard={}, posts={}", shard, flushed);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("点赞增量分片刷盘失败: shard={}", shard, e);
+            } finally {
+                if (held && lease.isHeldByCurrentThread()) {
+                    try {
+                        lease.unlock();
+                    } catch (Exception e) {
+                        log.error("释放点赞刷盘租约失败", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private int flushShard(int shard) {
+        String dirtyKey = String.format(DIRTY_SHARD_KEY_FMT, shard);
+        String inflightKey = String.format(INFLIGHT_KEY_FMT, shard);
+        for (Map<Long, Long> deltas : counterFlushLedger.recover(inflightKey, dirtyKey, FLUSH_KEY_PREFIX)) {
+            afterFlush(deltas);
+        }
+        int total = 0;
+        for (int c = 0; c < MAX_CHUNKS_PER_LEASE; c++) {
+            Set<String> ids = stringRedisTemplate.opsForSet().distinctRandomMembers(dirtyKey, CHUNK_SIZE);
+            if (ids == null || ids.isEmpty()) {
+                break;
+            }
+            int flushed = flushChunk(dirtyKey, inflightKey, ids);
+            if (flushed < 0) {
+                // 写库失败，本租约内不再重试同一批
+                break;
+            }
+            total += flushed;
+            if (ids.size() < CHUNK_SIZE) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return 落库的帖子数；写库失败返回 -1
+     */
+    private int flushChunk(String dirtyKey, String inflightKey, Set<String> ids) {
+        List<Long> postIds = new ArrayList<>(ids.size());
+        List<String> keys = new ArrayList<>(ids.size());
+        for (String idStr : ids) {
+            try {
+                Long postId = Long.parseLong(idStr);
+                postIds.add(postId);
+                keys.add(String.format(POST_LIKE_FLUSH_KEY_FMT, postId));
+            } catch (NumberFormatException e) {
+                log.warn("脏集合中的点赞帖子ID非法: {}", idStr);
+                stringRedisTemplate.opsForSet().remove(dirtyKey, idStr);
+            }
+        }
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return 0;
+        }
+
+        // 增量为 0 或键已不在的ID也记进批次，扣回时一并移出脏集合
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        List<Map<String, Object>> updateList = new ArrayList<>();
+        for (int i = 0; i < postIds.size() && i < values.size(); i++) {
+            String v = values.get(i);
+            long delta = 0;
+            if (StrUtil.isNotBlank(v)) {
+                try {
+                    delta = Long.parseLong(v);
+                } catch (NumberFormatException e) {
+                    log.error("点赞增量值非法: key={}, value={}", keys.get(i), v);
+                    stringRedisTemplate.opsForSet().remove(dirtyKey, String.valueOf(postIds.get(i)));
+                    continue;
+                }
+            }
+            deltas.put(postIds.get(i), delta);
+            if (delta == 0) {
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", postIds.get(i));
+            row.put("delta", delta);
+            updateList.add(row);
+        }
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+
+        String batchId = counterFlushLedger.begin(inflightKey, deltas);
+        try {
+            counterFlushLedger.commit(batchId, () -> {
+                if (!updateList.isEmpty()) {
+                    postsMapper.updateLikeCountBatch(updateList);
+                }
+            });
+        } catch (Exception e) {
+            // 增量和脏集合都没动，下轮重试
+            log.error("点赞数批量落库失败，{} 个帖子下轮重试", updateList.size(), e);
+            counterFlushLedger.abort(inflightKey, batchId);
+            return -1;
+        }
+        counterFlushLedger.apply(inflightKey, dirtyKey, FLUSH_KEY_PREFIX, batchId, deltas);
+        afterFlush(deltas);
+        chunkSummary.record(updateList.size());
+        return updateList.size();
+    }
+
+    /**
+     * 已落库的增量交给 ES 同步与热度重算
+     */
+    private void afterFlush(Map<Long, Long> deltas) {
+        List<Long> flushed = new ArrayList<>(deltas.size());
+        deltas.forEach((id, delta) -> {
+            if (delta != 0) {
+                postIndexSync.incr(id, "likeCount", delta);
+                flushed.add(id);
+            }
+        });
+        if (!flushed.isEmpty()) {
+            postFeedIndex.markHotDirty(flushed);
+        }
+    }
+
+    /**
+     * 旧版本只写增量键不标脏，首次运行时用 SCAN 游标把遗留键补进脏集合（全局只做一次）
+     */
+    private void migrateLegacyKeys() {
+        try {
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(LEGACY_MIGRATED_KEY, "1");
+            if (!Boolean.TRUE.equals(first)) {
+                return;
+            }
+            String prefix = "post:like:flush:";
+            ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(1000).build();
+            List<String> buffer = new ArrayList<>(CHUNK_SIZE);
+            try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    String key = cursor.next();
+                    String idStr = key.substring(prefix.length());
+                    if (!StrUtil.isNumeric(idStr)) {
+                        continue;
+                    }
+                    buffer.add(idStr);
+                    if (buffer.size() >= CHUNK_SIZE) {
+                        markDirty(buffer);
+                        buffer.clear();
+                    }
+                }
+            }
+            markDirty(buffer);
+        } catch (Exception e) {
+            log.warn("迁移遗留点赞增量键失败", e);
+            stringRedisTemplate.delete(LEGACY_MIGRATED_KEY);
+        }
+    }
+
+    private void markDirty(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<String> copy = new ArrayList<>(ids);
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (String id : copy) {
+                    operations.opsForSet().add(dirtyKey(Long.parseLong(id)), id);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static String dirtyKey(Long postId) {
+        return String.format(DIRTY_SHARD_KEY_FMT, Math.floorMod(postId, SHARDS));
+    }
+}
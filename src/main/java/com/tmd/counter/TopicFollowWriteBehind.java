@@ -0,0 +1,207 @@
+package com.tmd.counter;
+
+import com.tmd.entity.dto.TopicFollow;
+import com.tmd.entity.dto.TopicFollowVO;
+import com.tmd.mapper.TopicFollowMapper;
+import com.tmd.mapper.TopicMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 话题关注的 write-behind：关注关系与关注数先落 Redis（topic:follow:{topicId}），DB 由这里按批补写
+ * <p>
+ * 关注/取关在同一个 Lua 里翻转 ZSet 并把最终状态写进待落库 Hash {@link #PENDING_KEY}
+ * （字段 topicId:userId，值为关注时间毫秒，0 表示取消关注），待落库的变更不在进程内存里，节点崩溃不会丢；
+ * 同一关系的先后以 Redis 执行顺序为准，多节点之间也不会乱序，反复点击只保留最后一次状态。
+ * <p>
+ * 每个周期由持有租约的节点把待落库 Hash RENAME 成处理中 Hash {@link #PROCESSING_KEY}，然后：
+ * 一条批量 DELETE（所有涉及的关系）+ 一条批量 INSERT（最终为关注的关系）+ 一条 CASE 批量 UPDATE 关注数（ZCARD 当前值），
+ * 全部成功后才删除处理中 Hash。先删后插，与 topic_follow 是否有唯一索引无关；
+ * 写库失败或中途崩溃时处理中 Hash 还在，下个周期先重放它，重放是幂等的，之后新到的变更仍在待落库 Hash 里排在后面。
+ */
+@Component
+@Slf4j
+public class TopicFollowWriteBehind {
+
+    private static final String FOLLOW_KEY_PREFIX = "topic:follow:";
+    private static final String PENDING_KEY = "topic:follow:pending";
+    private static final String PROCESSING_KEY = "topic:follow:pending:processing";
+    private static final String LEASE_KEY = "lock:topic:follow:flush";
+    private static final long LEASE_SECONDS = 30;
+    private static final int DB_BATCH_SIZE = 500;
+
+    /**
+     * 翻转关注状态并记入待落库 Hash，返回 {是否关注, 关注数}。
+     * KEYS[1] 关注者 ZSet；KEYS[2] 待落库 Hash；ARGV[1] 用户ID；ARGV[2] 当前毫秒；ARGV[3] Hash 字段
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static final DefaultRedisScript<List<Long>> FOLLOW_TOGGLE_SCRIPT = new DefaultRedisScript(
+            "if redis.call('ZSCORE', KEYS[1], ARGV[1]) then " +
+                    "  redis.call('ZREM', KEYS[1], ARGV[1]) " +
+                    "  redis.call('HSET', KEYS[2], ARGV[3], '0') " +
+                    "  return {0, redis.call('ZCARD', KEYS[1])} " +
+                    "end " +
+                    "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) " +
+                    "redis.call('HSET', KEYS[2], ARGV[3], ARGV[2]) " +
+                    "return {1, redis.call('ZCARD', KEYS[1])}",
+            List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+    private final TopicMapper topicMapper;
+    private final TopicFollowMapper topicFollowMapper;
+    private final DistributionSummary batchSummary;
+
+    public TopicFollowWriteBehind(StringRedisTemplate stringRedisTemplate,
+            RedissonClient redissonClient,
+            TopicMapper topicMapper,
+            TopicFollowMapper topicFollowMapper,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.topicMapper = topicMapper;
+        this.topicFollowMapper = topicFollowMapper;
+        this.batchSummary = DistributionSummary.builder("topic.follow.flush.batch.size")
+                .description("Follow relation changes written per flush")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 关注/取关：翻转状态并记下待落库的最终状态
+     *
+     * @return {1 关注 / 0 取关, 关注数}；脚本执行失败返回 null
+     */
+    public List<Long> toggle(Long topicId, Long userId) {
+        return stringRedisTemplate.execute(FOLLOW_TOGGLE_SCRIPT,
+                Arrays.asList(FOLLOW_KEY_PREFIX + topicId, PENDING_KEY),
+                String.valueOf(userId), String.valueOf(System.currentTimeMillis()), topicId + ":" + userId);
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void flush() {
+        RLock lease = redissonClient.getLock(LEASE_KEY);
+        boolean held = false;
+        try {
+            held = lease.tryLock(0, LEASE_SECONDS, TimeUnit.SECONDS);
+            if (held) {
+                flushLocked();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("话题关注落库失败，下个周期重试", e);
+        } finally {
+            if (held && lease.isHeldByCurrentThread()) {
+                try {
+                    lease.unlock();
+                } catch (Exception e) {
+                    log.error("释放话题关注落库锁失败", e);
+                }
+            }
+        }
+    }
+
+    private void flushLocked() {
+        // 上一轮没处理完的先重放；没有才取新的一批
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(PROCESSING_KEY))) {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(PENDING_KEY))) {
+                return;
+            }
+            stringRedisTemplate.rename(PENDING_KEY, PROCESSING_KEY);
+        }
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(PROCESSING_KEY);
+        List<TopicFollow> all = new ArrayList<>(entries.size());
+        Set<Long> topicIds = new LinkedHashSet<>();
+        entries.forEach((field, value) -> {
+            String f = field.toString();
+            int colon = f.indexOf(':');
+            try {
+                Long topicId = Long.parseLong(f.substring(0, colon));
+                long millis = Long.parseLong(value.toString());
+                all.add(TopicFollow.builder()
+                        .topicId(topicId)
+                        .userId(Long.parseLong(f.substring(colon + 1)))
+                        .createdAt(millis > 0
+                                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault())
+                                : null)
+                        .build());
+                topicIds.add(topicId);
+            } catch (RuntimeException e) {
+                log.warn("待落库的话题关注记录无效: field={}, value={}", f, value);
+            }
+        });
+
+        for (int i = 0; i < all.size(); i += DB_BATCH_SIZE) {
+            List<TopicFollow> chunk = all.subList(i, Math.min(i + DB_BATCH_SIZE, all.size()));
+            topicFollowMapper.deleteBatch(chunk);
+            List<TopicFollow> follows = new ArrayList<>();
+            for (TopicFollow f : chunk) {
+                if (f.getCreatedAt() != null) {
+                    follows.add(f);
+                }
+            }
+            if (!follows.isEmpty()) {
+                topicFollowMapper.insertBatch(follows);
+            }
+        }
+        writeCounts(topicIds);
+        stringRedisTemplate.delete(PROCESSING_KEY);
+        batchSummary.record(all.size());
+    }
+
+    /**
+     * 关注数取 ZCARD 当前值，一个 pipeline 读完再批量 UPDATE
+     */
+    private void writeCounts(Set<Long> topicIds) {
+        if (topicIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(topicIds);
+        List<Object> cards = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (Long topicId : ids) {
+                    operations.opsForZSet().zCard(FOLLOW_KEY_PREFIX + topicId);
+                }
+                return null;
+            }
+        });
+        List<TopicFollowVO> rows = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size() && i < cards.size(); i++) {
+            Object card = cards.get(i);
+            rows.add(TopicFollowVO.builder()
+                    .topicId(ids.get(i))
+                    .followerCount(card == null ? 0 : ((Number) card).intValue())
+                    .build());
+        }
+        for (int i = 0; i < rows.size(); i += DB_BATCH_SIZE) {
+            topicMapper.updateFollowCountBatch(rows.subList(i, Math.min(i + DB_BATCH_SIZE, rows.size())));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("停机前刷写话题关注失败", e);
+        }
+    }
+}
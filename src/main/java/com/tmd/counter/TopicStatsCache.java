@@ -0,0 +1,224 @@
+package com.tmd.counter;
+
+import com.tmd.entity.dto.Topic;
+import com.tmd.entity.dto.TopicVO;
+import com.tmd.mapper.TopicMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 话题统计表：一个 Redis Hash（topic:stats），字段 p:{topicId} 为已发布帖子数，f:{topicId} 为关注数
+ * <p>
+ * 话题列表一页只做一次 HMGET，不再逐行 COUNT(*) 与 ZCOUNT；
+ * 缺失的字段用一条分组查询补齐并回写。
+ * 帖子数由 incrementTopicPostCount 增量维护（字段不存在时不凭空从 0 开始累加），
+ * 关注数由 followTopic 直接写入 ZCARD 的结果。
+ * 每 5 分钟由一个节点按一条分组查询整体对账，修正删帖、改状态等没有走增量的变化；
+ * 关注关系由 write-behind 按秒落库，对账读到的关注数最多落后一个刷写周期。
+ * <p>
+ * 回写库值（对账、补齐缺失字段）都是比较后写入：查库前先读下当前值，写入时字段仍是这个值才覆盖，
+ * 期间被 HINCRBY 改过的字段跳过，留给下一轮对账，不会用较旧的库值冲掉并发的增量。
+ */
+@Component
+@Slf4j
+public class TopicStatsCache {
+
+    private static final String STATS_KEY = "topic:stats";
+    private static final String RECONCILE_LOCK_KEY = "lock:topic:stats:reconcile";
+    private static final long RECONCILE_LOCK_SECONDS = 240;
+    private static final int WRITE_BATCH_FIELDS = 1000;
+
+    /**
+     * 比较后写入：ARGV 按 (字段, 期望值, 新值) 三个一组，期望值为空串表示字段应不存在；返回写入的字段数
+     */
+    private static final DefaultRedisScript<Long> COMPARE_AND_SET_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0 " +
+                    "for i = 1, #ARGV, 3 do " +
+                    "  local cur = redis.call('HGET', KEYS[1], ARGV[i]) " +
+                    "  if (not cur and ARGV[i + 1] == '') or cur == ARGV[i + 1] then " +
+                    "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 2]) " +
+                    "    n = n + 1 " +
+                    "  end " +
+                    "end " +
+                    "return n",
+            Long.class);
+
+    /**
+     * 字段存在才累加，返回累加后的值；不存在返回 nil
+     */
+    private static final DefaultRedisScript<Long> INCR_IF_EXISTS_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then " +
+                    "  return redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) " +
+                    "end " +
+                    "return nil",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final TopicMapper topicMapper;
+
+    public TopicStatsCache(StringRedisTemplate stringRedisTemplate, TopicMapper topicMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.topicMapper = topicMapper;
+    }
+
+    /**
+     * 给一页话题填充帖子数与关注数：一次 HMGET，缺失的一次分组查询补齐
+     */
+    public void fill(List<TopicVO> topics) {
+        if (topics == null || topics.isEmpty()) {
+            return;
+        }
+        List<Object> fields = new ArrayList<>(topics.size() * 2);
+        for (TopicVO topic : topics) {
+            fields.add(postField(topic.getId()));
+            fields.add(followerField(topic.getId()));
+        }
+        List<Object> values;
+        try {
+            values = stringRedisTemplate.opsForHash().multiGet(STATS_KEY, fields);
+        } catch (Exception e) {
+            log.warn("读取话题统计失败，回源数据库: size={}", topics.size(), e);
+            values = Collections.nCopies(fields.size(), null);
+        }
+
+        List<Long> missing = new ArrayList<>();
+        Map<String, String> seen = new HashMap<>();
+        for (int i = 0; i < topics.size(); i++) {
+            Object posts = values.get(i * 2);
+            Object followers = values.get(i * 2 + 1);
+            if (posts == null || followers == null) {
+                missing.add(topics.get(i).getId());
+                if (posts != null) {
+                    seen.put(postField(topics.get(i).getId()), posts.toString());
+                }
+                if (followers != null) {
+                    seen.put(followerField(topics.get(i).getId()), followers.toString());
+                }
+                continue;
+            }
+            topics.get(i).setPostCount(Integer.parseInt(posts.toString()));
+            topics.get(i).setFollowerCount(Integer.parseInt(followers.toString()));
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Topic> loaded = new HashMap<>();
+        try {
+            for (Topic stats : topicMapper.selectStats(missing)) {
+                loaded.put(stats.getId(), stats);
+            }
+            write(loaded.values(), seen);
+        } catch (Exception e) {
+            log.warn("补齐话题统计失败: ids={}", missing, e);
+        }
+        for (TopicVO topic : topics) {
+            Topic stats = loaded.get(topic.getId());
+            if (stats != null) {
+                topic.setPostCount(stats.getPostCount());
+                topic.setFollowerCount(stats.getFollowerCount());
+            }
+        }
+    }
+
+    public void incrPostCount(Long topicId, int delta) {
+        if (topicId == null || delta == 0) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(INCR_IF_EXISTS_SCRIPT, Collections.singletonList(STATS_KEY),
+                    postField(topicId), String.valueOf(delta));
+        } catch (Exception e) {
+            log.warn("更新话题帖子数失败: topicId={}", topicId, e);
+        }
+    }
+
+    public void setFollowerCount(Long topicId, long followerCount) {
+        if (topicId == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForHash().put(STATS_KEY, followerField(topicId), String.valueOf(followerCount));
+        } catch (Exception e) {
+            log.warn("更新话题关注数失败: topicId={}", topicId, e);
+        }
+    }
+
+    /**
+     * 定时对账：先读下 Hash 当前值，再一条分组查询取全部话题的统计，逐字段比较后写入
+     */
+    @Scheduled(fixedDelay = 300_000, initialDelay = 60_000)
+    public void reconcile() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(RECONCILE_LOCK_KEY, "1",
+                RECONCILE_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Map<String, String> seen = new HashMap<>();
+            stringRedisTemplate.opsForHash().entries(STATS_KEY)
+                    .forEach((k, v) -> seen.put(k.toString(), v.toString()));
+            List<Topic> stats = topicMapper.selectStats(null);
+            long written = write(stats, seen);
+            log.info("话题统计对账完成: topics={}, 写入字段={}, cost={}ms", stats.size(), written,
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("话题统计对账失败", e);
+        }
+        // 锁不主动释放，靠过期控制多节点下的对账频率
+    }
+
+    /**
+     * 库值比较后写入；值没变的字段不写
+     *
+     * @param seen 查库前读到的字段值，没有的字段按不存在处理
+     * @return 实际写入的字段数
+     */
+    private long write(Collection<Topic> stats, Map<String, String> seen) {
+        List<String> args = new ArrayList<>();
+        long written = 0;
+        for (Topic topic : stats) {
+            addIfChanged(args, seen, postField(topic.getId()), String.valueOf(topic.getPostCount()));
+            addIfChanged(args, seen, followerField(topic.getId()), String.valueOf(topic.getFollowerCount()));
+            if (args.size() >= WRITE_BATCH_FIELDS * 3) {
+                written += compareAndSet(args);
+                args.clear();
+            }
+        }
+        if (!args.isEmpty()) {
+            written += compareAndSet(args);
+        }
+        return written;
+    }
+
+    private static void addIfChanged(List<String> args, Map<String, String> seen, String field, String value) {
+        String expected = seen.get(field);
+        if (value.equals(expected)) {
+            return;
+        }
+        args.add(field);
+        args.add(expected == null ? "" : expected);
+        args.add(value);
+    }
+
+    private long compareAndSet(List<String> args) {
+        Long n = stringRedisTemplate.execute(COMPARE_AND_SET_SCRIPT, Collections.singletonList(STATS_KEY),
+                args.toArray());
+        return n == null ? 0 : n;
+    }
+
+    private static String postField(Long topicId) {
+        return "p:" + topicId;
+    }
+
+    private static String followerField(Long topicId) {
+        return "f:" + topicId;
+    }
+}
@@ -0,0 +1,19 @@
+package com.tmd.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ChatSyncResult {
+    private List<ChatMessageVO> messages;
+    // 下次同步带上的游标，表示已收到这里为止的消息
+    private String cursor;
+    private Boolean hasMore;
+}
@@ -19,6 +19,11 @@ public class PostCommentVO {
     private String status;
     private UserInfo author;
     private List<ReplyVO> replies;
+    // 回复只返回前几条，还有更多时带上游标，用 /comments/{commentId}/replies?cursor=&lastId= 继续加载
+    private Boolean hasMoreReplies;
+    private Long repliesCursor;
+    // 游标所在那条回复的 id，同一毫秒的回复靠它区分先后
+    private Long repliesCursorId;
     private Boolean isLiked;
     private String createdAt;
     private String updatedAt;
@@ -16,4 +16,6 @@ public class ScrollResult {
     private List data;
     private Long max;
     private Integer scroll;
+    // 按 (max, lastId) 翻页的列表用：本页最后一条的 id
+    private Long lastId;
 }
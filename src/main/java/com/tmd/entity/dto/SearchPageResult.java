@@ -15,4 +15,6 @@ public class SearchPageResult {
     private List<PostListItemVO> posts;
     private Long total;
     private Integer currentPage;
+    // 下一页游标（满页时才有），传给 /api/search/scroll 继续翻页
+    private String nextCursor;
 }
\ No newline at end of file
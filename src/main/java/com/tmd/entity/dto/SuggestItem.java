@@ -0,0 +1,16 @@
+package com.tmd.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SuggestItem {
+    private String text;
+    private String type; // post / topic / user
+    private Long weight;
+}
@@ -0,0 +1,565 @@
+package com.tmd.es;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.cluster.storedscripts.PutStoredScriptRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * posts 索引的批量同步
+ * <p>
+ * 发帖/改帖/删帖与各类计数刷盘不再各自单条写 ES，统一交给这里缓冲：
+ * 1. 同一文档 id 在缓冲区只保留一条记录：整篇索引/删除以最后一次为准，计数增量按字段累加成一次局部更新；
+ * 删除之后到达的计数增量直接丢弃
+ * 2. 按条数（{@link #MAX_ACTIONS}）、字节数（{@link #MAX_BYTES}）、最长等待（{@link #MAX_DELAY_MILLIS}）三者先到者发送 BulkRequest
+ * 3. 计数更新使用存储脚本 {@link #COUNTER_SCRIPT_ID}，请求体只带参数；脚本注册失败前退回内联脚本
+ * 4. 整批失败或单条 429/5xx 失败时放回缓冲区，按指数退避延后下一次发送，超过 {@link #MAX_ATTEMPTS} 次丢弃并计数；
+ * 404（文档不存在）等不可重试的失败直接丢弃
+ * 5. 全量重建（{@link PostReindexJob}）期间按 Redis Hash {@link #ROUTE_KEY} 路由：
+ * shadow 字段为正在写入的新索引，每批同样的操作再对它写一份（双写），新索引上的失败只记日志不重试；
+ * primary 字段可把主写入改到指定的实体索引（默认写别名 posts）。
+ * 有路由时，读路由到发送完成持有读写锁 {@link #ROUTE_LOCK_KEY} 的读锁；重建任务在写锁里切换别名并删除路由，
+ * 因此不会有某一轮按旧路由双写、却在切换之后才发出去。shadow 与 primary 解析到同一个实体索引时不双写。
+ * 6. {@link #setCounters} 用库里的计数整体覆盖文档上的计数字段（重建后的对账），会丢弃缓冲区里更早的增量
+ * <p>
+ * 后台单线程发送，正常停机时同步刷一次。
+ */
+@Component
+@Slf4j
+public class PostIndexSync {
+
+    public static final String INDEX_POSTS = "posts";
+    public static final String ROUTE_KEY = "es:posts:reindex:route";
+    public static final String ROUTE_PRIMARY = "primary";
+    public static final String ROUTE_SHADOW = "shadow";
+    public static final String ROUTE_LOCK_KEY = "lock:es:posts:reindex:route";
+    private static final long ROUTE_LOCK_WAIT_MILLIS = 500;
+    private static final long ROUTE_LOCK_LEASE_SECONDS = 60;
+    static final String COUNTER_SCRIPT_ID = "post-counter-incr";
+    private static final String COUNTER_SCRIPT_SOURCE =
+            "for (entry in params.deltas.entrySet()) {"
+                    + "  def cur = ctx._source[entry.getKey()];"
+                    + "  ctx._source[entry.getKey()] = (cur != null ? cur : 0) + entry.getValue();"
+                    + "}";
+
+    private static final int MAX_ACTIONS = 1000;
+    private static final long MAX_BYTES = 5L * 1024 * 1024;
+    private static final long MAX_DELAY_MILLIS = 1000;
+    private static final long BASE_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * 一个文档在缓冲区里的合并状态
+     */
+    private static final class Pending {
+        Map<String, Object> doc;
+        boolean delete;
+        // 计数字段的绝对值，发送时先于 deltas
+        Map<String, Object> counters;
+        final Map<String, Long> deltas = new HashMap<>();
+        int attempts;
+
+        boolean isEmpty() {
+            return doc == null && !delete && counters == null && deltas.isEmpty();
+        }
+    }
+
+    private final RestHighLevelClient esClient;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+
+    private final Object lock = new Object();
+    private LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private volatile boolean scriptStored = false;
+    private int consecutiveFailures = 0;
+    private long nextAttemptAt = 0L;
+    private String primaryIndex = INDEX_POSTS;
+    private String shadowIndex;
+    private boolean routed;
+    private final AtomicBoolean earlyFlushQueued = new AtomicBoolean();
+
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "es-post-bulk");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final DistributionSummary bulkSummary;
+    private final Counter retried;
+    private final Counter dropped;
+
+    public PostIndexSync(RestHighLevelClient esClient, StringRedisTemplate stringRedisTemplate,
+            RedissonClient redissonClient, MeterRegistry meterRegistry) {
+        this.esClient = esClient;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.bulkSummary = DistributionSummary.builder("es.post.bulk.size")
+                .description("Actions per posts bulk request")
+                .register(meterRegistry);
+        this.retried = meterRegistry.counter("es.post.bulk.retried");
+        this.dropped = meterRegistry.counter("es.post.bulk.dropped");
+        Gauge.builder("es.post.bulk.pending", this, PostIndexSync::pendingSize)
+                .description("Documents buffered for the next posts bulk request")
+                .register(meterRegistry);
+        sender.scheduleWithFixedDelay(this::flushQuietly, MAX_DELAY_MILLIS, MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 整篇索引（新建或覆盖）
+     */
+    public void index(Long id, Map<String, Object> doc) {
+        if (id == null || doc == null) {
+            return;
+        }
+        synchronized (lock) {
+            Pending p = pending.computeIfAbsent(String.valueOf(id), k -> new Pending());
+            p.doc = doc;
+            p.delete = false;
+            // 整篇文档里的计数已经包含此前缓冲的增量，再叠加一次就算重了
+            p.counters = null;
+            p.deltas.clear();
+        }
+        maybeFlushEarly();
+    }
+
+    public void delete(Long id) {
+        if (id == null) {
+            return;
+        }
+        synchronized (lock) {
+            Pending p = pending.computeIfAbsent(String.valueOf(id), k -> new Pending());
+            p.doc = null;
+            p.delete = true;
+            p.counters = null;
+            p.deltas.clear();
+        }
+        maybeFlushEarly();
+    }
+
+    /**
+     * 计数增量，同一文档同一字段在发送前合并
+     */
+    public void incr(Long id, String field, long delta) {
+        if (id == null || delta == 0) {
+            return;
+        }
+        incr(id, Collections.singletonMap(field, delta));
+    }
+
+    public void incr(Long id, Map<String, Long> deltas) {
+        if (id == null || deltas == null || deltas.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            Pending p = pending.computeIfAbsent(String.valueOf(id), k -> new Pending());
+            if (p.delete) {
+                return;
+            }
+            deltas.forEach((field, delta) -> {
+                if (delta != null && delta != 0) {
+                    p.deltas.merge(field, delta, Long::sum);
+                }
+            });
+            p.deltas.values().removeIf(v -> v == 0);
+            if (p.isEmpty()) {
+                pending.remove(String.valueOf(id));
+            }
+        }
+        maybeFlushEarly();
+    }
+
+    /**
+     * 用库里读出的计数覆盖文档上的同名字段；此前缓冲的增量已包含在库值里，一并丢弃
+     */
+    public void setCounters(Long id, Map<String, Object> counters) {
+        if (id == null || counters == null || counters.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            Pending p = pending.computeIfAbsent(String.valueOf(id), k -> new Pending());
+            if (p.delete) {
+                return;
+            }
+            p.counters = new HashMap<>(counters);
+            p.deltas.clear();
+        }
+        maybeFlushEarly();
+    }
+
+    private void maybeFlushEarly() {
+        if (pendingSize() >= MAX_ACTIONS && earlyFlushQueued.compareAndSet(false, true)) {
+            try {
+                sender.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                earlyFlushQueued.set(false);
+            }
+        }
+    }
+
+    private int pendingSize() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("ES批量同步异常", e);
+        }
+    }
+
+    /**
+     * 发送缓冲区，只在 sender 单线程中执行；一轮内按条数/字节数切成多个 BulkRequest
+     */
+    private void flush() {
+        earlyFlushQueued.set(false);
+        if (System.currentTimeMillis() < nextAttemptAt) {
+            return;
+        }
+        ensureScript();
+        readRoute();
+        if (!routed) {
+            drain();
+            return;
+        }
+        // 重建期间：持读锁重新读路由并发送，别名切换（写锁）不会插在读路由与发送之间
+        RLock routeLock = redissonClient.getReadWriteLock(ROUTE_LOCK_KEY).readLock();
+        boolean held = false;
+        try {
+            held = routeLock.tryLock(ROUTE_LOCK_WAIT_MILLIS, ROUTE_LOCK_LEASE_SECONDS * 1000, TimeUnit.MILLISECONDS);
+            if (!held) {
+                // 正在切换别名，缓冲区留到下一轮
+                return;
+            }
+            readRoute();
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (held) {
+                try {
+                    routeLock.unlock();
+                } catch (Exception e) {
+                    log.warn("释放重建路由读锁失败", e);
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            LinkedHashMap<String, Pending> batch = take();
+            if (batch.isEmpty()) {
+                return;
+            }
+            if (!send(batch)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 从缓冲区取出一批，条数与估算字节数不超过上限
+     */
+    private LinkedHashMap<String, Pending> take() {
+        LinkedHashMap<String, Pending> batch = new LinkedHashMap<>();
+        synchronized (lock) {
+            int actions = 0;
+            Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator();
+            while (it.hasNext() && actions < MAX_ACTIONS) {
+                Map.Entry<String, Pending> e = it.next();
+                batch.put(e.getKey(), e.getValue());
+                it.remove();
+                actions += (e.getValue().doc != null || e.getValue().delete ? 1 : 0)
+                        + (e.getValue().counters == null ? 0 : 1)
+                        + (e.getValue().deltas.isEmpty() ? 0 : 1);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return 本批是否整体发送成功（失败时本轮停止，等待退避）
+     */
+    private boolean send(LinkedHashMap<String, Pending> batch) {
+        BulkRequest bulk = new BulkRequest();
+        List<String> itemIds = new ArrayList<>();
+        // 计数覆盖请求在 bulk 里的位置，重试时与增量更新区分
+        Set<Integer> counterItems = new HashSet<>();
+        Iterator<Map.Entry<String, Pending>> it = batch.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Pending> e = it.next();
+            if (bulk.estimatedSizeInBytes() >= MAX_BYTES) {
+                // 超过字节上限的部分放回缓冲区，下一个 BulkRequest 再发
+                requeue(e.getKey(), e.getValue());
+                it.remove();
+                continue;
+            }
+            String id = e.getKey();
+            Pending p = e.getValue();
+            if (p.delete) {
+                bulk.add(new DeleteRequest(primaryIndex, id));
+                itemIds.add(id);
+            } else if (p.doc != null) {
+                bulk.add(new IndexRequest(primaryIndex).id(id).source(p.doc));
+                itemIds.add(id);
+            }
+            if (!p.delete && p.counters != null) {
+                counterItems.add(itemIds.size());
+                bulk.add(new UpdateRequest(primaryIndex, id).doc(p.counters));
+                itemIds.add(id);
+            }
+            if (!p.delete && !p.deltas.isEmpty()) {
+                bulk.add(new UpdateRequest(primaryIndex, id).script(counterScript(p.deltas)));
+                itemIds.add(id);
+            }
+            if (shadowIndex != null) {
+                addShadow(bulk, itemIds, id, p);
+            }
+        }
+        if (bulk.numberOfActions() == 0) {
+            return true;
+        }
+
+        BulkResponse resp;
+        try {
+            resp = esClient.bulk(bulk, RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            log.warn("ES批量同步失败，退避后重试: actions={}", bulk.numberOfActions(), e);
+            batch.forEach(this::retryOrDrop);
+            backoff();
+            return false;
+        }
+        bulkSummary.record(bulk.numberOfActions());
+
+        boolean retryable = false;
+        if (resp.hasFailures()) {
+            Set<String> failedIds = new LinkedHashSet<>();
+            for (BulkItemResponse item : resp.getItems()) {
+                if (!item.isFailed()) {
+                    continue;
+                }
+                String id = itemIds.get(item.getItemId());
+                if (id == null) {
+                    // 重建中的新索引：文档可能还没拷贝过去，失败由拷贝兜底
+                    log.debug("ES双写新索引失败: index={}, reason={}", shadowIndex, item.getFailureMessage());
+                    continue;
+                }
+                RestStatus status = item.getFailure().getStatus();
+                if (status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500) {
+                    failedIds.add(id);
+                } else {
+                    // 文档不存在、映射冲突等重试也不会成功
+                    dropped.increment();
+                    log.debug("ES同步丢弃: id={}, op={}, reason={}", id, item.getOpType(),
+                            item.getFailureMessage());
+                }
+            }
+            for (String id : failedIds) {
+                retryOrDrop(id, onlyFailedPart(batch.get(id), resp, itemIds, counterItems, id));
+            }
+            retryable = !failedIds.isEmpty();
+        }
+        if (retryable) {
+            backoff();
+            return false;
+        }
+        consecutiveFailures = 0;
+        nextAttemptAt = 0L;
+        return true;
+    }
+
+    /**
+     * 对重建中的新索引追加同样的操作，itemIds 记 null 表示不参与重试
+     */
+    private void addShadow(BulkRequest bulk, List<String> itemIds, String id, Pending p) {
+        if (p.delete) {
+            bulk.add(new DeleteRequest(shadowIndex, id));
+            itemIds.add(null);
+        } else if (p.doc != null) {
+            bulk.add(new IndexRequest(shadowIndex).id(id).source(p.doc));
+            itemIds.add(null);
+        }
+        if (!p.delete && p.counters != null) {
+            bulk.add(new UpdateRequest(shadowIndex, id).doc(p.counters));
+            itemIds.add(null);
+        }
+        if (!p.delete && !p.deltas.isEmpty()) {
+            bulk.add(new UpdateRequest(shadowIndex, id).script(counterScript(p.deltas)));
+            itemIds.add(null);
+        }
+    }
+
+    /**
+     * 每轮发送前读一次路由；读失败沿用上一轮
+     */
+    private void readRoute() {
+        try {
+            List<Object> route = stringRedisTemplate.opsForHash().multiGet(ROUTE_KEY,
+                    List.of(ROUTE_PRIMARY, ROUTE_SHADOW));
+            primaryIndex = route.get(0) != null ? route.get(0).toString() : INDEX_POSTS;
+            String shadow = route.get(1) != null ? route.get(1).toString() : null;
+            routed = route.get(0) != null || shadow != null;
+            // 主写入是别名时解析出实体索引：别名已经指向 shadow 就只写一次，否则计数会加两遍
+            shadowIndex = shadow == null || shadow.equals(primaryIndex)
+                    || resolveIndices(primaryIndex).contains(shadow) ? null : shadow;
+        } catch (Exception e) {
+            log.debug("读取重建索引路由失败", e);
+        }
+    }
+
+    /**
+     * 别名对应的实体索引；不是别名时返回它自己
+     */
+    private Set<String> resolveIndices(String name) throws IOException {
+        GetAliasesResponse aliases = esClient.indices().getAlias(new GetAliasesRequest(name), RequestOptions.DEFAULT);
+        return aliases.getAliases().isEmpty() ? Collections.singleton(name) : aliases.getAliases().keySet();
+    }
+
+    /**
+     * 同一文档可能同时有整篇索引与计数更新两条，只重试失败的那部分
+     */
+    private Pending onlyFailedPart(Pending p, BulkResponse resp, List<String> itemIds, Set<Integer> counterItems,
+            String id) {
+        Pending failed = new Pending();
+        failed.attempts = p.attempts;
+        for (BulkItemResponse item : resp.getItems()) {
+            if (!item.isFailed() || !id.equals(itemIds.get(item.getItemId()))) {
+                continue;
+            }
+            if (counterItems.contains(item.getItemId())) {
+                failed.counters = p.counters;
+            } else if (item.getOpType() == DocWriteRequest.OpType.UPDATE) {
+                failed.deltas.putAll(p.deltas);
+            } else if (item.getOpType() == DocWriteRequest.OpType.DELETE) {
+                failed.delete = true;
+            } else {
+                failed.doc = p.doc;
+            }
+        }
+        return failed;
+    }
+
+    private void retryOrDrop(String id, Pending p) {
+        if (++p.attempts > MAX_ATTEMPTS) {
+            dropped.increment();
+            log.warn("ES同步重试次数用尽，丢弃: id={}", id);
+            return;
+        }
+        retried.increment();
+        requeue(id, p);
+    }
+
+    /**
+     * 放回缓冲区；期间到达的新写入优先，计数增量叠加
+     */
+    private void requeue(String id, Pending old) {
+        synchronized (lock) {
+            Pending cur = pending.get(id);
+            if (cur == null) {
+                pending.put(id, old);
+                return;
+            }
+            if (cur.delete) {
+                return;
+            }
+            // 较新的整篇文档或计数覆盖已经包含了旧记录里的增量
+            boolean superseded = cur.doc != null || cur.counters != null;
+            if (cur.doc == null && old.doc != null) {
+                cur.doc = old.doc;
+            }
+            if (cur.counters == null && old.counters != null) {
+                // 期间到达的增量排在覆盖之后发送，顺序不变
+                cur.counters = old.counters;
+            }
+            if (old.delete && cur.doc == null) {
+                cur.delete = true;
+                cur.deltas.clear();
+                return;
+            }
+            if (!superseded) {
+                old.deltas.forEach((field, delta) -> cur.deltas.merge(field, delta, Long::sum));
+            }
+            cur.attempts = Math.max(cur.attempts, old.attempts);
+        }
+    }
+
+    private void backoff() {
+        consecutiveFailures++;
+        long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(consecutiveFailures, 10));
+        nextAttemptAt = System.currentTimeMillis() + delay;
+    }
+
+    private Script counterScript(Map<String, Long> deltas) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("deltas", new HashMap<>(deltas));
+        if (scriptStored) {
+            return new Script(ScriptType.STORED, null, COUNTER_SCRIPT_ID, params);
+        }
+        return new Script(ScriptType.INLINE, "painless", COUNTER_SCRIPT_SOURCE, params);
+    }
+
+    private void ensureScript() {
+        if (scriptStored) {
+            return;
+        }
+        try {
+            PutStoredScriptRequest req = new PutStoredScriptRequest()
+                    .id(COUNTER_SCRIPT_ID)
+                    .content(new BytesArray("{\"script\":{\"lang\":\"painless\",\"source\":\""
+                            + COUNTER_SCRIPT_SOURCE + "\"}}"), XContentType.JSON);
+            esClient.putScript(req, RequestOptions.DEFAULT);
+            scriptStored = true;
+            log.info("ES存储脚本已注册: {}", COUNTER_SCRIPT_ID);
+        } catch (Exception e) {
+            log.debug("ES存储脚本注册失败，暂用内联脚本", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdown();
+        try {
+            sender.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机前同步刷一次，忽略退避
+        nextAttemptAt = 0L;
+        flushQuietly();
+    }
+}
@@ -0,0 +1,533 @@
+package com.tmd.es;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.tmd.config.PostsIndexInitializer;
+import com.tmd.config.ThreadPoolConfig;
+import com.tmd.entity.dto.Post;
+import com.tmd.entity.dto.TopicVO;
+import com.tmd.entity.dto.UserProfile;
+import com.tmd.mapper.PostsMapper;
+import com.tmd.mapper.UserMapper;
+import com.tmd.service.TopicService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * posts 索引全量重建
+ * <p>
+ * 1. 新建版本化索引 posts_v{时间}，导入期间关闭 refresh、副本数置 0
+ * 2. 按 id 键集分页（id > lastId LIMIT n）从库里流式读取，每批的作者资料、话题名各一次批量查询；
+ * 读取线程每轮读 parallelism 批，交给同样数量的 bulk 线程并行写入，整轮成功后才把 lastId 记进 Redis
+ * 3. 写入速率由 RateLimiter 限制（文档/秒），避免压垮 ES 与数据库
+ * 4. 导入期间 {@link PostIndexSync} 按路由对新索引双写；拷贝使用 op_type=create，
+ * 已经由双写写入的较新文档不会被库里读出的旧数据覆盖
+ * 5. 导入完成后原子切换别名 posts（首次切换时 posts 还是实体索引，同一个请求里删除它），
+ * 切换别名与删除写入路由在路由写锁 {@link PostIndexSync#ROUTE_LOCK_KEY} 里一起完成：
+ * 同步线程发送一轮时持读锁，不会按旧路由在切换之后再对新索引双写一次
+ * 6. 切换后按 id 再扫一遍库里的计数，用 {@link PostIndexSync#setCounters} 覆盖新索引上的计数字段，
+ * 修正拷贝读到未提交计数、双写 404 丢掉增量等造成的偏差；对账失败只记日志，别名已经切换
+ * 7. 任何失败都立即删除写入路由，不再对放弃的新索引双写；失败的重建不续跑（停双写期间的更新已经漏掉），
+ * 重新触发时从头建一个新版本
+ * <p>
+ * 进度记在 Redis Hash {@link #STATE_KEY}，重建由 Redisson 锁保证同一时刻只有一个节点在跑；
+ * 进程崩溃后锁随看门狗过期（路由保留、双写继续），重新触发或下次启动时从 lastId 继续。
+ */
+@Component
+@Slf4j
+public class PostReindexJob implements ApplicationRunner {
+
+    private static final String STATE_KEY = "es:posts:reindex";
+    private static final String LOCK_KEY = "lock:es:posts:reindex";
+    private static final String STATUS_RUNNING = "running";
+    private static final String STATUS_FAILED = "failed";
+    private static final String STATUS_DONE = "done";
+    private static final int BATCH_SIZE = 500;
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final int MAX_PARALLELISM = 8;
+    private static final double DEFAULT_DOCS_PER_SECOND = 2000;
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+    private static final long ROUTE_LOCK_WAIT_SECONDS = 30;
+
+    private final RestHighLevelClient esClient;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+    private final PostIndexSync postIndexSync;
+    private final PostsMapper postsMapper;
+    private final UserMapper userMapper;
+    private final TopicService topicService;
+    private final ThreadPoolConfig threadPoolConfig;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong indexedDocs = new AtomicLong();
+    private final AtomicLong lastId = new AtomicLong();
+    private final Counter failedBatches;
+    private volatile RateLimiter rateLimiter = RateLimiter.create(DEFAULT_DOCS_PER_SECOND);
+
+    public PostReindexJob(RestHighLevelClient esClient,
+            StringRedisTemplate stringRedisTemplate,
+            RedissonClient redissonClient,
+            PostIndexSync postIndexSync,
+            PostsMapper postsMapper,
+            UserMapper userMapper,
+            TopicService topicService,
+            ThreadPoolConfig threadPoolConfig,
+            MeterRegistry meterRegistry) {
+        this.esClient = esClient;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.postIndexSync = postIndexSync;
+        this.postsMapper = postsMapper;
+        this.userMapper = userMapper;
+        this.topicService = topicService;
+        this.threadPoolConfig = threadPoolConfig;
+        Gauge.builder("es.posts.reindex.indexed", indexedDocs, AtomicLong::get)
+                .description("Documents copied by the current posts reindex")
+                .register(meterRegistry);
+        Gauge.builder("es.posts.reindex.last.id", lastId, AtomicLong::get)
+                .description("Highest post id committed by the current posts reindex")
+                .register(meterRegistry);
+        Gauge.builder("es.posts.reindex.running", running, r -> r.get() ? 1 : 0)
+                .register(meterRegistry);
+        this.failedBatches = meterRegistry.counter("es.posts.reindex.failed.batches");
+    }
+
+    /**
+     * 启动时发现上次重建没跑完（进程崩溃），自动续跑
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            Object status = stringRedisTemplate.opsForHash().get(STATE_KEY, "status");
+            if (STATUS_RUNNING.equals(status)) {
+                log.info("发现未完成的 posts 索引重建，尝试续跑");
+                start(null, null);
+            }
+        } catch (Exception e) {
+            log.warn("检查 posts 索引重建状态失败", e);
+        }
+    }
+
+    /**
+     * 触发重建（上次未完成则续跑）
+     *
+     * @param parallelism  并行 bulk 线程数，为空取默认
+     * @param docsPerSecond 写入速率上限，为空取默认
+     * @return 本节点是否开始执行（已有重建在跑时返回 false）
+     */
+    public boolean start(Integer parallelism, Double docsPerSecond) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        int workers = parallelism == null || parallelism < 1 ? DEFAULT_PARALLELISM
+                : Math.min(parallelism, MAX_PARALLELISM);
+        rateLimiter = RateLimiter.create(docsPerSecond == null || docsPerSecond <= 0
+                ? DEFAULT_DOCS_PER_SECOND : docsPerSecond);
+        try {
+            threadPoolConfig.cacheRebuildExecutor().execute(() -> {
+                try {
+                    runLocked(workers);
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            log.warn("posts 索引重建提交失败", e);
+            return false;
+        }
+    }
+
+    /**
+     * 调整运行中的速率上限
+     */
+    public void throttle(double docsPerSecond) {
+        if (docsPerSecond > 0) {
+            rateLimiter.setRate(docsPerSecond);
+        }
+    }
+
+    /**
+     * 进度：Redis 中的状态 + 库中最大 id（估算完成比例）
+     */
+    public Map<String, Object> progress() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        stringRedisTemplate.opsForHash().entries(STATE_KEY).forEach((k, v) -> result.put(k.toString(), v));
+        result.put("runningOnThisNode", running.get());
+        result.put("docsPerSecond", rateLimiter.getRate());
+        try {
+            Long maxId = postsMapper.selectMaxId();
+            result.put("maxId", maxId);
+            Object committed = result.get("lastId");
+            if (maxId != null && maxId > 0 && committed != null) {
+                result.put("percent", Math.min(100.0, Long.parseLong(committed.toString()) * 100.0 / maxId));
+            }
+        } catch (Exception e) {
+            log.warn("读取帖子最大 id 失败", e);
+        }
+        return result;
+    }
+
+    private void runLocked(int workers) {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        boolean held = false;
+        try {
+            // 不指定租期，走看门狗续期；节点崩溃后锁自动过期
+            held = lock.tryLock(0, TimeUnit.SECONDS);
+            if (!held) {
+                log.info("posts 索引重建已在其他节点执行");
+                return;
+            }
+            reindex(workers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon();
+        } catch (Exception e) {
+            log.error("posts 索引重建失败", e);
+            abandon();
+        } finally {
+            if (held && lock.isHeldByCurrentThread()) {
+                try {
+                    lock.unlock();
+                } catch (Exception e) {
+                    log.error("释放 posts 重建锁失败", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 重建失败：停止双写，状态记为失败（下次从头重建）
+     */
+    private void abandon() {
+        try {
+            stringRedisTemplate.delete(PostIndexSync.ROUTE_KEY);
+            stringRedisTemplate.opsForHash().put(STATE_KEY, "status", STATUS_FAILED);
+        } catch (Exception e) {
+            log.error("清理 posts 重建写入路由失败，需手动删除 {}", PostIndexSync.ROUTE_KEY, e);
+        }
+    }
+
+    private void reindex(int workers) throws Exception {
+        Map<Object, Object> state = stringRedisTemplate.opsForHash().entries(STATE_KEY);
+        String target = (String) state.get("index");
+        long afterId;
+        // 只续跑崩溃中断的重建（路由还在，双写没停过）
+        boolean resume = target != null
+                && STATUS_RUNNING.equals(state.get("status"))
+                && esClient.indices().exists(new GetIndexRequest(target), RequestOptions.DEFAULT);
+        if (resume) {
+            afterId = Long.parseLong(String.valueOf(state.getOrDefault("lastId", "0")));
+            indexedDocs.set(Long.parseLong(String.valueOf(state.getOrDefault("indexed", "0"))));
+            log.info("续跑 posts 索引重建: index={}, lastId={}", target, afterId);
+        } else {
+            target = PostIndexSync.INDEX_POSTS + "_v"
+                    + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+            createIndex(target);
+            afterId = 0L;
+            indexedDocs.set(0);
+            Map<String, String> init = new HashMap<>();
+            init.put("index", target);
+            init.put("lastId", "0");
+            init.put("indexed", "0");
+            init.put("startedAt", String.valueOf(System.currentTimeMillis()));
+            stringRedisTemplate.delete(STATE_KEY);
+            stringRedisTemplate.opsForHash().putAll(STATE_KEY, init);
+            log.info("开始 posts 索引重建: index={}", target);
+        }
+        stringRedisTemplate.opsForHash().put(STATE_KEY, "status", STATUS_RUNNING);
+        lastId.set(afterId);
+        // 从这里开始，线上写入同时进入新索引
+        stringRedisTemplate.opsForHash().put(PostIndexSync.ROUTE_KEY, PostIndexSync.ROUTE_SHADOW, target);
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "es-posts-reindex");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            long start = System.currentTimeMillis();
+            while (true) {
+                // 一轮：读 workers 批并行写入，全部成功后再提交 lastId，崩溃后从提交点续跑
+                List<Future<Integer>> futures = new ArrayList<>(workers);
+                long waveLastId = afterId;
+                for (int i = 0; i < workers; i++) {
+                    List<Post> posts = postsMapper.selectForReindexAfter(waveLastId, BATCH_SIZE);
+                    if (posts.isEmpty()) {
+                        break;
+                    }
+                    waveLastId = posts.get(posts.size() - 1).getId();
+                    rateLimiter.acquire(posts.size());
+                    String index = target;
+                    futures.add(pool.submit(() -> writeBatch(index, posts)));
+                    if (posts.size() < BATCH_SIZE) {
+                        break;
+                    }
+                }
+                if (futures.isEmpty()) {
+                    break;
+                }
+                long written = 0;
+                for (Future<Integer> f : futures) {
+                    try {
+                        written += f.get();
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("批次写入失败，停在 lastId=" + afterId, e.getCause());
+                    }
+                }
+                afterId = waveLastId;
+                lastId.set(afterId);
+                long total = indexedDocs.addAndGet(written);
+                Map<String, String> progress = new HashMap<>();
+                progress.put("lastId", String.valueOf(afterId));
+                progress.put("indexed", String.valueOf(total));
+                progress.put("updatedAt", String.valueOf(System.currentTimeMillis()));
+                stringRedisTemplate.opsForHash().putAll(STATE_KEY, progress);
+            }
+            log.info("posts 索引数据拷贝完成: index={}, docs={}, cost={}ms", target, indexedDocs.get(),
+                    System.currentTimeMillis() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        finishIndex(target);
+        swapAliasAndClearRoute(target);
+        stringRedisTemplate.opsForHash().put(STATE_KEY, "status", STATUS_DONE);
+        stringRedisTemplate.opsForHash().put(STATE_KEY, "finishedAt", String.valueOf(System.currentTimeMillis()));
+        log.info("posts 别名已切换到 {}", target);
+        reconcileCounters();
+    }
+
+    /**
+     * 在路由写锁里切换别名并删除路由；拿不到锁抛异常，由调用方放弃本次重建
+     */
+    private void swapAliasAndClearRoute(String target) throws Exception {
+        RLock routeLock = redissonClient.getReadWriteLock(PostIndexSync.ROUTE_LOCK_KEY).writeLock();
+        if (!routeLock.tryLock(ROUTE_LOCK_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("获取 posts 重建路由写锁超时");
+        }
+        try {
+            swapAlias(target);
+            // 别名已指向新索引，写入不再需要路由；切换前一直写旧索引 + 双写新索引
+            stringRedisTemplate.delete(PostIndexSync.ROUTE_KEY);
+        } finally {
+            routeLock.unlock();
+        }
+    }
+
+    /**
+     * 切换后用库里的计数覆盖新索引上的计数字段，走同步缓冲区发送，与线上增量保持先后顺序
+     */
+    private void reconcileCounters() {
+        long afterId = 0L;
+        long reconciled = 0;
+        try {
+            while (true) {
+                List<Post> posts = postsMapper.selectCountersAfter(afterId, BATCH_SIZE);
+                if (posts.isEmpty()) {
+                    break;
+                }
+                rateLimiter.acquire(posts.size());
+                for (Post post : posts) {
+                    Map<String, Object> counters = new HashMap<>();
+                    counters.put("collectCount", post.getCollectCount());
+                    counters.put("likeCount", post.getLikeCount());
+                    counters.put("commentCount", post.getCommentCount());
+                    counters.put("shareCount", post.getShareCount());
+                    counters.put("viewCount", post.getViewCount());
+                    postIndexSync.setCounters(post.getId(), counters);
+                }
+                reconciled += posts.size();
+                afterId = posts.get(posts.size() - 1).getId();
+                if (posts.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+            log.info("posts 计数对账完成: docs={}", reconciled);
+        } catch (Exception e) {
+            log.error("posts 计数对账中断: lastId={}", afterId, e);
+        }
+    }
+
+    /**
+     * 组装一批文档并写入，429/5xx 重试；文档已存在（双写先到）视为成功
+     *
+     * @return 本批写入的文档数
+     */
+    private int writeBatch(String index, List<Post> posts) throws Exception {
+        List<Map<String, Object>> docs = buildDocs(posts);
+        Exception last = null;
+        for (int attempt = 1; attempt <= MAX_BATCH_ATTEMPTS; attempt++) {
+            BulkRequest bulk = new BulkRequest();
+            for (Map<String, Object> doc : docs) {
+                bulk.add(new IndexRequest(index).id(String.valueOf(doc.get("id")))
+                        .opType(DocWriteRequest.OpType.CREATE)
+                        .source(doc));
+            }
+            try {
+                BulkResponse resp = esClient.bulk(bulk, RequestOptions.DEFAULT);
+                List<Map<String, Object>> retry = new ArrayList<>();
+                if (resp.hasFailures()) {
+                    for (BulkItemResponse item : resp.getItems()) {
+                        if (!item.isFailed() || item.getFailure().getStatus() == RestStatus.CONFLICT) {
+                            continue;
+                        }
+                        RestStatus status = item.getFailure().getStatus();
+                        if (status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500) {
+                            retry.add(docs.get(item.getItemId()));
+                        } else {
+                            log.warn("posts 重建丢弃文档: id={}, reason={}", item.getId(), item.getFailureMessage());
+                        }
+                    }
+                }
+                if (retry.isEmpty()) {
+                    return posts.size();
+                }
+                docs = retry;
+                last = new IllegalStateException("bulk 部分失败: " + retry.size());
+            } catch (Exception e) {
+                last = e;
+            }
+            failedBatches.increment();
+            if (attempt < MAX_BATCH_ATTEMPTS) {
+                Thread.sleep(200L << attempt);
+            }
+        }
+        throw last;
+    }
+
+    private List<Map<String, Object>> buildDocs(List<Post> posts) {
+        List<Long> userIds = posts.stream().map(Post::getUserId).filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+        Set<Long> topicIds = posts.stream().map(Post::getTopicId).filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        // 直接批量查库，不经过资料缓存，避免全量扫描把冷数据灌进缓存
+        Map<Long, UserProfile> profiles = new HashMap<>();
+        if (!userIds.isEmpty()) {
+            for (UserProfile profile : userMapper.selectBatchProfiles(userIds)) {
+                profiles.put(profile.getId(), profile);
+            }
+        }
+        Map<Long, TopicVO> topics = topicIds.isEmpty() ? Collections.emptyMap()
+                : topicService.getTopicsCachedByIds(topicIds);
+
+        List<Map<String, Object>> docs = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            UserProfile profile = profiles.get(post.getUserId());
+            TopicVO topic = post.getTopicId() == null ? null : topics.get(post.getTopicId());
+            Map<String, Object> doc = new HashMap<>();
+            doc.put("id", post.getId());
+            doc.put("userId", post.getUserId());
+            doc.put("topicId", post.getTopicId());
+            doc.put("title", post.getTitle());
+            doc.put("content", post.getContent());
+            doc.put("authorUsername", profile != null ? profile.getUsername() : null);
+            doc.put("authorAvatar", profile != null ? profile.getAvatar() : null);
+            doc.put("topicName", topic != null ? topic.getName() : null);
+            doc.put("collectCount", post.getCollectCount());
+            doc.put("likeCount", post.getLikeCount());
+            doc.put("commentCount", post.getCommentCount());
+            doc.put("shareCount", post.getShareCount());
+            doc.put("viewCount", post.getViewCount());
+            doc.put("createdAt", toEpochMilli(post.getCreatedAt()));
+            doc.put("updatedAt", toEpochMilli(post.getUpdatedAt()));
+            doc.put("status", post.getStatus() != null ? post.getStatus().name() : null);
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    private static Long toEpochMilli(LocalDateTime time) {
+        return time == null ? null : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void createIndex(String index) throws Exception {
+        // 导入期间不刷新、不复制，完成后恢复
+        Settings bulkLoad = Settings.builder()
+                .put("index.refresh_interval", "-1")
+                .put("index.number_of_replicas", 0)
+                .build();
+        try {
+            CreateIndexRequest req = new CreateIndexRequest(index);
+            req.settings(Settings.builder()
+                    .loadFromSource(PostsIndexInitializer.IK_SETTINGS, XContentType.JSON)
+                    .put(bulkLoad)
+                    .build());
+            req.mapping(PostsIndexInitializer.IK_MAPPINGS, XContentType.JSON);
+            esClient.indices().create(req, RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            log.warn("使用 IK 创建 {} 失败，退回标准分词器", index, e);
+            CreateIndexRequest req = new CreateIndexRequest(index);
+            req.settings(bulkLoad);
+            req.mapping(PostsIndexInitializer.STD_MAPPINGS, XContentType.JSON);
+            esClient.indices().create(req, RequestOptions.DEFAULT);
+        }
+    }
+
+    private void finishIndex(String index) throws Exception {
+        UpdateSettingsRequest restore = new UpdateSettingsRequest(index).settings(Settings.builder()
+                .putNull("index.refresh_interval")
+                .putNull("index.number_of_replicas")
+                .build());
+        esClient.indices().putSettings(restore, RequestOptions.DEFAULT);
+        esClient.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 原子切换别名；失败时别名和写入路由都保持原样，由调用方停掉双写
+     */
+    private void swapAlias(String target) throws Exception {
+        String alias = PostIndexSync.INDEX_POSTS;
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        GetAliasesResponse aliases = esClient.indices().getAlias(new GetAliasesRequest(alias),
+                RequestOptions.DEFAULT);
+        List<String> previous = new ArrayList<>(aliases.getAliases().keySet());
+        if (!previous.isEmpty()) {
+            for (String old : previous) {
+                request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(old).alias(alias));
+            }
+        } else if (esClient.indices().exists(new GetIndexRequest(alias), RequestOptions.DEFAULT)) {
+            // 首次切换：posts 是实体索引，与添加别名放在同一个原子请求里删除
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(alias));
+        }
+        request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(target).alias(alias));
+        esClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+        if (!previous.isEmpty()) {
+            log.info("旧版本索引 {} 已不再挂载别名，确认无误后可手动删除", previous);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.tmd.es;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tmd.entity.dto.SearchPageResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+
+/**
+ * 搜索结果的本地短 TTL 缓存 + 单飞（single-flight）
+ * <p>
+ * 热门关键词在 {@link #TTL_SECONDS} 秒内只打一次 ES，其余请求直接读本地；
+ * 未命中时同一个 key 同时只有一个线程查 ES，其余请求等待同一个 Future，最多等 {@link #WAIT_DEADLINE_MILLIS}。
+ * 搜索结果允许几秒的延迟（计数、新帖），因此不做跨节点失效，靠 TTL 过期。
+ */
+@Component
+@Slf4j
+public class SearchResultCache {
+
+    private static final long TTL_SECONDS = 15;
+    private static final long MAX_ENTRIES = 10_000;
+    private static final long WAIT_DEADLINE_MILLIS = 3000;
+
+    @FunctionalInterface
+    public interface Loader {
+        SearchPageResult load() throws IOException;
+    }
+
+    private final Cache<String, SearchPageResult> results = Caffeine.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .expireAfterWrite(TTL_SECONDS, TimeUnit.SECONDS)
+            .build();
+    private final ConcurrentHashMap<String, CompletableFuture<SearchPageResult>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+    private final Counter loadCounter;
+    private final Counter coalescedCounter;
+
+    public SearchResultCache(MeterRegistry meterRegistry) {
+        this.hitCounter = Counter.builder("search.result.cache").tag("result", "hit").register(meterRegistry);
+        this.loadCounter = Counter.builder("search.result.cache").tag("result", "loaded").register(meterRegistry);
+        this.coalescedCounter = Counter.builder("search.result.cache").tag("result", "coalesced")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param key    归一化后的查询条件
+     * @param loader 查 ES 并组装整页
+     * @throws IOException ES 查询失败，或等待其他线程的查询失败/超时
+     */
+    public SearchPageResult get(String key, Loader loader) throws IOException {
+        SearchPageResult cached = results.getIfPresent(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+
+        CompletableFuture<SearchPageResult> mine = new CompletableFuture<>();
+        CompletableFuture<SearchPageResult> existing = inFlight.putIfAbsent(key, mine);
+        if (existing == null) {
+            // 本线程是 leader
+            try {
+                SearchPageResult page = loader.load();
+                results.put(key, page);
+                loadCounter.increment();
+                mine.complete(page);
+                return page;
+            } catch (IOException | RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        }
+
+        coalescedCounter.increment();
+        try {
+            return existing.get(WAIT_DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("等待搜索结果超时: key={}", key);
+            throw new IOException("search wait timeout", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("search wait interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("search failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.tmd.es;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tmd.config.ThreadPoolConfig;
+import com.tmd.entity.dto.SuggestItem;
+import com.tmd.mapper.PostsMapper;
+import com.tmd.mapper.TopicMapper;
+import com.tmd.mapper.UserMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搜索联想的本地前缀索引
+ * <p>
+ * 1. 热门帖子标题、话题名、用户名小写后排成有序数组（快照），前缀查询 = 二分定位匹配区间 + 顺序扫描；
+ * 区间超过 {@link #MAX_SCAN} 条时改为按权重从高到低遍历快照，取落在区间内的前 {@link #MAX_SIZE} 条，结果仍是精确的前 N
+ * 2. 快照每 {@link #REBUILD_INTERVAL_MILLIS} 毫秒整体重建一次并原子替换；两次重建之间新发的帖子/新建的话题
+ * 写进一个小的跳表增量区，查询时与快照合并
+ * 3. 每个前缀的前 {@link #MAX_SIZE} 条结果再缓存一层，热门前缀直接是一次本地 Map 查找；
+ * 增量写入时只失效该文本自身的各级前缀
+ * <p>
+ * 本地未命中时由调用方回源 ES，结果通过 {@link #remember} 记入同一层缓存。
+ */
+@Component
+@Slf4j
+public class SuggestIndex {
+
+    public static final int MAX_SIZE = 20;
+    private static final int MAX_PREFIX_LENGTH = 32;
+    private static final int MAX_SCAN = 5000;
+    private static final int MAX_RECENT = 10_000;
+    private static final int HOT_POST_LIMIT = 20_000;
+    private static final int TOPIC_LIMIT = 10_000;
+    private static final int USER_LIMIT = 20_000;
+    private static final long REBUILD_INTERVAL_MILLIS = 600_000;
+
+    /**
+     * 不可变快照：keys 为小写文本（有序），items 与之一一对应；byWeight 为按权重从高到低排列的下标
+     */
+    private static final class Snapshot {
+        final String[] keys;
+        final SuggestItem[] items;
+        final int[] byWeight;
+
+        Snapshot(String[] keys, SuggestItem[] items, int[] byWeight) {
+            this.keys = keys;
+            this.items = items;
+            this.byWeight = byWeight;
+        }
+    }
+
+    private static final Comparator<SuggestItem> BY_WEIGHT = Comparator
+            .comparingLong((SuggestItem i) -> i.getWeight() == null ? 0L : i.getWeight()).reversed()
+            .thenComparingInt(i -> i.getText().length());
+
+    private final PostsMapper postsMapper;
+    private final TopicMapper topicMapper;
+    private final UserMapper userMapper;
+    private final ThreadPoolConfig threadPoolConfig;
+
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new SuggestItem[0], new int[0]);
+    // key = 小写文本 + NUL + 类型
+    private final ConcurrentSkipListMap<String, SuggestItem> recent = new ConcurrentSkipListMap<>();
+    private final Cache<String, List<SuggestItem>> prefixCache = Caffeine.newBuilder()
+            .maximumSize(50_000)
+            .expireAfterWrite(60, TimeUnit.SECONDS)
+            .build();
+
+    public SuggestIndex(PostsMapper postsMapper,
+            TopicMapper topicMapper,
+            UserMapper userMapper,
+            ThreadPoolConfig threadPoolConfig) {
+        this.postsMapper = postsMapper;
+        this.topicMapper = topicMapper;
+        this.userMapper = userMapper;
+        this.threadPoolConfig = threadPoolConfig;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            threadPoolConfig.cacheRebuildExecutor().execute(this::rebuild);
+        } catch (Exception e) {
+            log.warn("联想索引首次构建提交失败", e);
+        }
+    }
+
+    /**
+     * @return 按权重排序的联想词；本地没有任何匹配时返回空列表
+     */
+    public List<SuggestItem> suggest(String prefix, int size) {
+        String p = normalize(prefix);
+        if (p.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int n = Math.min(Math.max(size, 1), MAX_SIZE);
+        List<SuggestItem> top;
+        if (p.length() > MAX_PREFIX_LENGTH) {
+            top = lookup(p);
+        } else {
+            top = prefixCache.get(p, this::lookup);
+        }
+        return top.size() <= n ? top : top.subList(0, n);
+    }
+
+    /**
+     * 记下 ES 回源得到的结果，后续同一前缀走本地
+     */
+    public void remember(String prefix, List<SuggestItem> items) {
+        String p = normalize(prefix);
+        if (!p.isEmpty() && p.length() <= MAX_PREFIX_LENGTH && items != null) {
+            prefixCache.put(p, List.copyOf(items));
+        }
+    }
+
+    /**
+     * 新帖子/新话题即时可联想
+     */
+    public void add(String type, String text, long weight) {
+        if (StrUtil.isBlank(text)) {
+            return;
+        }
+        String key = normalize(text);
+        if (recent.size() >= MAX_RECENT) {
+            // 增量区过大说明重建跟不上，丢掉增量，等下一次重建从库里补
+            recent.clear();
+        }
+        recent.put(key + '\u0000' + type, SuggestItem.builder().text(text.trim()).type(type).weight(weight).build());
+        for (int i = 1; i <= Math.min(key.length(), MAX_PREFIX_LENGTH); i++) {
+            prefixCache.invalidate(key.substring(0, i));
+        }
+    }
+
+    @Scheduled(fixedDelay = REBUILD_INTERVAL_MILLIS, initialDelay = REBUILD_INTERVAL_MILLIS)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, SuggestItem> merged = new HashMap<>();
+            collect(merged, postsMapper.selectHotTitles(HOT_POST_LIMIT));
+            collect(merged, topicMapper.selectSuggestNames(TOPIC_LIMIT));
+            collect(merged, userMapper.selectSuggestNames(USER_LIMIT));
+
+            List<Map.Entry<String, SuggestItem>> entries = new ArrayList<>(merged.entrySet());
+            entries.sort(Map.Entry.comparingByKey());
+            String[] keys = new String[entries.size()];
+            SuggestItem[] items = new SuggestItem[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                String k = entries.get(i).getKey();
+                keys[i] = k.substring(0, k.lastIndexOf('\u0000'));
+                items[i] = entries.get(i).getValue();
+            }
+            Integer[] order = new Integer[items.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> BY_WEIGHT.compare(items[a], items[b]));
+            snapshot = new Snapshot(keys, items, Arrays.stream(order).mapToInt(Integer::intValue).toArray());
+            // 已进入快照的增量不再单独保留
+            recent.keySet().removeIf(merged::containsKey);
+            prefixCache.invalidateAll();
+            log.info("联想索引重建完成: entries={}, cost={}ms", keys.length, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("联想索引重建失败", e);
+        }
+    }
+
+    private static void collect(Map<String, SuggestItem> merged, List<SuggestItem> rows) {
+        if (rows == null) {
+            return;
+        }
+        for (SuggestItem row : rows) {
+            if (row == null || StrUtil.isBlank(row.getText())) {
+                continue;
+            }
+            row.setText(row.getText().trim());
+            merged.merge(normalize(row.getText()) + '\u0000' + row.getType(), row,
+                    (a, b) -> BY_WEIGHT.compare(a, b) <= 0 ? a : b);
+        }
+    }
+
+    private List<SuggestItem> lookup(String p) {
+        // 小顶堆保留权重最高的 MAX_SIZE 条
+        PriorityQueue<SuggestItem> heap = new PriorityQueue<>(MAX_SIZE + 1, BY_WEIGHT.reversed());
+        Set<String> seen = new HashSet<>();
+
+        Snapshot snap = snapshot;
+        int lo = lowerBound(snap.keys, p);
+        int hi = lowerBound(snap.keys, p + Character.MAX_VALUE);
+        if (hi - lo <= MAX_SCAN) {
+            for (int i = lo; i < hi; i++) {
+                offer(heap, seen, snap.keys[i], snap.items[i]);
+            }
+        } else {
+            // 匹配很多的短前缀：按权重从高到低找落在区间内的，凑满即是前 N
+            int found = 0;
+            for (int k = 0; k < snap.byWeight.length && found < MAX_SIZE; k++) {
+                int i = snap.byWeight[k];
+                if (i >= lo && i < hi) {
+                    offer(heap, seen, snap.keys[i], snap.items[i]);
+                    found++;
+                }
+            }
+        }
+        for (Map.Entry<String, SuggestItem> e : recent.subMap(p, p + Character.MAX_VALUE).entrySet()) {
+            String k = e.getKey();
+            offer(heap, seen, k.substring(0, k.lastIndexOf('\u0000')), e.getValue());
+        }
+
+        List<SuggestItem> result = new ArrayList<>(heap);
+        result.sort(BY_WEIGHT);
+        return List.copyOf(result);
+    }
+
+    private static void offer(PriorityQueue<SuggestItem> heap, Set<String> seen, String key, SuggestItem item) {
+        if (!seen.add(key + '\u0000' + item.getType())) {
+            return;
+        }
+        heap.offer(item);
+        if (heap.size() > MAX_SIZE) {
+            heap.poll();
+        }
+    }
+
+    private static int lowerBound(String[] keys, String p) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(p) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,519 @@
+package com.tmd.feed;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.tmd.entity.dto.PageResult;
+import com.tmd.entity.dto.PostComment;
+import com.tmd.entity.dto.PostCommentVO;
+import com.tmd.entity.dto.ScrollResult;
+import com.tmd.entity.dto.UserProfile;
+import com.tmd.mapper.PostCommentMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 评论树读路径：直接用写路径已经维护的 Redis 结构出页
+ * <p>
+ * post:comment:{postId}（根评论 ZSet）、post:comment:child:{rootId}（回复 ZSet）、
+ * post:comment:content:{id}（评论 JSON）。一页评论的 Redis 往返固定为：
+ * 一次 pipeline（就绪标记 + ZCARD + 根评论区间）、一次 pipeline（每个根评论的回复数与前 {@link #REPLY_CAP} 条回复）、
+ * 一次 MGET 评论内容；内容未命中的一次 selectBatchIds 回源并 pipeline 回填。
+ * <p>
+ * 写路径只在评论产生时 ZADD，历史评论不在 ZSet 里。首次读取某帖子时（post:comment:ready:{postId} 不存在）
+ * 按 id 重建最近 {@link #INDEX_ROOT_LIMIT} 条根评论及其回复的索引，就绪标记里记录索引之外更早的根评论数（tail），
+ * 落在索引之外的分页、按点赞排序（hottest）仍走 DB。
+ */
+@Component
+@Slf4j
+public class CommentTreeCache {
+
+    public static final String POST_COMMENT_KEY_FMT = "post:comment:%d";
+    public static final String POST_COMMENT_CHILD_KEY_FMT = "post:comment:child:%d";
+    public static final String POST_COMMENT_CONTENT_KEY_FMT = "post:comment:content:%d";
+    private static final String POST_COMMENT_READY_KEY_FMT = "post:comment:ready:%d";
+    private static final String POST_COMMENT_BUILD_LOCK_FMT = "lock:post:comment:build:%d";
+    public static final long CONTENT_TTL_SECONDS = 1800;
+    private static final long READY_TTL_SECONDS = 3600;
+    private static final long BUILD_LOCK_SECONDS = 30;
+    private static final int INDEX_ROOT_LIMIT = 1000;
+    private static final int INDEX_CHUNK_SIZE = 500;
+    public static final int REPLY_CAP = 3;
+    private static final ZoneOffset SCORE_OFFSET = ZoneOffset.of("+8");
+
+    /**
+     * 只删除自己持有的重建锁：重建超过锁时长后锁可能已被别的节点拿走
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final PostCommentMapper postCommentMapper;
+    private final PostFeedHydrator postFeedHydrator;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public CommentTreeCache(StringRedisTemplate stringRedisTemplate,
+            PostCommentMapper postCommentMapper,
+            PostFeedHydrator postFeedHydrator,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.postCommentMapper = postCommentMapper;
+        this.postFeedHydrator = postFeedHydrator;
+        this.hitCounter = Counter.builder("post.comment.page").tag("result", "cache").register(meterRegistry);
+        this.missCounter = Counter.builder("post.comment.page").tag("result", "db").register(meterRegistry);
+    }
+
+    /**
+     * 与写路径一致的 ZSet 分值（+8 时区毫秒）
+     */
+    public static long score(LocalDateTime createdAt) {
+        return createdAt == null ? 0L : createdAt.toInstant(SCORE_OFFSET).toEpochMilli();
+    }
+
+    /**
+     * 评论内容缓存：整条评论序列化，读路径不必再回表取作者/父评论
+     */
+    public void putBody(PostComment comment) {
+        stringRedisTemplate.opsForValue().set(String.format(POST_COMMENT_CONTENT_KEY_FMT, comment.getId()),
+                JSONUtil.toJsonStr(comment), CONTENT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 删除的根评论不在索引里时，就绪标记里的 tail 也要减一
+     */
+    public void onRootRemovedOutsideIndex(Long postId) {
+        String readyKey = String.format(POST_COMMENT_READY_KEY_FMT, postId);
+        try {
+            String tail = stringRedisTemplate.opsForValue().get(readyKey);
+            if (StrUtil.isNumeric(tail) && Long.parseLong(tail) > 0) {
+                stringRedisTemplate.opsForValue().decrement(readyKey);
+            }
+        } catch (Exception e) {
+            log.warn("调整评论索引尾部失败: postId={}", postId, e);
+        }
+    }
+
+    /**
+     * 从 Redis 出一页根评论（带前几条回复）；无法从缓存出页时返回 null，由调用方走 DB
+     */
+    public PageResult page(Long postId, int page, int size, String sortBy) {
+        if ("hottest".equals(sortBy)) {
+            return null;
+        }
+        boolean oldest = "oldest".equals(sortBy);
+        try {
+            long[] state = indexState(postId);
+            if (state == null) {
+                if (!buildIndex(postId)) {
+                    missCounter.increment();
+                    return null;
+                }
+                state = indexState(postId);
+                if (state == null) {
+                    missCounter.increment();
+                    return null;
+                }
+            }
+            long indexed = state[0];
+            long tail = state[1];
+            int offset = (page - 1) * size;
+            // 最新在前时，索引覆盖前 indexed 条；最早在前时只有 tail 为 0 才完整
+            if ((oldest && tail > 0) || (!oldest && tail > 0 && offset + size > indexed)) {
+                missCounter.increment();
+                return null;
+            }
+
+            String rootKey = String.format(POST_COMMENT_KEY_FMT, postId);
+            Set<String> rootMembers = oldest
+                    ? stringRedisTemplate.opsForZSet().range(rootKey, offset, offset + size - 1)
+                    : stringRedisTemplate.opsForZSet().reverseRange(rootKey, offset, offset + size - 1);
+            List<Long> rootIds = toIds(rootMembers);
+            long total = indexed + tail;
+            if (rootIds.isEmpty()) {
+                hitCounter.increment();
+                return PageResult.builder().rows(Collections.emptyList()).total(total).currentPage(page).build();
+            }
+
+            Map<Long, Long> replyCounts = new HashMap<>();
+            Map<Long, List<ZSetOperations.TypedTuple<String>>> replyWindows = loadReplyWindows(rootIds, replyCounts);
+
+            List<Long> bodyIds = new ArrayList<>(rootIds);
+            replyWindows.values().forEach(w -> w.forEach(t -> bodyIds.add(Long.valueOf(t.getValue()))));
+            Map<Long, PostComment> bodies = loadBodies(bodyIds);
+            // 回复的回复需要父评论作者，父评论可能不在本页窗口里，再补一轮
+            Set<Long> parentIds = new LinkedHashSet<>();
+            for (PostComment c : bodies.values()) {
+                if (c.getParentId() != null && c.getParentId() != 0L && !bodies.containsKey(c.getParentId())) {
+                    parentIds.add(c.getParentId());
+                }
+            }
+            if (!parentIds.isEmpty()) {
+                bodies.putAll(loadBodies(new ArrayList<>(parentIds)));
+            }
+
+            Set<Long> userIds = new HashSet<>();
+            bodies.values().forEach(c -> userIds.add(c.getCommenterId()));
+            Map<Long, UserProfile> profiles = postFeedHydrator.loadProfiles(userIds);
+
+            List<PostCommentVO> vos = new ArrayList<>(rootIds.size());
+            for (Long rootId : rootIds) {
+                PostComment root = bodies.get(rootId);
+                if (root == null) {
+                    continue;
+                }
+                List<ZSetOperations.TypedTuple<String>> window = replyWindows.getOrDefault(rootId,
+                        Collections.emptyList());
+                List<PostCommentVO.ReplyVO> replies = new ArrayList<>(window.size());
+                Long cursor = null;
+                Long cursorId = null;
+                for (ZSetOperations.TypedTuple<String> t : window) {
+                    PostComment child = bodies.get(Long.valueOf(t.getValue()));
+                    if (t.getScore() != null) {
+                        cursor = t.getScore().longValue();
+                        cursorId = Long.valueOf(t.getValue());
+                    }
+                    if (child != null) {
+                        replies.add(toReplyVO(child, rootId, bodies, profiles));
+                    }
+                }
+                long replyCount = replyCounts.getOrDefault(rootId, 0L);
+                boolean hasMore = replyCount > window.size();
+                vos.add(PostCommentVO.builder()
+                        .commentId(root.getId())
+                        .content(root.getContent())
+                        .likeCount(root.getLikes())
+                        .replyCount((int) replyCount)
+                        .status("normal")
+                        .author(userInfo(profiles.get(root.getCommenterId())))
+                        .replies(replies)
+                        .hasMoreReplies(hasMore)
+                        .repliesCursor(hasMore ? cursor : null)
+                        .repliesCursorId(hasMore ? cursorId : null)
+                        .isLiked(false)
+                        .createdAt(String.valueOf(root.getCreatedAt()))
+                        .updatedAt(String.valueOf(root.getCreatedAt()))
+                        .build());
+            }
+            hitCounter.increment();
+            return PageResult.builder().rows(vos).total(total).currentPage(page).build();
+        } catch (Exception e) {
+            log.warn("从缓存读取评论树失败: postId={}", postId, e);
+            missCounter.increment();
+            return null;
+        }
+    }
+
+    /**
+     * 加载更多回复：按 (创建时间, id) 从游标之后继续取 size 条，max/lastId 为下一次的游标（没有更多时为空）。
+     * 同一毫秒可能有多条回复，只按分值翻页会跳过它们，所以游标带上最后一条的 id；
+     * 旧客户端只传 cursor 时按原来的语义跳过整个毫秒。
+     */
+    public ScrollResult replies(Long postId, Long rootId, Long cursor, Long lastId, int size) {
+        long after = cursor == null ? Long.MIN_VALUE : cursor;
+        long afterId = cursor == null ? 0L : (lastId == null ? Long.MAX_VALUE : lastId);
+        List<PostComment> rows = null;
+        // 根评论在已就绪的索引里，它的回复 ZSet 才是完整的
+        long[] state = indexState(postId);
+        if (state != null && stringRedisTemplate.opsForZSet()
+                .score(String.format(POST_COMMENT_KEY_FMT, postId), String.valueOf(rootId)) != null) {
+            List<Long> ids = replyIdsAfter(String.format(POST_COMMENT_CHILD_KEY_FMT, rootId), after, afterId, size);
+            Map<Long, PostComment> bodies = loadBodies(ids);
+            rows = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                PostComment c = bodies.get(id);
+                if (c != null) {
+                    rows.add(c);
+                }
+            }
+        }
+        if (rows == null) {
+            LocalDateTime afterTime = after == Long.MIN_VALUE ? LocalDateTime.of(1970, 1, 1, 0, 0)
+                    : LocalDateTime.ofInstant(Instant.ofEpochMilli(after), SCORE_OFFSET);
+            rows = postCommentMapper.selectRepliesAfter(rootId, afterTime, afterId, size);
+        }
+
+        Map<Long, PostComment> bodies = new HashMap<>();
+        rows.forEach(c -> bodies.put(c.getId(), c));
+        Set<Long> parentIds = new LinkedHashSet<>();
+        for (PostComment c : rows) {
+            if (c.getParentId() != null && !c.getParentId().equals(rootId) && !bodies.containsKey(c.getParentId())) {
+                parentIds.add(c.getParentId());
+            }
+        }
+        if (!parentIds.isEmpty()) {
+            bodies.putAll(loadBodies(new ArrayList<>(parentIds)));
+        }
+        Set<Long> userIds = new HashSet<>();
+        bodies.values().forEach(c -> userIds.add(c.getCommenterId()));
+        Map<Long, UserProfile> profiles = postFeedHydrator.loadProfiles(userIds);
+        List<PostCommentVO.ReplyVO> result = new ArrayList<>(rows.size());
+        for (PostComment c : rows) {
+            result.add(toReplyVO(c, rootId, bodies, profiles));
+        }
+        PostComment last = rows.size() < size ? null : rows.get(rows.size() - 1);
+        return ScrollResult.builder()
+                .data(result)
+                .max(last == null ? null : score(last.getCreatedAt()))
+                .lastId(last == null ? null : last.getId())
+                .scroll(result.size())
+                .build();
+    }
+
+    /**
+     * 从回复 ZSet 里取 (after, afterId) 之后的 size 个 id：分值从 after 起闭区间取，跳过同分值里 id 不大于 afterId 的；
+     * 同分值成员按字典序排列，评论 id 等长，与按 id 的顺序一致
+     */
+    private List<Long> replyIdsAfter(String childKey, long after, long afterId, int size) {
+        double min = after == Long.MIN_VALUE ? Double.NEGATIVE_INFINITY : after;
+        List<Long> ids = new ArrayList<>(size);
+        long offset = 0;
+        while (ids.size() < size) {
+            Set<ZSetOperations.TypedTuple<String>> batch = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(childKey, min, Double.POSITIVE_INFINITY, offset, size);
+            if (batch == null || batch.isEmpty()) {
+                break;
+            }
+            for (ZSetOperations.TypedTuple<String> t : batch) {
+                if (!StrUtil.isNumeric(t.getValue())) {
+                    continue;
+                }
+                long id = Long.parseLong(t.getValue());
+                if (t.getScore() != null && t.getScore().longValue() == after && id <= afterId) {
+                    continue;
+                }
+                ids.add(id);
+                if (ids.size() == size) {
+                    break;
+                }
+            }
+            if (batch.size() < size) {
+                break;
+            }
+            offset += batch.size();
+        }
+        return ids;
+    }
+
+    /**
+     * 返回 [索引内根评论数, 索引外更早的根评论数]；未就绪返回 null
+     */
+    private long[] indexState(Long postId) {
+        String readyKey = String.format(POST_COMMENT_READY_KEY_FMT, postId);
+        String rootKey = String.format(POST_COMMENT_KEY_FMT, postId);
+        List<Object> res = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                operations.opsForValue().get(readyKey);
+                operations.opsForZSet().zCard(rootKey);
+                return null;
+            }
+        });
+        Object tail = res.get(0);
+        if (!(tail instanceof String) || !StrUtil.isNumeric((String) tail)) {
+            return null;
+        }
+        long indexed = res.get(1) instanceof Long ? (Long) res.get(1) : 0L;
+        return new long[] { indexed, Long.parseLong((String) tail) };
+    }
+
+    /**
+     * 重建索引：最近 INDEX_ROOT_LIMIT 条根评论 + 它们的回复，只写 id 与分值，内容按需懒加载。
+     * 只做 ZADD 合并，不删除已有成员，和并发的写路径不冲突；DB 里已不存在的成员在出页时跳过。
+     */
+    private boolean buildIndex(Long postId) {
+        String lockKey = String.format(POST_COMMENT_BUILD_LOCK_FMT, postId);
+        String owner = UUID.randomUUID().toString();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, owner, BUILD_LOCK_SECONDS,
+                TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return false;
+        }
+        try {
+            long totalRoots = postCommentMapper.countRootsByPostId(postId);
+            List<PostComment> roots = postCommentMapper.selectRootIndex(postId, INDEX_ROOT_LIMIT);
+            List<Long> rootIds = new ArrayList<>(roots.size());
+            roots.forEach(r -> rootIds.add(r.getId()));
+            List<PostComment> replies = new ArrayList<>();
+            for (int i = 0; i < rootIds.size(); i += INDEX_CHUNK_SIZE) {
+                replies.addAll(postCommentMapper
+                        .selectReplyIndexByRootIds(rootIds.subList(i, Math.min(i + INDEX_CHUNK_SIZE, rootIds.size()))));
+            }
+            long tail = Math.max(0, totalRoots - roots.size());
+            String rootKey = String.format(POST_COMMENT_KEY_FMT, postId);
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    for (PostComment r : roots) {
+                        operations.opsForZSet().add(rootKey, String.valueOf(r.getId()), score(r.getCreatedAt()));
+                    }
+                    for (PostComment c : replies) {
+                        operations.opsForZSet().add(String.format(POST_COMMENT_CHILD_KEY_FMT, c.getRootId()),
+                                String.valueOf(c.getId()), score(c.getCreatedAt()));
+                    }
+                    operations.opsForValue().set(String.format(POST_COMMENT_READY_KEY_FMT, postId),
+                            String.valueOf(tail), READY_TTL_SECONDS, TimeUnit.SECONDS);
+                    return null;
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            log.warn("构建评论索引失败: postId={}", postId, e);
+            return false;
+        } finally {
+            try {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), owner);
+            } catch (Exception e) {
+                log.warn("释放评论索引锁失败: postId={}", postId, e);
+            }
+        }
+    }
+
+    private Map<Long, List<ZSetOperations.TypedTuple<String>>> loadReplyWindows(List<Long> rootIds,
+            Map<Long, Long> replyCounts) {
+        List<Object> res = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (Long rootId : rootIds) {
+                    String childKey = String.format(POST_COMMENT_CHILD_KEY_FMT, rootId);
+                    operations.opsForZSet().zCard(childKey);
+                    operations.opsForZSet().rangeWithScores(childKey, 0, REPLY_CAP - 1);
+                }
+                return null;
+            }
+        });
+        Map<Long, List<ZSetOperations.TypedTuple<String>>> windows = new HashMap<>();
+        for (int i = 0; i < rootIds.size(); i++) {
+            Object count = res.get(i * 2);
+            replyCounts.put(rootIds.get(i), count instanceof Long ? (Long) count : 0L);
+            Object window = res.get(i * 2 + 1);
+            List<ZSetOperations.TypedTuple<String>> list = new ArrayList<>();
+            if (window instanceof Collection) {
+                for (Object o : (Collection<?>) window) {
+                    if (o instanceof ZSetOperations.TypedTuple) {
+                        @SuppressWarnings("unchecked")
+                        ZSetOperations.TypedTuple<String> t = (ZSetOperations.TypedTuple<String>) o;
+                        if (t.getValue() != null) {
+                            list.add(t);
+                        }
+                    }
+                }
+            }
+            windows.put(rootIds.get(i), list);
+        }
+        return windows;
+    }
+
+    /**
+     * 一次 MGET 读评论内容，未命中的一次 selectBatchIds 回源并 pipeline 回填；DB 里也没有的视为已删除
+     */
+    private Map<Long, PostComment> loadBodies(List<Long> ids) {
+        Map<Long, PostComment> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        List<String> keys = new ArrayList<>(ids.size());
+        ids.forEach(id -> keys.add(String.format(POST_COMMENT_CONTENT_KEY_FMT, id)));
+        List<String> cached = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<Long> missed = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String json = cached == null ? null : cached.get(i);
+            // 旧版本这里只存了纯文本内容，解析不了就当未命中
+            if (StrUtil.isBlank(json) || !JSONUtil.isTypeJSONObject(json)) {
+                missed.add(ids.get(i));
+                continue;
+            }
+            try {
+                result.put(ids.get(i), JSONUtil.toBean(json, PostComment.class));
+            } catch (Exception e) {
+                missed.add(ids.get(i));
+            }
+        }
+        if (missed.isEmpty()) {
+            return result;
+        }
+        List<PostComment> rows = postCommentMapper.selectBatchIds(missed);
+        if (rows == null || rows.isEmpty()) {
+            return result;
+        }
+        for (PostComment c : rows) {
+            result.put(c.getId(), c);
+        }
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    for (PostComment c : rows) {
+                        operations.opsForValue().set(String.format(POST_COMMENT_CONTENT_KEY_FMT, c.getId()),
+                                JSONUtil.toJsonStr(c), CONTENT_TTL_SECONDS, TimeUnit.SECONDS);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("回填评论内容缓存失败: ids={}", missed, e);
+        }
+        return result;
+    }
+
+    private PostCommentVO.ReplyVO toReplyVO(PostComment child, Long rootId, Map<Long, PostComment> bodies,
+            Map<Long, UserProfile> profiles) {
+        PostCommentVO.UserInfo replyTo = null;
+        if (child.getParentId() != null && !child.getParentId().equals(rootId)) {
+            PostComment parent = bodies.get(child.getParentId());
+            if (parent != null) {
+                replyTo = userInfo(profiles.get(parent.getCommenterId()));
+            }
+        }
+        return PostCommentVO.ReplyVO.builder()
+                .commentId(child.getId())
+                .content(child.getContent())
+                .likeCount(child.getLikes())
+                .author(userInfo(profiles.get(child.getCommenterId())))
+                .replyToUser(replyTo)
+                .createdAt(String.valueOf(child.getCreatedAt()))
+                .isLiked(false)
+                .build();
+    }
+
+    private static PostCommentVO.UserInfo userInfo(UserProfile p) {
+        if (p == null) {
+            return null;
+        }
+        return PostCommentVO.UserInfo.builder()
+                .userId(p.getId())
+                .username(p.getUsername())
+                .avatar(p.getAvatar())
+                .build();
+    }
+
+    private static List<Long> toIds(Set<String> members) {
+        List<Long> ids = new ArrayList<>();
+        if (members == null) {
+            return ids;
+        }
+        for (String m : members) {
+            if (StrUtil.isNumeric(m)) {
+                ids.add(Long.valueOf(m));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,138 @@
+package com.tmd.feed;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tmd.config.ThreadPoolConfig;
+import com.tmd.entity.dto.PageResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * 列表缓存未命中时的回源：单飞（single-flight）+ stale-while-revalidate
+ * <p>
+ * 1. 同一 JVM 内同一个列表 key 同时只有一个线程查库，其余请求等待同一个 Future，最多等 {@link #WAIT_DEADLINE_MILLIS}
+ * 2. 每次成功加载/命中的页面记在本地（硬 TTL {@link #HARD_TTL_SECONDS}）；Redis 里的列表缓存过期（软 TTL）后，
+ * 若本地还有上一次的页面，直接返回旧页面并在后台刷新，不让用户等也不返回空数据
+ * 3. 等待超时且没有旧页面时才退化为空页
+ * <p>
+ * 跨节点不再加 Redisson 公平锁：每个节点每个 key 最多一个回源查询，DB 压力与节点数成正比，可以接受。
+ */
+@Component
+@Slf4j
+public class FeedPageLoader {
+
+    private static final long HARD_TTL_SECONDS = 900; // 旧页面最多兜底 15 分钟
+    private static final long WAIT_DEADLINE_MILLIS = 3000; // 跟随者最长等待时间
+    private static final long MAX_STALE_PAGES = 2000;
+
+    private final ThreadPoolConfig threadPoolConfig;
+    private final ConcurrentHashMap<String, CompletableFuture<PageResult>> inFlight = new ConcurrentHashMap<>();
+    private final Cache<String, PageResult> lastKnown = Caffeine.newBuilder()
+            .maximumSize(MAX_STALE_PAGES)
+            .expireAfterWrite(HARD_TTL_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    private final Counter loadCounter;
+    private final Counter coalescedCounter;
+    private final Counter staleCounter;
+    private final Counter timeoutCounter;
+
+    public FeedPageLoader(ThreadPoolConfig threadPoolConfig, MeterRegistry meterRegistry) {
+        this.threadPoolConfig = threadPoolConfig;
+        this.loadCounter = Counter.builder("feed.page.load").tag("result", "loaded").register(meterRegistry);
+        this.coalescedCounter = Counter.builder("feed.page.load").tag("result", "coalesced").register(meterRegistry);
+        this.staleCounter = Counter.builder("feed.page.load").tag("result", "stale").register(meterRegistry);
+        this.timeoutCounter = Counter.builder("feed.page.load").tag("result", "timeout").register(meterRegistry);
+    }
+
+    /**
+     * 缓存未命中时调用
+     *
+     * @param key    列表缓存 key
+     * @param loader 查库并组装整页（调用方负责把结果写回缓存）
+     * @return 新加载的页面；刷新中时返回旧页面；等待超时且无旧页面时返回 null，由调用方兜底
+     */
+    public PageResult load(String key, Supplier<PageResult> loader) {
+        PageResult stale = lastKnown.getIfPresent(key);
+        if (stale != null) {
+            // 软过期：先给旧数据，后台刷新
+            staleCounter.increment();
+            refreshAsync(key, loader);
+            return stale;
+        }
+
+        CompletableFuture<PageResult> mine = new CompletableFuture<>();
+        CompletableFuture<PageResult> existing = inFlight.putIfAbsent(key, mine);
+        if (existing == null) {
+            // 本线程是 leader，直接在请求线程里查库
+            return runLoad(key, loader, mine);
+        }
+
+        coalescedCounter.increment();
+        try {
+            return existing.get(WAIT_DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeoutCounter.increment();
+            log.warn("等待列表回源超时: key={}", key);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.warn("列表回源失败: key={}", key, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * 命中缓存时记录最近一次页面，供之后 Redis 过期时兜底。
+     * L1 命中返回的是同一个对象，只有页面实例变化时才写，避免每次请求都写 Caffeine
+     */
+    public void remember(String key, PageResult page) {
+        if (page == null) {
+            return;
+        }
+        PageResult prev = lastKnown.getIfPresent(key);
+        if (prev == null || prev.getRows() != page.getRows()) {
+            lastKnown.put(key, page);
+        }
+    }
+
+    private void refreshAsync(String key, Supplier<PageResult> loader) {
+        CompletableFuture<PageResult> mine = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, mine) != null) {
+            return;
+        }
+        try {
+            threadPoolConfig.cacheRebuildExecutor().execute(() -> runLoad(key, loader, mine));
+        } catch (RejectedExecutionException e) {
+            // 线程池满了就不刷新了，下一个请求再试
+            inFlight.remove(key, mine);
+            mine.complete(null);
+            log.warn("列表后台刷新被拒绝: key={}", key);
+        }
+    }
+
+    private PageResult runLoad(String key, Supplier<PageResult> loader, CompletableFuture<PageResult> future) {
+        try {
+            PageResult page = loader.get();
+            if (page != null) {
+                lastKnown.put(key, page);
+            }
+            loadCounter.increment();
+            future.complete(page);
+            return page;
+        } catch (Exception e) {
+            log.error("列表回源异常: key={}", key, e);
+            future.completeExceptionally(e);
+            return null;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.tmd.feed;
+
+import cn.hutool.core.util.StrUtil;
+import com.tmd.spring.RedisCaffeineCache;
+import com.tmd.spring.RedisCaffeineCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 帖子列表缓存的代际（generation）管理
+ * <p>
+ * 列表/总数 key 中带上所在维度的代号：
+ * post:list:{type}:{status}:{sort}:g{gen}:{page}:{size}、post:total:{type}:{status}:{sort}:g{gen}，
+ * 话题维度同理（topic:post:list / topic:post:total）。
+ * 帖子增删改时只需 INCR 受影响维度的代号，旧代的分页全部不可达，靠 TTL 自然过期，
+ * 不再 SCAN + 删除整个 keyspace；一次编辑固定为一个 pipeline。
+ * <p>
+ * 代号本身走两级缓存（cacheName = post:gen / topic:post:gen），读路径通常只命中本地；
+ * bump 后通过 cache:redis:caffeine:topic 通知各节点丢弃本地代号。
+ * <p>
+ * 排序只有 {@link #SORTS} 两种（SQL 里非 hot 一律按最新），生成 key 前先用 {@link #normalizeSort} 归一，
+ * 否则传入其它排序值的分页落在永远不会被 bump 的维度上，一直读到旧数据。
+ */
+@Component
+@Slf4j
+public class ListCacheGenerations {
+
+    private static final String POST_GEN_CACHE = "post:gen";
+    private static final String TOPIC_GEN_CACHE = "topic:post:gen";
+    private static final String[] SORTS = { "latest", "hot" };
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisCaffeineCache postGenCache;
+    private final RedisCaffeineCache topicGenCache;
+
+    public ListCacheGenerations(StringRedisTemplate stringRedisTemplate, RedisCaffeineCacheManager cacheManager) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.postGenCache = cacheManager.getCache(POST_GEN_CACHE, Long.class);
+        this.topicGenCache = cacheManager.getCache(TOPIC_GEN_CACHE, Long.class);
+    }
+
+    /**
+     * 与 SQL 的排序规则一致：hot 之外（包括空值）都按 latest
+     */
+    public static String normalizeSort(String sort) {
+        return "hot".equals(sort) ? "hot" : "latest";
+    }
+
+    public String postListKey(String typeKey, String statusKey, String sort, int page, int size) {
+        sort = normalizeSort(sort);
+        long gen = generation(postGenCache, typeKey + ":" + statusKey + ":" + sort);
+        return String.format("post:list:%s:%s:%s:g%d:%d:%d", typeKey, statusKey, sort, gen, page, size);
+    }
+
+    public String postTotalKey(String typeKey, String statusKey, String sort) {
+        sort = normalizeSort(sort);
+        long gen = generation(postGenCache, typeKey + ":" + statusKey + ":" + sort);
+        return String.format("post:total:%s:%s:%s:g%d", typeKey, statusKey, sort, gen);
+    }
+
+    public String topicListKey(Long topicId, String statusKey, String sort, int page, int size) {
+        sort = normalizeSort(sort);
+        long gen = generation(topicGenCache, topicId + ":" + statusKey + ":" + sort);
+        return String.format("topic:post:list:%d:%s:%s:g%d:%d:%d", topicId, statusKey, sort, gen, page, size);
+    }
+
+    public String topicTotalKey(Long topicId, String statusKey, String sort) {
+        sort = normalizeSort(sort);
+        long gen = generation(topicGenCache, topicId + ":" + statusKey + ":" + sort);
+        return String.format("topic:post:total:%d:%s:%s:g%d", topicId, statusKey, sort, gen);
+    }
+
+    /**
+     * 帖子 (type, status) 变化：该维度以及"不限类型/不限状态"的聚合维度，每种排序各 +1
+     */
+    public void bumpPost(String type, String status) {
+        String typeKey = StrUtil.isBlank(type) ? "-" : type;
+        String statusKey = StrUtil.isBlank(status) ? "-" : status;
+        List<String> dims = new ArrayList<>();
+        for (String t : distinct(typeKey, "-")) {
+            for (String st : distinct(statusKey, "-")) {
+                for (String sort : SORTS) {
+                    dims.add(t + ":" + st + ":" + sort);
+                }
+            }
+        }
+        bump(postGenCache, POST_GEN_CACHE, dims);
+    }
+
+    /**
+     * 话题下帖子变化：该话题在当前状态与"不限状态"下，每种排序各 +1
+     */
+    public void bumpTopic(Long topicId, String status) {
+        if (topicId == null) {
+            return;
+        }
+        String statusKey = StrUtil.isBlank(status) ? "-" : status;
+        List<String> dims = new ArrayList<>();
+        for (String st : distinct(statusKey, "-")) {
+            for (String sort : SORTS) {
+                dims.add(topicId + ":" + st + ":" + sort);
+            }
+        }
+        bump(topicGenCache, TOPIC_GEN_CACHE, dims);
+    }
+
+    private void bump(RedisCaffeineCache cache, String cacheName, List<String> dims) {
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    for (String dim : dims) {
+                        operations.opsForValue().increment(cacheName + ":" + dim);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("列表缓存代号递增失败: cache={}, dims={}", cacheName, dims, e);
+        }
+        // 一条消息清掉各节点本地的代号，下次读取回源 Redis
+        cache.evictLocal(null);
+    }
+
+    private long generation(RedisCaffeineCache cache, String dim) {
+        try {
+            Cache.ValueWrapper wrapper = cache.get(dim);
+            if (wrapper != null && wrapper.get() instanceof Long) {
+                return (Long) wrapper.get();
+            }
+            // 从未 bump 过的维度视为第 0 代，只记在本地
+            cache.putLocal(dim, 0L);
+        } catch (Exception e) {
+            log.warn("读取列表缓存代号失败: dim={}", dim, e);
+        }
+        return 0L;
+    }
+
+    private static String[] distinct(String value, String wildcard) {
+        return value.equals(wildcard) ? new String[] { wildcard } : new String[] { value, wildcard };
+    }
+}
@@ -0,0 +1,292 @@
+package com.tmd.feed;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.tmd.entity.dto.*;
+import com.tmd.mapper.UserMapper;
+import com.tmd.service.AttachmentService;
+import com.tmd.service.TopicService;
+import com.tmd.spring.RedisCaffeineCache;
+import com.tmd.spring.RedisCaffeineCacheManager;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 帖子列表批量组装（hydration）
+ * <p>
+ * 先收集整页的帖子ID、作者ID、话题ID，再分别批量解析：
+ * 1. 点赞/评论的待刷盘增量：一次 MGET（2 * N 个 key）；阅读量由本地聚合器每秒落库，直接用库里的值
+ * 2. 作者资料：先查进程内 L1，剩余的一次 MGET user:profile:*，未命中一次 selectBatchProfiles 回源并 pipeline 回填
+ * 3. 话题名称：TopicService#getTopicsCachedByIds（L1 + 一次 MGET，未命中一次 IN 查询）
+ * 4. 附件：沿用 AttachmentService#getAttachmentsByBusinessBatch
+ * <p>
+ * 原先每个帖子各自 multiGet + getProfile + getTopicCachedById，20 条一页需要 60+ 次往返；
+ * 现在与页大小无关，Redis 最多 5 次、DB 最多 2 次（不含附件）。
+ * 每页实际往返次数记录在 feed.hydrate.redis.calls / feed.hydrate.db.calls 两个分布指标中。
+ */
+@Component
+@Slf4j
+public class PostFeedHydrator {
+
+    private static final String POST_LIKE_FLUSH_KEY_FMT = "post:like:flush:%d";
+    private static final String POST_COMMENT_FLUSH_KEY_FMT = "post:comment:flush:%d";
+    private static final String USER_PROFILE_KEY_PREFIX = "user:profile:";
+    private static final long USER_PROFILE_TTL_MINUTES = 10;
+    private static final String USER_PROFILE_CACHE = "user:profile";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final UserMapper userMapper;
+    private final TopicService topicService;
+    private final AttachmentService attachmentService;
+    private final RedisCaffeineCache profileCache;
+    private final DistributionSummary redisCallsSummary;
+    private final DistributionSummary dbCallsSummary;
+
+    public PostFeedHydrator(StringRedisTemplate stringRedisTemplate,
+            UserMapper userMapper,
+            TopicService topicService,
+            AttachmentService attachmentService,
+            RedisCaffeineCacheManager cacheManager,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.userMapper = userMapper;
+        this.topicService = topicService;
+        this.attachmentService = attachmentService;
+        this.profileCache = cacheManager.getCache(USER_PROFILE_CACHE, UserProfile.class);
+        this.redisCallsSummary = DistributionSummary.builder("feed.hydrate.redis.calls")
+                .description("Redis round trips per hydrated feed page (excluding attachments)")
+                .register(meterRegistry);
+        this.dbCallsSummary = DistributionSummary.builder("feed.hydrate.db.calls")
+                .description("DB round trips per hydrated feed page (excluding attachments)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 把一页 Post 组装成 PostListItemVO，保持入参顺序
+     */
+    public List<PostListItemVO> hydrate(List<Post> posts) {
+        if (posts == null || posts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int[] calls = new int[2]; // [0]=redis, [1]=db
+
+        List<Long> postIds = posts.stream().map(Post::getId).filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+        Set<Long> userIds = posts.stream().map(Post::getUserId).filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<Long> topicIds = posts.stream().map(Post::getTopicId).filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        Map<Long, int[]> deltas = loadCounterDeltas(postIds, calls);
+        Map<Long, UserProfile> profiles = loadProfiles(userIds, calls);
+        Map<Long, TopicVO> topics = Collections.emptyMap();
+        if (!topicIds.isEmpty()) {
+            try {
+                topics = topicService.getTopicsCachedByIds(topicIds);
+            } catch (Exception e) {
+                log.warn("批量加载话题失败: ids={}", topicIds, e);
+            }
+            // 命中路径为一次 MGET；未命中时的 IN 查询与回填由 TopicService 内部完成
+            calls[0]++;
+        }
+        Map<Long, List<Attachment>> attMap = loadAttachments(postIds);
+
+        List<PostListItemVO> items = new ArrayList<>(posts.size());
+        for (Post p : posts) {
+            UserProfile profile = profiles.get(p.getUserId());
+            TopicVO topic = p.getTopicId() == null ? null : topics.get(p.getTopicId());
+            int[] d = deltas.getOrDefault(p.getId(), new int[2]);
+
+            List<AttachmentLite> liteAttachments = new ArrayList<>();
+            for (Attachment a : attMap.getOrDefault(p.getId(), Collections.emptyList())) {
+                liteAttachments.add(AttachmentLite.builder()
+                        .fileUrl(a.getFileUrl())
+                        .fileType(a.getFileType())
+                        .fileName(a.getFileName())
+                        .build());
+            }
+
+            items.add(PostListItemVO.builder()
+                    .id(p.getId())
+                    .title(p.getTitle())
+                    .content(p.getContent())
+                    .userId(p.getUserId())
+                    .authorUsername(profile != null ? profile.getUsername() : null)
+                    .authorAvatar(profile != null ? profile.getAvatar() : null)
+                    .topicId(p.getTopicId())
+                    .topicName(topic != null ? topic.getName() : null)
+                    .likeCount((p.getLikeCount() == null ? 0 : p.getLikeCount()) + d[0])
+                    .commentCount((p.getCommentCount() == null ? 0 : p.getCommentCount()) + d[1])
+                    .shareCount(p.getShareCount() == null ? 0 : p.getShareCount())
+                    .viewCount(p.getViewCount() == null ? 0 : p.getViewCount())
+                    .createdAt(p.getCreatedAt())
+                    .updatedAt(p.getUpdatedAt())
+                    .attachments(liteAttachments)
+                    .build());
+        }
+
+        redisCallsSummary.record(calls[0]);
+        dbCallsSummary.record(calls[1]);
+        return items;
+    }
+
+    /**
+     * 一次 MGET 取回整页的 like/comment 增量，返回 postId -> [like, comment]
+     */
+    private Map<Long, int[]> loadCounterDeltas(List<Long> postIds, int[] calls) {
+        Map<Long, int[]> result = new HashMap<>();
+        if (postIds.isEmpty()) {
+            return result;
+        }
+        List<String> keys = new ArrayList<>(postIds.size() * 2);
+        for (Long id : postIds) {
+            keys.add(String.format(POST_LIKE_FLUSH_KEY_FMT, id));
+            keys.add(String.format(POST_COMMENT_FLUSH_KEY_FMT, id));
+        }
+        List<String> values;
+        try {
+            values = stringRedisTemplate.opsForValue().multiGet(keys);
+            calls[0]++;
+        } catch (Exception e) {
+            log.warn("批量读取计数增量失败: size={}", postIds.size(), e);
+            return result;
+        }
+        if (values == null || values.size() != keys.size()) {
+            return result;
+        }
+        for (int i = 0; i < postIds.size(); i++) {
+            int[] d = new int[2];
+            for (int j = 0; j < 2; j++) {
+                d[j] = parseDelta(values.get(i * 2 + j));
+            }
+            result.put(postIds.get(i), d);
+        }
+        return result;
+    }
+
+    /**
+     * 批量读取用户资料（评论等其他列表复用），未命中回源并回填
+     */
+    public Map<Long, UserProfile> loadProfiles(Set<Long> userIds) {
+        return loadProfiles(userIds, new int[2]);
+    }
+
+    /**
+     * 作者资料：一次 MGET 读 user:profile:*，未命中的一次 selectBatchProfiles 并 pipeline 回填
+     */
+    private Map<Long, UserProfile> loadProfiles(Set<Long> userIds, int[] calls) {
+        Map<Long, UserProfile> result = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Long id : userIds) {
+            UserProfile local = profileCache.getLocal(id);
+            if (local != null) {
+                result.put(id, local);
+            } else {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return result;
+        }
+        List<Long> missed = new ArrayList<>();
+        try {
+            List<String> keys = ids.stream().map(id -> USER_PROFILE_KEY_PREFIX + id).collect(Collectors.toList());
+            List<String> cached = stringRedisTemplate.opsForValue().multiGet(keys);
+            calls[0]++;
+            for (int i = 0; i < ids.size(); i++) {
+                String json = cached == null ? null : cached.get(i);
+                if (StrUtil.isBlank(json)) {
+                    missed.add(ids.get(i));
+                    continue;
+                }
+                try {
+                    UserProfile profile = JSONUtil.toBean(json, UserProfile.class);
+                    result.put(ids.get(i), profile);
+                    profileCache.putLocal(ids.get(i), profile);
+                } catch (Exception e) {
+                    missed.add(ids.get(i));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("从缓存批量读取用户资料失败: ids={}", ids, e);
+            ids.forEach(result::remove);
+            missed = ids;
+        }
+        if (missed.isEmpty()) {
+            return result;
+        }
+
+        List<UserProfile> rows;
+        try {
+            rows = userMapper.selectBatchProfiles(missed);
+            calls[1]++;
+        } catch (Exception e) {
+            log.warn("从数据库批量读取用户资料失败: ids={}", missed, e);
+            return result;
+        }
+        if (rows == null || rows.isEmpty()) {
+            return result;
+        }
+        for (UserProfile p : rows) {
+            if (p.getId() != null) {
+                result.put(p.getId(), p);
+                profileCache.putLocal(p.getId(), p);
+            }
+        }
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    for (UserProfile p : rows) {
+                        if (p.getId() == null)
+                            continue;
+                        operations.opsForValue().set(USER_PROFILE_KEY_PREFIX + p.getId(), JSONUtil.toJsonStr(p),
+                                USER_PROFILE_TTL_MINUTES, TimeUnit.MINUTES);
+                    }
+                    return null;
+                }
+            });
+            calls[0]++;
+        } catch (Exception e) {
+            log.warn("回填用户资料缓存失败: ids={}", missed, e);
+        }
+        return result;
+    }
+
+    private Map<Long, List<Attachment>> loadAttachments(List<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<Attachment> all = attachmentService.getAttachmentsByBusinessBatch("post", postIds);
+        if (all == null) {
+            return new HashMap<>();
+        }
+        return all.stream()
+                .filter(a -> a.getBusinessId() != null)
+                .collect(Collectors.groupingBy(Attachment::getBusinessId));
+    }
+
+    private int parseDelta(String value) {
+        if (StrUtil.isBlank(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
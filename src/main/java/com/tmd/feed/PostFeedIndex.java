@@ -0,0 +1,328 @@
+package com.tmd.feed;
+
+import cn.hutool.core.util.StrUtil;
+import com.tmd.entity.dto.Post;
+import com.tmd.mapper.PostsMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * 滚动分页用的帖子排序索引：post:zset:{sort}:{type}:{status}
+ * <p>
+ * 1. 预热：一条 ZADD 写入整批成员，并按 {@link #MAX_MEMBERS} 截断，不再逐条 ZADD
+ * 2. 发帖/删帖/改类型状态时只更新已存在的索引（不存在的由下次读取预热，避免半截索引被当成已预热）
+ * 3. 热度分不再用原始浏览量：计数刷盘后把帖子放入 post:hot:dirty，
+ * 定时任务按批 SPOP、批量查库、重算热度分后一次 pipeline 写回
+ * <p>
+ * 热度分采用"互动量取对数 + 发帖时间线性项"（时间衰减等价于新帖天然更高），
+ * 只有互动量变化的帖子需要重算，排序依然是 ZSet 的 O(log n) 范围查询。
+ * 分值放大为整数，滚动游标 max 用 long 传递不丢精度。
+ */
+@Component
+@Slf4j
+public class PostFeedIndex {
+
+    public static final String SORT_LATEST = "latest";
+    public static final String SORT_HOT = "hot";
+
+    private static final String ZSET_KEY_FMT = "post:zset:%s:%s:%s"; // sort:type:status
+    private static final String HOT_DIRTY_KEY = "post:hot:dirty";
+    private static final int PREFILL_LIMIT = 2000; // 预热最大条数
+    private static final int MAX_MEMBERS = 5000; // 每个索引最多保留的成员数
+    private static final int HOT_BATCH_SIZE = 500;
+    private static final int HOT_MAX_BATCHES = 20;
+    private static final double HOT_DECAY_SECONDS = 45000D; // 互动量每翻 10 倍约等于晚发 12.5 小时
+    private static final double HOT_SCALE = 1_000_000D;
+    private static final String[] SORTS = { SORT_LATEST, SORT_HOT };
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final PostsMapper postsMapper;
+    private final DistributionSummary hotBatchSummary;
+
+    public PostFeedIndex(StringRedisTemplate stringRedisTemplate, PostsMapper postsMapper,
+            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.postsMapper = postsMapper;
+        this.hotBatchSummary = DistributionSummary.builder("post.feed.hot.rescore.batch.size")
+                .description("Posts rescored per hot score batch")
+                .register(meterRegistry);
+    }
+
+    public static String key(String sort, String typeKey, String statusKey) {
+        return String.format(ZSET_KEY_FMT, sort, typeKey, statusKey);
+    }
+
+    /**
+     * 索引为空时从 DB 预热一批，整批一条 ZADD
+     */
+    public void ensureLoaded(String sort, String type, String status) {
+        String zsetKey = key(sort, StrUtil.isBlank(type) ? "-" : type, StrUtil.isBlank(status) ? "-" : status);
+        Long zsetSize = stringRedisTemplate.opsForZSet().size(zsetKey);
+        if (zsetSize != null && zsetSize > 0) {
+            return;
+        }
+        try {
+            List<Post> seed;
+            if (SORT_HOT.equals(sort)) {
+                // 热度分带时间项：种子取浏览量最高的一批再并上最新的一批，新帖不会被漏掉
+                seed = new ArrayList<>(postsMapper.selectPage(type, status, "hot", 0, PREFILL_LIMIT / 2));
+                seed.addAll(postsMapper.selectPage(type, status, "latest", 0, PREFILL_LIMIT / 2));
+            } else {
+                seed = postsMapper.selectLatestIds(type, status, PREFILL_LIMIT);
+            }
+            if (seed == null || seed.isEmpty()) {
+                return;
+            }
+            Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(seed.size() * 2);
+            for (Post p : seed) {
+                if (p.getId() != null) {
+                    tuples.add(new DefaultTypedTuple<>(String.valueOf(p.getId()), score(sort, p)));
+                }
+            }
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    operations.opsForZSet().add(zsetKey, tuples);
+                    operations.opsForZSet().removeRange(zsetKey, 0, -(MAX_MEMBERS + 1));
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("预填充 ZSet 失败: {}", zsetKey, e);
+        }
+    }
+
+    /**
+     * 按分值倒序取一页，返回 id -> score（保持顺序）
+     */
+    public LinkedHashMap<Long, Double> range(String sort, String typeKey, String statusKey, double maxScore,
+            int offset, int size) {
+        String zsetKey = key(sort, typeKey, statusKey);
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .reverseRangeByScoreWithScores(zsetKey, 0, maxScore, offset, size);
+        LinkedHashMap<Long, Double> result = new LinkedHashMap<>();
+        if (tuples == null) {
+            return result;
+        }
+        for (ZSetOperations.TypedTuple<String> t : tuples) {
+            if (t.getValue() != null && t.getScore() != null) {
+                result.put(Long.valueOf(t.getValue()), t.getScore());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 新帖或类型/状态变更后的帖子写入所在维度的已有索引
+     */
+    public void index(Post post) {
+        if (post == null || post.getId() == null) {
+            return;
+        }
+        String status = post.getStatus() == null ? null : post.getStatus().name();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (String sort : SORTS) {
+            double score = score(sort, post);
+            for (String dimKey : dimensionKeys(sort, post.getPostType(), status)) {
+                scores.put(dimKey, score);
+            }
+        }
+        writeExisting(Collections.singletonMap(post.getId(), scores));
+    }
+
+    /**
+     * 从 (type, status) 相关的所有索引中移除
+     */
+    public void remove(Long postId, String type, String status) {
+        if (postId == null) {
+            return;
+        }
+        String member = String.valueOf(postId);
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    for (String sort : SORTS) {
+                        for (String k : dimensionKeys(sort, type, status)) {
+                            operations.opsForZSet().remove(k, member);
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("从帖子列表索引移除失败: id={}", postId, e);
+        }
+    }
+
+    /**
+     * 浏览/点赞/收藏计数落库后调用：标记需要重算热度分的帖子（一次 SADD）
+     */
+    public void markHotDirty(Collection<Long> postIds) {
+        if (postIds == null || postIds.isEmpty()) {
+            return;
+        }
+        String[] members = postIds.stream().map(String::valueOf).toArray(String[]::new);
+        try {
+            stringRedisTemplate.opsForSet().add(HOT_DIRTY_KEY, members);
+        } catch (Exception e) {
+            log.warn("标记热度待重算失败: size={}", members.length, e);
+        }
+    }
+
+    /**
+     * 批量重算热度分：SPOP 一批 -> selectByIds -> 一次 pipeline 写回
+     */
+    @Scheduled(fixedDelay = 60_000, initialDelay = 60_000)
+    public void rescoreHot() {
+        for (int b = 0; b < HOT_MAX_BATCHES; b++) {
+            List<String> ids;
+            try {
+                ids = stringRedisTemplate.opsForSet().pop(HOT_DIRTY_KEY, HOT_BATCH_SIZE);
+            } catch (Exception e) {
+                log.warn("取出热度待重算帖子失败", e);
+                return;
+            }
+            if (ids == null || ids.isEmpty()) {
+                return;
+            }
+            List<Long> postIds = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                if (StrUtil.isNumeric(id)) {
+                    postIds.add(Long.valueOf(id));
+                }
+            }
+            try {
+                rescoreBatch(postIds);
+            } catch (Exception e) {
+                // 放回脏集合，下一轮再算
+                log.warn("批量重算热度失败，{} 个帖子放回待重算集合", postIds.size(), e);
+                markHotDirty(postIds);
+                return;
+            }
+            if (ids.size() < HOT_BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private void rescoreBatch(List<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return;
+        }
+        List<Post> posts = postsMapper.selectByIds(postIds);
+        if (posts == null || posts.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<String, Double>> updates = new LinkedHashMap<>();
+        for (Post p : posts) {
+            if (p.getId() == null) {
+                continue;
+            }
+            double score = score(SORT_HOT, p);
+            Map<String, Double> scores = new LinkedHashMap<>();
+            String status = p.getStatus() == null ? null : p.getStatus().name();
+            for (String dimKey : dimensionKeys(SORT_HOT, p.getPostType(), status)) {
+                scores.put(dimKey, score);
+            }
+            updates.put(p.getId(), scores);
+        }
+        writeExisting(updates);
+        hotBatchSummary.record(updates.size());
+    }
+
+    /**
+     * 只写入已经存在的索引：先一次 pipeline EXISTS，再一次 pipeline ZADD + 截断
+     */
+    private void writeExisting(Map<Long, Map<String, Double>> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        Set<String> keySet = new LinkedHashSet<>();
+        for (Map<String, Double> scores : updates.values()) {
+            keySet.addAll(scores.keySet());
+        }
+        List<String> keys = new ArrayList<>(keySet);
+        List<Object> exists = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (String k : keys) {
+                    operations.hasKey(k);
+                }
+                return null;
+            }
+        });
+        Set<String> live = new HashSet<>();
+        for (int i = 0; i < keys.size() && i < exists.size(); i++) {
+            if (Boolean.TRUE.equals(exists.get(i))) {
+                live.add(keys.get(i));
+            }
+        }
+        if (live.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (Map.Entry<Long, Map<String, Double>> e : updates.entrySet()) {
+                    String member = String.valueOf(e.getKey());
+                    for (Map.Entry<String, Double> s : e.getValue().entrySet()) {
+                        if (live.contains(s.getKey())) {
+                            operations.opsForZSet().add(s.getKey(), member, s.getValue());
+                        }
+                    }
+                }
+                for (String k : live) {
+                    operations.opsForZSet().removeRange(k, 0, -(MAX_MEMBERS + 1));
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 计算排序分：latest 为发帖毫秒时间戳；hot 为 (log10(互动量) + 发帖秒数 / 衰减常数) * 放大系数
+     */
+    public static double score(String sort, Post p) {
+        long createdMillis = p.getCreatedAt() == null ? 0L
+                : p.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (!SORT_HOT.equals(sort)) {
+            return createdMillis;
+        }
+        long engagement = nz(p.getViewCount()) + 3L * nz(p.getLikeCount()) + 4L * nz(p.getCommentCount())
+                + 5L * nz(p.getCollectCount());
+        double raw = Math.log10(Math.max(engagement, 1L)) + (createdMillis / 1000D) / HOT_DECAY_SECONDS;
+        return Math.floor(raw * HOT_SCALE);
+    }
+
+    private static List<String> dimensionKeys(String sort, String type, String status) {
+        String typeKey = StrUtil.isBlank(type) ? "-" : type;
+        String statusKey = StrUtil.isBlank(status) ? "-" : status;
+        List<String> keys = new ArrayList<>(4);
+        for (String t : typeKey.equals("-") ? new String[] { "-" } : new String[] { typeKey, "-" }) {
+            for (String st : statusKey.equals("-") ? new String[] { "-" } : new String[] { statusKey, "-" }) {
+                keys.add(key(sort, t, st));
+            }
+        }
+        return keys;
+    }
+
+    private static long nz(Integer v) {
+        return v == null ? 0L : v;
+    }
+}
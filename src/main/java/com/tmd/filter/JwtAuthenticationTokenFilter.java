@@ -1,7 +1,5 @@
 package com.tmd.filter;
 
-import com.alibaba.fastjson.JSONObject;
-import com.tmd.config.RedisCache;
 import com.tmd.entity.po.LoginUser;
 import com.tmd.tools.BaseContext;
 import jakarta.servlet.FilterChain;
@@ -17,14 +15,12 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.security.PublicKey;
-import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
 public class JwtAuthenticationTokenFilter extends OncePerRequestFilter {
     @Autowired
-    private RedisCache redisCache;
+    private LoginSessionCache loginSessionCache;
     @Override
     protected void doFilterInternal(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws ServletException, IOException, ServletException {
         String authentication = httpServletRequest.getHeader("authentication");
@@ -32,43 +28,29 @@ public class JwtAuthenticationTokenFilter extends OncePerRequestFilter {
             filterChain.doFilter(httpServletRequest, httpServletResponse);
             return;
         }
-        logger.info("用户认证成功"+ authentication);
-        Object loginuser  = redisCache.getCacheObject("login:" + authentication);
-        //先判断是不是字符串类型的可以看出来是否为privatesecret
-        Object cacheObject1 = redisCache.getCacheObject("loginPublic:" + authentication);
-        if(cacheObject1 != null){
-            logger.info("用户公钥认证成功");
-            PublicKey publicKey = JSONObject.parseObject(cacheObject1.toString(), PublicKey.class);
+        // 常见情况只查本地缓存，不访问 Redis；续期和跨节点登出由 LoginSessionCache 负责
+        LoginSessionCache.LoginSession session = loginSessionCache.get(authentication);
+        if(session != null && session.isPublicKey()){
+            log.debug("用户公钥认证成功");
             //帮助他授权并且放行
-            UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(publicKey, null,null);
+            UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(session.getPublicKey(), null,null);
             SecurityContextHolder.getContext().setAuthentication(authenticationToken);
             filterChain.doFilter(httpServletRequest, httpServletResponse);
             return;
         }
-        // 检查loginuser是否为null，如果是null则表示用户未登录
-        if(loginuser == null){
+        // 检查session是否为null，如果是null则表示用户未登录
+        if(session == null){
             httpServletResponse.setStatus(401);
             httpServletResponse.sendRedirect("http://localhost:5173/login");//重定向到登陆界面
             throw new RuntimeException("用户未登录");
         }
-        //把这个jsonobject转换成loginuser
-        LoginUser cacheObject = JSONObject.parseObject(loginuser.toString(), LoginUser.class);
-        if(cacheObject == null){
-            httpServletResponse.setStatus(401);
-            //filterChain.doFilter(httpServletRequest, httpServletResponse);
-            httpServletResponse.sendRedirect("http://localhost:5173/login");//重定向到登陆界面
-            throw new RuntimeException("用户未登录");
-        }else{
-            //存入ContextHolder
-            //TODO 获取权限信息封装到Authentication中
-            BaseContext.set(cacheObject.getUser().getId());
-            UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(cacheObject, null, cacheObject.getAuthorities());
-            SecurityContextHolder.getContext().setAuthentication(authenticationToken);
-            logger.info("用户认证成功,准备放行");
-            //刷新过期时间
-            redisCache.setCacheObject("login:"+authentication,cacheObject,30, TimeUnit.MINUTES);
-            log.info("获取的用户信息{}",cacheObject);
-            filterChain.doFilter(httpServletRequest, httpServletResponse);
-        }
+        LoginUser cacheObject = session.getLoginUser();
+        //存入ContextHolder
+        //TODO 获取权限信息封装到Authentication中
+        BaseContext.set(cacheObject.getUser().getId());
+        UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(cacheObject, null, cacheObject.getAuthorities());
+        SecurityContextHolder.getContext().setAuthentication(authenticationToken);
+        log.debug("用户认证成功,准备放行 userId={}", cacheObject.getUser().getId());
+        filterChain.doFilter(httpServletRequest, httpServletResponse);
     }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+package com.tmd.filter;
+
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tmd.config.RedisCache;
+import com.tmd.entity.po.LoginUser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 登录会话的本地缓存（JwtAuthenticationTokenFilter 使用）
+ * <p>
+ * 1. 命中本地缓存的请求不访问 Redis；本地条目最多保留 {@code login.session.local-ttl-seconds} 秒，
+ * 之后重新从 Redis 读一次，让权限等信息的变更最终生效
+ * 2. 滑动过期只对 login:{token} 发一条 EXPIRE，同一个 token 每 {@code login.session.refresh-interval-seconds}
+ * 秒最多一次；EXPIRE 返回 false 说明 Redis 里的会话已经没了，本地条目随之作废（跨节点失效消息丢失时的兜底）。
+ * 公钥登录不续期，按同样的间隔用 EXISTS 检查 loginPublic:{token} 是否还在
+ * 3. 登出时删除 Redis 会话并发布到 {@link #INVALIDATE_CHANNEL}，所有节点（包括自己）清掉本地条目
+ */
+@Component
+@Slf4j
+public class LoginSessionCache implements MessageListener {
+
+    static final String LOGIN_KEY_PREFIX = "login:";
+    static final String LOGIN_PUBLIC_KEY_PREFIX = "loginPublic:";
+    static final String INVALIDATE_CHANNEL = "login:invalidate";
+    private static final int SESSION_TTL_MINUTES = 30;
+
+    /**
+     * 已认证的会话：公钥登录只有 publicKey，普通登录只有 loginUser
+     */
+    public static final class LoginSession {
+        private final LoginUser loginUser;
+        private final PublicKey publicKey;
+        private final AtomicLong refreshedAt;
+
+        private LoginSession(LoginUser loginUser, PublicKey publicKey, long refreshedAt) {
+            this.loginUser = loginUser;
+            this.publicKey = publicKey;
+            this.refreshedAt = new AtomicLong(refreshedAt);
+        }
+
+        public LoginUser getLoginUser() {
+            return loginUser;
+        }
+
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        public boolean isPublicKey() {
+            return publicKey != null;
+        }
+    }
+
+    private final RedisCache redisCache;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final long refreshIntervalMillis;
+    private final Cache<String, LoginSession> local;
+    private final Counter localHitCounter;
+    private final Counter redisLoadCounter;
+    private final Counter refreshCounter;
+
+    public LoginSessionCache(RedisCache redisCache,
+            StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer listenerContainer,
+            MeterRegistry meterRegistry,
+            @Value("${login.session.local-ttl-seconds:300}") long localTtlSeconds,
+            @Value("${login.session.refresh-interval-seconds:60}") long refreshIntervalSeconds,
+            @Value("${login.session.local-max-size:100000}") long localMaxSize) {
+        this.redisCache = redisCache;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.refreshIntervalMillis = TimeUnit.SECONDS.toMillis(refreshIntervalSeconds);
+        this.local = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        this.localHitCounter = Counter.builder("auth.session").tag("source", "local").register(meterRegistry);
+        this.redisLoadCounter = Counter.builder("auth.session").tag("source", "redis").register(meterRegistry);
+        this.refreshCounter = Counter.builder("auth.session").tag("source", "refresh").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * @return null 表示未登录或会话已失效
+     */
+    public LoginSession get(String token) {
+        LoginSession cached = local.getIfPresent(token);
+        if (cached != null) {
+            localHitCounter.increment();
+            return touch(token, cached) ? cached : null;
+        }
+        // 同一个 token 的并发请求只回源一次
+        return local.get(token, this::load);
+    }
+
+    /**
+     * 登出：删除 Redis 会话，并通知所有节点丢弃本地缓存
+     */
+    public void invalidate(String token) {
+        local.invalidate(token);
+        try {
+            redisCache.deleteObject(Arrays.asList(LOGIN_KEY_PREFIX + token, LOGIN_PUBLIC_KEY_PREFIX + token));
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, token);
+        } catch (Exception e) {
+            log.warn("登出时清理会话失败", e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        local.invalidate(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private LoginSession load(String token) {
+        redisLoadCounter.increment();
+        Object publicCache = redisCache.getCacheObject(LOGIN_PUBLIC_KEY_PREFIX + token);
+        if (publicCache != null) {
+            // 公钥登录原来就不续期，只定期确认会话还在
+            PublicKey publicKey = JSONObject.parseObject(publicCache.toString(), PublicKey.class);
+            return new LoginSession(null, publicKey, System.currentTimeMillis());
+        }
+        Object loginCache = redisCache.getCacheObject(LOGIN_KEY_PREFIX + token);
+        if (loginCache == null) {
+            return null;
+        }
+        LoginUser loginUser = JSONObject.parseObject(loginCache.toString(), LoginUser.class);
+        if (loginUser == null) {
+            return null;
+        }
+        // 只续期，不再整对象重写；读完之后会话恰好被删掉的按未登录处理
+        if (!refresh(token)) {
+            return null;
+        }
+        return new LoginSession(loginUser, null, System.currentTimeMillis());
+    }
+
+    /**
+     * 距上次续期超过间隔才发 EXPIRE（公钥登录为 EXISTS）；会话已被删除时作废本地条目
+     */
+    private boolean touch(String token, LoginSession session) {
+        long now = System.currentTimeMillis();
+        long last = session.refreshedAt.get();
+        if (now - last < refreshIntervalMillis || !session.refreshedAt.compareAndSet(last, now)) {
+            // 未到间隔，或并发请求里已有一个去续期了，直接放行
+            return true;
+        }
+        if (session.isPublicKey() ? exists(token) : refresh(token)) {
+            return true;
+        }
+        local.invalidate(token);
+        return false;
+    }
+
+    private boolean exists(String token) {
+        refreshCounter.increment();
+        try {
+            return !Boolean.FALSE.equals(stringRedisTemplate.hasKey(LOGIN_PUBLIC_KEY_PREFIX + token));
+        } catch (Exception e) {
+            log.warn("检查公钥登录会话失败", e);
+            return true;
+        }
+    }
+
+    private boolean refresh(String token) {
+        refreshCounter.increment();
+        try {
+            return redisCache.expire(LOGIN_KEY_PREFIX + token, SESSION_TTL_MINUTES, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            // Redis 抖动时不把已登录用户踢出去，下个间隔再续
+            log.warn("刷新登录会话过期时间失败", e);
+            return true;
+        }
+    }
+}
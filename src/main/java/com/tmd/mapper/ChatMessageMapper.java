@@ -10,6 +10,8 @@ import java.util.List;
 public interface ChatMessageMapper {
     int insert(ChatMessage message);
 
+    int insertBatch(@Param("list") List<ChatMessage> messages);
+
     List<ChatMessage> selectConversation(@Param("a") Long a,
                                          @Param("b") Long b,
                                          @Param("offset") Integer offset,
@@ -0,0 +1,22 @@
+package com.tmd.mapper;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+@Mapper
+public interface CounterFlushBatchMapper {
+    @Insert("insert into counter_flush_batch (batch_id, created_at) values (#{batchId}, NOW())")
+    void insert(@Param("batchId") String batchId);
+
+    @Select("select count(1) from counter_flush_batch where batch_id = #{batchId}")
+    int exists(@Param("batchId") String batchId);
+
+    @Delete("delete from counter_flush_batch where batch_id = #{batchId}")
+    void delete(@Param("batchId") String batchId);
+
+    @Delete("delete from counter_flush_batch where created_at < NOW() - INTERVAL 1 DAY")
+    int deleteExpired();
+}
@@ -28,6 +28,19 @@ public interface PostCommentMapper {
         @Update("UPDATE post_comment SET reply_count = reply_count + #{delta} WHERE id = #{id}")
         int incrReplyCount(@Param("id") Long id, @Param("delta") int delta);
 
+        @Update("<script>" +
+                        "UPDATE post_comment SET reply_count = CASE id " +
+                        "<foreach collection='list' item='item'>" +
+                        "WHEN #{item.id} THEN reply_count + #{item.delta} " +
+                        "</foreach>" +
+                        "END " +
+                        "WHERE id IN " +
+                        "<foreach collection='list' item='item' open='(' separator=',' close=')'>" +
+                        "#{item.id}" +
+                        "</foreach>" +
+                        "</script>")
+        int updateReplyCountBatch(@Param("list") java.util.List<java.util.Map<String, Object>> list);
+
         @Select("SELECT id FROM post_comment WHERE root_id = #{rootId} ORDER BY created_at ASC")
         java.util.List<Long> selectIdsByRootId(@Param("rootId") Long rootId);
 
@@ -57,10 +70,30 @@ public interface PostCommentMapper {
                         "#{id}" +
                         "</foreach>" +
                         " AND id != root_id " +
-                        "ORDER BY created_at ASC" +
+                        "ORDER BY created_at ASC, id ASC" +
                         "</script>")
         java.util.List<PostComment> selectRepliesByRootIds(@Param("rootIds") java.util.List<Long> rootIds);
 
+        @Select("SELECT id, root_id, created_at FROM post_comment WHERE post_id = #{postId} AND root_id = id ORDER BY created_at DESC LIMIT #{limit}")
+        java.util.List<PostComment> selectRootIndex(@Param("postId") Long postId, @Param("limit") int limit);
+
+        @Select("<script>" +
+                        "SELECT id, root_id, created_at FROM post_comment WHERE root_id IN " +
+                        "<foreach collection='rootIds' item='id' open='(' separator=',' close=')'>" +
+                        "#{id}" +
+                        "</foreach>" +
+                        " AND id != root_id" +
+                        "</script>")
+        java.util.List<PostComment> selectReplyIndexByRootIds(@Param("rootIds") java.util.List<Long> rootIds);
+
+        // 游标是 (created_at, id)：同一时刻的多条回复按 id 继续往后翻，不会被跳过
+        @Select("SELECT * FROM post_comment WHERE root_id = #{rootId} AND id != root_id " +
+                        "AND (created_at > #{after} OR (created_at = #{after} AND id > #{afterId})) " +
+                        "ORDER BY created_at ASC, id ASC LIMIT #{size}")
+        java.util.List<PostComment> selectRepliesAfter(@Param("rootId") Long rootId,
+                        @Param("after") java.time.LocalDateTime after, @Param("afterId") Long afterId,
+                        @Param("size") int size);
+
         @org.apache.ibatis.annotations.Delete("<script>" +
                         "DELETE FROM post_comment WHERE id IN " +
                         "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
@@ -3,6 +3,7 @@ package com.tmd.mapper;
 import com.tmd.entity.dto.Post;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
@@ -50,6 +51,26 @@ public interface PostsMapper {
 
     List<Post> selectByIds(@Param("ids") List<Long> ids);
 
+    @Select("SELECT id FROM posts WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<Long> selectIdsAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Select("SELECT id, user_id, topic_id, title, content, status, like_count, comment_count, share_count, " +
+            "view_count, collect_count, created_at, updated_at " +
+            "FROM posts WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<Post> selectForReindexAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Select("SELECT id, like_count, comment_count, share_count, view_count, collect_count " +
+            "FROM posts WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<Post> selectCountersAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Select("SELECT IFNULL(MAX(id), 0) FROM posts")
+    Long selectMaxId();
+
+    @Select("SELECT title AS text, 'post' AS type, IFNULL(view_count, 0) + 3 * IFNULL(like_count, 0) AS weight " +
+            "FROM posts WHERE status = 'published' AND title IS NOT NULL AND title <> '' " +
+            "ORDER BY view_count DESC LIMIT #{limit}")
+    List<com.tmd.entity.dto.SuggestItem> selectHotTitles(@Param("limit") int limit);
+
     int incrShareCount(@Param("id") Long id, @Param("delta") Integer delta);
 
     @Update("update posts set view_count = IFNULL(view_count,0) + #{delta} where id = #{id}")
@@ -71,9 +92,48 @@ public interface PostsMapper {
             "</script>")
     int updateLikeCountBatch(@Param("list") List<java.util.Map<String, Object>> list);
 
+    @Update("<script>" +
+            "UPDATE posts SET view_count = CASE id " +
+            "<foreach collection='list' item='item'>" +
+            "WHEN #{item.id} THEN IFNULL(view_count, 0) + #{item.delta} " +
+            "</foreach>" +
+            "END " +
+            "WHERE id IN " +
+            "<foreach collection='list' item='item' open='(' separator=',' close=')'>" +
+            "#{item.id}" +
+            "</foreach>" +
+            "</script>")
+    int updateViewCountBatch(@Param("list") List<java.util.Map<String, Object>> list);
+
+    @Update("<script>" +
+            "UPDATE posts SET collect_count = CASE id " +
+            "<foreach collection='list' item='item'>" +
+            "WHEN #{item.id} THEN IFNULL(collect_count, 0) + #{item.delta} " +
+            "</foreach>" +
+            "END " +
+            "WHERE id IN " +
+            "<foreach collection='list' item='item' open='(' separator=',' close=')'>" +
+            "#{item.id}" +
+            "</foreach>" +
+            "</script>")
+    int updateCollectCountBatch(@Param("list") List<java.util.Map<String, Object>> list);
+
     @Update("update posts set comment_count = IFNULL(comment_count,0) + #{delta} where id = #{id}")
     int incrCommentCount(@Param("id") Long id, @Param("delta") Integer delta);
 
+    @Update("<script>" +
+            "UPDATE posts SET comment_count = CASE id " +
+            "<foreach collection='list' item='item'>" +
+            "WHEN #{item.id} THEN IFNULL(comment_count, 0) + #{item.delta} " +
+            "</foreach>" +
+            "END " +
+            "WHERE id IN " +
+            "<foreach collection='list' item='item' open='(' separator=',' close=')'>" +
+            "#{item.id}" +
+            "</foreach>" +
+            "</script>")
+    int updateCommentCountBatch(@Param("list") List<java.util.Map<String, Object>> list);
+
     @Update("update posts set collect_count = IFNULL(collect_count,0) + #{delta} where id = #{id}")
     void incrCollectCount(Long postId, int delta);
 
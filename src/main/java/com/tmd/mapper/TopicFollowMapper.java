@@ -6,8 +6,11 @@ import com.tmd.entity.dto.TopicFollowVO;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.List;
+
 @Mapper
 public interface TopicFollowMapper {
     @Delete("delete from topic_follow where topic_id = #{topicId} and user_id = #{userId}")
@@ -16,6 +19,22 @@ public interface TopicFollowMapper {
     @Insert("insert into topic_follow (topic_id,user_id,created_at) values(#{topicId},#{userId},#{createdAt})")
     void insert(TopicFollow build);
 
+    @Insert("<script>" +
+            "insert into topic_follow (topic_id,user_id,created_at) values " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.topicId},#{item.userId},#{item.createdAt})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<TopicFollow> list);
+
+    @Delete("<script>" +
+            "delete from topic_follow where (topic_id,user_id) in " +
+            "<foreach collection='list' item='item' open='(' separator=',' close=')'>" +
+            "(#{item.topicId},#{item.userId})" +
+            "</foreach>" +
+            "</script>")
+    int deleteBatch(@Param("list") List<TopicFollow> list);
+
     @Select("select c.created_at,c.user_id,u.username,u.avatar from sticknew.topic_follow c left join sticknew.users u on u.id = c.user_id " +
             "where c.topic_id =#{topicId}")
     Page<TopicFollowVO> getTopicFollowers(Integer topicId);
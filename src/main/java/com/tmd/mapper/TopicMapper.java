@@ -20,11 +20,67 @@ public interface TopicMapper {
             ",u.username from sticknew.topic c left join sticknew.users u on u.id = c.user_id where c.id=#{topicId}")
     TopicVO getTopicById(Integer topicId);
 
+    @Select("<script>" +
+            "select c.id,c.name,c.description,c.cover_image,c.post_count,c.follower_count,c.status" +
+            ",u.username from sticknew.topic c left join sticknew.users u on u.id = c.user_id where c.id in " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    List<TopicVO> getTopicsByIds(@org.apache.ibatis.annotations.Param("ids") List<Long> ids);
+
     void insert(Topic topicEntity);
 
+    @Select("select id from topic where id > #{afterId} order by id limit #{limit}")
+    List<Long> selectIdsAfter(@org.apache.ibatis.annotations.Param("afterId") Long afterId,
+            @org.apache.ibatis.annotations.Param("limit") int limit);
+
+    // 只联想审核通过的话题，待审核/被拒的名字不能出现在搜索框里
+    @Select("select name as text, 'topic' as type, ifnull(follower_count, 0) as weight from topic " +
+            "where status = 'approved' and name is not null and name <> '' order by follower_count desc limit #{limit}")
+    List<com.tmd.entity.dto.SuggestItem> selectSuggestNames(@org.apache.ibatis.annotations.Param("limit") int limit);
+
+    @Select("select id, created_at from topic where id > #{afterId} order by id limit #{limit}")
+    List<Topic> selectIndexAfter(@org.apache.ibatis.annotations.Param("afterId") Long afterId,
+            @org.apache.ibatis.annotations.Param("limit") int limit);
+
     @Update("update topic set follower_count = #{followerCount} where id = #{topicId}")
     void updateFollowCount(TopicFollowVO topicFollowVO);
 
+    @Update("update topic set status = 'approved', updated_at = now() where id = #{topicId}")
+    int markApproved(@org.apache.ibatis.annotations.Param("topicId") Long topicId);
+
+    @Update("<script>" +
+            "update topic set follower_count = case id " +
+            "<foreach collection='list' item='item'>" +
+            "when #{item.topicId} then #{item.followerCount} " +
+            "</foreach>" +
+            "end " +
+            "where id in " +
+            "<foreach collection='list' item='item' open='(' separator=',' close=')'>" +
+            "#{item.topicId}" +
+            "</foreach>" +
+            "</script>")
+    int updateFollowCountBatch(@org.apache.ibatis.annotations.Param("list") List<TopicFollowVO> list);
+
+    /**
+     * 一条分组查询取出已发布帖子数与关注数；ids 为空时返回全部话题
+     */
+    @Select("<script>" +
+            "select t.id, ifnull(p.cnt, 0) as post_count, ifnull(f.cnt, 0) as follower_count from topic t " +
+            "left join (select topic_id, count(1) cnt from posts where status = 'published' group by topic_id) p " +
+            "on p.topic_id = t.id " +
+            "left join (select topic_id, count(1) cnt from topic_follow group by topic_id) f " +
+            "on f.topic_id = t.id " +
+            "<if test='ids != null and ids.size() > 0'>" +
+            "where t.id in " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</if>" +
+            "</script>")
+    List<Topic> selectStats(@org.apache.ibatis.annotations.Param("ids") List<Long> ids);
+
     @Delete("delete from topic where id = #{id}")
     void deleteById(Long id);
 
@@ -12,6 +12,13 @@ public interface UserMapper {
     @Options(useGeneratedKeys = true, keyColumn = "id", keyProperty = "id")
     void register(UserData userData);
 
+    @Select("select id from users where id > #{afterId} order by id limit #{limit}")
+    java.util.List<Long> selectIdsAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Select("select username as text, 'user' as type, 0 as weight from users " +
+            "where deleted_at is null order by id desc limit #{limit}")
+    java.util.List<com.tmd.entity.dto.SuggestItem> selectSuggestNames(@Param("limit") int limit);
+
     @Select("select * from users where username=#{username}")
     UserData findByUsername(UserData userData);
 
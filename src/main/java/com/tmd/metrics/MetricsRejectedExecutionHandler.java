@@ -1,21 +1,32 @@
 package com.tmd.metrics;
 
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 
 public class MetricsRejectedExecutionHandler implements RejectedExecutionHandler {
-    private final MeterRegistry meterRegistry;
-    private final RejectedExecutionHandler delegate = new ThreadPoolExecutor.AbortPolicy();
+    private final Counter rejected;
+    private final RejectedExecutionHandler delegate;
 
     public MetricsRejectedExecutionHandler(MeterRegistry meterRegistry) {
-        this.meterRegistry = meterRegistry;
+        this(meterRegistry, "default", new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @param pool     线程池名，作为 pool 标签
+     * @param delegate 计数之后实际执行的拒绝策略
+     */
+    public MetricsRejectedExecutionHandler(MeterRegistry meterRegistry, String pool,
+                                           RejectedExecutionHandler delegate) {
+        this.rejected = meterRegistry.counter("threadpool_rejected_total", "pool", pool);
+        this.delegate = delegate;
     }
 
     @Override
     public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-        meterRegistry.counter("threadpool_rejected_total").increment();
+        rejected.increment();
         delegate.rejectedExecution(r, executor);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,274 @@
+package com.tmd.redisModule;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.tmd.config.ThreadPoolConfig;
+import com.tmd.mapper.PostsMapper;
+import com.tmd.mapper.TopicMapper;
+import com.tmd.mapper.UserMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 帖子/用户/话题 id 的布隆过滤器统一管理
+ * <p>
+ * 1. 启动时 tryInit 一次；集群内同一时刻只有一个节点（锁）按主键分批扫库灌入 Redis 过滤器，
+ * 扫到的最大 id 记在 {@link #SCAN_MARK_KEY}，全部扫完后写 bf:bootstrap:done。预热完成前 Redis 未命中按“可能存在”放行
+ * 2. 新增 id 同步写入 Redis 过滤器，返回后其他节点立即可见；写失败进重试队列，后台每 {@link #FLUSH_INTERVAL_MILLIS} 毫秒重写
+ * 3. 每 {@link #CATCH_UP_INTERVAL_MILLIS} 毫秒从记录的最大 id 往后补扫一次（起点略微回退），
+ * 补上崩溃前没写进 Redis 的 id；预热中断时也由这里接着扫
+ * 4. 本地 Guava 副本只读判断：本地命中直接返回；本地未命中再问一次 Redis（其他节点新增的 id），命中后记入本地。
+ * 本地副本插入量超过容量后整体换新，从 Redis 重新学习，误判率不会随时间上升
+ * <p>
+ * 布隆过滤器不支持删除，删除事件不做处理；存在性仍以 DB 为准。
+ * Redis 不可用时放行（返回 true），不因过滤器故障拒绝正常请求。
+ */
+@Component
+@Slf4j
+public class BloomFilterManager {
+
+    public enum Kind {
+        POST("bf:post:id", 10_000_000L),
+        USER("bf:user:id", 10_000_000L),
+        TOPIC("bf:topic:id", 5_000_000L);
+
+        private final String key;
+        private final long expectedInsertions;
+
+        Kind(String key, long expectedInsertions) {
+            this.key = key;
+            this.expectedInsertions = expectedInsertions;
+        }
+    }
+
+    private static final double FALSE_PROBABILITY = 0.03;
+    private static final long LOCAL_CAPACITY = 1_000_000L; // 本地副本容量，超出后换新
+    private static final double LOCAL_FALSE_PROBABILITY = 0.01; // 本地误判叠加在 Redis 误判之上，取更低
+    private static final String BOOTSTRAP_DONE_KEY = "bf:bootstrap:done";
+    private static final String BOOTSTRAP_LOCK_KEY = "lock:bf:bootstrap";
+    private static final String SCAN_MARK_KEY = "bf:scan:mark";
+    private static final long CATCH_UP_INTERVAL_MILLIS = 60_000;
+    private static final int SCAN_OVERLAP = 200;
+    private static final long BOOTSTRAP_LOCK_MINUTES = 30;
+    private static final int SCAN_BATCH_SIZE = 2000;
+    private static final long FLUSH_INTERVAL_MILLIS = 500;
+    private static final int MAX_FLUSH_PER_ROUND = 5000;
+
+    private final RedissonClient redissonClient;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final PostsMapper postsMapper;
+    private final UserMapper userMapper;
+    private final TopicMapper topicMapper;
+    private final ThreadPoolConfig threadPoolConfig;
+
+    private final EnumMap<Kind, RBloomFilter<Long>> remote = new EnumMap<>(Kind.class);
+    private final EnumMap<Kind, AtomicReference<BloomFilter<Long>>> local = new EnumMap<>(Kind.class);
+    private final EnumMap<Kind, AtomicLong> localInsertions = new EnumMap<>(Kind.class);
+    private final EnumMap<Kind, ConcurrentLinkedQueue<Long>> pending = new EnumMap<>(Kind.class);
+    private volatile boolean bootstrapped = false;
+
+    public BloomFilterManager(RedissonClient redissonClient,
+            StringRedisTemplate stringRedisTemplate,
+            PostsMapper postsMapper,
+            UserMapper userMapper,
+            TopicMapper topicMapper,
+            ThreadPoolConfig threadPoolConfig) {
+        this.redissonClient = redissonClient;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.postsMapper = postsMapper;
+        this.userMapper = userMapper;
+        this.topicMapper = topicMapper;
+        this.threadPoolConfig = threadPoolConfig;
+        for (Kind kind : Kind.values()) {
+            local.put(kind, new AtomicReference<>(newLocal()));
+            localInsertions.put(kind, new AtomicLong());
+            pending.put(kind, new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        for (Kind kind : Kind.values()) {
+            RBloomFilter<Long> filter = redissonClient.getBloomFilter(kind.key);
+            try {
+                filter.tryInit(kind.expectedInsertions, FALSE_PROBABILITY);
+            } catch (Exception e) {
+                log.warn("布隆过滤器初始化失败: key={}", kind.key, e);
+            }
+            remote.put(kind, filter);
+        }
+        try {
+            threadPoolConfig.threadPoolExecutor().execute(this::catchUp);
+        } catch (Exception e) {
+            log.warn("布隆过滤器预热任务提交失败", e);
+        }
+    }
+
+    /**
+     * 热路径判断：本地副本命中直接返回，否则回源 Redis 过滤器
+     */
+    public boolean mightContain(Kind kind, Long id) {
+        if (id == null) {
+            return false;
+        }
+        if (local.get(kind).get().mightContain(id)) {
+            return true;
+        }
+        try {
+            boolean exists = remote.get(kind).contains(id);
+            if (exists) {
+                putLocal(kind, id);
+            }
+            // 预热完成前 Redis 里还缺存量 id，未命中不能当作不存在
+            return exists || !bootstrapped;
+        } catch (Exception e) {
+            log.warn("布隆过滤器查询失败，放行: key={}, id={}", kind.key, id, e);
+            return true;
+        }
+    }
+
+    /**
+     * 新增 id：同步写入 Redis，其他节点立即可见；写失败放进重试队列
+     */
+    public void add(Kind kind, Long id) {
+        if (id == null) {
+            return;
+        }
+        putLocal(kind, id);
+        try {
+            remote.get(kind).add(id);
+        } catch (Exception e) {
+            log.warn("布隆过滤器写入失败，稍后重试: key={}, id={}", kind.key, id, e);
+            pending.get(kind).offer(id);
+        }
+    }
+
+    /**
+     * 重写同步写入失败的 id
+     */
+    @Scheduled(fixedDelay = FLUSH_INTERVAL_MILLIS)
+    public void flushPending() {
+        for (Kind kind : Kind.values()) {
+            ConcurrentLinkedQueue<Long> queue = pending.get(kind);
+            if (queue.isEmpty()) {
+                continue;
+            }
+            Set<Long> batch = new HashSet<>();
+            Long id;
+            while (batch.size() < MAX_FLUSH_PER_ROUND && (id = queue.poll()) != null) {
+                batch.add(id);
+            }
+            try {
+                addRemote(kind, batch);
+            } catch (Exception e) {
+                log.warn("布隆过滤器批量写入失败，稍后重试: key={}, size={}", kind.key, batch.size(), e);
+                queue.addAll(batch);
+            }
+        }
+    }
+
+    /**
+     * 本地副本插入量超过容量时换新，之后从 Redis 按需重新学习
+     */
+    @Scheduled(fixedDelay = 600_000, initialDelay = 600_000)
+    public void refreshLocal() {
+        for (Kind kind : Kind.values()) {
+            if (localInsertions.get(kind).get() > LOCAL_CAPACITY) {
+                local.get(kind).set(newLocal());
+                localInsertions.get(kind).set(0);
+                log.info("布隆过滤器本地副本已换新: key={}", kind.key);
+            }
+        }
+    }
+
+    /**
+     * 预热与补扫：从记录的最大 id 往后扫库；首次全部扫完后标记预热完成
+     */
+    @Scheduled(fixedDelay = CATCH_UP_INTERVAL_MILLIS, initialDelay = CATCH_UP_INTERVAL_MILLIS)
+    public void catchUp() {
+        try {
+            boolean done = Boolean.TRUE.equals(stringRedisTemplate.hasKey(BOOTSTRAP_DONE_KEY));
+            bootstrapped = done;
+            Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(BOOTSTRAP_LOCK_KEY, "1",
+                    BOOTSTRAP_LOCK_MINUTES, TimeUnit.MINUTES);
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+            try {
+                long start = System.currentTimeMillis();
+                long posts = scan(Kind.POST);
+                long users = scan(Kind.USER);
+                long topics = scan(Kind.TOPIC);
+                if (!done) {
+                    stringRedisTemplate.opsForValue().set(BOOTSTRAP_DONE_KEY,
+                            String.valueOf(System.currentTimeMillis()));
+                    bootstrapped = true;
+                    log.info("布隆过滤器预热完成: posts={}, users={}, topics={}, cost={}ms", posts, users, topics,
+                            System.currentTimeMillis() - start);
+                }
+            } finally {
+                stringRedisTemplate.delete(BOOTSTRAP_LOCK_KEY);
+            }
+        } catch (Exception e) {
+            log.error("布隆过滤器预热/补扫失败", e);
+        }
+    }
+
+    /**
+     * 从记录的最大 id 往后按主键分批扫描（WHERE id > ? ORDER BY id LIMIT n），内存只保留一批；
+     * 起点回退 {@link #SCAN_OVERLAP} 个 id，覆盖较小 id 晚于较大 id 提交的情况，重复写入无副作用
+     */
+    private long scan(Kind kind) {
+        Object mark = stringRedisTemplate.opsForHash().get(SCAN_MARK_KEY, kind.name());
+        long afterId = mark == null ? 0L : Math.max(0L, Long.parseLong(mark.toString()) - SCAN_OVERLAP);
+        long total = 0L;
+        while (true) {
+            List<Long> ids = switch (kind) {
+                case POST -> postsMapper.selectIdsAfter(afterId, SCAN_BATCH_SIZE);
+                case USER -> userMapper.selectIdsAfter(afterId, SCAN_BATCH_SIZE);
+                case TOPIC -> topicMapper.selectIdsAfter(afterId, SCAN_BATCH_SIZE);
+            };
+            if (ids == null || ids.isEmpty()) {
+                return total;
+            }
+            addRemote(kind, ids);
+            for (Long id : ids) {
+                putLocal(kind, id);
+            }
+            total += ids.size();
+            afterId = ids.get(ids.size() - 1);
+            stringRedisTemplate.opsForHash().put(SCAN_MARK_KEY, kind.name(), String.valueOf(afterId));
+            if (ids.size() < SCAN_BATCH_SIZE) {
+                return total;
+            }
+        }
+    }
+
+    private void addRemote(Kind kind, Collection<Long> ids) {
+        RBloomFilter<Long> filter = remote.get(kind);
+        for (Long id : ids) {
+            filter.add(id);
+        }
+    }
+
+    private void putLocal(Kind kind, Long id) {
+        if (local.get(kind).get().put(id)) {
+            localInsertions.get(kind).incrementAndGet();
+        }
+    }
+
+    private static BloomFilter<Long> newLocal() {
+        return BloomFilter.create(Funnels.longFunnel(), LOCAL_CAPACITY, LOCAL_FALSE_PROBABILITY);
+    }
+}
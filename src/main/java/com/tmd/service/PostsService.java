@@ -40,6 +40,7 @@ public interface PostsService {
     Result createReplyComment(Long userId, Long postId, Long commentId, CommentCreateDTO dto);
     Result deleteComment(Long userId, Long commentId);
     Result getPostComments(Long postId, Integer page, Integer size, String sortBy);
+    Result getCommentReplies(Long postId, Long commentId, Long cursor, Long lastId, Integer size);
 
     Result updatePosts(PostUpdateDTO postUpdateDTO);
 
@@ -5,7 +5,7 @@ import com.tmd.entity.dto.Result;
 public interface PrivateChatService {
     Result send(Long toUserId, String content);
 
-    Result pullOffline(Integer page, Integer size);
+    Result pullOffline(String cursor, Integer size);
 
     Result history(Long otherUserId,
                    Integer size,
@@ -11,4 +11,21 @@ public interface SearchService {
                   Long topicId,
                   Long startTime,
                   Long endTime);
+
+    /**
+     * 游标翻页（search_after），cursor 为空时返回首页；深度翻页代价恒定
+     */
+    Result searchScroll(String keyword,
+                        String type,
+                        Integer size,
+                        String sort,
+                        Long topicId,
+                        Long startTime,
+                        Long endTime,
+                        String cursor);
+
+    /**
+     * 输入联想：本地前缀索引优先，未命中回源 ES
+     */
+    Result suggest(String prefix, Integer size);
 }
@@ -5,6 +5,9 @@ import com.tmd.entity.dto.TopicDTO;
 import com.tmd.entity.dto.TopicVO;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Map;
+
 @Service
 public interface TopicService {
     Result getAllTopics(Integer page, Integer size, String status) throws InterruptedException;
@@ -16,6 +19,11 @@ public interface TopicService {
      */
     TopicVO getTopicCachedById(Integer topicId);
 
+    /**
+     * 批量获取话题，一次 MGET 读缓存，未命中的一次 IN 查询回源并回填（供列表批量组装使用）
+     */
+    Map<Long, TopicVO> getTopicsCachedByIds(Collection<Long> topicIds);
+
     Result createTopic(TopicDTO topic);
 
     Result followTopic(Integer topicId);
@@ -27,6 +27,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -156,23 +157,28 @@ public class MailServiceImpl implements MailService {
                     }
                 }
                 if (b) {
-                    threadPoolConfig.threadPoolExecutor().execute(() -> {
-                        // 查询数据库，查询所有邮件的id
-                        try {
-                            List<Long> ids = mailMapper.selectAllIds();
-                            // 查询数据库的时候肯定不能阻塞查询，让一个线程去查询数据库，其他的先返回空，等数据库查询完成后再返回
-                            Set<ZSetOperations.TypedTuple<String>> addTuples = new HashSet<>(ids.size());
-                            for (Long id : ids) {
-                                addTuples.add(
-                                        ZSetOperations.TypedTuple.of(id.toString(),
-                                                (double) System.currentTimeMillis()));
-                            }
-                            if (!addTuples.isEmpty()) {
-                                stringRedisTemplate.opsForZSet().add(key, addTuples);
+                    try {
+                        threadPoolConfig.cacheRebuildExecutor().execute(() -> {
+                            // 查询数据库，查询所有邮件的id
+                            try {
+                                List<Long> ids = mailMapper.selectAllIds();
+                                // 查询数据库的时候肯定不能阻塞查询，让一个线程去查询数据库，其他的先返回空，等数据库查询完成后再返回
+                                Set<ZSetOperations.TypedTuple<String>> addTuples = new HashSet<>(ids.size());
+                                for (Long id : ids) {
+                                    addTuples.add(
+                                            ZSetOperations.TypedTuple.of(id.toString(),
+                                                    (double) System.currentTimeMillis()));
+                                }
+                                if (!addTuples.isEmpty()) {
+                                    stringRedisTemplate.opsForZSet().add(key, addTuples);
+                                }
+                            } catch (Exception ignored){
                             }
-                        } catch (Exception ignored){
-                        }
-                    });
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // 回源池满了就放弃这次预热，下一个请求再触发
+                        log.warn("[邮件服务] 邮件索引预热任务被拒绝 key={}", key);
+                    }
                 }
                 return ScrollResult.builder().max(mailPackage.getMax()).scroll(mailPackage.getScroll())
                         .data(new ArrayList<>()).build();
@@ -315,7 +321,7 @@ public class MailServiceImpl implements MailService {
             stringRedisTemplate.opsForList().leftPush("mail:comment:" + BaseContext.get(),
                     JSONUtil.toJsonStr(mailComment));
             // 然后这些数据当然要插入到数据库当中了，插入到三个数据库中，异步写入
-            threadPoolConfig.threadPoolExecutor().execute(() -> {
+            threadPoolConfig.notificationExecutor().execute(() -> {
 
                 mailCommentMapper.insert(mailComment);
 
@@ -353,7 +359,7 @@ public class MailServiceImpl implements MailService {
                     .build();
             stringRedisTemplate.opsForList().leftPush("mail:comment:" + BaseContext.get(),
                     JSONUtil.toJsonStr(mailComment));
-            threadPoolConfig.threadPoolExecutor().execute(() -> {
+            threadPoolConfig.notificationExecutor().execute(() -> {
                 mailCommentMapper.insert(mailComment);
                 receivedMailMapper.insert(readyToAdd);
                 log.info("[邮件服务] 评论成功");
@@ -424,20 +430,24 @@ public class MailServiceImpl implements MailService {
                     .collect(Collectors.toList());
             // 恢复缓存，缓存的key为mail:push:userId
             Long currentId = BaseContext.get();
-            threadPoolConfig.threadPoolExecutor().execute(() -> {
-                stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
-                    @Override
-                    public Object execute(RedisOperations operations) {
-                        for (ReceivedMail rm : page1.getResult()) {
-                            operations.opsForZSet().add("mail:push:" + currentId,
-                                    JSONUtil.toJsonStr(rm),
-                                    (double) System.currentTimeMillis());
+            try {
+                threadPoolConfig.cacheRebuildExecutor().execute(() -> {
+                    stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                        @Override
+                        public Object execute(RedisOperations operations) {
+                            for (ReceivedMail rm : page1.getResult()) {
+                                operations.opsForZSet().add("mail:push:" + currentId,
+                                        JSONUtil.toJsonStr(rm),
+                                        (double) System.currentTimeMillis());
+                            }
+                            return null;
                         }
-                        return null;
-                    }
+                    });
+                    log.info("[邮件服务] 恢复缓存成功");
                 });
-                log.info("[邮件服务] 恢复缓存成功");
-            });
+            } catch (RejectedExecutionException e) {
+                log.warn("[邮件服务] 收件缓存恢复任务被拒绝 uid={}", currentId);
+            }
             return PageResult.builder()
                     .total(page1.getTotal())
                     .rows(collect)
@@ -504,22 +514,28 @@ public class MailServiceImpl implements MailService {
             locked = lock.tryLock(5, 30, TimeUnit.SECONDS);
             if (locked) {
                 List<MailComment> toCache = mailCommentMapper.selectByCommenterId(uid, 0, Math.min(200, s * 2));
-                threadPoolConfig.threadPoolExecutor().execute(() -> {
-                    try {
-                        if (toCache != null && !toCache.isEmpty()) {
-                            stringRedisTemplate.delete(key);
-                            for (MailComment mc : toCache) {
-                                stringRedisTemplate.opsForList().leftPush(key, JSONUtil.toJsonStr(mc));
+                try {
+                    threadPoolConfig.cacheRebuildExecutor().execute(() -> {
+                        try {
+                            if (toCache != null && !toCache.isEmpty()) {
+                                stringRedisTemplate.delete(key);
+                                for (MailComment mc : toCache) {
+                                    stringRedisTemplate.opsForList().leftPush(key, JSONUtil.toJsonStr(mc));
+                                }
+                            }
+                        } catch (Exception e) {
+                            log.warn("[邮件服务] 恢复评论缓存失败 uid={}", uid, e);
+                        } finally {
+                            if (lock.isHeldByCurrentThread()) {
+                                lock.unlock();
                             }
                         }
-                    } catch (Exception e) {
-                        log.warn("[邮件服务] 恢复评论缓存失败 uid={}", uid, e);
-                    } finally {
-                        if (lock.isHeldByCurrentThread()) {
-                            lock.unlock();
-                        }
-                    }
-                });
+                    });
+                } catch (RejectedExecutionException e) {
+                    // 任务没提交出去，锁由当前线程释放，下一个请求再恢复
+                    log.warn("[邮件服务] 评论缓存恢复任务被拒绝 uid={}", uid);
+                    lock.unlock();
+                }
             }
         } catch (InterruptedException e) {
             log.warn("[邮件服务] 评论缓存加锁失败 uid={}", uid, e);
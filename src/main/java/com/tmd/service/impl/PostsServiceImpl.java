@@ -1,32 +1,36 @@
 package com.tmd.service.impl;
 
+import cn.hutool.core.lang.TypeReference;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.tmd.config.ThreadPoolConfig;
+import com.tmd.counter.CommentCountFlusher;
+import com.tmd.counter.PostCounterAggregator;
+import com.tmd.counter.PostLikeFlusher;
+import com.tmd.es.PostIndexSync;
+import com.tmd.es.SuggestIndex;
 import com.tmd.entity.dto.*;
+import com.tmd.feed.CommentTreeCache;
+import com.tmd.feed.FeedPageLoader;
+import com.tmd.feed.ListCacheGenerations;
+import com.tmd.feed.PostFeedIndex;
+import com.tmd.redisModule.BloomFilterManager;
+import com.tmd.feed.PostFeedHydrator;
 import com.tmd.mapper.*;
 import com.tmd.service.AttachmentService;
 import com.tmd.service.PostsService;
 import com.tmd.service.TopicService;
 import com.tmd.service.UserService;
+import com.tmd.spring.RedisCaffeineCache;
+import com.tmd.spring.RedisCaffeineCacheManager;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.elasticsearch.action.delete.DeleteRequest;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.update.UpdateRequest;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.script.Script;
-import org.elasticsearch.script.ScriptType;
-import org.redisson.api.RBloomFilter;
-import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.Cursor;
+import org.springframework.cache.Cache;
 import org.springframework.data.redis.core.RedisCallback;
-import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -38,7 +42,6 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -71,44 +74,66 @@ public class PostsServiceImpl implements PostsService {
     @Autowired
     private RedissonClient redissonClient;
     @Autowired
-    private RestHighLevelClient esClient;
+    private PostIndexSync postIndexSync;
+    @Autowired
+    private SuggestIndex suggestIndex;
     @Autowired
     private com.tmd.tools.RedisIdWorker redisIdWorker;
+    @Autowired
+    private PostFeedHydrator postFeedHydrator;
+    @Autowired
+    private RedisCaffeineCacheManager cacheManager;
+    @Autowired
+    private FeedPageLoader feedPageLoader;
+    @Autowired
+    private PostCounterAggregator postCounterAggregator;
+    @Autowired
+    private PostLikeFlusher postLikeFlusher;
+    @Autowired
+    private CommentCountFlusher commentCountFlusher;
+    @Autowired
+    private ListCacheGenerations listCacheGenerations;
+    @Autowired
+    private PostFeedIndex postFeedIndex;
+    @Autowired
+    private CommentTreeCache commentTreeCache;
+    @Autowired
+    private BloomFilterManager bloomFilterManager;
+
+    // 列表/总数的两级缓存：L1 存反序列化后的对象，L2 即原有的 post:list:* / post:total:* 字符串
+    private RedisCaffeineCache postListCache;
+    private RedisCaffeineCache postTotalCache;
 
-    private static final String POSTS_LIST_KEY_FMT = "post:list:%s:%s:%s:%d:%d"; // type:status:sort:page:size
-    private static final String POSTS_TOTAL_KEY_FMT = "post:total:%s:%s:%s"; // type:status:sort
-    private static final String POSTS_ZSET_KEY_FMT = "post:zset:%s:%s:%s"; // sort:type:status
+    // 列表/总数 key 由 ListCacheGenerations 生成：post:list:{type}:{status}:{sort}:g{gen}:{page}:{size}
+    private static final String POST_LIST_CACHE = "post:list";
+    private static final String POST_TOTAL_CACHE = "post:total";
     private static final long LIST_TTL_SECONDS = 300; // 列表缓存TTL
     private static final long TOTAL_TTL_SECONDS = 300; // 总数缓存TTL
-    private static final int ZSET_PREFILL_LIMIT = 2000; // ZSet预热最大条数
-    private static final String INDEX_POSTS = "posts";
     private static final int RATE_LIMIT_LIST_THRESHOLD = 50;
     private static final int RATE_LIMIT_LIST_WINDOW_SECONDS = 1;
     private static final int RATE_LIMIT_CREATE_THRESHOLD = 5;
     private static final int RATE_LIMIT_CREATE_WINDOW_SECONDS = 1;
     private static final String SHARE_TOKEN_KEY_FMT = "share:token:%s";
-    private static final String POST_VIEW_PV_KEY_FMT = "post:view:pv:%d";
     private static final String POST_VIEW_UV_KEY_FMT = "post:view:uv:%d";
     private static final String POST_VIEW_SEEN_KEY_FMT = "post:view:seen:%d:%d";
     private static final String POST_VIEW_DAILY_KEY_FMT = "post:view:daily:%s";
     private static final long VIEW_DEDUPE_TTL_MINUTES = 5;
-    private static final String POST_VIEW_FLUSH_KEY_FMT = "post:view:flush:%d";
-    private static final int POST_VIEW_FLUSH_THRESHOLD = 50;
 
     private static final String POST_LIKE_USERS_SET_FMT = "post:like:users:%d";
     private static final String USER_LIKES_SET_FMT = "user:likes:set:%d";
     private static final String POST_LIKE_FLUSH_KEY_FMT = "post:like:flush:%d";
     private static final String POST_COMMENT_FLUSH_KEY_FMT = "post:comment:flush:%d";
 
-    // 重建缓存相关常量
-    private static final String REBUILD_FLAG_PREFIX = "post:rebuild:flag:";
-    private static final String LOCK_KEY_PREFIX = "post:rebuild:lock:";
-    private static final int POST_LIKE_FLUSH_THRESHOLD = 50;
 
     private static final String POST_FAV_USERS_SET_FMT = "post:fav:users:%d";
     private static final String USER_FAVS_SET_FMT = "user:favs:set:%d";
-    private static final String POST_FAV_FLUSH_KEY_FMT = "post:fav:flush:%d";
-    private static final int POST_FAV_FLUSH_THRESHOLD = 50;
+
+    @PostConstruct
+    public void initNearCache() {
+        postListCache = cacheManager.getCache(POST_LIST_CACHE, new TypeReference<List<PostListItemVO>>() {
+        }.getType());
+        postTotalCache = cacheManager.getCache(POST_TOTAL_CACHE, Long.class);
+    }
 
     /**
      * 缓存帖子列表到Redis，带有重试机制
@@ -125,6 +150,9 @@ public class PostsServiceImpl implements PostsService {
 
                 stringRedisTemplate.opsForValue().set(totalKey, String.valueOf(total), ttlJitter(TOTAL_TTL_SECONDS),
                         TimeUnit.SECONDS);
+                // 本节点顺手放入 L1，其它节点首次读取时再从 Redis 加载
+                postListCache.putLocal(nearCacheKey(listKey, POST_LIST_CACHE), items);
+                postTotalCache.putLocal(nearCacheKey(totalKey, POST_TOTAL_CACHE), total);
                 log.info("帖子列表缓存成功: sort={}, type={}, status={}, listKey={}, totalKey={}", sort, typeKey, statusKey,
                         listKey,
                         totalKey);
@@ -153,209 +181,63 @@ public class PostsServiceImpl implements PostsService {
             page = 1;
         if (size == null || size < 1)
             size = 10;
-        if (StrUtil.isBlank(sort))
-            sort = "latest";
+        // 只有 latest / hot 两种排序，其它值归一后再拼 key，保证能被 bump 到
+        sort = ListCacheGenerations.normalizeSort(sort);
 
         String typeKey = StrUtil.isBlank(type) ? "-" : type;
         String statusKey = StrUtil.isBlank(status) ? "-" : status;
-        String listKey = String.format(POSTS_LIST_KEY_FMT, typeKey, statusKey, sort, page, size);
-        String totalKey = String.format(POSTS_TOTAL_KEY_FMT, typeKey, statusKey, sort);
-
-        // 先尝试读取列表缓存
-        String cachedListJson = stringRedisTemplate.opsForValue().get(listKey);
-        if (StrUtil.isNotBlank(cachedListJson)) {
-            List<PostListItemVO> rows = JSONUtil.toList(JSONUtil.parseArray(cachedListJson), PostListItemVO.class);
+        String listKey = listCacheGenerations.postListKey(typeKey, statusKey, sort, page, size);
+        String totalKey = listCacheGenerations.postTotalKey(typeKey, statusKey, sort);
+
+        // 先尝试读取列表缓存：L1 命中直接拿到反序列化好的列表，未命中再读 Redis 并回填 L1
+        Cache.ValueWrapper cachedList = postListCache.get(nearCacheKey(listKey, POST_LIST_CACHE));
+        if (cachedList != null && cachedList.get() != null) {
+            @SuppressWarnings("unchecked")
+            List<PostListItemVO> rows = (List<PostListItemVO>) cachedList.get();
             Long total = null;
-            String totalStr = stringRedisTemplate.opsForValue().get(totalKey);
-            if (StrUtil.isNotBlank(totalStr)) {
-                try {
-                    total = Long.parseLong(totalStr);
-                } catch (Exception ignore) {
-                }
+            Cache.ValueWrapper cachedTotal = postTotalCache.get(nearCacheKey(totalKey, POST_TOTAL_CACHE));
+            if (cachedTotal != null && cachedTotal.get() instanceof Long) {
+                total = (Long) cachedTotal.get();
             }
             // 如果总数不存在，退化为当前页大小，下一次会恢复
             if (total == null)
                 total = (long) rows.size();
             PageResult pageResult = PageResult.builder().total(total).rows(rows).build();
+            feedPageLoader.remember(listKey, pageResult);
             return Result.success(pageResult);
         }
 
-        // 步骤2：检查是否已有异步重建任务（避免重复触发）
-        String rebuildFlagKey = REBUILD_FLAG_PREFIX + listKey;
-        String rebuildFlag = stringRedisTemplate.opsForValue().get(rebuildFlagKey);
-        if ("true".equals(rebuildFlag)) {
-            // 已有任务在重建，直接返回兜底数据
-            return getFallbackData();
-        }
-
-        // 步骤3：尝试设置重建标记（原子操作，防止多线程重复触发）
-        Boolean flagSet = stringRedisTemplate.opsForValue().setIfAbsent(rebuildFlagKey, "true", 60, TimeUnit.SECONDS);
-        if (flagSet == null || !flagSet) {
-            // 标记设置失败，说明其他线程已触发重建
-            return getFallbackData();
-        }
-
-        // 步骤4：触发异步重建（主线程不持有锁，仅触发任务）
+        // 步骤2：缓存未命中，交给单飞加载器：同 key 并发请求只查一次库，其余请求等待同一结果；
+        // 本地还有上一次的页面时直接返回旧页面并后台刷新（stale-while-revalidate）
         final int offset = (page - 1) * size;
         final String finalSort = sort;
         final Integer finalSize = size;
-
-        //然后来解释一下为什么异步线程中还需要使用Redisson锁
-//        整体流程（清晰、有条理）
-//        先查缓存，命中直接返回。
-//        缓存未命中，用一个 Redis setIfAbsent 做重建标记，快速判断是否已有线程在重建缓存。
-//        如果已有重建任务，其他请求直接返回兜底数据，不触发异步任务。
-//        如果没有重建任务，主线程只负责触发异步任务，自己不持有锁，立刻返回。
-//        真正的加锁、查库、续约、解锁，全部交给异步线程自己完成。
-//        异步线程内部用 Redisson 分布式锁 保证同一时间只有一个线程去查库重建。
-//        重建完成后，删除重建标记，释放锁。
-//
-//        setIfAbsent 标记 + Redisson 锁是双层保障：
-//        外层标记是轻量拦截，用来挡掉 99% 的并发请求，减少异步任务触发。
-//        但是会有这么几个问题
-//        Redis 主从延迟可能导致多个异步任务同时执行。
-//        重建耗时超过标记过期时间，会重复触发任务。
-        CompletableFuture.runAsync(() -> {
-            // 异步线程自己抢锁、自己处理、自己解锁
-            RLock lock = redissonClient.getFairLock(LOCK_KEY_PREFIX + listKey);
+        PageResult loaded = feedPageLoader.load(listKey, () -> {
+            log.info("开始回源重建列表缓存: key={}", listKey);
+            // 查询数据库分页数据，整页批量组装（计数增量、作者、话题、附件）
+            List<Post> posts = postsMapper.selectPage(type, status, finalSort, offset, finalSize);
+            List<PostListItemVO> items = postFeedHydrator.hydrate(posts);
+            long total1 = postsMapper.count(type, status);
+
+            // 写缓存放到异步线程，带重试的写入不阻塞等待中的请求（Bloom 由 BloomFilterManager 启动时统一灌入）
             try {
-                // 异步线程抢锁（阻塞抢锁，因为这是唯一的重建线程）
-                // 使用 Redisson 看门狗机制（leaseTime = -1），自动续期，无需手动 Timer
-                boolean locked = lock.tryLock(0, -1, TimeUnit.SECONDS);
-                if (!locked) {
-                    log.warn("异步线程抢锁失败，key={}", listKey);
-                    return;
-                }
-
-                // 双重检查缓存（防止抢锁期间缓存已被重建）
-                String doubleCheckValue = stringRedisTemplate.opsForValue().get(listKey);
-                if (StrUtil.isNotBlank(doubleCheckValue)) {
-                    log.info("缓存已重建，无需重复操作，key={}", listKey);
-                    return;
-                }
-
-                // 步骤6：耗时的查库操作
-                log.info("开始异步重建缓存: key={}", listKey);
-
-                List<PostListItemVO> items = new ArrayList<>();
-                // 查询数据库分页数据
-                List<Post> posts = postsMapper.selectPage(type, status, finalSort, offset, finalSize);
-
-                // 批量查询本页所有帖子的附件
-                List<Long> postIdsBatch = posts.stream().map(Post::getId).collect(Collectors.toList());
-                List<Attachment> allAttachments = attachmentService.getAttachmentsByBusinessBatch("post", postIdsBatch);
-                java.util.Map<Long, java.util.List<Attachment>> attMap = (allAttachments == null)
-                        ? new java.util.HashMap<>()
-                        : allAttachments.stream()
-                                .filter(a -> a.getBusinessId() != null)
-                                .collect(java.util.stream.Collectors.groupingBy(Attachment::getBusinessId));
-
-                for (Post p : posts) {
-                    // 作者信息（走缓存）
-                    UserProfile profile = userMapper.getProfile(p.getUserId());
-                    String username = profile != null ? profile.getUsername() : null;
-                    String avatar = profile != null ? profile.getAvatar() : null;
-                    // 话题信息
-                    String topicName = null;
-                    if (p.getTopicId() != null) {
-                        TopicVO topicVO = topicService.getTopicCachedById(p.getTopicId().intValue());
-                        topicName = topicVO != null ? topicVO.getName() : null;
-                    }
-                    // 附件
-                    List<Attachment> attachments = attMap.getOrDefault(p.getId(), Collections.emptyList());
-                    List<AttachmentLite> liteAttachments = new ArrayList<>();
-                    for (Attachment a : attachments) {
-                        liteAttachments.add(AttachmentLite.builder()
-                                .fileUrl(a.getFileUrl())
-                                .fileType(a.getFileType())
-                                .fileName(a.getFileName())
-                                .build());
-                    }
-                    // 获取Redis中的增量数据
-                    String likeKey = String.format(POST_LIKE_FLUSH_KEY_FMT, p.getId());
-                    String commentKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, p.getId());
-                    String viewKey = String.format(POST_VIEW_FLUSH_KEY_FMT, p.getId());
-
-                    List<String> keys = Arrays.asList(likeKey, commentKey, viewKey);
-                    List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
-
-                    int likeDelta = 0;
-                    int commentDelta = 0;
-                    int viewDelta = 0;
-
-                    if (values != null && values.size() == 3) {
-                        if (StrUtil.isNotBlank(values.get(0)))
-                            likeDelta = Integer.parseInt(values.get(0));
-                        if (StrUtil.isNotBlank(values.get(1)))
-                            commentDelta = Integer.parseInt(values.get(1));
-                        if (StrUtil.isNotBlank(values.get(2)))
-                            viewDelta = Integer.parseInt(values.get(2));
-                    }
-
-                    PostListItemVO vo = PostListItemVO.builder()
-                            .id(p.getId())
-                            .title(p.getTitle())
-                            .content(p.getContent())
-                            .userId(p.getUserId())
-                            .authorUsername(username)
-                            .authorAvatar(avatar)
-                            .topicId(p.getTopicId())
-                            .topicName(topicName)
-                            .likeCount((p.getLikeCount() == null ? 0 : p.getLikeCount()) + likeDelta)
-                            .commentCount((p.getCommentCount() == null ? 0 : p.getCommentCount()) + commentDelta)
-                            .shareCount(p.getShareCount() == null ? 0 : p.getShareCount())
-                            .viewCount((p.getViewCount() == null ? 0 : p.getViewCount()) + viewDelta)
-                            .createdAt(p.getCreatedAt())
-                            .updatedAt(p.getUpdatedAt())
-                            .attachments(liteAttachments)
-                            .build();
-                    items.add(vo);
-                }
-
-                // 步骤7：写入缓存
-                try {
-                    long total1 = postsMapper.count(type, status);
-                    cachePostsList(finalSort, typeKey, statusKey, items, type, status, listKey, totalKey, total1);
-                    log.info("异步重建缓存成功，key={}", listKey);
-
-                    // Bloom 过滤器维护
+                threadPoolConfig.cacheRebuildExecutor().execute(() -> {
                     try {
-                        RBloomFilter<Long> postBloom = redissonClient.getBloomFilter("bf:post:id");
-                        postBloom.tryInit(10_000_000L, 0.03);
-                        for (Post p : posts) {
-                            if (p.getId() != null)
-                                postBloom.add(p.getId());
-                        }
+                        cachePostsList(finalSort, typeKey, statusKey, items, type, status, listKey, totalKey, total1);
                     } catch (Exception e) {
-                        log.warn("Restore bloom filters failed", e);
+                        log.error("Cache posts list failed: key={}", listKey, e);
                     }
-                } catch (Exception e) {
-                    log.error("Cache posts list failed: key={}", listKey, e);
-                }
-
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("异步线程抢锁被中断，key={}", listKey, e);
-            } catch (Exception e) {
-                log.error("异步重建缓存异常，key={}", listKey, e);
-            } finally {
-                // 步骤8：清理资源
-                // 解锁
-                if (lock.isHeldByCurrentThread()) {
-                    try {
-                        lock.unlock();
-                        log.info("异步线程解锁成功，key={}", listKey);
-                    } catch (Exception e) {
-                        log.error("异步线程解锁失败，key={}", listKey, e);
-                    }
-                }
-                // 删除重建标记
-                stringRedisTemplate.delete(rebuildFlagKey);
+                });
+            } catch (java.util.concurrent.RejectedExecutionException e) {
+                log.warn("列表缓存写入任务被拒绝: key={}", listKey);
             }
-        }, threadPoolConfig.threadPoolExecutor());
-
-        // 主线程快速返回兜底数据
-        return getFallbackData();
+            return PageResult.builder().total(total1).rows(items).build();
+        });
+        if (loaded == null) {
+            // 等待超时或回源失败，且本地没有旧页面
+            return getFallbackData();
+        }
+        return Result.success(loaded);
     }
 
     private Result getFallbackData() {
@@ -366,6 +248,13 @@ public class PostsServiceImpl implements PostsService {
         return Result.success(pageResult);
     }
 
+    /**
+     * 完整的 Redis key 去掉 cacheName 前缀，即两级缓存中的 key
+     */
+    private String nearCacheKey(String redisKey, String cacheName) {
+        return redisKey.substring(cacheName.length() + 1);
+    }
+
     private long ttlJitter(long baseSeconds) {
         long maxExtra = Math.max(1, baseSeconds / 5);
         long extra = ThreadLocalRandom.current().nextLong(0, maxExtra + 1);
@@ -378,14 +267,9 @@ public class PostsServiceImpl implements PostsService {
                 return Result.error("参数错误");
 
             // Bloom过滤器快速校验帖子是否存在（降低无效写）
-            try {
-                RBloomFilter<Long> postBloom = redissonClient.getBloomFilter("bf:post:id");
-                postBloom.tryInit(10_000_000L, 0.03);
-                if (!postBloom.contains(postId)) {
-                    // 允许旁路计数以免影响体验，但不做UV
-                    return Result.error("帖子不存在或已删除");
-                }
-            } catch (Exception ignore) {
+            if (!bloomFilterManager.mightContain(BloomFilterManager.Kind.POST, postId)) {
+                // 允许旁路计数以免影响体验，但不做UV
+                return Result.error("帖子不存在或已删除");
             }
 
             Long uid = com.tmd.tools.BaseContext.get();
@@ -404,102 +288,16 @@ public class PostsServiceImpl implements PostsService {
 
             final boolean doUv = hasUser && firstInWindow;
 
-            // 高QPS下减少RTT：使用pipeline合并PV、UV、热度增量、日统计
-            stringRedisTemplate.executePipelined(new org.springframework.data.redis.core.SessionCallback<Object>() {
-                @SuppressWarnings("unchecked")
-                @Override
-                public Object execute(org.springframework.data.redis.core.RedisOperations operations) {
-                    try {
-                        String pvKey = String.format(POST_VIEW_PV_KEY_FMT, postId);
-                        operations.opsForValue().increment(pvKey, 1);
-
-                        if (doUv) {
-                            String uvKey = String.format(POST_VIEW_UV_KEY_FMT, postId);
-                            operations.opsForHyperLogLog().add(uvKey, String.valueOf(uid));
-                        }
-
-                        // 不使用ZSet热度排序增量，简化为仅记录PV/UV与日统计
-                        //
-                        // String day = java.time.LocalDate.now()
-                        // .format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE);
-                        // String dayKey = String.format(POST_VIEW_DAILY_KEY_FMT, day);
-                        // operations.opsForHash().increment(dayKey, String.valueOf(postId), 1L);
-                        // operations.expire(dayKey, 7, java.util.concurrent.TimeUnit.DAYS);
-
-                        // 记录待落库增量（轻量批量刷盘）
-                        String flushKey = String.format(POST_VIEW_FLUSH_KEY_FMT, postId);
-                        operations.opsForValue().increment(flushKey, 1);
-                    } catch (Exception e) {
-                        log.error("Record post view failed{}", e.getMessage());
-                    }
-                    return null;
-                }
-            });
-
-            // 条件落库：达到阈值时把增量刷到 MySQL，避免每次写库
-            threadPoolConfig.threadPoolExecutor().execute(() -> {
+            // UV 需要按用户去重，仍然即时写 Redis；PV 与待落库增量交给本地聚合器，定时批量刷到 MySQL/Redis/ES
+            if (doUv) {
                 try {
-                    try {
-                        String flushKey = String.format(POST_VIEW_FLUSH_KEY_FMT, postId);
-                        String val = stringRedisTemplate.opsForValue().get(flushKey);
-                        int pending = 0;
-                        if (StrUtil.isNotBlank(val)) {
-                            try {
-                                pending = Integer.parseInt(val);
-                            } catch (Exception ignore) {
-                            }
-                        }
-                        if (pending >= POST_VIEW_FLUSH_THRESHOLD) {
-                            String lockKey = "lock:post:view:flush:" + postId;
-                            var lock = redissonClient.getLock(lockKey);
-                            boolean ok = false;
-                            ok = lock.tryLock();
-                            if (ok) {
-                                try {
-                                    String cur = stringRedisTemplate.opsForValue().get(flushKey);
-                                    int delta = 0;
-                                    if (StrUtil.isNotBlank(cur)) {
-                                        try {
-                                            delta = Integer.parseInt(cur);
-                                        } catch (Exception ignore) {
-                                        }
-                                    }
-                                    if (delta > 0) {
-                                        postsMapper.incrViewCount(postId, delta);
-                                        try {
-                                            java.util.Map<String, Object> params = new java.util.HashMap<>();
-                                            params.put("viewDelta", delta);
-                                            Script script = new Script(ScriptType.INLINE, "painless",
-                                                    "ctx._source.viewCount = (ctx._source.viewCount != null ? ctx._source.viewCount : 0) + params.viewDelta",
-                                                    params);
-                                            UpdateRequest ur = new UpdateRequest(INDEX_POSTS, String.valueOf(postId))
-                                                    .script(script);
-                                            esClient.update(ur, RequestOptions.DEFAULT);
-                                        } catch (Exception ignore) {
-                                        }
-                                        try {
-                                            stringRedisTemplate.opsForValue().decrement(flushKey, delta);
-                                        } catch (Exception ignore) {
-                                        }
-                                    }
-                                } finally {
-                                    try {
-                                        if (lock.isHeldByCurrentThread()) {
-                                            lock.unlock();
-                                        }
-                                    } catch (Exception e) {
-                                        log.error("解锁异常", e);
-                                    }
-                                }
-                            }
-                        }
-
-                    } catch (Exception ignore) {
-                    }
+                    String uvKey = String.format(POST_VIEW_UV_KEY_FMT, postId);
+                    stringRedisTemplate.opsForHyperLogLog().add(uvKey, String.valueOf(uid));
                 } catch (Exception e) {
-                    log.error("记录浏览量失败", e);
+                    log.error("Record post view failed{}", e.getMessage());
                 }
-            });
+            }
+            postCounterAggregator.add(PostCounterAggregator.Type.VIEW, postId, 1);
             return Result.success("记录成功");
         } catch (Exception e) {
             return Result.error("服务器繁忙");
@@ -538,27 +336,26 @@ public class PostsServiceImpl implements PostsService {
                 }
 
                 final boolean targetLike = !liked;
+                // 点赞数增量写入 Redis 并标脏，由 PostLikeFlusher 定时批量落库
+                postLikeFlusher.record(postId, targetLike ? 1 : -1);
                 stringRedisTemplate.executePipelined(new org.springframework.data.redis.core.SessionCallback<Object>() {
                     @SuppressWarnings("unchecked")
                     @Override
                     public Object execute(org.springframework.data.redis.core.RedisOperations operations) {
                         String postSet = String.format(POST_LIKE_USERS_SET_FMT, postId);
                         String userSet = String.format(USER_LIKES_SET_FMT, uid);
-                        String flushKey = String.format(POST_LIKE_FLUSH_KEY_FMT, postId);
                         if (targetLike) {
                             operations.opsForSet().add(postSet, String.valueOf(uid));
                             operations.opsForSet().add(userSet, String.valueOf(postId));
-                            operations.opsForValue().increment(flushKey, 1);
                         } else {
                             operations.opsForSet().remove(postSet, String.valueOf(uid));
                             operations.opsForSet().remove(userSet, String.valueOf(postId));
-                            operations.opsForValue().increment(flushKey, -1);
                         }
                         return null;
                     }
                 });
 
-                threadPoolConfig.threadPoolExecutor().execute(() -> {
+                threadPoolConfig.counterFlushExecutor().execute(() -> {
                     try {
                         if (targetLike) {
                             try {
@@ -574,59 +371,6 @@ public class PostsServiceImpl implements PostsService {
                             }
                         }
                         // 列表缓存不做双删，依赖集合的精确 SADD/SREM 与读路径按需重建
-                        try {
-                            String flushKey = String.format(POST_LIKE_FLUSH_KEY_FMT, postId);
-                            String val = stringRedisTemplate.opsForValue().get(flushKey);
-                            int pending = 0;
-                            if (StrUtil.isNotBlank(val)) {
-                                try {
-                                    pending = Integer.parseInt(val);
-                                } catch (Exception ignore) {
-                                }
-                            }
-                            if (pending >= POST_LIKE_FLUSH_THRESHOLD) {
-                                String lk = "lock:post:like:flush:" + postId;
-                                var l = redissonClient.getLock(lk);
-                                boolean ok2 = false;
-                                ok2 = l.tryLock();
-                                if (ok2) {
-                                    try {
-                                        String cur = stringRedisTemplate.opsForValue().get(flushKey);
-                                        int delta = 0;
-                                        if (StrUtil.isNotBlank(cur)) {
-                                            try {
-                                                delta = Integer.parseInt(cur);
-                                            } catch (Exception ignore) {
-                                            }
-                                        }
-                                        if (delta != 0) {
-                                            postsMapper.incrLikeCount(postId, delta);
-                                            try {
-                                                java.util.Map<String, Object> params = new java.util.HashMap<>();
-                                                params.put("likeDelta", delta);
-                                                Script script = new Script(ScriptType.INLINE, "painless",
-                                                        "ctx._source.likeCount = (ctx._source.likeCount != null ? ctx._source.likeCount : 0) + params.likeDelta",
-                                                        params);
-                                                UpdateRequest ur = new UpdateRequest(INDEX_POSTS,
-                                                        String.valueOf(postId)).script(script);
-                                                esClient.update(ur, RequestOptions.DEFAULT);
-                                            } catch (Exception ignore) {
-                                            }
-                                            try {
-                                                stringRedisTemplate.opsForValue().decrement(flushKey, delta);
-                                            } catch (Exception ignore) {
-                                            }
-                                        }
-                                    } finally {
-                                        try {
-                                            l.unlock();
-                                        } catch (Exception ignore) {
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Exception ignore) {
-                        }
                     } catch (Exception ignore) {
                     }
                 });
@@ -652,7 +396,7 @@ public class PostsServiceImpl implements PostsService {
                 // // 数据库旧数据加上缓存中缓存的点赞的增量才是当前这个帖子的真正点赞数
                 // int likeCount = likeCountDb + pendingDelta;
                 boolean finalLiked = targetLike;
-                Long likeCount = stringRedisTemplate.opsForSet().size(POST_LIKE_USERS_SET_FMT);
+                Long likeCount = stringRedisTemplate.opsForSet().size(String.format(POST_LIKE_USERS_SET_FMT, postId));
                 java.util.Map<String, Object> data = new java.util.HashMap<>();
                 data.put("isLiked", finalLiked);
                 data.put("likeCount", likeCount);
@@ -719,27 +463,26 @@ public class PostsServiceImpl implements PostsService {
                 }
 
                 final boolean targetCollect = !collected;
+                // 收藏数增量进本地聚合器，定时批量落库
+                postCounterAggregator.add(PostCounterAggregator.Type.FAVORITE, postId, targetCollect ? 1 : -1);
                 stringRedisTemplate.executePipelined(new org.springframework.data.redis.core.SessionCallback<Object>() {
                     @SuppressWarnings("unchecked")
                     @Override
                     public Object execute(org.springframework.data.redis.core.RedisOperations operations) {
                         String postSet = String.format(POST_FAV_USERS_SET_FMT, postId);
                         String userSet = String.format(USER_FAVS_SET_FMT, uid);
-                        String flushKey = String.format(POST_FAV_FLUSH_KEY_FMT, postId);
                         if (targetCollect) {
                             operations.opsForSet().add(postSet, String.valueOf(uid));
                             operations.opsForSet().add(userSet, String.valueOf(postId));
-                            operations.opsForValue().increment(flushKey, 1);
                         } else {
                             operations.opsForSet().remove(postSet, String.valueOf(uid));
                             operations.opsForSet().remove(userSet, String.valueOf(postId));
-                            operations.opsForValue().increment(flushKey, -1);
                         }
                         return null;
                     }
                 });
 
-                threadPoolConfig.threadPoolExecutor().execute(() -> {
+                threadPoolConfig.counterFlushExecutor().execute(() -> {
                     try {
                         if (targetCollect) {
                             try {
@@ -752,67 +495,6 @@ public class PostsServiceImpl implements PostsService {
                             } catch (Exception ignore) {
                             }
                         }
-                        try {
-                            String flushKey = String.format(POST_FAV_FLUSH_KEY_FMT, postId);
-                            String val = stringRedisTemplate.opsForValue().get(flushKey);
-                            int pending = 0;
-                            if (StrUtil.isNotBlank(val)) {
-                                try {
-                                    pending = Integer.parseInt(val);
-                                } catch (Exception ignore) {
-                                    throw new RuntimeException("非法刷盘值");
-                                }
-                            }
-                            if (pending >= POST_FAV_FLUSH_THRESHOLD) {
-                                String lk = "lock:post:fav:flush:" + postId;
-                                var l = redissonClient.getLock(lk);
-                                boolean ok2 = false;
-                                try {
-                                    ok2 = l.tryLock(5, 10, java.util.concurrent.TimeUnit.SECONDS);
-                                } catch (InterruptedException ignored) {
-                                    log.error("锁异常");
-                                    throw new RuntimeException("莫名中断");
-                                }
-                                if (ok2) {
-                                    try {
-                                        String cur = stringRedisTemplate.opsForValue().get(flushKey);
-                                        int delta = 0;
-                                        if (StrUtil.isNotBlank(cur)) {
-                                            try {
-                                                delta = Integer.parseInt(cur);
-                                            } catch (Exception ignore) {
-                                            }
-                                        }
-                                        if (delta != 0) {
-                                            postsMapper.incrCollectCount(postId, delta);
-                                            try {
-                                                java.util.Map<String, Object> params = new java.util.HashMap<>();
-                                                params.put("collectDelta", delta);
-                                                Script script = new Script(ScriptType.INLINE, "painless",
-                                                        "ctx._source.collectCount = (ctx._source.collectCount != null ? ctx._source.collectCount : 0) + params.collectDelta",
-                                                        params);
-                                                UpdateRequest ur = new UpdateRequest(INDEX_POSTS,
-                                                        String.valueOf(postId)).script(script);
-                                                esClient.update(ur, RequestOptions.DEFAULT);
-                                            } catch (Exception ignore) {
-                                                log.error("收藏数更新异常");
-                                            }
-                                            try {
-                                                stringRedisTemplate.opsForValue().decrement(flushKey, delta);
-                                            } catch (Exception ignore) {
-                                                log.error("扣减数目异常");
-                                            }
-                                        }
-                                    } finally {
-                                        try {
-                                            l.unlock();
-                                        } catch (Exception ignore) {
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Exception ignore) {
-                        }
                     } catch (Exception ignore) {
                     }
                 });
@@ -826,18 +508,10 @@ public class PostsServiceImpl implements PostsService {
                     log.error("获取数据库中帖子收藏数异常");
                     throw new RuntimeException("服务器繁忙");
                 }
-                int pendingDelta = 0;
-                try {
-                    String fk = String.format(POST_FAV_FLUSH_KEY_FMT, postId);
-                    String v = stringRedisTemplate.opsForValue().get(fk);
-                    if (StrUtil.isNotBlank(v))
-                        pendingDelta = Integer.parseInt(v);
-                } catch (Exception ignore) {
-                    log.error("获取收藏数异常");
-                    throw new RuntimeException("服务器繁忙");
-                }
+                // 数据库值加上本节点尚未刷盘的增量
+                long pendingDelta = postCounterAggregator.pending(PostCounterAggregator.Type.FAVORITE, postId);
                 boolean finalCollected = targetCollect;
-                int collectCount = collectCountDb + pendingDelta;
+                long collectCount = collectCountDb + pendingDelta;
                 java.util.Map<String, Object> data = new java.util.HashMap<>();
                 data.put("isCollected", finalCollected);
                 data.put("collectCount", collectCount);
@@ -876,30 +550,16 @@ public class PostsServiceImpl implements PostsService {
     private static final String POST_COMMENT_KEY_FMT = "post:comment:%d";
     private static final String POST_COMMENT_CHILD_KEY_FMT = "post:comment:child:%d";
     private static final String POST_COMMENT_CHILD_COUNT_KEY_FMT = "post:comment:child:count:%d";
-//    private static final String POST_COMMENT_FLUSH_KEY_FMT = "post:comment:flush:%d";
-    private static final int POST_COMMENT_FLUSH_THRESHOLD = 50;
     private static final String POST_COMMENT_CONTENT_KEY_FMT = "post:comment:content:%d";
-    private static final String POST_COMMENT_DIRTY_SET_KEY = "post:comment:dirty_set";
 
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Result createComment(Long userId, Long postId, CommentCreateDTO dto) {
-        try {
-            RBloomFilter<Long> postBloom = redissonClient.getBloomFilter("bf:post:id");
-            postBloom.tryInit(10_000_000L, 0.03);
-            if (!postBloom.contains(postId)) {
-                // 允许旁路计数以免影响体验，但不做UV
-                return Result.error("帖子不存在或已删除");
-            }
-            RBloomFilter<Long> userBloom = redissonClient.getBloomFilter("bf:user:id");
-            userBloom.tryInit(10_000_000L, 0.03);
-            if (!userBloom.contains(userId)) {
-                // 允许旁路计数以免影响体验，但不做UV
-                return Result.error("用户不存在或已删除");
-            }
-        } catch (Exception e) {
-            log.error("Bloom filter check failed", e);
-            return Result.error("服务器繁忙");
+        if (!bloomFilterManager.mightContain(BloomFilterManager.Kind.POST, postId)) {
+            return Result.error("帖子不存在或已删除");
+        }
+        if (!bloomFilterManager.mightContain(BloomFilterManager.Kind.USER, userId)) {
+            return Result.error("用户不存在或已删除");
         }
         // 清洗数据
         String content = dto.getContent();
@@ -930,28 +590,11 @@ public class PostsServiceImpl implements PostsService {
         stringRedisTemplate.opsForZSet().add(RootCommentKey, String.valueOf(l),
                 comment.getCreatedAt().toInstant(ZoneOffset.of("+8")).toEpochMilli());
 
-        // 帖子评论id找内容的字符串缓存
-        String contentKey = String.format(POST_COMMENT_CONTENT_KEY_FMT, l);
-        stringRedisTemplate.opsForValue().set(contentKey, content, ttlJitter(LIST_TTL_SECONDS), TimeUnit.SECONDS);
+        // 帖子评论id找内容的缓存（整条评论 JSON，读评论树时直接 MGET）
+        commentTreeCache.putBody(comment);
 
-        // 标记为脏数据（用于定时任务兜底）
-        stringRedisTemplate.opsForSet().add(POST_COMMENT_DIRTY_SET_KEY, String.valueOf(postId));
-
-        // 异步更新帖子评论数量（批量刷盘）
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
-            try {
-                String flushKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, postId);
-                // 增加待更新计数
-                Long val = stringRedisTemplate.opsForValue().increment(flushKey, 1);
-                int pending = val != null ? val.intValue() : 0;
-
-                if (pending >= POST_COMMENT_FLUSH_THRESHOLD) {
-                    flushCommentCount(postId);
-                }
-            } catch (Exception e) {
-                log.error("Async flush comment count failed for post: {}", postId, e);
-            }
-        });
+        // 评论数增量 + 标脏一个 pipeline，由 CommentCountFlusher 批量刷盘
+        commentCountFlusher.recordComment(postId, 1);
 
         long commentId = l;
         // 更新完可以选择预热一下
@@ -961,22 +604,11 @@ public class PostsServiceImpl implements PostsService {
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Result createReplyComment(Long userId, Long postId, Long commentId, CommentCreateDTO dto) {
-        try {
-            RBloomFilter<Long> postBloom = redissonClient.getBloomFilter("bf:post:id");
-            postBloom.tryInit(10_000_000L, 0.03);
-            if (!postBloom.contains(postId)) {
-                // 允许旁路计数以免影响体验，但不做UV
-                return Result.error("帖子不存在或已删除");
-            }
-            RBloomFilter<Long> userBloom = redissonClient.getBloomFilter("bf:user:id");
-            userBloom.tryInit(10_000_000L, 0.03);
-            if (!userBloom.contains(userId)) {
-                // 允许旁路计数以免影响体验，但不做UV
-                return Result.error("用户不存在或已删除");
-            }
-        } catch (Exception e) {
-            log.error("Bloom filter check failed in reply comment", e);
-            return Result.error("服务器繁忙");
+        if (!bloomFilterManager.mightContain(BloomFilterManager.Kind.POST, postId)) {
+            return Result.error("帖子不存在或已删除");
+        }
+        if (!bloomFilterManager.mightContain(BloomFilterManager.Kind.USER, userId)) {
+            return Result.error("用户不存在或已删除");
         }
         // 清洗数据
         String content = dto.getContent();
@@ -1018,33 +650,15 @@ public class PostsServiceImpl implements PostsService {
                 comment.getCreatedAt().toInstant(ZoneOffset.of("+8")).toEpochMilli());
 
         // 更新缓存：评论内容 (id维度)
-        String contentKey = String.format(POST_COMMENT_CONTENT_KEY_FMT, l);
-        stringRedisTemplate.opsForValue().set(contentKey, content, ttlJitter(LIST_TTL_SECONDS), TimeUnit.SECONDS);
+        commentTreeCache.putBody(comment);
 
         // 更新缓存：根评论的子评论数量 (postId维度, member=rootId, score=count)
         String childCountKey = String.format(POST_COMMENT_CHILD_COUNT_KEY_FMT, postId);
         stringRedisTemplate.opsForZSet().incrementScore(childCountKey, String.valueOf(rootId), 1);
 
-        // 标记为脏数据（用于定时任务兜底）
-        stringRedisTemplate.opsForSet().add(POST_COMMENT_DIRTY_SET_KEY, String.valueOf(postId));
-
-        // 异步更新逻辑
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
-            try {
-                // 1. 更新帖子维度的评论总数 (批量刷盘)
-                String flushKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, postId);
-                Long val = stringRedisTemplate.opsForValue().increment(flushKey, 1);
-                int pending = val != null ? val.intValue() : 0;
-                if (pending >= POST_COMMENT_FLUSH_THRESHOLD) {
-                    flushCommentCount(postId);
-                }
-
-                // 2. 异步直接更新数据库中根评论的回复数 (简单直接)
-                postCommentMapper.incrReplyCount(rootId, 1);
-            } catch (Exception e) {
-                log.error("Async flush reply count failed for post: {}", postId, e);
-            }
-        });
+        // 帖子评论数与根评论回复数都只记增量，由 CommentCountFlusher 批量刷盘
+        commentCountFlusher.recordComment(postId, 1);
+        commentCountFlusher.recordReply(rootId, 1);
         long replyCommentId = l;
         return Result.success(replyCommentId);
     }
@@ -1064,6 +678,12 @@ public class PostsServiceImpl implements PostsService {
             size = 10;
         int offset = (page - 1) * size;
 
+        // 0. 优先从写路径维护的 Redis 评论树出页，出不了（未就绪/超出索引/按热度排序）再查库
+        PageResult cached = commentTreeCache.page(postId, page, size, sortBy);
+        if (cached != null) {
+            return Result.success(cached);
+        }
+
         // 1. Fetch Root Comments (DB Direct)
         List<PostComment> roots = postCommentMapper.selectRoots(postId, offset, size, sortBy);
         long total = postCommentMapper.countRootsByPostId(postId);
@@ -1113,7 +733,12 @@ public class PostsServiceImpl implements PostsService {
             UserProfile author = userMap.get(root.getCommenterId());
 
             List<PostCommentVO.ReplyVO> replyVOs = new ArrayList<>();
-            List<PostComment> rootReplies = repliesByRoot.getOrDefault(root.getId(), Collections.emptyList());
+            List<PostComment> allReplies = repliesByRoot.getOrDefault(root.getId(), Collections.emptyList());
+            // 与缓存路径一致：只返回前几条回复，其余通过游标加载
+            List<PostComment> rootReplies = allReplies.size() > CommentTreeCache.REPLY_CAP
+                    ? allReplies.subList(0, CommentTreeCache.REPLY_CAP)
+                    : allReplies;
+            boolean hasMoreReplies = allReplies.size() > rootReplies.size();
 
             for (PostComment child : rootReplies) {
                 UserProfile childAuthor = userMap.get(child.getCommenterId());
@@ -1161,6 +786,11 @@ public class PostsServiceImpl implements PostsService {
                             .avatar(author.getAvatar())
                             .build() : null)
                     .replies(replyVOs)
+                    .hasMoreReplies(hasMoreReplies)
+                    .repliesCursor(hasMoreReplies
+                            ? CommentTreeCache.score(rootReplies.get(rootReplies.size() - 1).getCreatedAt())
+                            : null)
+                    .repliesCursorId(hasMoreReplies ? rootReplies.get(rootReplies.size() - 1).getId() : null)
                     .isLiked(false)
                     .createdAt(root.getCreatedAt().toString())
                     .updatedAt(root.getCreatedAt().toString())
@@ -1174,6 +804,21 @@ public class PostsServiceImpl implements PostsService {
                 .build());
     }
 
+    @Override
+    public Result getCommentReplies(Long postId, Long commentId, Long cursor, Long lastId, Integer size) {
+        if (postId == null || postId <= 0 || commentId == null || commentId <= 0) {
+            return Result.error("参数错误");
+        }
+        if (size == null || size < 1)
+            size = 10;
+        try {
+            return Result.success(commentTreeCache.replies(postId, commentId, cursor, lastId, size));
+        } catch (Exception e) {
+            log.error("加载更多回复失败: postId={}, commentId={}, cursor={}", postId, commentId, cursor, e);
+            return Result.error("加载回复失败");
+        }
+    }
+
     @Override
     public Result updatePosts(PostUpdateDTO postUpdateDTO) {
         Integer postIdInt = postUpdateDTO.getPostId();
@@ -1183,8 +828,7 @@ public class PostsServiceImpl implements PostsService {
         Long postId = postIdInt.longValue();
 
         // 1. Bloom Filter Check
-        RBloomFilter<Long> bloomFilter = redissonClient.getBloomFilter("bf:post:id");
-        if (!bloomFilter.contains(postId)) {
+        if (!bloomFilterManager.mightContain(BloomFilterManager.Kind.POST, postId)) {
             return Result.error("帖子不存在");
         }
 
@@ -1208,6 +852,10 @@ public class PostsServiceImpl implements PostsService {
             return Result.error("帖子不存在");
         }
 
+        // 旧的类型/状态/话题维度也要失效
+        final String oldStatus = existingPost.getStatus() == null ? null : existingPost.getStatus().name();
+        final Long oldTopicId = existingPost.getTopicId();
+
         // 5. Update DB
         Post updatePost = new Post();
         updatePost.setId(postId);
@@ -1238,49 +886,22 @@ public class PostsServiceImpl implements PostsService {
         postsMapper.update(updatePost);
 
         // 6. Async Cache Update (Delete & Preheat & ES)
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
+        threadPoolConfig.esSyncExecutor().execute(() -> {
             try {
-                // 6.1 Delete Caches
-                Set<String> keysToDelete = new java.util.HashSet<>();
-                // Scan for list keys
-                ScanOptions options = ScanOptions.scanOptions().match("post:list:*").count(100).build();
-                try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
-                    while (cursor.hasNext()) {
-                        keysToDelete.add(cursor.next());
-                    }
-                }
-                // Scan for total keys
-                ScanOptions optionsTotal = ScanOptions.scanOptions().match("post:total:*").count(100).build();
-                try (Cursor<String> cursor = stringRedisTemplate.scan(optionsTotal)) {
-                    while (cursor.hasNext()) {
-                        keysToDelete.add(cursor.next());
-                    }
+                // 6.1 Invalidate Caches：递增受影响维度的列表代号，旧分页自然过期
+                listCacheGenerations.bumpPost(existingPost.getPostType(), oldStatus);
+                if (existingPost.getStatus() != null && !existingPost.getStatus().name().equals(oldStatus)) {
+                    listCacheGenerations.bumpPost(existingPost.getPostType(), existingPost.getStatus().name());
                 }
-                // Scan for topic list keys
-                ScanOptions optionsTopicList = ScanOptions.scanOptions().match("topic:post:list:*").count(100).build();
-                try (Cursor<String> cursor = stringRedisTemplate.scan(optionsTopicList)) {
-                    while (cursor.hasNext()) {
-                        keysToDelete.add(cursor.next());
-                    }
-                }
-                // Scan for topic total keys
-                ScanOptions optionsTopicTotal = ScanOptions.scanOptions().match("topic:post:total:*").count(100)
-                        .build();
-                try (Cursor<String> cursor = stringRedisTemplate.scan(optionsTopicTotal)) {
-                    while (cursor.hasNext()) {
-                        keysToDelete.add(cursor.next());
-                    }
+                listCacheGenerations.bumpTopic(oldTopicId, oldStatus);
+                if (existingPost.getTopicId() != null) {
+                    listCacheGenerations.bumpTopic(existingPost.getTopicId(),
+                            existingPost.getStatus() == null ? null : existingPost.getStatus().name());
                 }
-
-                if (!keysToDelete.isEmpty()) {
-                    Long deleteCount = stringRedisTemplate.execute((RedisCallback<Long>) connection -> {
-                        byte[][] keysBytes = keysToDelete.stream()
-                                .map(String::getBytes)
-                                .toArray(byte[][]::new);
-                        return connection.unlink(keysBytes);
-                    });
-                    // 日志记录
-                    log.info("Deleted {} keys: {}", deleteCount, keysToDelete);
+                // 状态变化时滚动索引从旧维度移到新维度
+                if (existingPost.getStatus() != null && !existingPost.getStatus().name().equals(oldStatus)) {
+                    postFeedIndex.remove(postId, existingPost.getPostType(), oldStatus);
+                    postFeedIndex.index(existingPost);
                 }
 
                 // 6.2 Preheat Cache (Latest List - Global)
@@ -1291,7 +912,7 @@ public class PostsServiceImpl implements PostsService {
                 try {
                     int[] sizes = new int[] { 10, 20 };
                     for (int s : sizes) {
-                        String listLatest = String.format(POSTS_LIST_KEY_FMT, typeKey, statusKey, "latest", 1, s);
+                        String listLatest = listCacheGenerations.postListKey(typeKey, statusKey, "latest", 1, s);
                         List<Post> firstPage = postsMapper.selectPage(typeKey.equals("-") ? null : typeKey,
                                 statusKey.equals("-") ? null : statusKey, "latest", 0, s);
 
@@ -1307,8 +928,7 @@ public class PostsServiceImpl implements PostsService {
                         Long topicId = existingPost.getTopicId();
                         int[] sizesT = new int[] { 10, 20 };
                         for (int s : sizesT) {
-                            String topicListLatest = String.format("topic:post:list:%d:%s:%s:%d:%d", topicId, statusKey,
-                                    "latest", 1, s);
+                            String topicListLatest = listCacheGenerations.topicListKey(topicId, statusKey, "latest", 1, s);
                             List<Post> firstPageByTopic = postsMapper.selectPageByTopic(topicId,
                                     statusKey.equals("-") ? null : statusKey, "latest", 0, s);
 
@@ -1348,21 +968,11 @@ public class PostsServiceImpl implements PostsService {
                     doc.put("updatedAt", System.currentTimeMillis()); // Update time
                     doc.put("status", existingPost.getStatus().name());
 
-                    IndexRequest indexRequest = new IndexRequest(INDEX_POSTS).id(String.valueOf(existingPost.getId()))
-                            .source(doc);
-                    esClient.index(indexRequest, RequestOptions.DEFAULT);
+                    postIndexSync.index(existingPost.getId(), doc);
                 } catch (Exception e) {
                     log.warn("Update ES index failed: id={}", postId, e);
                 }
 
-                // 6.5 Maintain Bloom Filter
-                try {
-                    RBloomFilter<Long> postBloomUpdate = redissonClient.getBloomFilter("bf:post:id");
-                    postBloomUpdate.add(postId);
-                } catch (Exception e) {
-                    log.warn("Update bloom failed: id={}", postId, e);
-                }
-
             } catch (Exception e) {
                 log.error("Update post async tasks failed: id={}", postId, e);
             }
@@ -1391,73 +1001,7 @@ public class PostsServiceImpl implements PostsService {
             int offset = (page - 1) * size;
             List<Post> posts = postsMapper.selectPageByUser(userId, type, status, sort, offset, size);
 
-            List<Long> postIdsBatch = posts.stream().map(Post::getId).collect(Collectors.toList());
-            List<Attachment> allAttachments = attachmentService.getAttachmentsByBusinessBatch("post", postIdsBatch);
-            Map<Long, List<Attachment>> attMap = (allAttachments == null)
-                    ? new java.util.HashMap<>()
-                    : allAttachments.stream()
-                            .filter(a -> a.getBusinessId() != null)
-                            .collect(Collectors.groupingBy(Attachment::getBusinessId));
-
-            List<PostListItemVO> items = new ArrayList<>();
-            for (Post p : posts) {
-                UserProfile profile = userMapper.getProfile(p.getUserId());
-                String username = profile != null ? profile.getUsername() : null;
-                String avatar = profile != null ? profile.getAvatar() : null;
-                String topicName = null;
-                if (p.getTopicId() != null) {
-                    TopicVO topicVO = topicService.getTopicCachedById(p.getTopicId().intValue());
-                    topicName = topicVO != null ? topicVO.getName() : null;
-                }
-                List<Attachment> attachments = attMap.getOrDefault(p.getId(), java.util.Collections.emptyList());
-                List<AttachmentLite> liteAttachments = new ArrayList<>();
-                for (Attachment a : attachments) {
-                    liteAttachments.add(AttachmentLite.builder()
-                            .fileUrl(a.getFileUrl())
-                            .fileType(a.getFileType())
-                            .fileName(a.getFileName())
-                            .build());
-                }
-
-                String likeKey = String.format(POST_LIKE_FLUSH_KEY_FMT, p.getId());
-                String commentKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, p.getId());
-                String viewKey = String.format(POST_VIEW_FLUSH_KEY_FMT, p.getId());
-
-                List<String> keys = java.util.Arrays.asList(likeKey, commentKey, viewKey);
-                List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
-
-                int likeDelta = 0;
-                int commentDelta = 0;
-                int viewDelta = 0;
-
-                if (values != null && values.size() == 3) {
-                    if (StrUtil.isNotBlank(values.get(0)))
-                        likeDelta = Integer.parseInt(values.get(0));
-                    if (StrUtil.isNotBlank(values.get(1)))
-                        commentDelta = Integer.parseInt(values.get(1));
-                    if (StrUtil.isNotBlank(values.get(2)))
-                        viewDelta = Integer.parseInt(values.get(2));
-                }
-
-                PostListItemVO vo = PostListItemVO.builder()
-                        .id(p.getId())
-                        .title(p.getTitle())
-                        .content(p.getContent())
-                        .userId(p.getUserId())
-                        .authorUsername(username)
-                        .authorAvatar(avatar)
-                        .topicId(p.getTopicId())
-                        .topicName(topicName)
-                        .likeCount((p.getLikeCount() == null ? 0 : p.getLikeCount()) + likeDelta)
-                        .commentCount((p.getCommentCount() == null ? 0 : p.getCommentCount()) + commentDelta)
-                        .shareCount(p.getShareCount() == null ? 0 : p.getShareCount())
-                        .viewCount((p.getViewCount() == null ? 0 : p.getViewCount()) + viewDelta)
-                        .createdAt(p.getCreatedAt())
-                        .updatedAt(p.getUpdatedAt())
-                        .attachments(liteAttachments)
-                        .build();
-                items.add(vo);
-            }
+            List<PostListItemVO> items = postFeedHydrator.hydrate(posts);
 
             long total = postsMapper.countByUser(userId, type, status);
             PageResult pageResult = PageResult.builder()
@@ -1476,152 +1020,11 @@ public class PostsServiceImpl implements PostsService {
             stringRedisTemplate.opsForValue().set(cacheKey, "[]", ttlJitter(LIST_TTL_SECONDS), TimeUnit.SECONDS);
             return;
         }
-        List<Long> postIdsBatch = posts.stream().map(Post::getId).collect(Collectors.toList());
-        List<Attachment> allAttachments = attachmentService.getAttachmentsByBusinessBatch("post", postIdsBatch);
-        java.util.Map<Long, java.util.List<Attachment>> attMap = (allAttachments == null)
-                ? new java.util.HashMap<>()
-                : allAttachments.stream()
-                        .filter(a -> a.getBusinessId() != null)
-                        .collect(java.util.stream.Collectors.groupingBy(Attachment::getBusinessId));
-        List<PostListItemVO> items = new ArrayList<>();
-        for (Post p : posts) {
-            UserProfile profile = userMapper.getProfile(p.getUserId());
-            String username = profile != null ? profile.getUsername() : null;
-            String avatar = profile != null ? profile.getAvatar() : null;
-            String topicName = null;
-            if (p.getTopicId() != null) {
-                TopicVO topicVO = topicService.getTopicCachedById(p.getTopicId().intValue());
-                topicName = topicVO != null ? topicVO.getName() : null;
-            }
-            List<Attachment> attachments = attMap.getOrDefault(p.getId(), java.util.Collections.emptyList());
-            List<AttachmentLite> liteAttachments = new ArrayList<>();
-            for (Attachment a : attachments) {
-                liteAttachments.add(AttachmentLite.builder()
-                        .fileUrl(a.getFileUrl())
-                        .fileType(a.getFileType())
-                        .fileName(a.getFileName())
-                        .build());
-            }
-
-            // Increments
-            String likeKey = String.format(POST_LIKE_FLUSH_KEY_FMT, p.getId());
-            String commentKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, p.getId());
-            String viewKey = String.format(POST_VIEW_FLUSH_KEY_FMT, p.getId());
-            List<String> keys = java.util.Arrays.asList(likeKey, commentKey, viewKey);
-            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
-            int likeDelta = 0;
-            int commentDelta = 0;
-            int viewDelta = 0;
-            if (values != null && values.size() == 3) {
-                if (StrUtil.isNotBlank(values.get(0)))
-                    likeDelta = Integer.parseInt(values.get(0));
-                if (StrUtil.isNotBlank(values.get(1)))
-                    commentDelta = Integer.parseInt(values.get(1));
-                if (StrUtil.isNotBlank(values.get(2)))
-                    viewDelta = Integer.parseInt(values.get(2));
-            }
-
-            PostListItemVO vo = PostListItemVO.builder()
-                    .id(p.getId())
-                    .title(p.getTitle())
-                    .content(p.getContent())
-                    .userId(p.getUserId())
-                    .authorUsername(username)
-                    .authorAvatar(avatar)
-                    .topicId(p.getTopicId())
-                    .topicName(topicName)
-                    .likeCount((p.getLikeCount() == null ? 0 : p.getLikeCount()) + likeDelta)
-                    .commentCount((p.getCommentCount() == null ? 0 : p.getCommentCount()) + commentDelta)
-                    .shareCount(p.getShareCount() == null ? 0 : p.getShareCount())
-                    .viewCount((p.getViewCount() == null ? 0 : p.getViewCount()) + viewDelta)
-                    .createdAt(p.getCreatedAt())
-                    .updatedAt(p.getUpdatedAt())
-                    .attachments(liteAttachments)
-                    .build();
-            items.add(vo);
-        }
+        List<PostListItemVO> items = postFeedHydrator.hydrate(posts);
         String json = JSONUtil.toJsonStr(items);
         stringRedisTemplate.opsForValue().set(cacheKey, json, ttlJitter(LIST_TTL_SECONDS), TimeUnit.SECONDS);
     }
 
-    @Scheduled(cron = "0 0/1 * * * ?")
-    public void scheduledFlushCommentCounts() {
-        try {
-            Set<String> dirtyIds = stringRedisTemplate.opsForSet().members(POST_COMMENT_DIRTY_SET_KEY);
-            if (dirtyIds != null && !dirtyIds.isEmpty()) {
-                for (String idStr : dirtyIds) {
-                    Long postId = Long.valueOf(idStr);
-                    threadPoolConfig.threadPoolExecutor().execute(() -> flushCommentCount(postId));
-                }
-            }
-        } catch (Exception ignore) {
-        }
-    }
-
-    /**
-     * 执行评论数刷盘逻辑
-     */
-    private void flushCommentCount(Long postId) {
-        String lockKey = "lock:post:comment:flush:" + postId;
-        var lock = redissonClient.getLock(lockKey);
-        boolean ok = false;
-        try {
-            ok = lock.tryLock(5, 10, TimeUnit.SECONDS);
-        } catch (InterruptedException ignored) {
-        }
-        if (ok) {
-            try {
-                String flushKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, postId);
-                String cur = stringRedisTemplate.opsForValue().get(flushKey);
-                int delta = 0;
-                if (StrUtil.isNotBlank(cur)) {
-                    try {
-                        delta = Integer.parseInt(cur);
-                    } catch (Exception ignore) {
-                        log.error("Invalid flush count: {}", cur);
-                        throw new RuntimeException("Invalid flush count: " + cur);
-                    }
-                }
-                if (delta != 0) {
-                    // 更新数据库
-                    postsMapper.incrCommentCount(postId, delta);
-                    // 更新 ES
-                    try {
-                        Map<String, Object> params = new java.util.HashMap<>();
-                        params.put("commentDelta", delta);
-                        Script script = new Script(ScriptType.INLINE, "painless",
-                                "ctx._source.commentCount = (ctx._source.commentCount != null ? ctx._source.commentCount : 0) + params.commentDelta",
-                                params);
-                        UpdateRequest ur = new UpdateRequest(INDEX_POSTS, String.valueOf(postId))
-                                .script(script);
-                        esClient.update(ur, RequestOptions.DEFAULT);
-                    } catch (Exception ignore) {
-                    }
-                    // 扣减 Redis 计数
-                    try {
-                        // 如果 delta 为正，扣减 delta (decrement positive) -> 减少计数
-                        // 如果 delta 为负，扣减 delta (decrement negative) -> 增加计数（即归零）
-                        Long remaining = stringRedisTemplate.opsForValue().decrement(flushKey, delta);
-                        // 如果剩余计数为0（或者符号改变，说明处理完了），从脏集合中移除
-                        // 简单判断：如果 remaining == 0，则移除
-                        if (remaining != null && remaining == 0) {
-                            stringRedisTemplate.opsForSet().remove(POST_COMMENT_DIRTY_SET_KEY, String.valueOf(postId));
-                        }
-                    } catch (Exception ignore) {
-                    }
-                } else {
-                    // 没有待更新的计数，直接移除脏标记
-                    stringRedisTemplate.opsForSet().remove(POST_COMMENT_DIRTY_SET_KEY, String.valueOf(postId));
-                }
-            } finally {
-                try {
-                    lock.unlock();
-                } catch (Exception ignore) {
-                }
-            }
-        }
-    }
-
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Result deleteComment(Long userId, Long commentId) {
@@ -1668,7 +1071,10 @@ public class PostsServiceImpl implements PostsService {
             // 是根评论
             // 2. 删除帖子下的该根评论 (ZSet)
             String rootCommentKey = String.format(POST_COMMENT_KEY_FMT, postId);
-            stringRedisTemplate.opsForZSet().remove(rootCommentKey, String.valueOf(commentId));
+            Long removed = stringRedisTemplate.opsForZSet().remove(rootCommentKey, String.valueOf(commentId));
+            if (removed == null || removed == 0) {
+                commentTreeCache.onRootRemovedOutsideIndex(postId);
+            }
 
             // 3. 删除该根评论下的所有子评论 (ZSet)
             String childCommentKey = String.format(POST_COMMENT_CHILD_KEY_FMT, commentId);
@@ -1694,30 +1100,8 @@ public class PostsServiceImpl implements PostsService {
             postCommentMapper.incrReplyCount(rootId, -1);
         }
 
-        // 异步批量刷盘更新帖子总评论数
-        int deletedCount = idsToDelete.size();
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
-            try {
-                // 减少待更新计数 (delta 为负数)
-                String flushKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, postId);
-                // increment 传入负数即为减
-                Long val = stringRedisTemplate.opsForValue().increment(flushKey, -deletedCount);
-
-                // 标记脏数据
-                stringRedisTemplate.opsForSet().add(POST_COMMENT_DIRTY_SET_KEY, String.valueOf(postId));
-
-                // 触发检查（如果是负数积累多了也需要刷新吗？当然）
-                // 绝对值判断？或者只要有值就判断？
-                // 之前的逻辑是 pending >= THRESHOLD，现在 pending 可能是负数。
-                // 假设 THRESHOLD 是 50。 如果 pending 是 -50，也应该刷。
-                long currentPending = val != null ? val : 0;
-                if (Math.abs(currentPending) >= POST_COMMENT_FLUSH_THRESHOLD) {
-                    flushCommentCount(postId);
-                }
-            } catch (Exception e) {
-                log.error("Async flush comment count failed in delete for post: {}", postId, e);
-            }
-        });
+        // 帖子总评论数记负增量，由 CommentCountFlusher 批量刷盘
+        commentCountFlusher.recordComment(postId, -idsToDelete.size());
 
         return Result.success("评论删除成功");
     }
@@ -1818,227 +1202,72 @@ public class PostsServiceImpl implements PostsService {
         }
 
         // 异步：更新缓存、ZSet、Bloom、ES 索引
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
+        threadPoolConfig.esSyncExecutor().execute(() -> {
             try {
                 String typeKey = StrUtil.isBlank(dto.getType()) ? "-" : dto.getType();
                 String statusKey = StrUtil.isBlank(dto.getStatus()) ? "-" : dto.getStatus();
 
-                // 不使用 ZSet：改为直接更新/失效传统分页缓存
-
-                // 计数缓存：尝试 +1（如果存在），帖子总数+1(这里根据类型分别缓存了多个组的帖子数量)
-                // 我准备来个ttl抖动防止缓存雪崩
+                // 滚动分页索引：只写入已预热的维度
                 try {
-                    String totalLatestKey = String.format(POSTS_TOTAL_KEY_FMT, typeKey, statusKey, "latest");
-                    String totalHotKey = String.format(POSTS_TOTAL_KEY_FMT, typeKey, statusKey, "hot");
-                    stringRedisTemplate.opsForValue().increment(totalLatestKey);
-                    stringRedisTemplate.opsForValue().increment(totalHotKey);
+                    postFeedIndex.index(post);
                 } catch (Exception e) {
-                    log.warn("Create total cache inc failed: id={}", post.getId(), e);
+                    log.warn("Create feed index failed: id={}", post.getId(), e);
                 }
 
-                // 列表缓存首屏：先失效，再预热 latest 的第一页
+                // 新帖会让后续分页整体后移：递增列表代号，旧代分页与总数不可达后自然过期
+                // 未传状态时按实际入库的状态（published）递增
+                listCacheGenerations.bumpPost(post.getPostType(), post.getStatus().name());
+                listCacheGenerations.bumpTopic(post.getTopicId(), post.getStatus().name());
+
+                // 列表缓存首屏：预热新一代 latest 的第一页与总数，避免下次读冷启动
+                // 我准备来个ttl抖动防止缓存雪崩
                 try {
                     int[] sizes = new int[] { 10, 20 };
                     for (int s : sizes) {
-                        String listLatest = String.format(POSTS_LIST_KEY_FMT, typeKey, statusKey, "latest", 1, s);
-
-                        // 预热 latest 的第一页，避免下次读触发锁和冷启动
+                        String listLatest = listCacheGenerations.postListKey(typeKey, statusKey, "latest", 1, s);
                         List<Post> firstPage = postsMapper.selectPage(dto.getType(), dto.getStatus(), "latest", 0, s);
-                        // 批量查询该页所有帖子的附件
-                        List<Long> postIdsBatch = firstPage.stream().map(Post::getId).collect(Collectors.toList());
-                        List<Attachment> allAttachments = attachmentService.getAttachmentsByBusinessBatch("post",
-                                postIdsBatch);
-                        java.util.Map<Long, java.util.List<Attachment>> attMap = (allAttachments == null)
-                                ? new java.util.HashMap<>()
-                                : allAttachments.stream()
-                                        .filter(a -> a.getBusinessId() != null)
-                                        .collect(java.util.stream.Collectors.groupingBy(Attachment::getBusinessId));
-                        List<PostListItemVO> items = new ArrayList<>();
-                        for (Post p : firstPage) {
-                            UserProfile profile = userMapper.getProfile(p.getUserId());
-                            String username = profile != null ? profile.getUsername() : null;
-                            String avatar = profile != null ? profile.getAvatar() : null;
-                            String topicName = null;
-                            if (p.getTopicId() != null) {
-                                TopicVO topicVO = topicService.getTopicCachedById(p.getTopicId().intValue());
-                                topicName = topicVO != null ? topicVO.getName() : null;
-                            }
-                            List<Attachment> attachments = attMap.getOrDefault(p.getId(),
-                                    java.util.Collections.emptyList());
-                            List<AttachmentLite> liteAttachments = new ArrayList<>();
-                            for (Attachment a : attachments) {
-                                liteAttachments.add(AttachmentLite.builder()
-                                        .fileUrl(a.getFileUrl())
-                                        .fileType(a.getFileType())
-                                        .fileName(a.getFileName())
-                                        .build());
-                            }
-                            // 获取Redis中的增量数据（点赞、评论、阅读）
-                            String likeKey = String.format(POST_LIKE_FLUSH_KEY_FMT, p.getId());
-                            String commentKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, p.getId());
-                            String viewKey = String.format(POST_VIEW_FLUSH_KEY_FMT, p.getId());
-
-                            List<String> keys = java.util.Arrays.asList(likeKey, commentKey, viewKey);
-                            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
-
-                            int likeDelta = 0;
-                            int commentDelta = 0;
-                            int viewDelta = 0;
-
-                            if (values != null && values.size() == 3) {
-                                if (StrUtil.isNotBlank(values.get(0)))
-                                    likeDelta = Integer.parseInt(values.get(0));
-                                if (StrUtil.isNotBlank(values.get(1)))
-                                    commentDelta = Integer.parseInt(values.get(1));
-                                if (StrUtil.isNotBlank(values.get(2)))
-                                    viewDelta = Integer.parseInt(values.get(2));
-                            }
-
-                            PostListItemVO vo = PostListItemVO.builder()
-                                    .id(p.getId())
-                                    .title(p.getTitle())
-                                    .content(p.getContent())
-                                    .userId(p.getUserId())
-                                    .authorUsername(username)
-                                    .authorAvatar(avatar)
-                                    .topicId(p.getTopicId())
-                                    .topicName(topicName)
-                                    .likeCount((p.getLikeCount() == null ? 0 : p.getLikeCount()) + likeDelta)
-                                    .commentCount(
-                                            (p.getCommentCount() == null ? 0 : p.getCommentCount()) + commentDelta)
-                                    .shareCount(p.getShareCount() == null ? 0 : p.getShareCount())
-                                    .viewCount((p.getViewCount() == null ? 0 : p.getViewCount()) + viewDelta)
-                                    .createdAt(p.getCreatedAt())
-                                    .updatedAt(p.getUpdatedAt())
-                                    .attachments(liteAttachments)
-                                    .build();
-                            items.add(vo);
-                        }
+                        List<PostListItemVO> items = postFeedHydrator.hydrate(firstPage);
                         String json = JSONUtil.toJsonStr(items);
                         stringRedisTemplate.opsForValue().set(listLatest, json, ttlJitter(LIST_TTL_SECONDS),
                                 TimeUnit.SECONDS);
                     }
+                    String total = String.valueOf(postsMapper.count(dto.getType(), dto.getStatus()));
+                    for (String sortKey : new String[] { "latest", "hot" }) {
+                        stringRedisTemplate.opsForValue().set(
+                                listCacheGenerations.postTotalKey(typeKey, statusKey, sortKey), total,
+                                ttlJitter(TOTAL_TTL_SECONDS), TimeUnit.SECONDS);
+                    }
                 } catch (Exception e) {
                     log.warn("Create list cache warm failed: id={}", post.getId(), e);
                 }
 
-                // 话题维度：失效并预热该话题的最新列表第一页与计数
+                // 话题维度：预热该话题新一代的最新列表第一页
                 try {
                     if (post.getTopicId() != null) {
                         Long topicId = post.getTopicId();
                         int[] sizesT = new int[] { 10, 20 };
                         for (int s : sizesT) {
-                            String topicListLatest = String.format("topic:post:list:%d:%s:%s:%d:%d", topicId, statusKey,
-                                    "latest", 1, s);
-
+                            String topicListLatest = listCacheGenerations.topicListKey(topicId, statusKey, "latest", 1,
+                                    s);
                             List<Post> firstPageByTopic = postsMapper.selectPageByTopic(topicId, dto.getStatus(),
                                     "latest", 0, s);
-                            // 批量查询话题页所有帖子的附件
-                            List<Long> topicPostIds = firstPageByTopic.stream().map(Post::getId)
-                                    .collect(Collectors.toList());
-                            List<Attachment> topicAllAttachments = attachmentService
-                                    .getAttachmentsByBusinessBatch("post", topicPostIds);
-                            java.util.Map<Long, java.util.List<Attachment>> topicAttMap = (topicAllAttachments == null)
-                                    ? new java.util.HashMap<>()
-                                    : topicAllAttachments.stream()
-                                            .filter(a -> a.getBusinessId() != null)
-                                            .collect(java.util.stream.Collectors.groupingBy(Attachment::getBusinessId));
-                            List<PostListItemVO> itemsT = new ArrayList<>();
-                            for (Post p : firstPageByTopic) {
-                                UserProfile profile = userMapper.getProfile(p.getUserId());
-                                String username = profile != null ? profile.getUsername() : null;
-                                String avatar = profile != null ? profile.getAvatar() : null;
-                                String topicName = null;
-                                if (p.getTopicId() != null) {
-                                    TopicVO topicVO = topicService.getTopicCachedById(p.getTopicId().intValue());
-                                    topicName = topicVO != null ? topicVO.getName() : null;
-                                }
-                                List<Attachment> attachments = topicAttMap.getOrDefault(p.getId(),
-                                        java.util.Collections.emptyList());
-                                List<AttachmentLite> liteAttachments = new ArrayList<>();
-                                for (Attachment a : attachments) {
-                                    liteAttachments.add(AttachmentLite.builder()
-                                            .fileUrl(a.getFileUrl())
-                                            .fileType(a.getFileType())
-                                            .fileName(a.getFileName())
-                                            .build());
-                                }
-                                // 获取Redis中的增量数据（点赞、评论、阅读）
-                                String likeKey = String.format(POST_LIKE_FLUSH_KEY_FMT, p.getId());
-                                String commentKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, p.getId());
-                                String viewKey = String.format(POST_VIEW_FLUSH_KEY_FMT, p.getId());
-
-                                List<String> keys = java.util.Arrays.asList(likeKey, commentKey, viewKey);
-                                List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
-
-                                int likeDelta = 0;
-                                int commentDelta = 0;
-                                int viewDelta = 0;
-
-                                if (values != null && values.size() == 3) {
-                                    if (StrUtil.isNotBlank(values.get(0)))
-                                        likeDelta = Integer.parseInt(values.get(0));
-                                    if (StrUtil.isNotBlank(values.get(1)))
-                                        commentDelta = Integer.parseInt(values.get(1));
-                                    if (StrUtil.isNotBlank(values.get(2)))
-                                        viewDelta = Integer.parseInt(values.get(2));
-                                }
-
-                                PostListItemVO vo = PostListItemVO.builder()
-                                        .id(p.getId())
-                                        .title(p.getTitle())
-                                        .content(p.getContent())
-                                        .userId(p.getUserId())
-                                        .authorUsername(username)
-                                        .authorAvatar(avatar)
-                                        .topicId(p.getTopicId())
-                                        .topicName(topicName)
-                                        .likeCount((p.getLikeCount() == null ? 0 : p.getLikeCount()) + likeDelta)
-                                        .commentCount(
-                                                (p.getCommentCount() == null ? 0 : p.getCommentCount()) + commentDelta)
-                                        .shareCount(p.getShareCount() == null ? 0 : p.getShareCount())
-                                        .viewCount((p.getViewCount() == null ? 0 : p.getViewCount()) + viewDelta)
-                                        .createdAt(p.getCreatedAt())
-                                        .updatedAt(p.getUpdatedAt())
-                                        .attachments(liteAttachments)
-                                        .build();
-                                itemsT.add(vo);
-                            }
+                            List<PostListItemVO> itemsT = postFeedHydrator.hydrate(firstPageByTopic);
                             String jsonT = JSONUtil.toJsonStr(itemsT);
                             stringRedisTemplate.opsForValue().set(topicListLatest, jsonT, ttlJitter(LIST_TTL_SECONDS),
                                     TimeUnit.SECONDS);
                         }
-
-                        // 话题维度的计数尝试 +1（如果存在）
-                        try {
-                            String topicTotalLatestKey = String.format("topic:post:total:%d:%s:%s", topicId, statusKey,
-                                    "latest");
-                            String topicTotalHotKey = String.format("topic:post:total:%d:%s:%s", topicId, statusKey,
-                                    "hot");
-                            stringRedisTemplate.opsForValue().increment(topicTotalLatestKey);
-                            stringRedisTemplate.opsForValue().increment(topicTotalHotKey);
-                        } catch (Exception e) {
-                            log.warn("Create topic total cache inc failed: id={}", post.getId(), e);
-                        }
                     }
                 } catch (Exception e) {
                     log.warn("Create topic list cache warm failed: id={}", post.getId(), e);
                 }
 
-                // Bloom 过滤器维护
-                try {
-                    RBloomFilter<Long> postBloom = redissonClient.getBloomFilter("bf:post:id");
-                    postBloom.tryInit(10_000_000L, 0.03);
-                    RBloomFilter<Long> userBloom = redissonClient.getBloomFilter("bf:user:id");
-                    userBloom.tryInit(10_000_000L, 0.03);
-                    RBloomFilter<Long> topicBloom = redissonClient.getBloomFilter("bf:topic:id");
-                    topicBloom.tryInit(5_000_000L, 0.03);
-                    postBloom.add(post.getId());
-                    userBloom.add(post.getUserId());
-                    if (post.getTopicId() != null)
-                        topicBloom.add(post.getTopicId());
-                } catch (Exception e) {
-                    log.warn("Create bloom add failed: id={}", post.getId(), e);
+                // Bloom 过滤器维护：本地立即可见，Redis 由后台批量写入
+                bloomFilterManager.add(BloomFilterManager.Kind.POST, post.getId());
+                bloomFilterManager.add(BloomFilterManager.Kind.TOPIC, post.getTopicId());
+
+                // 输入联想：新发布的标题即时可联想
+                if (post.getStatus() == PostStatus.published) {
+                    suggestIndex.add("post", post.getTitle(), 0L);
                 }
 
                 // ES 索引写入
@@ -2069,9 +1298,7 @@ public class PostsServiceImpl implements PostsService {
                     doc.put("createdAt", now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
                     doc.put("updatedAt", now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
                     doc.put("status", post.getStatus().name());
-                    IndexRequest indexRequest = new IndexRequest(INDEX_POSTS).id(String.valueOf(post.getId()))
-                            .source(doc);
-                    esClient.index(indexRequest, RequestOptions.DEFAULT);
+                    postIndexSync.index(post.getId(), doc);
                 } catch (Exception e) {
                     log.warn("Create ES index failed: id={}", post.getId(), e);
                 }
@@ -2171,150 +1398,46 @@ public class PostsServiceImpl implements PostsService {
 
         String typeKey = StrUtil.isBlank(type) ? "-" : type;
         String statusKey = StrUtil.isBlank(status) ? "-" : status;
-        String zsetKey = String.format(POSTS_ZSET_KEY_FMT, sort, typeKey, statusKey);
 
-        // 若 ZSet 尚未预热或为空，尝试从 DB 预热一批
-        Long zsetSize = stringRedisTemplate.opsForZSet().size(zsetKey);
-        if (zsetSize == null || zsetSize == 0) {
-            try {
-                if ("hot".equals(sort)) {
-                    List<Post> hotSeed = postsMapper.selectPage(type, status, "hot", 0, ZSET_PREFILL_LIMIT);
-                    for (Post p : hotSeed) {
-                        double score = p.getViewCount() == null ? 0D : p.getViewCount().doubleValue();
-                        stringRedisTemplate.opsForZSet().add(zsetKey, String.valueOf(p.getId()), score);
-                    }
-                } else {
-                    List<Post> latest = postsMapper.selectLatestIds(type, status, ZSET_PREFILL_LIMIT);
-                    for (Post p : latest) {
-                        double score = (p.getCreatedAt() == null ? 0D
-                                : p.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-                        stringRedisTemplate.opsForZSet().add(zsetKey, String.valueOf(p.getId()), score);
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("Prefill ZSet failed: {}", zsetKey, e);
-            }
-        }
+        // 索引为空时批量预热（一条 ZADD），之后由发帖/删帖/计数刷盘增量维护
+        postFeedIndex.ensureLoaded(sort, type, status);
 
-        double maxScore = (max == null) ? ("hot".equals(sort) ? Double.MAX_VALUE : System.currentTimeMillis())
-                : max.doubleValue();
-        Set<String> idStrSet;
+        double maxScore = (max == null) ? Double.MAX_VALUE : max.doubleValue();
+        LinkedHashMap<Long, Double> page;
         try {
-            idStrSet = stringRedisTemplate.opsForZSet()
-                    .reverseRangeByScore(zsetKey, 0, maxScore, offset, size);
+            page = postFeedIndex.range(sort, typeKey, statusKey, maxScore, offset, size);
         } catch (Exception e) {
-            log.error("ZSet range failed: key={}, max={}, offset={}, size={}", zsetKey, max, offset, size, e);
+            log.error("ZSet range failed: sort={}, type={}, status={}, max={}, offset={}, size={}", sort, typeKey,
+                    statusKey, max, offset, size, e);
             return Result.error("滚动查询失败");
         }
-        if (idStrSet == null || idStrSet.isEmpty()) {
+        if (page.isEmpty()) {
             return Result.success(ScrollResult.builder().data(new ArrayList<>()).max(max).scroll(offset).build());
         }
 
-        List<Long> ids = idStrSet.stream().map(Long::valueOf).collect(Collectors.toList());
-
-        // 根据 id 批量查详情
-        List<Post> posts = postsMapper.selectByIds(ids);
-        // 批量查询本页所有帖子的附件，减少 N 次单查
-        List<Long> postIdsBatch = posts.stream().map(Post::getId).collect(Collectors.toList());
-        List<Attachment> allAttachments = attachmentService.getAttachmentsByBusinessBatch("post", postIdsBatch);
-        java.util.Map<Long, java.util.List<Attachment>> attMap = (allAttachments == null)
-                ? new java.util.HashMap<>()
-                : allAttachments.stream()
-                        .filter(a -> a.getBusinessId() != null)
-                        .collect(java.util.stream.Collectors.groupingBy(Attachment::getBusinessId));
-        List<PostListItemVO> items = new ArrayList<>();
-        double nextMax = maxScore;
-        for (Post p : posts) {
-            // 作者信息
-            UserProfile profile = userService.getProfile(p.getUserId());
-            String username = profile != null ? profile.getUsername() : null;
-            String avatar = profile != null ? profile.getAvatar() : null;
-            // 话题信息
-            String topicName = null;
-            if (p.getTopicId() != null) {
-                TopicVO topicVO = topicService.getTopicCachedById(p.getTopicId().intValue());
-                topicName = topicVO != null ? topicVO.getName() : null;
-            }
-            // 附件（轻量，批量结果映射）
-            List<Attachment> attachments = attMap.getOrDefault(p.getId(), java.util.Collections.emptyList());
-            List<AttachmentLite> liteAttachments = new ArrayList<>();
-            for (Attachment a : attachments) {
-                liteAttachments.add(AttachmentLite.builder()
-                        .fileUrl(a.getFileUrl())
-                        .fileType(a.getFileType())
-                        .fileName(a.getFileName())
-                        .build());
-            }
-
-            // 获取Redis中的增量数据（点赞、评论、阅读）
-            String likeKey = String.format(POST_LIKE_FLUSH_KEY_FMT, p.getId());
-            String commentKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, p.getId());
-            String viewKey = String.format(POST_VIEW_FLUSH_KEY_FMT, p.getId());
-
-            List<String> keys = java.util.Arrays.asList(likeKey, commentKey, viewKey);
-            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
-
-            int likeDelta = 0;
-            int commentDelta = 0;
-            int viewDelta = 0;
+        List<Long> ids = new ArrayList<>(page.keySet());
 
-            if (values != null && values.size() == 3) {
-                if (StrUtil.isNotBlank(values.get(0)))
-                    likeDelta = Integer.parseInt(values.get(0));
-                if (StrUtil.isNotBlank(values.get(1)))
-                    commentDelta = Integer.parseInt(values.get(1));
-                if (StrUtil.isNotBlank(values.get(2)))
-                    viewDelta = Integer.parseInt(values.get(2));
+        // 根据 id 批量查详情；IN 查询按库里的顺序返回，按 ZSet 的分值顺序重新排列
+        Map<Long, Post> byId = new HashMap<>();
+        for (Post p : postsMapper.selectByIds(ids)) {
+            byId.put(p.getId(), p);
+        }
+        List<Post> posts = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Post p = byId.get(id);
+            if (p != null) {
+                posts.add(p);
             }
-
-            PostListItemVO vo = PostListItemVO.builder()
-                    .id(p.getId())
-                    .title(p.getTitle())
-                    .content(p.getContent())
-                    .userId(p.getUserId())
-                    .authorUsername(username)
-                    .authorAvatar(avatar)
-                    .topicId(p.getTopicId())
-                    .topicName(topicName)
-                    .likeCount((p.getLikeCount() == null ? 0 : p.getLikeCount()) + likeDelta)
-                    .commentCount((p.getCommentCount() == null ? 0 : p.getCommentCount()) + commentDelta)
-                    .shareCount(p.getShareCount() == null ? 0 : p.getShareCount())
-                    .viewCount((p.getViewCount() == null ? 0 : p.getViewCount()) + viewDelta)
-                    .createdAt(p.getCreatedAt())
-                    .updatedAt(p.getUpdatedAt())
-                    .attachments(liteAttachments)
-                    .build();
-            items.add(vo);
-
-            // 计算 nextMax 供游标式分页继续
-            double score = "hot".equals(sort)
-                    ? (p.getViewCount() == null ? 0D : p.getViewCount().doubleValue())
-                    : (p.getCreatedAt() == null ? 0D
-                            : p.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        // 整页批量组装：计数增量一次 MGET，作者/话题批量读取
+        List<PostListItemVO> items = postFeedHydrator.hydrate(posts);
+        // nextMax 直接取索引里的分值，供游标式分页继续
+        double nextMax = maxScore;
+        for (Double score : page.values()) {
             if (score < nextMax)
                 nextMax = score;
         }
 
-        // Bloom 过滤器维护（在滚动查询时亦补充）
-        try {
-            RBloomFilter<Long> postBloom = redissonClient.getBloomFilter("bf:post:id");
-            postBloom.tryInit(10_000_000L, 0.03);
-            RBloomFilter<Long> userBloom = redissonClient.getBloomFilter("bf:user:id");
-            userBloom.tryInit(10_000_000L, 0.03);
-            RBloomFilter<Long> topicBloom = redissonClient.getBloomFilter("bf:topic:id");
-            topicBloom.tryInit(5_000_000L, 0.03);
-            for (Post p : posts) {
-                if (p.getId() != null)
-                    postBloom.add(p.getId());
-                if (p.getUserId() != null)
-                    userBloom.add(p.getUserId());
-                if (p.getTopicId() != null)
-                    topicBloom.add(p.getTopicId());
-            }
-        } catch (Exception e) {
-            log.warn("Scroll bloom fill failed: sort={}, type={}, status={}", sort, typeKey, statusKey, e);
-        }
-
         ScrollResult scrollResult = ScrollResult.builder()
                 .data(items)
                 .max((long) nextMax)
@@ -2348,7 +1471,7 @@ public class PostsServiceImpl implements PostsService {
         }
 
         // 4) 异步：附件删除、缓存清理、ES 删除
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
+        threadPoolConfig.esSyncExecutor().execute(() -> {
             try {
                 // 4.1 附件删除（数据库与OSS；内部含缓存处理）
                 try {
@@ -2360,42 +1483,19 @@ public class PostsServiceImpl implements PostsService {
                 String typeKey = StrUtil.isBlank(post.getPostType()) ? "-" : post.getPostType();
                 String statusKey = (post.getStatus() == null) ? "-" : post.getStatus().name();
 
-                // 4.3 列表缓存：按模式清理所有分页缓存（使用 SCAN，避免阻塞）
-                try {
-                    deleteKeysByPattern(String.format("post:list:%s:%s:*", typeKey, statusKey));
-                } catch (Exception e) {
-                    log.warn("删除帖子后清理列表缓存失败: id={}", postId, e);
-                }
-
-                // 4.4 计数缓存：删除总数键（回源重建更稳妥）
-                try {
-                    String totalLatestKey = String.format(POSTS_TOTAL_KEY_FMT, typeKey, statusKey, "latest");
-                    String totalHotKey = String.format(POSTS_TOTAL_KEY_FMT, typeKey, statusKey, "hot");
-                    stringRedisTemplate.delete(totalLatestKey);
-                    stringRedisTemplate.delete(totalHotKey);
-                } catch (Exception e) {
-                    log.warn("删除帖子后删除计数缓存失败: id={}", postId, e);
-                }
-
-                // 4.5 话题维度：清理该话题的列表与计数缓存
+                // 4.3 列表/计数缓存：递增列表代号（含话题维度），O(1) 失效，旧分页自然过期
                 try {
-                    if (post.getTopicId() != null) {
-                        Long topicId = post.getTopicId();
-                        deleteKeysByPattern(String.format("topic:post:list:%d:%s:*", topicId, statusKey));
-                        String topicTotalLatestKey = String.format("topic:post:total:%d:%s:%s", topicId, statusKey,
-                                "latest");
-                        String topicTotalHotKey = String.format("topic:post:total:%d:%s:%s", topicId, statusKey, "hot");
-                        stringRedisTemplate.delete(topicTotalLatestKey);
-                        stringRedisTemplate.delete(topicTotalHotKey);
-                    }
+                    String status = post.getStatus() == null ? null : post.getStatus().name();
+                    listCacheGenerations.bumpPost(post.getPostType(), status);
+                    listCacheGenerations.bumpTopic(post.getTopicId(), status);
+                    postFeedIndex.remove(postId, post.getPostType(), status);
                 } catch (Exception e) {
-                    log.warn("删除帖子后话题维度缓存处理失败: id={}", postId, e);
+                    log.warn("删除帖子后失效列表缓存失败: id={}", postId, e);
                 }
 
                 // 4.6 ES 索引删除（容错，不影响主流程）
                 try {
-                    DeleteRequest req = new DeleteRequest(INDEX_POSTS, String.valueOf(postId));
-                    esClient.delete(req, RequestOptions.DEFAULT);
+                    postIndexSync.delete(postId);
                 } catch (Exception e) {
                     log.warn("删除ES索引文档失败: id={}", postId, e);
                 }
@@ -2411,8 +1511,7 @@ public class PostsServiceImpl implements PostsService {
     @Override
     public Result createShareLink(Long userId, Long postId, String channel) {
         try {
-            org.redisson.api.RBloomFilter<Long> postBloom = redissonClient.getBloomFilter("bf:post:id");
-            if (postBloom != null && !postBloom.contains(postId)) {
+            if (!bloomFilterManager.mightContain(BloomFilterManager.Kind.POST, postId)) {
                 return Result.error("帖子不存在");
             }
             String token = java.lang.Long.toString(redisIdWorker.nextId("share"), 36);
@@ -2425,7 +1524,7 @@ public class PostsServiceImpl implements PostsService {
             stringRedisTemplate.opsForHash().putAll(key, map);
             stringRedisTemplate.expire(key, 7, java.util.concurrent.TimeUnit.DAYS);
 
-            threadPoolConfig.threadPoolExecutor().execute(() -> {
+            threadPoolConfig.counterFlushExecutor().execute(() -> {
                 try {
                     postsMapper.incrShareCount(postId, 1);
                 } catch (Exception ignored) {
@@ -2469,25 +1568,21 @@ public class PostsServiceImpl implements PostsService {
                 TopicVO topicVO = topicService.getTopicCachedById(post.getTopicId().intValue());
                 topicName = topicVO != null ? topicVO.getName() : null;
             }
-            // 获取Redis中的增量数据（点赞、评论、阅读）
+            // 获取Redis中的增量数据（点赞、评论）；阅读量由本地聚合器每秒落库
             String likeKey = String.format(POST_LIKE_FLUSH_KEY_FMT, post.getId());
             String commentKey = String.format(POST_COMMENT_FLUSH_KEY_FMT, post.getId());
-            String viewKey = String.format(POST_VIEW_FLUSH_KEY_FMT, post.getId());
 
-            List<String> keys = java.util.Arrays.asList(likeKey, commentKey, viewKey);
+            List<String> keys = java.util.Arrays.asList(likeKey, commentKey);
             List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
 
             int likeDelta = 0;
             int commentDelta = 0;
-            int viewDelta = 0;
 
-            if (values != null && values.size() == 3) {
+            if (values != null && values.size() == 2) {
                 if (StrUtil.isNotBlank(values.get(0)))
                     likeDelta = Integer.parseInt(values.get(0));
                 if (StrUtil.isNotBlank(values.get(1)))
                     commentDelta = Integer.parseInt(values.get(1));
-                if (StrUtil.isNotBlank(values.get(2)))
-                    viewDelta = Integer.parseInt(values.get(2));
             }
 
             PostListItemVO vo = PostListItemVO.builder()
@@ -2502,7 +1597,7 @@ public class PostsServiceImpl implements PostsService {
                     .likeCount((post.getLikeCount() == null ? 0 : post.getLikeCount()) + likeDelta)
                     .commentCount((post.getCommentCount() == null ? 0 : post.getCommentCount()) + commentDelta)
                     .shareCount(post.getShareCount() == null ? 0 : post.getShareCount())
-                    .viewCount((post.getViewCount() == null ? 0 : post.getViewCount()) + viewDelta)
+                    .viewCount(post.getViewCount() == null ? 0 : post.getViewCount())
                     .createdAt(post.getCreatedAt())
                     .updatedAt(post.getUpdatedAt())
                     .attachments(liteAttachments)
@@ -2515,157 +1610,4 @@ public class PostsServiceImpl implements PostsService {
             log.info("用户打开分享链接成功:{}", token);
         }
     }
-
-    // 使用 SCAN 按模式删除键，避免 KEYS 阻塞；异常时回退 KEYS（规模小时可接受）
-    private void deleteKeysByPattern(String pattern) {
-        try {
-            stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
-                ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
-                try (Cursor<byte[]> cursor = connection.scan(options)) {
-                    java.util.List<byte[]> batch = new java.util.ArrayList<>();
-                    while (cursor.hasNext()) {
-                        batch.add(cursor.next());
-                        if (batch.size() >= 1000) {
-                            connection.del(batch.toArray(new byte[0][]));
-                            batch.clear();
-                        }
-                    }
-                    if (!batch.isEmpty()) {
-                        connection.del(batch.toArray(new byte[0][]));
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-                return null;
-            });
-        } catch (Exception e) {
-            try {
-                java.util.Set<String> keys = stringRedisTemplate.keys(pattern);
-                if (keys != null && !keys.isEmpty()) {
-                    stringRedisTemplate.delete(keys);
-                }
-            } catch (Exception e2) {
-                log.warn("按模式删除缓存失败: pattern={}", pattern, e2);
-            }
-        }
-    }
-
-    @Scheduled(cron = "0 0 */2 * * ?")
-    public void flushLikeDataToDatabase() {
-        String lockKey = "lock:post:like:global:flush";
-        var lock = redissonClient.getLock(lockKey);
-        boolean isLocked = false;
-        try {
-            // 尝试获取锁，等待0秒，锁定10分钟
-            isLocked = lock.tryLock(0, 600, TimeUnit.SECONDS);
-            if (!isLocked) {
-                log.info("Another instance is performing the flush task. Skipping.");
-                return;
-            }
-
-            log.info("Start flushing like data from Redis to DB...");
-
-            List<String> keys = new ArrayList<>();
-            ScanOptions options = ScanOptions.scanOptions()
-                    .match("post:like:flush:*")
-                    .count(1000)
-                    .build();
-
-            stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
-                try (Cursor<byte[]> cursor = connection.scan(options)) {
-                    while (cursor.hasNext()) {
-                        keys.add(new String(cursor.next()));
-                    }
-                }
-                return null;
-            });
-
-            if (keys.isEmpty()) {
-                log.info("No like data to flush.");
-                return;
-            }
-
-            int batchSize = 1000;
-            for (int i = 0; i < keys.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, keys.size());
-                processFlushBatch(keys.subList(i, end));
-            }
-
-            log.info("Flushed {} keys to DB.", keys.size());
-
-        } catch (InterruptedException e) {
-            log.warn("Flush task interrupted", e);
-        } catch (Exception e) {
-            log.error("Flush task failed", e);
-        } finally {
-            if (isLocked) {
-                try {
-                    lock.unlock();
-                } catch (Exception e) {
-                    log.error("Unlock failed", e);
-                }
-            }
-        }
-    }
-
-    private void processFlushBatch(List<String> keys) {
-        if (keys == null || keys.isEmpty())
-            return;
-
-        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
-        if (values == null || values.isEmpty())
-            return;
-
-        List<Map<String, Object>> updateList = new ArrayList<>();
-        List<String> keysToDecr = new ArrayList<>();
-        List<Integer> deltasToDecr = new ArrayList<>();
-
-        for (int i = 0; i < keys.size(); i++) {
-            String val = values.get(i);
-            if (StrUtil.isBlank(val))
-                continue;
-
-            try {
-                int delta = Integer.parseInt(val);
-                if (delta == 0)
-                    continue;
-
-                String key = keys.get(i);
-                // key format: post:like:flush:{id}
-                String idStr = key.substring(key.lastIndexOf(":") + 1);
-                Long postId = Long.parseLong(idStr);
-
-                Map<String, Object> map = new java.util.HashMap<>();
-                map.put("id", postId);
-                map.put("delta", delta);
-                updateList.add(map);
-
-                keysToDecr.add(key);
-                deltasToDecr.add(delta);
-            } catch (Exception e) {
-                log.error("Error processing key: " + keys.get(i), e);
-            }
-        }
-
-        if (updateList.isEmpty())
-            return;
-
-        try {
-            // Batch update DB
-            postsMapper.updateLikeCountBatch(updateList);
-
-            // Decrement Redis
-            stringRedisTemplate.executePipelined(new org.springframework.data.redis.core.SessionCallback<Object>() {
-                @Override
-                public Object execute(org.springframework.data.redis.core.RedisOperations operations) {
-                    for (int i = 0; i < keysToDecr.size(); i++) {
-                        operations.opsForValue().decrement(keysToDecr.get(i), deltasToDecr.get(i));
-                    }
-                    return null;
-                }
-            });
-        } catch (Exception e) {
-            log.error("Batch update failed", e);
-        }
-    }
 }
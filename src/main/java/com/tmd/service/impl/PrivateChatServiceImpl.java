@@ -2,7 +2,9 @@ package com.tmd.service.impl;
 
 import cn.hutool.json.JSONUtil;
 import com.tmd.WebSocket.WebSocketServer;
-import com.tmd.config.ThreadPoolConfig;
+import com.tmd.chat.ChatAckTracker;
+import com.tmd.chat.ChatMessageWriter;
+import com.tmd.chat.OfflineInbox;
 import com.tmd.entity.dto.*;
 import com.tmd.mapper.ChatMessageMapper;
 import com.tmd.service.PrivateChatService;
@@ -10,13 +12,15 @@ import com.tmd.tools.BaseContext;
 import com.tmd.tools.RedisIdWorker;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -27,16 +31,21 @@ public class PrivateChatServiceImpl implements PrivateChatService {
     @Autowired
     private WebSocketServer webSocketServer;
     @Autowired
-    private ThreadPoolConfig threadPoolConfig;
-    @Autowired
     private ChatMessageMapper chatMessageMapper;
     @Autowired
     private RedisIdWorker redisIdWorker;
+    @Autowired
+    private ChatAckTracker chatAckTracker;
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+    @Autowired
+    private OfflineInbox offlineInbox;
 
-    private static final String OFFLINE_KEY_FMT = "chat:offline:%s";
     private static final String CONV_KEY_FMT = "chat:conv:%s:%s";
     private static final String MSG_KEY_FMT = "chat:msg:%s";
     private static final String ACK_KEY_FMT = "chat:ack:%s";
+    private static final Duration CONV_WINDOW = Duration.ofDays(7);
+    private static final int MAX_SYNC_SIZE = 200;
 
     private String convKey(Long a, Long b) {
         long x = Math.min(a, b);
@@ -63,51 +72,65 @@ public class PrivateChatServiceImpl implements PrivateChatService {
                 .createdAt(LocalDateTime.now())
                 .build();
 
+        String to = String.valueOf(toUserId);
+        boolean online = webSocketServer.Open(to);
+        if (online) {
+            message.setStatus(ChatStatus.delivered);
+            message.setDeliveredAt(LocalDateTime.now());
+        }
+        // 只序列化一次：消息缓存、推送共用同一份 JSON；会话和离线收件箱只存消息ID
+        String json = JSONUtil.toJsonStr(message);
+        String idStr = String.valueOf(id);
         String convKey = convKey(fromUserId, toUserId);
+        long now = System.currentTimeMillis();
+        // 会话缓存按7天窗口滚动清理，并设置TTL（7天）
+        long sevenDaysAgo = now - CONV_WINDOW.toMillis();
         try {
-            long now = System.currentTimeMillis();
-            stringRedisTemplate.opsForZSet().add(convKey, JSONUtil.toJsonStr(message), now);
-            stringRedisTemplate.opsForValue().set(String.format(MSG_KEY_FMT, id), JSONUtil.toJsonStr(message));
-            // 会话缓存按7天窗口滚动清理，并设置TTL（7天）
-            long sevenDaysAgo = now - 7L * 24 * 60 * 60 * 1000;
-            try {
-                stringRedisTemplate.opsForZSet().removeRangeByScore(convKey, 0, sevenDaysAgo);
-                stringRedisTemplate.expire(convKey, java.time.Duration.ofDays(7));
-            } catch (Exception ignored) {}
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    operations.opsForZSet().add(convKey, idStr, now);
+                    operations.opsForValue().set(String.format(MSG_KEY_FMT, id), json, CONV_WINDOW);
+                    operations.opsForZSet().removeRangeByScore(convKey, 0, sevenDaysAgo);
+                    operations.expire(convKey, CONV_WINDOW);
+                    return null;
+                }
+            });
         } catch (Exception e) {
-            log.warn("写入会话ZSet失败 key={} id={}", convKey, id, e);
+            log.warn("写入会话缓存失败 key={} id={}", convKey, id, e);
+        }
+        if (!online) {
+            // 离线收件箱按收件箱内序号排序，取号要在脚本里原子完成，不放进上面的 pipeline
+            try {
+                offlineInbox.enqueue(toUserId, idStr);
+            } catch (Exception e) {
+                log.warn("写入离线消息失败 toUserId={} id={}", toUserId, id, e);
+            }
         }
 
-        boolean delivered = false;
-        try {
-            if (webSocketServer.Open(String.valueOf(toUserId))) {
-                webSocketServer.sendToUser(String.valueOf(toUserId), JSONUtil.toJsonStr(message));
-                delivered = true;
-                message.setStatus(ChatStatus.delivered);
-                message.setDeliveredAt(LocalDateTime.now());
-                stringRedisTemplate.opsForValue().set(String.format(MSG_KEY_FMT, id), JSONUtil.toJsonStr(message));
-                threadPoolConfig.threadPoolExecutor().execute(() -> {
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ignored) {}
-                    String ack = stringRedisTemplate.opsForValue().get(String.format(ACK_KEY_FMT, id));
-                    boolean stillOpen = webSocketServer.Open(String.valueOf(toUserId));
-                    if (ack == null || ack.isEmpty()) {
-                        message.setStatus(ChatStatus.sent);
-                        message.setDeliveredAt(null);
-                        stringRedisTemplate.opsForValue().set(String.format(MSG_KEY_FMT, id), JSONUtil.toJsonStr(message));
-                        String offlineKey2 = String.format(OFFLINE_KEY_FMT, toUserId);
-                        stringRedisTemplate.opsForZSet().add(offlineKey2, JSONUtil.toJsonStr(message), System.currentTimeMillis());
-                    }
-                });
+        if (online) {
+            boolean queued = false;
+            try {
+                // 只入队（本节点）或转发给用户所在节点，不阻塞当前线程
+                queued = webSocketServer.sendToUser(to, json);
+            } catch (Exception e) {
+                log.error("推送消息失败 toUserId={} id={}", toUserId, id, e);
+            }
+            if (queued) {
+                // 2 秒内未 ACK 由 ChatAckTracker 改回 sent 并转入离线队列
+                chatAckTracker.track(id, toUserId, json);
             } else {
-                String offlineKey = String.format(OFFLINE_KEY_FMT, toUserId);
-                stringRedisTemplate.opsForZSet().add(offlineKey, JSONUtil.toJsonStr(message), System.currentTimeMillis());
+                message.setStatus(ChatStatus.sent);
+                message.setDeliveredAt(null);
+                try {
+                    String sentJson = JSONUtil.toJsonStr(message);
+                    stringRedisTemplate.opsForValue().set(String.format(MSG_KEY_FMT, id), sentJson, CONV_WINDOW);
+                    offlineInbox.enqueue(toUserId, idStr);
+                } catch (Exception e) {
+                    log.warn("写入离线消息失败 toUserId={} id={}", toUserId, id, e);
+                }
             }
-        } catch (Exception e) {
-            log.error("推送消息失败 toUserId={} id={}", toUserId, id, e);
-            String offlineKey = String.format(OFFLINE_KEY_FMT, toUserId);
-            stringRedisTemplate.opsForZSet().add(offlineKey, JSONUtil.toJsonStr(message), System.currentTimeMillis());
         }
 
         ChatMessageVO vo = ChatMessageVO.builder()
@@ -119,51 +142,70 @@ public class PrivateChatServiceImpl implements PrivateChatService {
                 .createdAt(message.getCreatedAt())
                 .build();
 
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
-            try {
-                chatMessageMapper.insert(message);
-            } catch (Exception ignored) {
-            }
-        });
+        chatMessageWriter.write(message);
 
         return Result.success(vo);
     }
 
     @Override
-    public Result pullOffline(Integer page, Integer size) {
-        if (page == null || page < 1) page = 1;
+    public Result pullOffline(String cursor, Integer size) {
         if (size == null || size < 1) size = 10;
+        size = Math.min(size, MAX_SYNC_SIZE);
         Long uid = BaseContext.get();
         if (uid == null) return Result.error("未登录");
-        String key = String.format(OFFLINE_KEY_FMT, uid);
-        Set<String> set = stringRedisTemplate.opsForZSet()
-                .rangeByScore(key, 0, System.currentTimeMillis(), (long) (page - 1) * size, size);
-        if (set == null || set.isEmpty()) {
-            return Result.success(Collections.emptyList());
+        // 游标是上一页最后一条的收件箱序号；兼容旧客户端的 "score:id"，只取前半段
+        Long cursorSeq = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            int i = cursor.indexOf(':');
+            try {
+                cursorSeq = Long.parseLong(i < 0 ? cursor : cursor.substring(0, i));
+            } catch (NumberFormatException e) {
+                return Result.error("游标无效");
+            }
+        }
+        // 一次脚本确认游标之前的消息并取下一页，再一次 MGET 取消息体：每次同步固定两次往返
+        List<String[]> page;
+        try {
+            page = offlineInbox.sync(uid, cursorSeq, size);
+        } catch (Exception e) {
+            log.warn("同步离线消息失败 uid={}", uid, e);
+            return Result.error("同步离线消息失败");
+        }
+        if (page.isEmpty()) {
+            return Result.success(ChatSyncResult.builder()
+                    .messages(Collections.emptyList()).cursor(cursor).hasMore(false).build());
+        }
+        List<String> members = new ArrayList<>(page.size());
+        String nextCursor = cursor;
+        List<String> legacy = new ArrayList<>();
+        for (String[] pair : page) {
+            String member = pair[0];
+            members.add(member);
+            if (isLegacyMember(member)) {
+                // 旧格式（整条 JSON）无法用游标确认，取出即删除
+                legacy.add(member);
+            } else {
+                nextCursor = pair[1];
+            }
+        }
+        List<ChatMessage> messages = loadMessages(members);
+        List<ChatMessageVO> list = new ArrayList<>(messages.size());
+        for (ChatMessage m : messages) {
+            if (m != null) {
+                list.add(toVO(m));
+            }
         }
-        List<ChatMessageVO> list = set.stream()
-                .map(s -> JSONUtil.toBean(s, ChatMessage.class))
-                .map(m -> {
-                    String mk = String.format(MSG_KEY_FMT, m.getId());
-                    String latest = stringRedisTemplate.opsForValue().get(mk);
-                    ChatMessage src = latest != null ? JSONUtil.toBean(latest, ChatMessage.class) : m;
-                    return src;
-                })
-                .map(m -> ChatMessageVO.builder()
-                        .id(m.getId())
-                        .fromUserId(m.getFromUserId())
-                        .toUserId(m.getToUserId())
-                        .content(m.getContent())
-                        .status(m.getStatus())
-                        .createdAt(m.getCreatedAt())
-                        .build())
-                .collect(Collectors.toList());
         try {
-            stringRedisTemplate.opsForZSet().remove(key, set.toArray());
+            offlineInbox.remove(uid, legacy);
         } catch (Exception e) {
-            log.warn("清理离线消息失败 key={}", key, e);
+            log.warn("清理旧格式离线消息失败 uid={}", uid, e);
         }
-        return Result.success(list);
+        ChatSyncResult res = ChatSyncResult.builder()
+                .messages(list)
+                .cursor(nextCursor)
+                .hasMore(members.size() >= size)
+                .build();
+        return Result.success(res);
     }
 
     @Override
@@ -181,53 +223,110 @@ public class PrivateChatServiceImpl implements PrivateChatService {
         if (tuples == null || tuples.isEmpty()) {
             return Result.success(ScrollResult.builder().data(new ArrayList<>()).max(max).scroll(offset).build());
         }
+        List<String> members = new ArrayList<>(tuples.size());
+        for (ZSetOperations.TypedTuple<String> t : tuples) {
+            members.add(t.getValue());
+        }
+        List<ChatMessage> messages = loadMessages(members);
         List<ChatMessageVO> items = new ArrayList<>(tuples.size());
         long nextMax = max == null ? System.currentTimeMillis() : max;
         int os = offset;
+        int seen = 0;
+        int i = 0;
         for (ZSetOperations.TypedTuple<String> t : tuples) {
-            String s = t.getValue();
-            ChatMessage m0 = JSONUtil.toBean(s, ChatMessage.class);
-            String mk = String.format(MSG_KEY_FMT, m0.getId());
-            String latest = stringRedisTemplate.opsForValue().get(mk);
-            ChatMessage m = latest != null ? JSONUtil.toBean(latest, ChatMessage.class) : m0;
-            items.add(ChatMessageVO.builder()
-                    .id(m.getId())
-                    .fromUserId(m.getFromUserId())
-                    .toUserId(m.getToUserId())
-                    .content(m.getContent())
-                    .status(m.getStatus())
-                    .createdAt(m.getCreatedAt())
-                    .build());
+            ChatMessage m = messages.get(i++);
+            seen++;
+            if (m != null) {
+                items.add(toVO(m));
+            }
             Double score = t.getScore();
             long time = score == null ? nextMax : score.longValue();
             if (time < nextMax) {
                 nextMax = time;
-                os = offset + items.size();
+                os = offset + seen;
             }
         }
         ScrollResult res = ScrollResult.builder().data(items).max(nextMax).scroll(os).build();
         return Result.success(res);
     }
 
+    /**
+     * 按 ZSet 成员批量取消息体（一次 MGET），与入参一一对应；消息体已过期的位置为 null。
+     * 兼容旧格式成员（整条 JSON）：以缓存中的最新状态为准，缓存没有时用成员本身
+     */
+    private List<ChatMessage> loadMessages(List<String> members) {
+        List<ChatMessage> legacy = new ArrayList<>(members.size());
+        List<String> keys = new ArrayList<>(members.size());
+        for (String member : members) {
+            ChatMessage old = isLegacyMember(member) ? JSONUtil.toBean(member, ChatMessage.class) : null;
+            legacy.add(old);
+            keys.add(String.format(MSG_KEY_FMT, old != null ? old.getId() : member));
+        }
+        List<String> bodies = null;
+        try {
+            bodies = stringRedisTemplate.opsForValue().multiGet(keys);
+        } catch (Exception e) {
+            log.warn("批量读取消息失败 size={}", keys.size(), e);
+        }
+        List<ChatMessage> result = new ArrayList<>(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            String body = bodies == null || i >= bodies.size() ? null : bodies.get(i);
+            result.add(body != null ? JSONUtil.toBean(body, ChatMessage.class) : legacy.get(i));
+        }
+        return result;
+    }
+
+    private static boolean isLegacyMember(String member) {
+        return member != null && member.startsWith("{");
+    }
+
+    private static ChatMessageVO toVO(ChatMessage m) {
+        return ChatMessageVO.builder()
+                .id(m.getId())
+                .fromUserId(m.getFromUserId())
+                .toUserId(m.getToUserId())
+                .content(m.getContent())
+                .status(m.getStatus())
+                .createdAt(m.getCreatedAt())
+                .build();
+    }
+
+    /**
+     * 先读消息缓存 chat:msg:{id}：消息是批量落库的，刚发出的消息库里可能还没有这一行；缓存没有再查库
+     */
+    private ChatMessage findMessage(Long messageId) {
+        try {
+            String body = stringRedisTemplate.opsForValue().get(String.format(MSG_KEY_FMT, messageId));
+            if (body != null) {
+                return JSONUtil.toBean(body, ChatMessage.class);
+            }
+        } catch (Exception e) {
+            log.warn("读取消息缓存失败 id={}", messageId, e);
+        }
+        try {
+            return chatMessageMapper.selectById(messageId);
+        } catch (Exception e) {
+            log.warn("查询消息失败 id={}", messageId, e);
+            return null;
+        }
+    }
+
     @Override
     public Result markRead(Long messageId) {
         if (messageId == null) return Result.error("参数错误");
         Long uid = BaseContext.get();
         if (uid == null) return Result.error("未登录");
-        ChatMessage m = null;
-        try {
-            m = chatMessageMapper.selectById(messageId);
-        } catch (Exception ignored) {}
+        ChatMessage m = findMessage(messageId);
         if (m == null) return Result.error("消息不存在");
         if (!uid.equals(m.getToUserId())) return Result.error("无权限");
         LocalDateTime now = LocalDateTime.now();
         m.setStatus(ChatStatus.read);
         m.setReadAt(now);
         stringRedisTemplate.opsForValue().set(String.format(MSG_KEY_FMT, m.getId()), JSONUtil.toJsonStr(m));
-        try { stringRedisTemplate.expire(String.format(MSG_KEY_FMT, m.getId()), java.time.Duration.ofHours(24)); } catch (Exception ignored) {}
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
-            try { chatMessageMapper.markRead(messageId, now); } catch (Exception ignored) {}
-        });
+        // 会话和离线收件箱只存ID，消息体要和会话窗口一样长
+        try { stringRedisTemplate.expire(String.format(MSG_KEY_FMT, m.getId()), CONV_WINDOW); } catch (Exception ignored) {}
+        // 交给批量写入线程，排在这条消息的插入之后
+        chatMessageWriter.markRead(messageId, now);
         try {
             Map<String, Object> receipt = new HashMap<>();
             receipt.put("type", "chat_receipt");
@@ -245,20 +344,15 @@ public class PrivateChatServiceImpl implements PrivateChatService {
         if (messageId == null) return Result.error("参数错误");
         Long uid = BaseContext.get();
         if (uid == null) return Result.error("未登录");
-        ChatMessage m = null;
-        try {
-            m = chatMessageMapper.selectById(messageId);
-        } catch (Exception ignored) {}
+        ChatMessage m = findMessage(messageId);
         if (m == null) return Result.error("消息不存在");
         if (!uid.equals(m.getFromUserId())) return Result.error("无权限");
         LocalDateTime now = LocalDateTime.now();
         m.setStatus(ChatStatus.recalled);
         m.setRecalledAt(now);
         stringRedisTemplate.opsForValue().set(String.format(MSG_KEY_FMT, m.getId()), JSONUtil.toJsonStr(m));
-        try { stringRedisTemplate.expire(String.format(MSG_KEY_FMT, m.getId()), java.time.Duration.ofDays(7)); } catch (Exception ignored) {}
-        threadPoolConfig.threadPoolExecutor().execute(() -> {
-            try { chatMessageMapper.markRecalled(messageId, now); } catch (Exception ignored) {}
-        });
+        try { stringRedisTemplate.expire(String.format(MSG_KEY_FMT, m.getId()), CONV_WINDOW); } catch (Exception ignored) {}
+        chatMessageWriter.markRecalled(messageId, now);
         try {
             Map<String, Object> receipt = new HashMap<>();
             receipt.put("type", "chat_receipt");
@@ -1,7 +1,12 @@
 package com.tmd.service.impl;
 
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
 import com.tmd.entity.dto.*;
+import com.tmd.es.SearchResultCache;
+import com.tmd.es.SuggestIndex;
 import com.tmd.mapper.AttachmentMapper;
 import com.tmd.service.SearchService;
 import lombok.RequiredArgsConstructor;
@@ -21,9 +26,11 @@ import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 
@@ -34,283 +41,449 @@ public class SearchServiceImpl implements SearchService {
 
     private final RestHighLevelClient esClient;
     private final AttachmentMapper attachmentMapper;
+    private final SearchResultCache searchResultCache;
+    private final SuggestIndex suggestIndex;
 
     private static final String INDEX_POSTS = "posts";
+    // 页码翻页的最大深度（from + size），再往后改走游标翻页
+    private static final int MAX_PAGE_WINDOW = 1000;
+    private static final int MAX_SCROLL_SIZE = 50;
 
-    @Override
-    public Result search(String keyword, String type, Integer page, Integer size, String sort,
-                         Long topicId, Long startTime, Long endTime) {
-        if (StrUtil.isBlank(keyword)) {
-            return Result.error("关键字不能为空");
+    /**
+     * 游标翻页的不透明游标：上一页最后一条的排序值 + 首页的快照时间，JSON 后做 URL 安全的 Base64
+     */
+    private static final class SearchCursor {
+        final Object[] sortValues;
+        final long asOf;
+
+        SearchCursor(Object[] sortValues, long asOf) {
+            this.sortValues = sortValues;
+            this.asOf = asOf;
         }
-        if (page == null || page < 1)
-            page = 1;
-        if (size == null || size < 1)
-            size = 10;
 
-        try {
-            SearchRequest request = new SearchRequest(INDEX_POSTS);
-            SearchSourceBuilder source = new SearchSourceBuilder();
-
-            // query: 根据 type 决定搜索字段并设置权重
-            String t = StrUtil.isBlank(type) ? "all" : type;
-            List<String> fields = new ArrayList<>();
-            switch (t) {
-                case "post":
-                    // 帖子标题/内容，加入 search_as_you_type 子字段以支持前缀匹配
-                    fields.add("title^3");
-                    fields.add("title._2gram^2");
-                    fields.add("title._3gram^2");
-                    fields.add("content^2");
-                    break;
-                case "topic":
-                    fields.add("topicName^2");
-                    fields.add("topicName._2gram");
-                    fields.add("topicName._3gram");
-                    break;
-                case "user":
-                    fields.add("authorUsername^2");
-                    fields.add("authorUsername._2gram");
-                    fields.add("authorUsername._3gram");
-                    break;
-                default:
-                    fields.add("title^3");
-                    fields.add("title._2gram^2");
-                    fields.add("title._3gram^2");
-                    fields.add("content^2");
-                    fields.add("topicName");
-                    fields.add("topicName._2gram");
-                    fields.add("topicName._3gram");
-                    fields.add("authorUsername");
-                    fields.add("authorUsername._2gram");
-                    fields.add("authorUsername._3gram");
-            }
+        String encode() {
+            JSONObject json = new JSONObject();
+            json.set("s", sortValues);
+            json.set("t", asOf);
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
 
-            // 主查询 multi-match，设置中文相关性控制与模糊
-            MultiMatchQueryBuilder main = QueryBuilders.multiMatchQuery(keyword);
-            for (String f : fields) {
-                String name = f.contains("^") ? f.substring(0, f.indexOf('^')) : f;
-                float boost = 1.0f;
-                if (f.contains("^")) {
-                    try {
-                        boost = Float.parseFloat(f.substring(f.indexOf('^') + 1));
-                    } catch (Exception ignored) {
+        /**
+         * @return 格式不对时返回 null
+         */
+        static SearchCursor decode(String cursor) {
+            try {
+                JSONObject json = JSONUtil.parseObj(
+                        new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+                JSONArray arr = json.getJSONArray("s");
+                Long asOf = json.getLong("t");
+                if (arr == null || arr.isEmpty() || asOf == null) {
+                    return null;
+                }
+                Object[] values = new Object[arr.size()];
+                for (int i = 0; i < arr.size(); i++) {
+                    Object v = arr.get(i);
+                    // search_after 只接受基本数值类型，JSON 解析出的 BigDecimal 等需要转回来
+                    if (v instanceof Integer || v instanceof Long) {
+                        values[i] = ((Number) v).longValue();
+                    } else if (v instanceof Number n) {
+                        values[i] = n.doubleValue();
+                    } else if (v instanceof String) {
+                        values[i] = v;
+                    } else {
+                        return null;
                     }
                 }
-                main.field(name, boost);
-            }
-            // operator/min_should_match 控制
-            if ("user".equals(t) || "topic".equals(t)) {
-                main.operator(Operator.AND); // 人名/话题多词需全部匹配，提升精确度
-            } else {
-                main.minimumShouldMatch("60%"); // 标题/内容默认提升相关性
-            }
-            // 模糊匹配：中文/名称小错别字容错
-            if (keyword.length() >= 2 && keyword.length() <= 20) {
-                main.fuzziness(Fuzziness.AUTO).prefixLength(1);
+                return new SearchCursor(values, asOf);
+            } catch (Exception e) {
+                return null;
             }
+        }
+    }
 
-            // 简易同义词扩展（可替换为索引级 synonym 分析器），同义词以较低 boost 作为 should
-            List<String> synonyms = expandSynonyms(keyword);
-            BoolQueryBuilder bool = QueryBuilders.boolQuery();
-            bool.filter(QueryBuilders.termQuery("status", "published"));
-            // 话题过滤
-            if (topicId != null && topicId > 0) {
-                bool.filter(QueryBuilders.termQuery("topicId", topicId));
+    /**
+     * 每种搜索类型的查询形状：字段与权重、匹配方式、高亮配置只在类加载时构建一次，
+     * 请求里只拼关键词与过滤条件（HighlightBuilder 构建后只读，可以在请求间共享）
+     */
+    private static final class QueryShape {
+        final String type;
+        final String[] fields;
+        final float[] boosts;
+        final boolean exact; // 人名/话题多词需全部匹配
+        final HighlightBuilder highlight;
+
+        QueryShape(String type, boolean exact, String... weighted) {
+            this.type = type;
+            this.exact = exact;
+            this.fields = new String[weighted.length];
+            this.boosts = new float[weighted.length];
+            HighlightBuilder hb = new HighlightBuilder()
+                    .preTags("<em>")
+                    .postTags("</em>")
+                    .requireFieldMatch(false); // 允许不同字段高亮
+            for (int i = 0; i < weighted.length; i++) {
+                String f = weighted[i];
+                int idx = f.indexOf('^');
+                fields[i] = idx < 0 ? f : f.substring(0, idx);
+                boosts[i] = idx < 0 ? 1.0f : Float.parseFloat(f.substring(idx + 1));
+                hb.field(new HighlightBuilder.Field(fields[i]).highlighterType("unified"));
             }
-            // 时间范围过滤（epoch_millis）
-            if ((startTime != null && startTime > 0) || (endTime != null && endTime > 0)) {
-                var range = QueryBuilders.rangeQuery("createdAt");
-                if (startTime != null && startTime > 0) range.gte(startTime);
-                if (endTime != null && endTime > 0) range.lte(endTime);
-                bool.filter(range);
+            this.highlight = hb;
+        }
+
+        /**
+         * @param boostScale 同义词查询整体降权
+         */
+        MultiMatchQueryBuilder match(String text, float boostScale) {
+            MultiMatchQueryBuilder q = QueryBuilders.multiMatchQuery(text);
+            for (int i = 0; i < fields.length; i++) {
+                q.field(fields[i], boostScale == 1.0f ? boosts[i] : boostScale);
             }
-            // 主 should：原始关键词
-            bool.should(main);
-            // 同义词 should：扩大召回
-            for (String syn : synonyms) {
-                MultiMatchQueryBuilder synQ = QueryBuilders.multiMatchQuery(syn);
-                for (String f : fields) {
-                    String name = f.contains("^") ? f.substring(0, f.indexOf('^')) : f;
-                    float boost = 0.7f; // 同义词权重略低于主查询
-                    synQ.field(name, boost);
-                }
-                if ("user".equals(t) || "topic".equals(t)) {
-                    synQ.operator(Operator.AND);
-                } else {
-                    synQ.minimumShouldMatch("60%");
-                }
-                if (syn.length() >= 2 && syn.length() <= 20) {
-                    synQ.fuzziness(Fuzziness.AUTO).prefixLength(1);
-                }
-                bool.should(synQ);
+            if (exact) {
+                q.operator(Operator.AND);
+            } else {
+                q.minimumShouldMatch("60%"); // 标题/内容默认提升相关性
             }
-            // 至少命中一个 should（原始或同义词）
-            bool.minimumShouldMatch(1);
-
-            source.query(bool);
-
-            // sort options: hot (default), latest, relevance
-            String s = StrUtil.isBlank(sort) ? "hot" : sort;
-            switch (s) {
-                case "latest":
-                    source.sort("createdAt", SortOrder.DESC);
-                    source.sort("viewCount", SortOrder.DESC);
-                    break;
-                case "relevance":
-                    // rely on _score, optionally add tiebreaker
-                    source.sort("_score", SortOrder.DESC);
-                    source.sort("createdAt", SortOrder.DESC);
-                    break;
-                case "hot":
-                default:
-                    source.sort("viewCount", SortOrder.DESC);
-                    source.sort("createdAt", SortOrder.DESC);
-                    break;
+            // 模糊匹配：中文/名称小错别字容错
+            if (text.length() >= 2 && text.length() <= 20) {
+                q.fuzziness(Fuzziness.AUTO).prefixLength(1);
             }
+            return q;
+        }
+    }
 
-            // pagination
-            int from = (page - 1) * size;
-            source.from(from).size(size);
+    private static final Map<String, QueryShape> SHAPES = Map.of(
+            // 帖子标题/内容，加入 search_as_you_type 子字段以支持前缀匹配
+            "post", new QueryShape("post", false,
+                    "title^3", "title._2gram^2", "title._3gram^2", "content^2"),
+            "topic", new QueryShape("topic", true,
+                    "topicName^2", "topicName._2gram", "topicName._3gram"),
+            "user", new QueryShape("user", true,
+                    "authorUsername^2", "authorUsername._2gram", "authorUsername._3gram"),
+            "all", new QueryShape("all", false,
+                    "title^3", "title._2gram^2", "title._3gram^2", "content^2",
+                    "topicName", "topicName._2gram", "topicName._3gram",
+                    "authorUsername", "authorUsername._2gram", "authorUsername._3gram"));
 
-            // highlight 仅针对本次查询涉及的字段
-            HighlightBuilder highlight = new HighlightBuilder()
-                    .preTags("<em>")
-                    .postTags("</em>")
-                    .requireFieldMatch(false); // 允许不同字段高亮
-            for (String f : fields) {
-                String name = f.contains("^") ? f.substring(0, f.indexOf('^')) : f;
-                highlight.field(new HighlightBuilder.Field(name).highlighterType("unified"));
-            }
-            source.highlighter(highlight);
+    // 简易同义词扩展，可替换为读取配置或索引级 synonym 分析器
+    private static final Map<String, List<String>> SYNONYMS = Map.of(
+            "微服务", List.of("微服务架构", "msa", "microservice"),
+            "分布式", List.of("分布式系统", "distributed"),
+            "缓存", List.of("cache", "redis"),
+            "搜索", List.of("检索", "全文检索", "es", "elasticsearch"));
 
-            request.source(source);
-            SearchResponse resp = esClient.search(request, org.elasticsearch.client.RequestOptions.DEFAULT);
+    @Override
+    public Result search(String keyword, String type, Integer page, Integer size, String sort,
+                         Long topicId, Long startTime, Long endTime) {
+        if (StrUtil.isBlank(keyword)) {
+            return Result.error("关键字不能为空");
+        }
+        if (page == null || page < 1)
+            page = 1;
+        if (size == null || size < 1)
+            size = 10;
 
-            // collect post ids for batch attachment query
-            List<PostListItemVO> items = new ArrayList<>();
-            List<Long> postIds = new ArrayList<>();
-            for (SearchHit hit : resp.getHits().getHits()) {
-                Map<String, Object> s1 = hit.getSourceAsMap();
+        // 归一化后作为缓存 key：大小写、首尾/连续空白、缺省值不同的请求命中同一份结果
+        String kw = keyword.trim().replaceAll("\\s+", " ").toLowerCase();
+        QueryShape shape = SHAPES.getOrDefault(StrUtil.isBlank(type) ? "all" : type, SHAPES.get("all"));
+        String s = "latest".equals(sort) || "relevance".equals(sort) ? sort : "hot";
+        long tid = topicId != null && topicId > 0 ? topicId : 0L;
+        long from = startTime != null && startTime > 0 ? startTime : 0L;
+        long to = endTime != null && endTime > 0 ? endTime : 0L;
+        int p = page;
+        int sz = size;
+        if ((long) p * sz > MAX_PAGE_WINDOW) {
+            // 深分页让每个分片都收集并排序 page*size 条，改用 /api/search/scroll 的游标翻页
+            return Result.error("页码过深，请使用游标翻页");
+        }
+        String cacheKey = String.join("|", kw, shape.type, String.valueOf(p), String.valueOf(sz), s,
+                String.valueOf(tid), String.valueOf(from), String.valueOf(to));
 
-                Long id = getLong(s1.get("id"));
-                if (id != null) {
-                    postIds.add(id);
-                }
-                Long userId = getLong(s1.get("userId"));
-                Long hitTopicId = getLong(s1.get("topicId"));
-                String title = getString(s1.get("title"));
-                String content = getString(s1.get("content"));
-                String authorUsername = getString(s1.get("authorUsername"));
-                String authorAvatar = getString(s1.get("authorAvatar"));
-                String topicName = getString(s1.get("topicName"));
-                Integer likeCount = getInt(s1.get("likeCount"));
-                Integer commentCount = getInt(s1.get("commentCount"));
-                Integer shareCount = getInt(s1.get("shareCount"));
-                Integer viewCount = getInt(s1.get("viewCount"));
-                LocalDateTime createdAt = getDateTime(s1.get("createdAt"));
-                LocalDateTime updatedAt = getDateTime(s1.get("updatedAt"));
-
-                // apply highlights
-                if (hit.getHighlightFields().get("title") != null) {
-                    title = String.join("", toStrings(hit.getHighlightFields().get("title").fragments()));
-                }
-                if (hit.getHighlightFields().get("content") != null) {
-                    content = String.join("", toStrings(hit.getHighlightFields().get("content").fragments()));
-                }
-                if (hit.getHighlightFields().get("authorUsername") != null) {
-                    authorUsername = String.join("",
-                            toStrings(hit.getHighlightFields().get("authorUsername").fragments()));
-                }
-                if (hit.getHighlightFields().get("topicName") != null) {
-                    topicName = String.join("", toStrings(hit.getHighlightFields().get("topicName").fragments()));
-                }
+        try {
+            SearchPageResult result = searchResultCache.get(cacheKey,
+                    () -> doSearch(kw, shape, p, sz, s, tid, from, to));
+            return Result.success(result);
+        } catch (IOException e) {
+            log.error("ES 搜索失败", e);
+            return Result.error("搜索失败，请稍后重试");
+        }
+    }
 
-                // attachments will be filled after batch query
-                List<AttachmentLite> liteAttachments = new ArrayList<>();
-
-                PostListItemVO vo = PostListItemVO.builder()
-                        .id(id)
-                        .title(title)
-                        .content(content)
-                        .userId(userId)
-                        .authorUsername(authorUsername)
-                        .authorAvatar(authorAvatar)
-                        .topicId(hitTopicId)
-                        .topicName(topicName)
-                        .likeCount(likeCount)
-                        .commentCount(commentCount)
-                        .shareCount(shareCount)
-                        .viewCount(viewCount)
-                        .createdAt(createdAt)
-                        .updatedAt(updatedAt)
-                        .attachments(liteAttachments)
-                        .build();
-                items.add(vo);
-            }
+    /**
+     * 游标翻页：用上一页最后一条的排序值做 search_after，每页代价与深度无关
+     * <p>
+     * latest 的排序键（createdAt, id）不会变，配合快照时间过滤，翻页不重不漏。
+     * hot 按 viewCount 排序，浏览数在翻页期间还在变：一条帖子的浏览数涨过游标位置会被跳过，
+     * 从游标之前跌到之后（例如计数回滚）会再出现一次。relevance 的 _score 受索引更新影响，同样只是近似。
+     * 需要严格不重不漏的场景用 latest。
+     */
+    @Override
+    public Result searchScroll(String keyword, String type, Integer size, String sort,
+                               Long topicId, Long startTime, Long endTime, String cursor) {
+        if (StrUtil.isBlank(keyword)) {
+            return Result.error("关键字不能为空");
+        }
+        if (size == null || size < 1)
+            size = 10;
 
-            // batch query attachments by post ids and fill into items
-            if (!postIds.isEmpty()) {
-                List<Attachment> all = attachmentMapper.selectByBusinessIds("post", postIds);
-                java.util.Map<Long, List<Attachment>> grouped = all.stream()
-                        .collect(java.util.stream.Collectors.groupingBy(Attachment::getBusinessId));
-                for (PostListItemVO vo : items) {
-                    Long pid = vo.getId();
-                    List<Attachment> attachments = grouped.get(pid);
-                    if (attachments != null && !attachments.isEmpty()) {
-                        List<AttachmentLite> lite = new ArrayList<>();
-                        for (Attachment a : attachments) {
-                            lite.add(AttachmentLite.builder()
-                                    .fileUrl(a.getFileUrl())
-                                    .fileType(a.getFileType())
-                                    .fileName(a.getFileName())
-                                    .build());
-                        }
-                        vo.setAttachments(lite);
-                    }
-                }
+        String kw = keyword.trim().replaceAll("\\s+", " ").toLowerCase();
+        QueryShape shape = SHAPES.getOrDefault(StrUtil.isBlank(type) ? "all" : type, SHAPES.get("all"));
+        String s = "latest".equals(sort) || "relevance".equals(sort) ? sort : "hot";
+        long tid = topicId != null && topicId > 0 ? topicId : 0L;
+        long from = startTime != null && startTime > 0 ? startTime : 0L;
+        long to = endTime != null && endTime > 0 ? endTime : 0L;
+        int sz = Math.min(size, MAX_SCROLL_SIZE);
+
+        SearchCursor after = null;
+        if (StrUtil.isNotBlank(cursor)) {
+            after = SearchCursor.decode(cursor);
+            // 排序键个数由 applySort 决定，个数不符说明游标被篡改或来自旧版本
+            if (after == null || after.sortValues.length != sortKeyCount(s)) {
+                return Result.error("游标无效，请重新搜索");
             }
+        }
+        SearchCursor c = after;
+        String cacheKey = String.join("|", "scroll", kw, shape.type, String.valueOf(sz), s,
+                String.valueOf(tid), String.valueOf(from), String.valueOf(to), StrUtil.nullToEmpty(cursor));
 
-            SearchPageResult result = SearchPageResult.builder()
-                    .posts(items)
-                    .total(resp.getHits().getTotalHits().value)
-                    .currentPage(page)
-                    .build();
+        try {
+            SearchPageResult result = searchResultCache.get(cacheKey,
+                    () -> doScroll(kw, shape, sz, s, tid, from, to, c));
             return Result.success(result);
         } catch (IOException e) {
-            log.error("ES 搜索失败", e);
+            log.error("ES 游标搜索失败", e);
             return Result.error("搜索失败，请稍后重试");
         }
     }
 
-    // 简易同义词扩展，可替换为读取配置或索引级 synonym 分析器
-    private static List<String> expandSynonyms(String keyword) {
-        List<String> list = new ArrayList<>();
-        String k = keyword.trim().toLowerCase();
-        switch (k) {
-            case "微服务":
-                list.add("微服务架构");
-                list.add("msa");
-                list.add("microservice");
-                break;
-            case "分布式":
-                list.add("分布式系统");
-                list.add("distributed");
-                break;
-            case "缓存":
-                list.add("cache");
-                list.add("redis");
+    private SearchPageResult doSearch(String keyword, QueryShape shape, int page, int size, String sort,
+                                      long topicId, long startTime, long endTime) throws IOException {
+        SearchSourceBuilder source = new SearchSourceBuilder();
+        source.query(buildQuery(keyword, shape, topicId, startTime, endTime, 0L));
+        applySort(source, sort);
+
+        // pagination
+        source.from((page - 1) * size).size(size);
+        // highlight 仅针对本次查询涉及的字段
+        source.highlighter(shape.highlight);
+
+        SearchResponse resp = esClient.search(new SearchRequest(INDEX_POSTS).source(source),
+                org.elasticsearch.client.RequestOptions.DEFAULT);
+        SearchPageResult result = toPageResult(resp, size, System.currentTimeMillis());
+        result.setCurrentPage(page);
+        return result;
+    }
+
+    private SearchPageResult doScroll(String keyword, QueryShape shape, int size, String sort,
+                                      long topicId, long startTime, long endTime, SearchCursor after)
+            throws IOException {
+        // 首页记下快照时间，后续页只看这之前创建的帖子，新帖不会把已翻过的结果挤到下一页
+        long asOf = after == null ? System.currentTimeMillis() : after.asOf;
+        SearchSourceBuilder source = new SearchSourceBuilder();
+        source.query(buildQuery(keyword, shape, topicId, startTime, endTime, asOf));
+        applySort(source, sort);
+        source.size(size);
+        source.highlighter(shape.highlight);
+        if (after != null) {
+            source.searchAfter(after.sortValues);
+            // 总数只在首页统计，后续页不必再数全部命中
+            source.trackTotalHits(false);
+        }
+
+        SearchResponse resp = esClient.search(new SearchRequest(INDEX_POSTS).source(source),
+                org.elasticsearch.client.RequestOptions.DEFAULT);
+        return toPageResult(resp, size, asOf);
+    }
+
+    private static BoolQueryBuilder buildQuery(String keyword, QueryShape shape, long topicId,
+                                               long startTime, long endTime, long asOf) {
+        BoolQueryBuilder bool = QueryBuilders.boolQuery();
+        bool.filter(QueryBuilders.termQuery("status", "published"));
+        // 话题过滤
+        if (topicId > 0) {
+            bool.filter(QueryBuilders.termQuery("topicId", topicId));
+        }
+        // 时间范围过滤（epoch_millis）
+        long upper = endTime > 0 && asOf > 0 ? Math.min(endTime, asOf) : Math.max(endTime, asOf);
+        if (startTime > 0 || upper > 0) {
+            var range = QueryBuilders.rangeQuery("createdAt");
+            if (startTime > 0) range.gte(startTime);
+            if (upper > 0) range.lte(upper);
+            bool.filter(range);
+        }
+        // 主 should：原始关键词
+        bool.should(shape.match(keyword, 1.0f));
+        // 同义词 should：扩大召回，权重略低于主查询
+        for (String syn : SYNONYMS.getOrDefault(keyword, List.of())) {
+            bool.should(shape.match(syn, 0.7f));
+        }
+        // 至少命中一个 should（原始或同义词）
+        bool.minimumShouldMatch(1);
+        return bool;
+    }
+
+    /**
+     * applySort 里的排序键个数（含 id 兜底）
+     */
+    private static int sortKeyCount(String sort) {
+        return "latest".equals(sort) ? 2 : 3;
+    }
+
+    private static void applySort(SearchSourceBuilder source, String sort) {
+        // sort options: hot (default), latest, relevance
+        switch (sort) {
+            case "latest":
+                // 只用不可变的字段排序，游标翻页才稳定
+                source.sort("createdAt", SortOrder.DESC);
                 break;
-            case "搜索":
-                list.add("检索");
-                list.add("全文检索");
-                list.add("es");
-                list.add("elasticsearch");
+            case "relevance":
+                // rely on _score, optionally add tiebreaker
+                source.sort("_score", SortOrder.DESC);
+                source.sort("createdAt", SortOrder.DESC);
                 break;
+            case "hot":
             default:
+                source.sort("viewCount", SortOrder.DESC);
+                source.sort("createdAt", SortOrder.DESC);
                 break;
         }
-        return list;
+        // 最后按 id 兜底，保证排序值唯一；排序值本身会变的（hot 的 viewCount）翻页仍可能跳过或重复
+        source.sort("id", SortOrder.DESC);
+    }
+
+    private SearchPageResult toPageResult(SearchResponse resp, int size, long asOf) {
+        // collect post ids for batch attachment query
+        List<PostListItemVO> items = new ArrayList<>();
+        List<Long> postIds = new ArrayList<>();
+        for (SearchHit hit : resp.getHits().getHits()) {
+            Map<String, Object> s1 = hit.getSourceAsMap();
+
+            Long id = getLong(s1.get("id"));
+            if (id != null) {
+                postIds.add(id);
+            }
+            Long userId = getLong(s1.get("userId"));
+            Long hitTopicId = getLong(s1.get("topicId"));
+            String title = getString(s1.get("title"));
+            String content = getString(s1.get("content"));
+            String authorUsername = getString(s1.get("authorUsername"));
+            String authorAvatar = getString(s1.get("authorAvatar"));
+            String topicName = getString(s1.get("topicName"));
+            Integer likeCount = getInt(s1.get("likeCount"));
+            Integer commentCount = getInt(s1.get("commentCount"));
+            Integer shareCount = getInt(s1.get("shareCount"));
+            Integer viewCount = getInt(s1.get("viewCount"));
+            LocalDateTime createdAt = getDateTime(s1.get("createdAt"));
+            LocalDateTime updatedAt = getDateTime(s1.get("updatedAt"));
+
+            // apply highlights
+            if (hit.getHighlightFields().get("title") != null) {
+                title = String.join("", toStrings(hit.getHighlightFields().get("title").fragments()));
+            }
+            if (hit.getHighlightFields().get("content") != null) {
+                content = String.join("", toStrings(hit.getHighlightFields().get("content").fragments()));
+            }
+            if (hit.getHighlightFields().get("authorUsername") != null) {
+                authorUsername = String.join("",
+                        toStrings(hit.getHighlightFields().get("authorUsername").fragments()));
+            }
+            if (hit.getHighlightFields().get("topicName") != null) {
+                topicName = String.join("", toStrings(hit.getHighlightFields().get("topicName").fragments()));
+            }
+
+            // attachments will be filled after batch query
+            List<AttachmentLite> liteAttachments = new ArrayList<>();
+
+            PostListItemVO vo = PostListItemVO.builder()
+                    .id(id)
+                    .title(title)
+                    .content(content)
+                    .userId(userId)
+                    .authorUsername(authorUsername)
+                    .authorAvatar(authorAvatar)
+                    .topicId(hitTopicId)
+                    .topicName(topicName)
+                    .likeCount(likeCount)
+                    .commentCount(commentCount)
+                    .shareCount(shareCount)
+                    .viewCount(viewCount)
+                    .createdAt(createdAt)
+                    .updatedAt(updatedAt)
+                    .attachments(liteAttachments)
+                    .build();
+            items.add(vo);
+        }
+
+        // batch query attachments by post ids and fill into items
+        if (!postIds.isEmpty()) {
+            List<Attachment> all = attachmentMapper.selectByBusinessIds("post", postIds);
+            java.util.Map<Long, List<Attachment>> grouped = all.stream()
+                    .collect(java.util.stream.Collectors.groupingBy(Attachment::getBusinessId));
+            for (PostListItemVO vo : items) {
+                Long pid = vo.getId();
+                List<Attachment> attachments = grouped.get(pid);
+                if (attachments != null && !attachments.isEmpty()) {
+                    List<AttachmentLite> lite = new ArrayList<>();
+                    for (Attachment a : attachments) {
+                        lite.add(AttachmentLite.builder()
+                                .fileUrl(a.getFileUrl())
+                                .fileType(a.getFileType())
+                                .fileName(a.getFileName())
+                                .build());
+                    }
+                    vo.setAttachments(lite);
+                }
+            }
+        }
+
+        // 满页才给下一页游标；游标 = 最后一条的排序值 + 快照时间
+        SearchHit[] hits = resp.getHits().getHits();
+        String nextCursor = null;
+        if (hits.length == size) {
+            nextCursor = new SearchCursor(hits[hits.length - 1].getSortValues(), asOf).encode();
+        }
+        return SearchPageResult.builder()
+                .posts(items)
+                .total(resp.getHits().getTotalHits() == null ? null : resp.getHits().getTotalHits().value)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    @Override
+    public Result suggest(String prefix, Integer size) {
+        if (StrUtil.isBlank(prefix)) {
+            return Result.success(List.of());
+        }
+        int n = size == null || size < 1 ? 10 : Math.min(size, SuggestIndex.MAX_SIZE);
+        List<SuggestItem> local = suggestIndex.suggest(prefix, n);
+        if (!local.isEmpty()) {
+            return Result.success(local);
+        }
+        // 本地没有匹配：按标题前缀查一次 ES，只取标题字段，结果记入本地
+        try {
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                    .query(QueryBuilders.boolQuery()
+                            .filter(QueryBuilders.termQuery("status", "published"))
+                            .must(QueryBuilders.matchPhrasePrefixQuery("title", prefix.trim())))
+                    .fetchSource(new String[] { "title" }, null)
+                    .size(SuggestIndex.MAX_SIZE);
+            SearchResponse resp = esClient.search(new SearchRequest(INDEX_POSTS).source(source),
+                    org.elasticsearch.client.RequestOptions.DEFAULT);
+            List<SuggestItem> items = new ArrayList<>();
+            java.util.Set<String> seen = new java.util.HashSet<>();
+            for (SearchHit hit : resp.getHits().getHits()) {
+                String title = getString(hit.getSourceAsMap().get("title"));
+                if (StrUtil.isNotBlank(title) && seen.add(title)) {
+                    items.add(SuggestItem.builder().text(title).type("post").weight(0L).build());
+                }
+            }
+            suggestIndex.remember(prefix, items);
+            return Result.success(items.size() <= n ? items : items.subList(0, n));
+        } catch (IOException e) {
+            log.warn("ES 联想查询失败: prefix={}", prefix, e);
+            return Result.success(List.of());
+        }
     }
 
     private static String[] toStrings(org.elasticsearch.common.text.Text[] texts) {
@@ -6,10 +6,17 @@ import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.tmd.config.ThreadPoolConfig;
 import com.tmd.entity.dto.*;
+import com.tmd.counter.TopicFollowWriteBehind;
+import com.tmd.counter.TopicStatsCache;
+import com.tmd.feed.ListCacheGenerations;
 import com.tmd.mapper.*;
 import com.tmd.publisher.MessageProducer;
+import com.tmd.redisModule.BloomFilterManager;
 import com.tmd.publisher.TopicModerationMessage;
 import com.tmd.service.TopicService;
+import com.tmd.spring.RedisCaffeineCache;
+import com.tmd.spring.RedisCaffeineCacheManager;
+import jakarta.annotation.PostConstruct;
 import com.tmd.tools.BaseContext;
 import org.redisson.api.RBloomFilter;
 import org.redisson.api.RLock;
@@ -17,10 +24,16 @@ import org.redisson.api.RedissonClient;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -62,72 +75,176 @@ public class TopicServiceImpl implements TopicService {
     @Autowired
     private MessageProducer messageProducer;
 
-    private static final String TOPIC_POSTS_LIST_KEY_FMT = "topic:post:list:%d:%s:%s:%d:%d"; // topicId:status:sort:page:size
-    private static final String TOPIC_POSTS_TOTAL_KEY_FMT = "topic:post:total:%d:%s:%s"; // topicId:status:sort
+    @Autowired
+    private RedisCaffeineCacheManager cacheManager;
+
+    // topic:id:* 前面的 L1，存放反序列化后的 TopicVO
+    private RedisCaffeineCache topicByIdCache;
+
+    // 话题帖子列表/总数 key 带代号，发帖/改帖/删帖时由 ListCacheGenerations 递增
+    @Autowired
+    private ListCacheGenerations listCacheGenerations;
+
+    @Autowired
+    private BloomFilterManager bloomFilterManager;
+
+    @Autowired
+    private TopicFollowWriteBehind topicFollowWriteBehind;
+
+    @Autowired
+    private TopicStatsCache topicStatsCache;
+
     private static final long TOPIC_LIST_TTL_SECONDS = 60; // 列表缓存TTL
     private static final long TOPIC_TOTAL_TTL_SECONDS = 300; // 总数缓存TTL
     private static final long TOPIC_BY_ID_TTL_SECONDS = 300; // 话题按ID缓存TTL
+    private static final String TOPIC_BY_ID_CACHE = "topic:id";
+    private static final String TOPIC_INDEX_KEY = "topics:all";
+    private static final int TOPIC_WARM_BATCH_SIZE = 500;
+
+    @PostConstruct
+    public void initNearCache() {
+        topicByIdCache = cacheManager.getCache(TOPIC_BY_ID_CACHE, TopicVO.class);
+    }
 
     @Override
     public Result getAllTopics(Integer page, Integer size, String status) throws InterruptedException {
-        // 先查redis中是否有数据
-        // 把这一堆放到redis的集合当中
-        String key = "topics:all";
+        // topics:all 只存话题ID（score 为创建时间），详情走 topic:id 两级缓存
+        String key = TOPIC_INDEX_KEY;
         // 根据时间大小从高到低取元素，根据page和size查询
-        Set<String> set = stringRedisTemplate.opsForZSet().reverseRangeByScore(key, 0, System.currentTimeMillis(),
-                (long) (page - 1) * size, size);
-        // 如果为空的话，就从数据库中查
+        Set<ZSetOperations.TypedTuple<String>> set = stringRedisTemplate.opsForZSet().reverseRangeByScoreWithScores(key,
+                0, System.currentTimeMillis(), (long) (page - 1) * size, size);
+        // 如果为空的话，就从数据库中分批预热
         if (set == null || set.isEmpty()) {
-            // redisson获取锁
-            RLock lock = redissonClient.getLock("lock:topics:all");
             try {
-                boolean b = lock.tryLock(10, -1, TimeUnit.SECONDS);
-                // 从数据库中查出来所有的帖子，然后插入到redis中
-                if (b) {
-                    threadPoolConfig.threadPoolExecutor().execute(() -> {
-                        List<Topic> topics = topicMapper.getAllTopics();
-                        log.info("从数据库中查出来所有的帖子，然后插入到redis中{}", topics);
-                        log.error("从数据库中查出来所有的帖子，然后插入到redis中{}", topics);
-                        if (topics == null || topics.isEmpty()) return;
-                        int batchSize = 500;
-                        for (int i = 0; i < topics.size(); i += batchSize) {
-                            int end = Math.min(i + batchSize, topics.size());
-                            java.util.Set<org.springframework.data.redis.core.ZSetOperations.TypedTuple<String>> tuples = new java.util.HashSet<>();
-                            for (int j = i; j < end; j++) {
-                                Topic topic = topics.get(j);
-                                java.time.LocalDateTime createdAt = topic.getCreatedAt();
-                                double score = createdAt == null ? (double) System.currentTimeMillis() : (double) createdAt.toInstant(java.time.ZoneOffset.of("+8")).toEpochMilli();
-                                tuples.add(new org.springframework.data.redis.core.DefaultTypedTuple<>(JSONUtil.toJsonStr(topic), score));
-                            }
-                            stringRedisTemplate.opsForZSet().add(key, tuples);
-                        }
-                    });
-                }
-                return Result.success("哎呀，一不小心走心了，再试试吧");
+                threadPoolConfig.cacheRebuildExecutor().execute(this::warmUpTopicIndex);
             } catch (Exception e) {
-                return Result.error("服务器错误");
-            } finally {
-                lock.unlock();
+                log.warn("话题索引预热任务提交失败", e);
             }
-        } else {
-            List<Topic> list = set.stream().map((json) -> {
-                return JSONUtil.toBean(json, Topic.class);
-            }).toList();
-            for (Topic topic : list){
-                long l = postsMapper.countByTopic(topic.getId(), "published");
-                topic.setPostCount((int) l);
-                topic.setFollowerCount(Objects.requireNonNull(stringRedisTemplate.opsForZSet().count("topic:follow:" + topic.getId(), 0, System.currentTimeMillis())).intValue());
+            return Result.success("哎呀，一不小心走心了，再试试吧");
+        }
+        List<Long> ids = new ArrayList<>(set.size());
+        Map<String, Double> legacy = new HashMap<>();
+        for (ZSetOperations.TypedTuple<String> tuple : set) {
+            Long id = parseIndexMember(tuple.getValue());
+            if (id == null) {
+                continue;
             }
-            Long total = stringRedisTemplate.opsForZSet().zCard(key);
-            PageResult pageResult = PageResult.builder()
-                    .currentPage(page)
-                    .total(total)
-                    .rows(list)
-                    .build();
-            return Result.success(pageResult);
+            if (!tuple.getValue().equals(String.valueOf(id))) {
+                legacy.put(tuple.getValue(), tuple.getScore());
+            }
+            if (!ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        migrateLegacyMembers(legacy);
+
+        // L1 + 一次 MGET，未命中一次 IN 查询
+        Map<Long, TopicVO> topics = getTopicsCachedByIds(ids);
+        List<TopicVO> list = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            TopicVO vo = topics.get(id);
+            if (vo != null) {
+                list.add(vo);
+            }
+        }
+        // 一页只做一次 HMGET，不再逐行 COUNT
+        topicStatsCache.fill(list);
+        Long total = stringRedisTemplate.opsForZSet().zCard(key);
+        PageResult pageResult = PageResult.builder()
+                .currentPage(page)
+                .total(total)
+                .rows(list)
+                .build();
+        return Result.success(pageResult);
+    }
+
+    /**
+     * 按主键分批把话题ID灌入 topics:all，内存只保留一批
+     */
+    private void warmUpTopicIndex() {
+        RLock lock = redissonClient.getLock("lock:topics:all");
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            Long existing = stringRedisTemplate.opsForZSet().zCard(TOPIC_INDEX_KEY);
+            if (existing != null && existing > 0) {
+                return;
+            }
+            long afterId = 0L;
+            long total = 0L;
+            while (true) {
+                List<Topic> batch = topicMapper.selectIndexAfter(afterId, TOPIC_WARM_BATCH_SIZE);
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+                for (Topic topic : batch) {
+                    tuples.add(new DefaultTypedTuple<>(String.valueOf(topic.getId()), indexScore(topic.getCreatedAt())));
+                }
+                stringRedisTemplate.opsForZSet().add(TOPIC_INDEX_KEY, tuples);
+                total += batch.size();
+                afterId = batch.get(batch.size() - 1).getId();
+                if (batch.size() < TOPIC_WARM_BATCH_SIZE) {
+                    break;
+                }
+            }
+            log.info("话题索引预热完成: topics={}", total);
+        } catch (Exception e) {
+            log.error("话题索引预热失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 兼容旧格式：成员是整条话题 JSON 时取出其中的 id
+     */
+    private static Long parseIndexMember(String member) {
+        if (StrUtil.isBlank(member)) {
+            return null;
+        }
+        try {
+            if (member.startsWith("{")) {
+                return JSONUtil.parseObj(member).getLong("id");
+            }
+            return Long.valueOf(member);
+        } catch (Exception e) {
+            return null;
         }
     }
 
+    /**
+     * 读到的旧 JSON 成员就地换成ID成员（同一个 pipeline，保留原 score），同一话题的多个旧副本自然合并
+     */
+    private void migrateLegacyMembers(Map<String, Double> legacy) {
+        if (legacy.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(RedisOperations operations) {
+                    legacy.forEach((member, score) -> {
+                        operations.opsForZSet().remove(TOPIC_INDEX_KEY, member);
+                        Long id = parseIndexMember(member);
+                        operations.opsForZSet().add(TOPIC_INDEX_KEY, String.valueOf(id),
+                                score == null ? System.currentTimeMillis() : score);
+                    });
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("话题索引旧成员迁移失败: size={}", legacy.size(), e);
+        }
+    }
+
+    private static double indexScore(LocalDateTime createdAt) {
+        return createdAt == null ? (double) System.currentTimeMillis()
+                : (double) createdAt.toInstant(ZoneOffset.of("+8")).toEpochMilli();
+    }
+
     @Override
     public Result getTopicById(Integer topicId) {
         // 查数据库了，不管了，根据id查感觉也不慢，况且话题本来也不多
@@ -139,11 +256,12 @@ public class TopicServiceImpl implements TopicService {
     public TopicVO getTopicCachedById(Integer topicId) {
         if (topicId == null || topicId <= 0) return null;
         try {
-            String cacheKey = "topic:id:" + topicId;
-            String cached = stringRedisTemplate.opsForValue().get(cacheKey);
-            if (cached != null && !cached.isEmpty()) {
-                return JSONUtil.toBean(cached, TopicVO.class);
+            // L1 -> Redis，空串占位在两级缓存里还原为 null
+            Cache.ValueWrapper cached = topicByIdCache.get(topicId);
+            if (cached != null) {
+                return (TopicVO) cached.get();
             }
+            String cacheKey = "topic:id:" + topicId;
             TopicVO vo = topicMapper.getTopicById(topicId);
             if (vo != null) {
                 stringRedisTemplate.opsForValue().set(cacheKey, JSONUtil.toJsonStr(vo), TOPIC_BY_ID_TTL_SECONDS, TimeUnit.SECONDS);
@@ -151,6 +269,7 @@ public class TopicServiceImpl implements TopicService {
                 // 防止穿透，缓存空字符串，短TTL
                 stringRedisTemplate.opsForValue().set(cacheKey, "", 60, TimeUnit.SECONDS);
             }
+            topicByIdCache.putLocal(topicId, vo);
             return vo;
         } catch (Exception e) {
             log.warn("Get topic by id with cache failed: id={}", topicId, e);
@@ -158,6 +277,84 @@ public class TopicServiceImpl implements TopicService {
         }
     }
 
+    @Override
+    public Map<Long, TopicVO> getTopicsCachedByIds(Collection<Long> topicIds) {
+        Map<Long, TopicVO> result = new HashMap<>();
+        if (topicIds == null || topicIds.isEmpty()) return result;
+        List<Long> ids = topicIds.stream().filter(id -> id != null && id > 0).distinct().toList();
+        if (ids.isEmpty()) return result;
+
+        // 先过一遍 L1，剩下的一次 MGET 读取
+        List<Long> remote = new ArrayList<>();
+        for (Long id : ids) {
+            Cache.ValueWrapper local = topicByIdCache.getLocalWrapper(id);
+            if (local == null) {
+                remote.add(id);
+            } else if (local.get() != null) {
+                result.put(id, (TopicVO) local.get());
+            }
+        }
+        if (remote.isEmpty()) return result;
+
+        List<Long> missed = new ArrayList<>();
+        try {
+            List<String> keys = remote.stream().map(id -> "topic:id:" + id).toList();
+            List<String> cached = stringRedisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < remote.size(); i++) {
+                String json = cached == null ? null : cached.get(i);
+                if (json == null) {
+                    missed.add(remote.get(i));
+                } else if (!json.isEmpty()) {
+                    TopicVO vo = JSONUtil.toBean(json, TopicVO.class);
+                    result.put(remote.get(i), vo);
+                    topicByIdCache.putLocal(remote.get(i), vo);
+                } else {
+                    // 空字符串是防穿透占位，视为不存在
+                    topicByIdCache.putLocal(remote.get(i), null);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("从缓存批量获取话题失败: ids={}", remote, e);
+            remote.forEach(result::remove);
+            missed = new ArrayList<>(remote);
+        }
+        if (missed.isEmpty()) return result;
+
+        // 未命中的一次 IN 查询回源
+        Map<Long, TopicVO> loaded = new HashMap<>();
+        for (TopicVO vo : topicMapper.getTopicsByIds(missed)) {
+            if (vo != null && vo.getId() != null) loaded.put(vo.getId(), vo);
+        }
+        result.putAll(loaded);
+        for (Long id : missed) {
+            topicByIdCache.putLocal(id, loaded.get(id));
+        }
+
+        // 回填缓存走一次 pipeline，不存在的写空串短 TTL
+        final List<Long> toFill = missed;
+        try {
+            stringRedisTemplate.executePipelined(new org.springframework.data.redis.core.SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object execute(org.springframework.data.redis.core.RedisOperations operations) {
+                    for (Long id : toFill) {
+                        TopicVO vo = loaded.get(id);
+                        if (vo != null) {
+                            operations.opsForValue().set("topic:id:" + id, JSONUtil.toJsonStr(vo),
+                                    TOPIC_BY_ID_TTL_SECONDS, TimeUnit.SECONDS);
+                        } else {
+                            operations.opsForValue().set("topic:id:" + id, "", 60, TimeUnit.SECONDS);
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("批量回填话题缓存失败: ids={}", toFill, e);
+        }
+        return result;
+    }
+
     @Override
     public Result createTopic(TopicDTO topic) {
         try {
@@ -183,6 +380,7 @@ public class TopicServiceImpl implements TopicService {
                     .build();
             topicMapper.insert(topicEntity);
             Long topicId = topicEntity.getId();
+            bloomFilterManager.add(BloomFilterManager.Kind.TOPIC, topicId);
 
             // 保存封面附件关联（如有）
             if (coverImageUrl != null && !coverImageUrl.trim().isEmpty()) {
@@ -236,9 +434,9 @@ public class TopicServiceImpl implements TopicService {
                 }
             }
 
-            // 写入Redis首屏集合
-            String key = "topics:all";
-            stringRedisTemplate.opsForZSet().add(key, JSONUtil.toJsonStr(topicEntity), System.currentTimeMillis());
+            // 写入Redis首屏集合，只存ID
+            stringRedisTemplate.opsForZSet().add(TOPIC_INDEX_KEY, String.valueOf(topicId),
+                    indexScore(topicEntity.getCreatedAt()));
 
             // 异步审核：发布消息到队列
             TopicModerationMessage payload = TopicModerationMessage.builder()
@@ -258,43 +456,21 @@ public class TopicServiceImpl implements TopicService {
 
     @Override
     public Result followTopic(Integer topicId) {
-        // 先看看redis里面有没有数据，然后从redis先取出来
-        String key = "topic:follow:" + topicId;
-        Set<String> range = stringRedisTemplate.opsForZSet().range(key, 0, System.currentTimeMillis());
-        // range里面都是用户的id
-        // 看看有没有呗
-        if (range.contains(BaseContext.get().toString())) {
-            TopicFollowVO topicFollowVO = TopicFollowVO.builder()
-                    .isFollowed(false)
-                    .followerCount(range.size() - 1)
-                    .topicId(topicId.longValue())
-                    .build();
-            stringRedisTemplate.opsForZSet().remove(key, BaseContext.get().toString());
-            Long l = BaseContext.get();
-            // 把数据库中的改成false，数量减去一
-            threadPoolConfig.threadPoolExecutor().execute(() -> {
-                topicMapper.updateFollowCount(topicFollowVO);
-                topicFollowMapper.deleteByTopicId(topicId,l);
-            });
-            return Result.success(topicFollowVO);
-        } else {
-            TopicFollowVO topicFollowVO = TopicFollowVO.builder()
-                    .isFollowed(true)
-                    .followerCount(range.size() + 1)
-                    .topicId(topicId.longValue())
-                    .build();
-            stringRedisTemplate.opsForZSet().add(key, BaseContext.get().toString(), System.currentTimeMillis());
-            Long l = BaseContext.get();
-            threadPoolConfig.threadPoolExecutor().execute(() -> {
-                topicMapper.updateFollowCount(topicFollowVO);
-                topicFollowMapper.insert(TopicFollow.builder()
-                        .topicId(Long.valueOf(topicId))
-                        .userId(l)
-                        .createdAt(LocalDateTime.now())
-                        .build());
-            });
-            return Result.success(topicFollowVO);
+        // 关注状态翻转、计数与待落库记录在一个 Lua 脚本里完成，不再把整个关注者 ZSet 拉回本地
+        Long userId = BaseContext.get();
+        List<Long> res = topicFollowWriteBehind.toggle(topicId.longValue(), userId);
+        if (res == null || res.size() < 2) {
+            return Result.error("操作失败");
         }
+        boolean followed = res.get(0) == 1L;
+        long followerCount = res.get(1);
+        TopicFollowVO topicFollowVO = TopicFollowVO.builder()
+                .isFollowed(followed)
+                .followerCount((int) followerCount)
+                .topicId(topicId.longValue())
+                .build();
+        topicStatsCache.setFollowerCount(topicId.longValue(), followerCount);
+        return Result.success(topicFollowVO);
     }
 
     @Override
@@ -318,6 +494,7 @@ public class TopicServiceImpl implements TopicService {
         try {
             topicMapper.incrPostCount(topicId, d);
         } catch (Exception ignore) {}
+        topicStatsCache.incrPostCount(topicId, d);
         try {
             String cacheKey = "topic:id:" + topicId;
             String cached = stringRedisTemplate.opsForValue().get(cacheKey);
@@ -330,6 +507,10 @@ public class TopicServiceImpl implements TopicService {
                 }
             }
         } catch (Exception ignore) {}
+        // Redis 中的帖子数已变，各节点 L1 失效
+        try {
+            topicByIdCache.evictLocal(topicId);
+        } catch (Exception ignore) {}
     }
 
     @Override
@@ -346,11 +527,10 @@ public class TopicServiceImpl implements TopicService {
             page = 1;
         if (size == null || size < 1)
             size = 10;
-        if (cn.hutool.core.util.StrUtil.isBlank(sort))
-            sort = "latest";
+        sort = ListCacheGenerations.normalizeSort(sort);
         String statusKey = cn.hutool.core.util.StrUtil.isBlank(status) ? "-" : status;
-        String listKey= String.format(TOPIC_POSTS_LIST_KEY_FMT, topicId, statusKey, sort, page, size);
-        String totalKey = String.format(TOPIC_POSTS_TOTAL_KEY_FMT, topicId, statusKey, sort);
+        String listKey = listCacheGenerations.topicListKey(Long.valueOf(topicId), statusKey, sort, page, size);
+        String totalKey = listCacheGenerations.topicTotalKey(Long.valueOf(topicId), statusKey, sort);
         //拿缓存
         String cachedListJson = stringRedisTemplate.opsForValue().get(listKey);
         if (StrUtil.isNotBlank(cachedListJson)){
@@ -428,20 +608,25 @@ public class TopicServiceImpl implements TopicService {
                             .build();
                     items.add(vo);
                 }
-                threadPoolConfig.threadPoolExecutor().execute(() -> {
-                    long total=postsMapper.countByTopic(Long.valueOf(topicId), status);
-                    //开始恢复缓存
-                    try {
-                        String json = cn.hutool.json.JSONUtil.toJsonStr(items);
-                        stringRedisTemplate.opsForValue().set(listKey, json, TOPIC_LIST_TTL_SECONDS,
-                                java.util.concurrent.TimeUnit.SECONDS);
-                        stringRedisTemplate.opsForValue().set(totalKey, String.valueOf(total), TOPIC_TOTAL_TTL_SECONDS,
-                                java.util.concurrent.TimeUnit.SECONDS);
-                    }catch (Exception e){
-                        log.error("缓存失败{}", e.getMessage());
-                        return;
-                    }
-                });
+                try {
+                    threadPoolConfig.cacheRebuildExecutor().execute(() -> {
+                        long total=postsMapper.countByTopic(Long.valueOf(topicId), status);
+                        //开始恢复缓存
+                        try {
+                            String json = cn.hutool.json.JSONUtil.toJsonStr(items);
+                            stringRedisTemplate.opsForValue().set(listKey, json, TOPIC_LIST_TTL_SECONDS,
+                                    java.util.concurrent.TimeUnit.SECONDS);
+                            stringRedisTemplate.opsForValue().set(totalKey, String.valueOf(total), TOPIC_TOTAL_TTL_SECONDS,
+                                    java.util.concurrent.TimeUnit.SECONDS);
+                        }catch (Exception e){
+                            log.error("缓存失败{}", e.getMessage());
+                            return;
+                        }
+                    });
+                } catch (java.util.concurrent.RejectedExecutionException e) {
+                    // 回源池满了就不写缓存，本次查询结果照常返回
+                    log.warn("话题帖子列表缓存任务被拒绝: key={}", listKey);
+                }
                 return Result.success(
                         PageResult.builder()
                                 .rows( items)
@@ -10,7 +10,9 @@ import com.tmd.entity.po.LoginUser;
 import com.tmd.entity.po.UserData;
 import com.tmd.mapper.UserMapper;
 import com.tmd.publisher.MessageProducer;
+import com.tmd.redisModule.BloomFilterManager;
 import com.tmd.service.UserService;
+import com.tmd.spring.RedisCaffeineCacheManager;
 import com.tmd.tools.JwtUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,12 +52,17 @@ public class UserServiceimpl implements UserService, UserDetailsService {
     private PasswordEncoder passwordEncoder;
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisCaffeineCacheManager cacheManager;
+    @Autowired
+    private BloomFilterManager bloomFilterManager;
     @Override
     public boolean register(UserData userData)
     {
         if(userMapper.findByUsername(userData) == null)
         {
             userMapper.register(userData);
+            bloomFilterManager.add(BloomFilterManager.Kind.USER, userData.getId());
             return true;
         }
         return false;
@@ -132,6 +139,10 @@ public class UserServiceimpl implements UserService, UserDetailsService {
         try {
             redisCache.deleteObject("user:profile:" + id);
         } catch (Exception ignore) {}
+        // 帖子列表组装时的作者资料 L1 也要跨节点失效
+        try {
+            cacheManager.getCache("user:profile", UserProfile.class).evictLocal(id);
+        } catch (Exception ignore) {}
     }
 
     @Override
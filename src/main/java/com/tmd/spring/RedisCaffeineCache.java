@@ -1,51 +1,68 @@
-/*
 package com.tmd.spring;
 
+import cn.hutool.core.convert.Convert;
+import cn.hutool.json.JSONUtil;
 import com.github.benmanes.caffeine.cache.Cache;
-
 import com.tmd.config.L2CacheConfig;
-
-import com.tmd.config.RedisCache1;
 import com.tmd.sync.CacheMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.util.CollectionUtils;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
-//@Component
+/**
+ * 两级缓存：L1 为进程内 Caffeine，L2 为 Redis
+ * <p>
+ * L2 的 key 为 cacheName:key，值是 JSON 字符串，和业务代码里 StringRedisTemplate 直接写的
+ * post:list:*、topic:id:*、user:profile:* 格式一致，因此可以直接挂在已有缓存前面；
+ * L1 中存放的是已经反序列化好的对象，命中时不再走网络也不再解析 JSON。
+ * 空字符串视为空值占位（与 topic:id 的防穿透占位保持一致）。
+ * <p>
+ * L1 的 key 统一转成字符串，保证通过 pub/sub 传过来的 key 能对上。
+ */
 public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 
 
 	private final Logger logger = LoggerFactory.getLogger(RedisCaffeineCache.class);
 
-	*/
-/**
+	/**
 	 * 缓存名称
-	 *//*
-
-	private String cacheName;
+	 */
+	private final String cacheName;
 
-	*/
-/**
+	/**
 	 * 一级缓存
-	 *//*
+	 */
+	private final Cache<Object, Object> level1Cache;
 
-	private Cache<Object, Object> level1Cache;
+	/**
+	 * 二级缓存
+	 */
+	private final StringRedisTemplate level2Cache;
 
-	*/
-/**
-	 * 二级缓存实例
-	 *//*
-
-	private RedisCache1 level2Cache;
+	/**
+	 * L2 中 JSON 反序列化的目标类型，为空时按字符串返回
+	 */
+	private final Type valueType;
 
+	/**
+	 * 当前节点标识，收到自己发出的失效消息时忽略
+	 */
+	private final String nodeId;
 
 	private long defaultExpiration = 0;
 
@@ -55,35 +72,34 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 
 	private L2CacheConfig.Redis redisConfig;
 
-	*/
-/**
+	/**
 	 * 记录是否启用过一级缓存，只要启用过，则记录为true
 	 * <p>
 	 * 以下情况可能造成本地缓存与redis缓存不一致的情况 : 开启本地缓存，更新用户数据后，关闭本地缓存,更新用户信息到redis，开启本地缓存
 	 * 解决方法：put、evict的情况下，判断配置中心一级缓存开关已关闭且本地一级缓存开关已开启的情况下，清除一级缓存
-	 *//*
+	 */
+	private final AtomicBoolean openedL1Cache = new AtomicBoolean();
 
-	private AtomicBoolean openedL1Cache = new AtomicBoolean();
+	/**
+	 * 回源锁按 key 的 hash 分段，避免为每个 key 建锁导致 map 无限增长
+	 */
+	private final ReentrantLock[] keyLocks = new ReentrantLock[64];
 
-	private String topic = "cache:redis:caffeine:topic";
-
-	private Map<String, ReentrantLock> keyLockMap = new ConcurrentHashMap<String, ReentrantLock>();
-
-	protected RedisCaffeineCache(boolean allowNullValues) {
-		super(allowNullValues);
-	}
-
-	public RedisCaffeineCache(String cacheName, RedisCache1 level2Cache,
-							  Cache<Object, Object> level1Cache, L2CacheConfig l2CacheConfig) {
+	public RedisCaffeineCache(String cacheName, StringRedisTemplate level2Cache, Cache<Object, Object> level1Cache,
+							  Type valueType, String nodeId, L2CacheConfig l2CacheConfig) {
 		super(l2CacheConfig.isAllowNullValues());
 		this.cacheName = cacheName;
 		this.level2Cache = level2Cache;
 		this.level1Cache = level1Cache;
+		this.valueType = valueType;
+		this.nodeId = nodeId;
 		this.defaultExpiration = l2CacheConfig.getRedis().getDefaultExpiration();
 		this.expires = l2CacheConfig.getRedis().getExpires();
-		this.topic = l2CacheConfig.getRedis().getTopic();
 		this.composite = l2CacheConfig.getComposite();
 		this.redisConfig = l2CacheConfig.getRedis();
+		for (int i = 0; i < keyLocks.length; i++) {
+			keyLocks[i] = new ReentrantLock();
+		}
 	}
 
 	@Override
@@ -101,28 +117,22 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 	public <T> T get(Object key, Callable<T> valueLoader) {
 		Object value = lookup(key);
 		if (value != null) {
-			return (T) value;
+			return (T) fromStoreValue(value);
 		}
 
-		ReentrantLock lock = keyLockMap.get(key.toString());
-		if (lock == null) {
-			logger.debug("create lock for key : {}", key);
-			lock = new ReentrantLock();
-			keyLockMap.putIfAbsent(key.toString(), lock);
-		}
+		ReentrantLock lock = keyLocks[(key.toString().hashCode() & 0x7fffffff) % keyLocks.length];
+		lock.lock();
 		try {
-			lock.lock();
 			value = lookup(key);
 			if (value != null) {
-				return (T) value;
+				return (T) fromStoreValue(value);
 			}
 			//代表走被拦截的方法逻辑,并返回方法的返回结果
-			value = valueLoader.call();
-			Object storeValue = toStoreValue(value);
-			put(key, storeValue);
-			return (T) value;
+			T loaded = valueLoader.call();
+			put(key, loaded);
+			return loaded;
 		} catch (Exception e) {
-			throw new ValueRetrievalException(key, valueLoader, e.getCause());
+			throw new ValueRetrievalException(key, valueLoader, e);
 		} finally {
 			lock.unlock();
 		}
@@ -130,53 +140,55 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 
 	@Override
 	public void put(Object key, Object value) {
+		put(key, value, getExpire());
+	}
+
+	/**
+	 * 写入两级缓存并指定 L2 过期时间（毫秒），用于业务侧自带 TTL 抖动的场景
+	 */
+	public void put(Object key, Object value, long expireMillis) {
 		//如果value不能放空，但实际value为空，那么把数据情掉就好。
 		if (!super.isAllowNullValues() && value == null) {
 			this.evict(key);
 			return;
 		}
-		long expire = getExpire();
-		if (expire > 0) {
-			level2Cache.set(getKey(key), toStoreValue(value), expire);
+		String cacheKey = getKey(key);
+		String json = toJson(toStoreValue(value));
+		if (expireMillis > 0) {
+			level2Cache.opsForValue().set(cacheKey, json, expireMillis, TimeUnit.MILLISECONDS);
 		} else {
-			level2Cache.set(getKey(key), toStoreValue(value));
+			level2Cache.opsForValue().set(cacheKey, json);
 		}
 
+		//通知其它节点
+		push(new CacheMessage(this.cacheName, key.toString(), nodeId));
 		// 是否开启一级缓存
-		boolean ifL1Open = ifL1Open(getKey(key));
-		if (ifL1Open) {
-			//通知其它节点
-			push(new CacheMessage(this.cacheName, key));
-			level1Cache.put(key, toStoreValue(value));
+		if (ifL1Open(cacheKey)) {
+			level1Cache.put(key.toString(), toStoreValue(value));
+		} else if (openedL1Cache.get()) {
+			level1Cache.invalidate(key.toString());
 		}
 	}
 
-	*/
-/**
+	/**
 	 * 使用putIfAbsent方法添加键值对，如果map集合中没有该key对应的值，则直接添加，并返回null，如果已经存在对应的值，则依旧为原来的值。
-	 *//*
-
+	 */
 	@Override
 	public ValueWrapper putIfAbsent(Object key, Object value) {
 		String cacheKey = getKey(key);
-		Object prevValue = null;
-		// 考虑使用分布式锁，或者将redis的setIfAbsent改为原子性操作
-		synchronized (key) {
-			prevValue = level2Cache.get(cacheKey);
-			if (prevValue == null) {
-				long expire = getExpire();
-				if (expire > 0) {
-					level2Cache.set(getKey(key), toStoreValue(value), expire);
-				} else {
-					level2Cache.set(getKey(key), toStoreValue(value));
-				}
-
-				push(new CacheMessage(this.cacheName, key));
-
-				level1Cache.put(key, toStoreValue(value));
+		String json = toJson(toStoreValue(value));
+		long expire = getExpire();
+		Boolean absent = expire > 0
+				? level2Cache.opsForValue().setIfAbsent(cacheKey, json, expire, TimeUnit.MILLISECONDS)
+				: level2Cache.opsForValue().setIfAbsent(cacheKey, json);
+		if (Boolean.TRUE.equals(absent)) {
+			push(new CacheMessage(this.cacheName, key.toString(), nodeId));
+			if (ifL1Open(cacheKey)) {
+				level1Cache.put(key.toString(), toStoreValue(value));
 			}
+			return null;
 		}
-		return toValueWrapper(prevValue);
+		return toValueWrapper(fromJson(level2Cache.opsForValue().get(cacheKey)));
 	}
 
 	@Override
@@ -184,103 +196,178 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 		// 先清除redis中缓存数据，然后清除caffeine中的缓存，避免短时间内如果先清除caffeine缓存后其他请求会再从redis里加载到caffeine中
 		level2Cache.delete(getKey(key));
 
-		push(new CacheMessage(this.cacheName, key));
+		push(new CacheMessage(this.cacheName, key.toString(), nodeId));
 
-		level1Cache.invalidate(key);
+		level1Cache.invalidate(key.toString());
 	}
 
 	@Override
 	public void clear() {
 		// 先清除redis中缓存数据，然后清除caffeine中的缓存，避免短时间内如果先清除caffeine缓存后其他请求会再从redis里加载到caffeine中
-		Set<String> keys = level2Cache.keys(this.cacheName.concat(":*"));
-		for (String key : keys) {
-			level2Cache.delete(key);
+		List<String> keys = new ArrayList<>();
+		ScanOptions options = ScanOptions.scanOptions().match(this.cacheName.concat(":*")).count(500).build();
+		try (Cursor<String> cursor = level2Cache.scan(options)) {
+			while (cursor.hasNext()) {
+				keys.add(cursor.next());
+			}
+		}
+		if (!keys.isEmpty()) {
+			level2Cache.unlink(keys);
 		}
 
-		push(new CacheMessage(this.cacheName, null));
+		push(new CacheMessage(this.cacheName, null, nodeId));
 
 		level1Cache.invalidateAll();
 	}
 
-	*/
-/**
-	 *
-	 *//*
-
 	@Override
 	protected Object lookup(Object key) {
-		Object value = null;
-        //处理key
+		//处理key
 		String cacheKey = getKey(key);
 
 		// 是否开启一级缓存
 		boolean ifL1Open = ifL1Open(cacheKey);
 		if (ifL1Open) {
 			// 从L1获取缓存
-			value = level1Cache.getIfPresent(key);
+			Object value = level1Cache.getIfPresent(key.toString());
 			if (value != null) {
 				if (logger.isDebugEnabled()) {
-					logger.debug("level1Cache get cache, cacheName={}, key={}, value={}", this.getName(), key, value);
+					logger.debug("level1Cache get cache, cacheName={}, key={}", this.getName(), key);
 				}
 				return value;
 			}
 		}
 
 		// 从L2获取缓存
-		value = level2Cache.get(cacheKey);
+		Object value = fromJson(level2Cache.opsForValue().get(cacheKey));
 		if (value != null && ifL1Open) {
 			if (logger.isDebugEnabled()) {
-				logger.debug("level2Cache get cache and put in level1Cache, cacheName={}, key={}, value={}", this.getName(), key, value);
+				logger.debug("level2Cache get cache and put in level1Cache, cacheName={}, key={}", this.getName(), key);
 			}
-			level1Cache.put(key, toStoreValue(value));
+			level1Cache.put(key.toString(), value);
 		}
 		return value;
 	}
 
-	private String getKey(Object key) {
-		return this.cacheName.concat(":").concat(key.toString());
+	/**
+	 * 只查 L1，用于业务侧自己批量读 L2（MGET）前先过滤掉本地命中的 key
+	 *
+	 * @return 缓存值，NullValue 已还原为 null；未命中同样返回 null，需要区分时用 {@link #getLocalWrapper}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getLocal(Object key) {
+		ValueWrapper wrapper = getLocalWrapper(key);
+		return wrapper == null ? null : (T) wrapper.get();
 	}
 
-	private long getExpire() {
-		long expire = defaultExpiration;
-		Long cacheNameExpire = expires.get(this.cacheName);
-		return cacheNameExpire == null ? expire : cacheNameExpire.longValue();
+	public ValueWrapper getLocalWrapper(Object key) {
+		if (!ifL1Open(getKey(key))) {
+			return null;
+		}
+		Object value = level1Cache.getIfPresent(key.toString());
+		return value == null ? null : toValueWrapper(value);
 	}
 
-	*/
-/**
-	 * @param message
-	 * @description 缓存变更时通知其他节点清理本地缓存
-
-	 *//*
+	/**
+	 * 只写 L1，业务侧已自行写好 L2（例如 pipeline 批量回填）时使用
+	 */
+	public void putLocal(Object key, Object value) {
+		if (value == null && !super.isAllowNullValues()) {
+			return;
+		}
+		if (ifL1Open(getKey(key))) {
+			level1Cache.put(key.toString(), toStoreValue(value));
+		}
+	}
 
-	private void push(CacheMessage message) {
-		level2Cache.getRedisTemplate().convertAndSend(redisConfig.getTopic(), message);
+	/**
+	 * 业务侧直接改写或删除了 L2（SCAN 删除、INCR 等）后调用：清理本地并通知其它节点
+	 *
+	 * @param key 为 null 时清理整个 cacheName
+	 */
+	public void evictLocal(Object key) {
+		push(new CacheMessage(this.cacheName, key == null ? null : key.toString(), nodeId));
+		clearLocal(key);
 	}
 
-	*/
-/**
+	/**
 	 * @param key
 	 * @description 清理本地缓存
-	 *//*
-
+	 */
 	public void clearLocal(Object key) {
 		logger.debug("clear local cache, the key is : {}", key);
 		if (key == null) {
 			level1Cache.invalidateAll();
 		} else {
-			level1Cache.invalidate(key);
+			level1Cache.invalidate(key.toString());
 		}
 	}
 
-	*/
-/**
+	private String getKey(Object key) {
+		return this.cacheName.concat(":").concat(key.toString());
+	}
+
+	private long getExpire() {
+		long expire = defaultExpiration;
+		Long cacheNameExpire = expires.get(this.cacheName);
+		return cacheNameExpire == null ? expire : cacheNameExpire.longValue();
+	}
+
+	private String toJson(Object storeValue) {
+		if (storeValue == null || storeValue instanceof NullValue) {
+			return "";
+		}
+		if (storeValue instanceof CharSequence || storeValue instanceof Number || storeValue instanceof Boolean) {
+			return storeValue.toString();
+		}
+		return JSONUtil.toJsonStr(storeValue);
+	}
+
+	private Object fromJson(String json) {
+		if (json == null) {
+			return null;
+		}
+		if (json.isEmpty()) {
+			// 空串占位：允许空值时还原为 NullValue，否则视为未命中
+			return super.isAllowNullValues() ? NullValue.INSTANCE : null;
+		}
+		if (valueType == null || valueType == String.class) {
+			return json;
+		}
+		try {
+			if (valueType instanceof Class && (Number.class.isAssignableFrom((Class<?>) valueType)
+					|| valueType == Boolean.class)) {
+				return Convert.convert(valueType, json);
+			}
+			return JSONUtil.toBean(json, valueType, true);
+		} catch (Exception e) {
+			logger.warn("deserialize level2Cache value failed, cacheName={}, value={}", this.cacheName, json, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param message
+	 * @description 缓存变更时通知其他节点清理本地缓存
+	 */
+	private void push(CacheMessage message) {
+		if (!openedL1Cache.get() && !ifL1Open()) {
+			// 本节点从未启用过一级缓存，其它节点同配置下也没有本地副本
+			return;
+		}
+		try {
+			level2Cache.convertAndSend(redisConfig.getTopic(), JSONUtil.toJsonStr(message));
+		} catch (Exception e) {
+			logger.warn("publish cache message failed, cacheName={}, key={}", message.getCacheName(), message.getKey(), e);
+		}
+	}
+
+	/**
 	 * 查询是否开启一级缓存
 	 *
 	 * @param key 缓存key
 	 * @return
-	 *//*
-
+	 */
 	private boolean ifL1Open(Object key) {
 		// 检测开关与缓存名称
 		if (ifL1Open()) {
@@ -291,13 +378,11 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 		return ifL1OpenByKey(key);
 	}
 
-	*/
-/**
+	/**
 	 * 本地缓存检测，检测开关与缓存名称
 	 *
 	 * @return
-	 *//*
-
+	 */
 	private boolean ifL1Open() {
 		// 判断是否开启过本地缓存
 		if (composite.isL1AllOpen() || composite.isL1Manual()) {
@@ -311,27 +396,25 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 		if (composite.isL1Manual()) {
 			// 手动匹配缓存名字集合，针对cacheName维度
 			Set<String> l1ManualCacheNameSet = composite.getL1ManualCacheNameSet();
-			if (!CollectionUtils.isEmpty(l1ManualCacheNameSet) && composite.getL1ManualCacheNameSet().contains(this.getName())) {
+			if (!CollectionUtils.isEmpty(l1ManualCacheNameSet) && l1ManualCacheNameSet.contains(this.getName())) {
 				return true;
 			}
 		}
 		return false;
 	}
 
-	*/
-/**
+	/**
 	 * 本地缓存检测，检测key
 	 *
 	 * @param key
 	 * @return
-	 *//*
-
+	 */
 	private boolean ifL1OpenByKey(Object key) {
 		// 是否使用手动匹配开关
 		if (composite.isL1Manual()) {
 			// 手动匹配缓存key集合，针对单个key维度
 			Set<String> l1ManualKeySet = composite.getL1ManualKeySet();
-			if (!CollectionUtils.isEmpty(l1ManualKeySet) && l1ManualKeySet.contains(getKey(key))) {
+			if (!CollectionUtils.isEmpty(l1ManualKeySet) && l1ManualKeySet.contains(key.toString())) {
 				return true;
 			}
 		}
@@ -339,4 +422,3 @@ public class RedisCaffeineCache extends AbstractValueAdaptingCache {
 		return false;
 	}
 }
-*/
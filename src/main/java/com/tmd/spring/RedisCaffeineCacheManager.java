@@ -1,18 +1,20 @@
-/*
 package com.tmd.spring;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
 
 import com.tmd.config.L2CacheConfig;
 
-import com.tmd.config.RedisCache1;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -26,36 +28,50 @@ public class RedisCaffeineCacheManager implements CacheManager {
 	private L2CacheConfig l2CacheConfig;
 
 
-	private RedisCache1 redisService;
+	private StringRedisTemplate stringRedisTemplate;
 
 
 	private boolean dynamic = true;
 
 	private Set<String> cacheNames;
 
+	/**
+	 * 当前节点标识，用于忽略自己发出的失效消息
+	 */
+	private final String nodeId = UUID.randomUUID().toString();
+
 	public RedisCaffeineCacheManager(L2CacheConfig l2CacheConfig,
-									 RedisCache1 redisService) {
+									 StringRedisTemplate stringRedisTemplate) {
 		super();
 		this.l2CacheConfig = l2CacheConfig;
-		this.redisService = redisService;
+		this.stringRedisTemplate = stringRedisTemplate;
 		this.dynamic = l2CacheConfig.isDynamic();
 		this.cacheNames = l2CacheConfig.getCacheNames();
 	}
 
 	@Override
 	public Cache getCache(String name) {
+		return getCache(name, null);
+	}
+
+	/**
+	 * 获取（不存在则创建）指定 L2 反序列化类型的两级缓存
+	 *
+	 * @param valueType L2 中 JSON 对应的类型，例如 {@code new TypeReference<List<PostListItemVO>>(){}.getType()}
+	 */
+	public RedisCaffeineCache getCache(String name, Type valueType) {
 		Cache cache = cacheMap.get(name);
 		if(cache != null) {
-			return cache;
+			return (RedisCaffeineCache) cache;
 		}
 		if(!dynamic && !cacheNames.contains(name)) {
-			return cache;
+			return null;
 		}
 
-		cache = new RedisCaffeineCache(name, redisService, caffeineCache(), l2CacheConfig);
+		cache = new RedisCaffeineCache(name, stringRedisTemplate, caffeineCache(), valueType, nodeId, l2CacheConfig);
 		Cache oldCache = cacheMap.putIfAbsent(name, cache);
 		logger.debug("create cache instance, the cache name is : {}", name);
-		return oldCache == null ? cache : oldCache;
+		return (RedisCaffeineCache) (oldCache == null ? cache : oldCache);
 	}
 
 	public com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeineCache(){
@@ -72,15 +88,17 @@ public class RedisCaffeineCacheManager implements CacheManager {
 		if(l2CacheConfig.getCaffeine().getMaximumSize() > 0) {
 			cacheBuilder.maximumSize(l2CacheConfig.getCaffeine().getMaximumSize());
 		}
-		if(l2CacheConfig.getCaffeine().getRefreshAfterWrite() > 0) {
-			cacheBuilder.refreshAfterWrite(l2CacheConfig.getCaffeine().getRefreshAfterWrite(), TimeUnit.SECONDS);
-		}
+		// refreshAfterWrite 只对 LoadingCache 生效，手动 Cache 上配置会直接抛异常，这里不再设置
 		return cacheBuilder.build();
 	}
 
 	@Override
 	public Collection<String> getCacheNames() {
-		return this.cacheNames;
+		return Collections.unmodifiableSet(cacheMap.keySet());
+	}
+
+	public String getNodeId() {
+		return nodeId;
 	}
 
 	public void clearLocal(String cacheName, Object key) {
@@ -93,4 +111,3 @@ public class RedisCaffeineCacheManager implements CacheManager {
 		redisCaffeineCache.clearLocal(key);
 	}
 }
-*/
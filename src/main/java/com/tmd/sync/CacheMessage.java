@@ -15,7 +15,9 @@ public class CacheMessage implements Serializable {
 
     /** 缓存名称 */
     private String cacheName;
-    /** 缓存key */
-    private Object key;
+    /** 缓存key，为空表示清理整个cacheName */
+    private String key;
+    /** 发送节点标识 */
+    private String nodeId;
 
-}
\ No newline at end of file
+}
@@ -1,35 +1,44 @@
-/*
 package com.tmd.sync;
 
 
-import com.tmd.config.RedisCache1;
+import cn.hutool.json.JSONUtil;
 import com.tmd.spring.RedisCaffeineCacheManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 
+import java.nio.charset.StandardCharsets;
+
 
 public class CacheMessageListener implements MessageListener {
 
     private final Logger logger = LoggerFactory.getLogger(CacheMessageListener.class);
 
-    private RedisCache1 redisService;
-
     private RedisCaffeineCacheManager redisCaffeineCacheManager;
 
-    public CacheMessageListener(RedisCache1 redisService,
-                                RedisCaffeineCacheManager redisCaffeineCacheManager) {
+    public CacheMessageListener(RedisCaffeineCacheManager redisCaffeineCacheManager) {
         super();
-        this.redisService = redisService;
         this.redisCaffeineCacheManager = redisCaffeineCacheManager;
     }
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
-        CacheMessage cacheMessage = (CacheMessage) redisService.getRedisTemplate().getValueSerializer().deserialize(message.getBody());
+        CacheMessage cacheMessage;
+        try {
+            cacheMessage = JSONUtil.toBean(new String(message.getBody(), StandardCharsets.UTF_8), CacheMessage.class);
+        } catch (Exception e) {
+            logger.warn("parse cache message failed", e);
+            return;
+        }
+        if (cacheMessage == null || cacheMessage.getCacheName() == null) {
+            return;
+        }
+        // 自己发出的消息在本地已经处理过了
+        if (redisCaffeineCacheManager.getNodeId().equals(cacheMessage.getNodeId())) {
+            return;
+        }
         logger.debug("recevice a redis topic message, clear local cache, the cacheName is {}, the key is {}", cacheMessage.getCacheName(), cacheMessage.getKey());
         redisCaffeineCacheManager.clearLocal(cacheMessage.getCacheName(), cacheMessage.getKey());
     }
 }
-*/
@@ -0,0 +1,8 @@
+-- Topic moderation now marks approved topics with status = 'approved'
+-- (rejected topics are still deleted). Search suggestions only use approved topics.
+-- Topics that existed before this change already passed moderation (rejected ones
+-- were deleted), so approve them; skip the last hour, which may still be in review.
+
+-- MySQL
+UPDATE sticknew.topic SET status = 'approved'
+WHERE (status IS NULL OR status = 'pending') AND created_at < NOW() - INTERVAL 1 HOUR;
@@ -0,0 +1,10 @@
+-- Counter flush ledger: one row per batch of Redis counter deltas written to the DB.
+-- The row is inserted in the same transaction as the batch UPDATE, so after a crash
+-- the flusher can tell whether the batch committed before subtracting it from Redis.
+-- Rows are deleted once Redis is settled; leftovers older than a day are purged.
+
+-- MySQL
+CREATE TABLE IF NOT EXISTS sticknew.counter_flush_batch (
+    batch_id VARCHAR(64) NOT NULL PRIMARY KEY,
+    created_at DATETIME NOT NULL
+);